@@ -2,6 +2,8 @@ package br.ufms.dct.simplerep;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -28,6 +30,15 @@ public class SimpleRepConfiguration {
 	private int frameworkLocalPort;
 	private String replicationStyle;
 	private int frameworkTimeout;
+	private int consensusWindow = 1;
+	private long windowBytes = 4 * 1024 * 1024;
+	private boolean idOrdering = false;
+	private long batchingLatency = 0;
+	private long batchingBytes = 256 * 1024;
+	private String consensus = "ct";
+	private long leaseTime = 0;
+	private double clockDrift = 0.01;
+	private Set<String> readOperations = new HashSet<String>();
 	private SystemContext systemContext;
 	
 	/**
@@ -92,6 +103,70 @@ public class SimpleRepConfiguration {
 		
 		this.setFrameworkTimeout(Integer.parseInt(XmlHelper.getFirstChildValue("timeout", doc)));
 		
+		// Optional: number of consensus instances run in parallel by abcast
+		if (doc.getElementsByTagName("consensusWindow").getLength() > 0) {
+			this.setConsensusWindow(Integer.parseInt(XmlHelper.getFirstChildValue("consensusWindow", doc)));
+		}
+		
+		// Optional: bytes abcast and not delivered yet that block the
+		// application
+		if (doc.getElementsByTagName("windowBytes").getLength() > 0) {
+			this.setWindowBytes(Long.parseLong(XmlHelper.getFirstChildValue("windowBytes", doc)));
+		}
+		
+		// Optional: abcast orders the message ids only, not the messages
+		if (doc.getElementsByTagName("idOrdering").getLength() > 0) {
+			this.setIdOrdering(Boolean.parseBoolean(XmlHelper.getFirstChildValue("idOrdering", doc)));
+		}
+		
+		// Optional: target consensus latency (microseconds) and bytes per
+		// proposal of the adaptive batching of abcast
+		if (doc.getElementsByTagName("batchingLatency").getLength() > 0) {
+			this.setBatchingLatency(Long.parseLong(XmlHelper.getFirstChildValue("batchingLatency", doc)));
+		}
+		if (doc.getElementsByTagName("batchingBytes").getLength() > 0) {
+			this.setBatchingBytes(Long.parseLong(XmlHelper.getFirstChildValue("batchingBytes", doc)));
+		}
+		
+		// Optional: consensus protocol of abcast (ct, paxos or multipaxos)
+		if (doc.getElementsByTagName("consensus").getLength() > 0) {
+			String consensus = XmlHelper.getFirstChildValue("consensus", doc).trim();
+			if (!consensus.equals("ct") && !consensus.equals("paxos") && !consensus.equals("multipaxos")) {
+				throw new SimpleRepConfException("The consensus protocol must be ct, paxos or multipaxos.");
+			}
+			this.setConsensus(consensus);
+		}
+		
+		// Optional: lease of the leader (milliseconds), bound of the clock
+		// drift and the operations it serves locally under the lease
+		if (doc.getElementsByTagName("leaseTime").getLength() > 0) {
+			this.setLeaseTime(Long.parseLong(XmlHelper.getFirstChildValue("leaseTime", doc)));
+		}
+		if (doc.getElementsByTagName("clockDrift").getLength() > 0) {
+			this.setClockDrift(Double.parseDouble(XmlHelper.getFirstChildValue("clockDrift", doc)));
+		}
+		NodeList readOperationNodes = doc.getElementsByTagName("readOperation");
+		for (int s = 0; s < readOperationNodes.getLength(); s++) {
+			this.readOperations.add(XmlHelper.getElementValue(readOperationNodes.item(s)).trim());
+		}
+		
+		if (this.leaseTime > 0) {
+			if (!this.consensus.equals("multipaxos")) {
+				throw new SimpleRepConfException("The leader lease needs the multipaxos consensus.");
+			}
+			if (this.leaseTime <= this.frameworkTimeout) {
+				throw new SimpleRepConfException("The lease time must be longer than the timeout (the period of the heartbeats).");
+			}
+			if (this.clockDrift < 0 || this.clockDrift >= 1) {
+				throw new SimpleRepConfException("The clock drift must be between 0 and 1.");
+			}
+			if (this.idOrdering) {
+				// the decided ids wait for their payload after consensus
+				// finished, so the leader cannot know what it delivered
+				throw new SimpleRepConfException("The leader lease cannot be used with the id ordering.");
+			}
+		}
+		
 		if (transportProtocol.equals("http")) {
 			this.transportProtocol = SupportedProtocols.HTTP;
 		}
@@ -105,6 +180,10 @@ public class SimpleRepConfiguration {
 		if (this.getReplicationStyle().equals("")) {
 			throw new SimpleRepConfException("The replication style (active, passive, etc) must be specified.");
 		}
+		
+		if (this.leaseTime > 0 && !this.getReplicationStyle().equals("active")) {
+			throw new SimpleRepConfException("The leader lease needs the active replication.");
+		}
 			
 		NodeList replicas = replicasTag.getElementsByTagName("replica");
 		this.otherFrameworkProcesses = new ArrayList<Host>();
@@ -241,6 +320,102 @@ public class SimpleRepConfiguration {
 		return frameworkTimeout;
 	}
 
+	public void setConsensusWindow(int consensusWindow) {
+		this.consensusWindow = consensusWindow;
+	}
+
+	public int getConsensusWindow() {
+		return consensusWindow;
+	}
+
+	/**
+	 * @param windowBytes the size of the messages abcast and not delivered
+	 * yet above which the application is blocked
+	 */
+	public void setWindowBytes(long windowBytes) {
+		this.windowBytes = windowBytes;
+	}
+
+	public long getWindowBytes() {
+		return windowBytes;
+	}
+
+	public void setIdOrdering(boolean idOrdering) {
+		this.idOrdering = idOrdering;
+	}
+
+	public boolean isIdOrdering() {
+		return idOrdering;
+	}
+
+	/**
+	 * @param batchingLatency the target consensus latency of the adaptive
+	 * batching of abcast in microseconds (0: fixed batching)
+	 */
+	public void setBatchingLatency(long batchingLatency) {
+		this.batchingLatency = batchingLatency;
+	}
+
+	public long getBatchingLatency() {
+		return batchingLatency;
+	}
+
+	public void setBatchingBytes(long batchingBytes) {
+		this.batchingBytes = batchingBytes;
+	}
+
+	public long getBatchingBytes() {
+		return batchingBytes;
+	}
+
+	/**
+	 * @param consensus the consensus protocol of abcast: "ct" (Chandra-Toueg),
+	 * "paxos" or "multipaxos" (Paxos with a stable leader)
+	 */
+	public void setConsensus(String consensus) {
+		this.consensus = consensus;
+	}
+
+	public String getConsensus() {
+		return consensus;
+	}
+
+	/**
+	 * @param leaseTime the duration of the lease granted to the Multi-Paxos
+	 * leader in milliseconds (0: no lease, every read is ordered by abcast)
+	 */
+	public void setLeaseTime(long leaseTime) {
+		this.leaseTime = leaseTime;
+	}
+
+	public long getLeaseTime() {
+		return leaseTime;
+	}
+
+	/**
+	 * @param clockDrift the bound of the drift between the clocks of the
+	 * replicas (relative rate, e.g. 0.01), subtracted from the lease
+	 */
+	public void setClockDrift(double clockDrift) {
+		this.clockDrift = clockDrift;
+	}
+
+	public double getClockDrift() {
+		return clockDrift;
+	}
+
+	/**
+	 * @param readOperations the operations (local names of the first element
+	 * of the SOAP body) that do not modify the state of the AppServer
+	 */
+	public void setReadOperations(Set<String> readOperations) {
+		this.readOperations = readOperations;
+	}
+
+	public Set<String> getReadOperations() {
+		return readOperations;
+	}
+
 	public void setSystemContext(SystemContext systemContext) {
 		this.systemContext = systemContext;
 	}
@@ -23,6 +23,7 @@ import br.ufms.dct.simplerep.enums.SimpleRepConstants;
 import br.ufms.dct.simplerep.exceptions.SimpleRepConfException;
 import br.ufms.dct.simplerep.kernels.AbstractKernel;
 import br.ufms.dct.simplerep.kernels.SamoaKernel;
+import br.ufms.dct.simplerep.samoa.LeaseReads;
 
 public class ABCastInterceptor implements HttpRequestInterceptor {
 	static Logger logger = Logger.getLogger(ABCastInterceptor.class.getName());
@@ -51,7 +52,8 @@ public class ABCastInterceptor implements HttpRequestInterceptor {
 			BlockingQueue<MessageContext> abcastInQueue = (BlockingQueue<MessageContext>) sysContext
 					.get(SamoaKernel.SAMOA_ABCAST_IN_QUEUE);
 			
-			MessageContext msgContext = MessageContext.buildMessageContext(EntityUtils.toString(entity));
+			String envelope = EntityUtils.toString(entity);
+			MessageContext msgContext = MessageContext.buildMessageContext(envelope);
 
 			String messageId = msgContext.getMessageId();
 			
@@ -62,6 +64,16 @@ public class ABCastInterceptor implements HttpRequestInterceptor {
 			
 			context.setAttribute(AbstractKernel.MESSAGE_ID, messageId);
 			
+			// A read arriving at the leader is sent to the local AppServer only
+			// (no out queue: the ProxyHandler forwards it as is)
+			LeaseReads reads = (LeaseReads) sysContext.get(SamoaKernel.LEASE_READS);
+			
+			if (reads != null && reads.isRead(msgContext) && reads.awaitLocalRead()) {
+				logger.debug("Read served locally under the leader lease.");
+				((BasicHttpEntity) entity).setContent(new ByteArrayInputStream(envelope.getBytes()));
+				return;
+			}
+			
 			// ABCast output queue
 			SynchronousQueue<MessageContext> myQueue = new SynchronousQueue<MessageContext>();
 			
@@ -86,6 +98,8 @@ public class ABCastInterceptor implements HttpRequestInterceptor {
 				// waiting for the ABcast, then releasing resources
 				logger.debug("Waiting for the abcast and inflow to complete.");
 				MessageContext processedContext = myQueue.take();
+				// the ProxyHandler marks the message as applied once invoked
+				context.setAttribute(SamoaKernel.DELIVERY_SEQUENCE, processedContext.getProperty(SamoaKernel.DELIVERY_SEQUENCE));
 				logger.debug("Message was abcasted and processed in the inflow. Invoking my AppServer.");
 				
 				((BasicHttpEntity) entity).setContent(new ByteArrayInputStream(processedContext.getEnvelope().toString().getBytes()));
@@ -12,7 +12,7 @@ import java.util.concurrent.SynchronousQueue;
 import org.apache.log4j.Logger;
 
 import seqSamoa.Callback;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.api.ApiSamoaAbcastStack;
@@ -26,6 +26,7 @@ import br.ufms.dct.simplerep.ar.MessageContext;
 import br.ufms.dct.simplerep.ar.SequencedEnvelope;
 import br.ufms.dct.simplerep.ar.SystemContext;
 import br.ufms.dct.simplerep.proxies.http.ThirdPartyRequestsRunner;
+import br.ufms.dct.simplerep.samoa.LeaseReads;
 import br.ufms.dct.simplerep.samoa.Pt2Pt2Parameter;
 import br.ufms.dct.simplerep.samoa.SimpleRepABCastCallback;
 import br.ufms.dct.simplerep.samoa.runners.ABCastRunner;
@@ -39,6 +40,8 @@ public class SamoaKernel extends AbstractKernel {
 	public static final String SAMOA_ABCAST_IN_QUEUE = "simplerep_abcast_in_queue";
 	public static final String SAMOA_ABCAST_OUT_QUEUE = "simplerep_abcast_out_queue";
 	public static final String ORIGINAL_PID = "simplerep_samoa_original_pid";
+	public static final String LEASE_READS = "simplerep_lease_reads";
+	public static final String DELIVERY_SEQUENCE = "simplerep_delivery_sequence";
 	
 	private static ApiSamoaAbcastStack stack;
 	private SimpleRepConfiguration conf;
@@ -147,10 +150,16 @@ public class SamoaKernel extends AbstractKernel {
 				// running the thread?
 				stack = new ApiSamoaAbcastStack(myself, processes,
 						new SamoaScheduler(new SequentialManager()),
-						new SamoaFlowControl(1000), callback, udpCallback, null, conf);
+						new CreditFlowControl(1000), callback, udpCallback, null, conf);
 				
 				// we need the stack object to send direct messages in the callback
 				callback.setStack(stack);
+				
+				if (conf.getLeaseTime() > 0) {
+					// the leader serves the reads locally under its lease; it must
+					// count every message delivered, hence before starting the stack
+					conf.getSystemContext().set(LEASE_READS, new LeaseReads(stack, conf.getReadOperations(), conf.getFrameworkTimeout()));
+				}
 
 				stack.init();
 				
@@ -97,6 +97,8 @@ import br.ufms.dct.simplerep.ar.SystemContext;
 import br.ufms.dct.simplerep.enums.AddressingConstants;
 import br.ufms.dct.simplerep.httpprocessors.ABCastInterceptor;
 import br.ufms.dct.simplerep.kernels.AbstractKernel;
+import br.ufms.dct.simplerep.kernels.SamoaKernel;
+import br.ufms.dct.simplerep.samoa.LeaseReads;
 import br.ufms.dct.simplerep.utils.HttpUtils;
 
 /**
@@ -208,6 +210,7 @@ public class ElementalReverseProxy {
 					// we already have the response
 					// bypassing
 					logger.info("[ProxyHandler] Envelope already processed. Bypassing.");
+					LeaseReads.applied(sysContext, (Long) context.getAttribute(SamoaKernel.DELIVERY_SEQUENCE));
 					targetResponse = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1), 200, "Success");
 					targetResponse.setEntity(new BasicHttpEntity());
 					
@@ -12,6 +12,10 @@ import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 
+import br.ufms.dct.simplerep.SimpleRepConfiguration;
+import br.ufms.dct.simplerep.kernels.SamoaKernel;
+import br.ufms.dct.simplerep.samoa.LeaseReads;
+
 public class LocalInvocationRunner implements Runnable  {
 	
 	private final HttpRequestExecutor httpexecutor;
@@ -62,6 +66,11 @@ public class LocalInvocationRunner implements Runnable  {
 		catch (InterruptedException e) {
 			logger.error("InterruptedException when trying to notify the HTTP Proxy's response queue.");
 		}
+		finally {
+			// the abcast message is applied by the local AppServer
+			LeaseReads.applied(SimpleRepConfiguration.getConfiguration().getSystemContext(),
+					(Long) context.getAttribute(SamoaKernel.DELIVERY_SEQUENCE));
+		}
 	}
 
 }
@@ -0,0 +1,99 @@
+package br.ufms.dct.simplerep.samoa;
+
+import java.util.Set;
+
+import org.apache.axiom.soap.SOAPBody;
+import org.apache.log4j.Logger;
+
+import seqSamoa.api.ApiSamoaAbcastStack;
+import framework.libraries.serialization.TLongWatermarkSet;
+
+import br.ufms.dct.simplerep.ar.MessageContext;
+import br.ufms.dct.simplerep.ar.SystemContext;
+import br.ufms.dct.simplerep.kernels.SamoaKernel;
+
+/**
+ * Serves the reads arriving at the leader locally, without abcast, while it
+ * holds its lease: a read waits until the local AppServer applied the
+ * messages ordered before it, then goes straight to the AppServer.
+ *
+ * The messages delivered by abcast are marked as applied, by their sequence
+ * number, once the local AppServer answered them (or could not be invoked).
+ * They are applied by several threads, hence not in order: a read waits
+ * until all the messages up to its index are.
+ */
+public class LeaseReads {
+	static Logger logger = Logger.getLogger(LeaseReads.class.getName());
+
+	private ApiSamoaAbcastStack stack;
+	private Set<String> operations;
+	private long timeout;
+
+	// sequence numbers of the messages delivered by abcast and applied by
+	// the AppServer (they start at 1)
+	private TLongWatermarkSet applied = new TLongWatermarkSet(1);
+
+	public LeaseReads(ApiSamoaAbcastStack stack, Set<String> operations, long timeout) {
+		this.stack = stack;
+		this.operations = operations;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Marks the message delivered by abcast with the given sequence number
+	 * as applied, if the reads are served locally
+	 */
+	public static void applied(SystemContext sysContext, Long sequence) {
+		LeaseReads reads = (LeaseReads) sysContext.get(SamoaKernel.LEASE_READS);
+
+		if (reads != null && sequence != null) {
+			reads.markApplied(sequence);
+		}
+	}
+
+	public synchronized void markApplied(long sequence) {
+		applied.add(sequence);
+		notifyAll();
+	}
+
+	/**
+	 * @return true if the operation of the message does not modify the
+	 * state of the AppServer
+	 */
+	public boolean isRead(MessageContext msgContext) {
+		SOAPBody body = msgContext.getEnvelope().getBody();
+
+		return body != null && operations.contains(body.getFirstElementLocalName());
+	}
+
+	/**
+	 * Waits until the local AppServer applied the messages ordered before the
+	 * read.
+	 *
+	 * @return false if the read must be ordered by abcast: this replica does
+	 * not hold the lease, or the messages were not applied in time
+	 */
+	public boolean awaitLocalRead() throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		long index = stack.readIndex(timeout);
+
+		if (index < 0) {
+			return false;
+		}
+
+		synchronized (this) {
+			while (applied.getWatermark() <= index) {
+				long remaining = end - System.currentTimeMillis();
+
+				if (remaining <= 0) {
+					logger.warn("The messages ordered before the read were not applied in time.");
+					return false;
+				}
+
+				wait(remaining);
+			}
+		}
+
+		return true;
+	}
+}
@@ -1,23 +1,23 @@
 package br.ufms.dct.simplerep.samoa;
 
-import framework.libraries.serialization.TString;
+import framework.libraries.serialization.TUtf8String;
 import seqSamoa.services.udp.UDPCallParameters;
 
 public class Pt2Pt2Parameter {
 	private UDPCallParameters params;
-	private TString envelope;
-	private TString msgId;
+	private TUtf8String envelope;
+	private TUtf8String msgId;
 	
-	public Pt2Pt2Parameter(TString envelope, UDPCallParameters params) {
+	public Pt2Pt2Parameter(TUtf8String envelope, UDPCallParameters params) {
 		setEnvelope(envelope);
 		setTarget(params);
 	}
 	
-	public void setEnvelope(TString envelope) {
+	public void setEnvelope(TUtf8String envelope) {
 		this.envelope = envelope;
 	}
 	
-	public TString getEnvelope() {
+	public TUtf8String getEnvelope() {
 		return envelope;
 	}
 	
@@ -29,11 +29,11 @@ public class Pt2Pt2Parameter {
 		return params;
 	}
 
-	public void setMsgId(TString msgId) {
+	public void setMsgId(TUtf8String msgId) {
 		this.msgId = msgId;
 	}
 
-	public TString getMsgId() {
+	public TUtf8String getMsgId() {
 		return msgId;
 	}
 }
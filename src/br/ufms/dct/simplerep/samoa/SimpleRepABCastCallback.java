@@ -27,10 +27,11 @@ import br.ufms.dct.simplerep.kernels.SamoaKernel;
 
 import seqSamoa.Callback;
 import seqSamoa.api.ApiSamoaAbcastStack;
+import seqSamoa.services.abcast.AbcastResponseParameters;
 import uka.transport.Transportable;
 import framework.PID;
 import framework.libraries.serialization.TLinkedList;
-import framework.libraries.serialization.TString;
+import framework.libraries.serialization.TUtf8String;
 
 public class SimpleRepABCastCallback implements Callback {
 	static Logger logger = Logger.getLogger(SimpleRepABCastCallback.class.getName());
@@ -55,20 +56,23 @@ public class SimpleRepABCastCallback implements Callback {
 	public void serviceCallback(Object infos, Transportable message) {
 		// message just arrived via ABcast
 		TLinkedList msgs = (TLinkedList) message;
+		Long sequence = ((AbcastResponseParameters) infos).sequence;
 		
-		String envelopeStr = ((TString) msgs.getFirst()).toString();
-		String waitingQueueId = ((TString) msgs.get(1)).toString();
-		String originalUrl = ((TString) msgs.get(2)).toString();
+		String envelopeStr = ((TUtf8String) msgs.getFirst()).toString();
+		String waitingQueueId = ((TUtf8String) msgs.get(1)).toString();
+		String originalUrl = ((TUtf8String) msgs.get(2)).toString();
 		PID originalRAPID = ((PID) msgs.get(3));
-		String msgid = ((TString) msgs.get(4)).toString();
+		String msgid = ((TUtf8String) msgs.get(4)).toString();
 		
 		if (envelopeStr == null || envelopeStr.length() <= 0) {
 			logger.fatal("The received envelope is empty!");
+			LeaseReads.applied(SimpleRepConfiguration.getConfiguration().getSystemContext(), sequence);
 			return;
 		}
 		
 		if (waitingQueueId == null || waitingQueueId.length() <= 0) {
 			logger.fatal("The Waiting Queue Id could not be retrieved!");
+			LeaseReads.applied(SimpleRepConfiguration.getConfiguration().getSystemContext(), sequence);
 			return;
 		}
 		
@@ -80,6 +84,7 @@ public class SimpleRepABCastCallback implements Callback {
 		RequestProcessor requestProcessor = RequestProcessor.getProcessor();
 		
 		if (inMsgContext != null) {
+			inMsgContext.setProperty(SamoaKernel.DELIVERY_SEQUENCE, sequence);
 			requestProcessor.inFlow(inMsgContext);
 		}
 		
@@ -87,6 +92,11 @@ public class SimpleRepABCastCallback implements Callback {
 
 		SystemContext sysContext = conf.getSystemContext();
 		
+		if (inMsgContext == null) {
+			// it will never be applied
+			LeaseReads.applied(sysContext, sequence);
+		}
+		
 		// if there is a waitingQueue, it's because we're in the 
 		// host which received the client's request
 		SynchronousQueue<MessageContext> waitingQueue = (SynchronousQueue<MessageContext>) sysContext.remove(waitingQueueId);
@@ -98,6 +108,7 @@ public class SimpleRepABCastCallback implements Callback {
 					waitingQueue.put(inMsgContext);
 				} catch (InterruptedException e) {
 					logger.error("The msgContext could not be put into the waitingQueue.");
+					LeaseReads.applied(sysContext, sequence);
 				}
 				
 				logger.debug("ABCastInterceptor's queue has one more element.");
@@ -111,6 +122,7 @@ public class SimpleRepABCastCallback implements Callback {
 					thirdPartyQueue.put(inMsgContext);
 				} catch (InterruptedException e) {
 					logger.error("The msgContext could not be put into the thirdPartyQueue.");
+					LeaseReads.applied(sysContext, sequence);
 				}
 				
 				logger.debug("The WaitingQueue couldn't be retrieved, this host is not the primary. ThirdPartyRequestsRunner has one more request to make now.");
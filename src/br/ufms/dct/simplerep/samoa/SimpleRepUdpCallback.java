@@ -7,7 +7,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 
 import framework.libraries.serialization.TLinkedList;
-import framework.libraries.serialization.TString;
+import framework.libraries.serialization.TUtf8String;
 import seqSamoa.Callback;
 import uka.transport.Transportable;
 
@@ -27,9 +27,9 @@ public class SimpleRepUdpCallback implements Callback {
 	public void serviceCallback(Object infos, Transportable message) {
 		TLinkedList l = (TLinkedList) message;
 		
-		String envelope = ((TString) l.get(0)).toString();
-		String queueId = ((TString) l.get(1)).toString();
-		String from = ((TString) l.get(2)).toString();;
+		String envelope = ((TUtf8String) l.get(0)).toString();
+		String queueId = ((TUtf8String) l.get(1)).toString();
+		String from = ((TUtf8String) l.get(2)).toString();;
 		
 		logger.debug("Received a response from \"" + from + "\" via Samoa. Putting in the HTTP Proxy Queue.");
 		SynchronousQueue<String> outQueue = outQueues.get(queueId);
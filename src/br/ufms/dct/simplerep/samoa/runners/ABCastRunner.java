@@ -13,7 +13,7 @@ import br.ufms.dct.simplerep.exceptions.SimpleRepConfException;
 import br.ufms.dct.simplerep.httpprocessors.ABCastInterceptor;
 import framework.PID;
 import framework.libraries.serialization.TLinkedList;
-import framework.libraries.serialization.TString;
+import framework.libraries.serialization.TUtf8String;
 import seqSamoa.api.ApiSamoaAbcastStack;
 
 public class ABCastRunner implements Runnable {
@@ -54,17 +54,17 @@ public class ABCastRunner implements Runnable {
 			}
 
 			SOAPEnvelope soapEnvelope = nextMsgContext.getEnvelope();
-			String envelopeString =  new String(soapEnvelope.toString());
-			TString envelope = new TString(envelopeString);
+			String envelopeString = soapEnvelope.toString();
+			TUtf8String envelope = new TUtf8String(envelopeString);
 			String originalUrl = (String) nextMsgContext.getProperty(SimpleRepConstants.ORIGINAL_URL);
 			String msgid = nextMsgContext.getMessageId();
 			
 			TLinkedList l = new TLinkedList();
 			l.add(envelope);
-			l.add(new TString((String) nextMsgContext.getProperty(ABCastInterceptor.AppServerInQueueId)));
-			l.add(new TString(originalUrl));
+			l.add(new TUtf8String((String) nextMsgContext.getProperty(ABCastInterceptor.AppServerInQueueId)));
+			l.add(new TUtf8String(originalUrl));
 			l.add(myPID);
-			l.add(new TString(msgid));
+			l.add(new TUtf8String(msgid));
 
 			logger.debug("ABcasting msgContext.");
 			stack.abcastMessage(l);
@@ -5,7 +5,7 @@ import java.util.concurrent.BlockingQueue;
 import org.apache.log4j.Logger;
 
 import framework.libraries.serialization.TLinkedList;
-import framework.libraries.serialization.TString;
+import framework.libraries.serialization.TUtf8String;
 
 import br.ufms.dct.simplerep.SimpleRepConfiguration;
 import br.ufms.dct.simplerep.exceptions.SimpleRepConfException;
@@ -60,7 +60,7 @@ public class Pt2PtRunner implements Runnable {
 				TLinkedList toSend = new TLinkedList();
 				toSend.add(msgAndTarget.getEnvelope());
 				toSend.add(msgAndTarget.getMsgId());
-				toSend.add(new TString(localhost));
+				toSend.add(new TUtf8String(localhost));
 
 				logger.debug("Sending my local response to the original RA ("
 						+ params.pid + ") via Samoa.");
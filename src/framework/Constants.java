@@ -37,6 +37,7 @@ public class Constants{
     public static final int READY4NEXTMESSAGE = 9;
 
     public static final int PT2PTSEND = 10;
+    public static final int PT2PTMULTISEND = 35;
     public static final int PT2PTDELIVER = 11;
     public static final int JOINREMOVELIST = 12;
     public static final int SUSPECT2 = 27;
@@ -110,4 +111,8 @@ public class Constants{
     public static final int LOG_CONSENSUS = 2;
     public static final int LOG_FDSE = 3;
     public static final int LOG_FDSU = 4;
+    // Owned by ProtocolCrashRecoveryAbcast: last checkpoint (key 0) and
+    // decisions delivered since then (key: consensus instance)
+    public static final int LOG_CHECKPOINT = 5;
+    public static final int LOG_DECISIONS = 6;
 }
@@ -18,6 +18,7 @@
  */
 package framework.libraries;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -28,6 +29,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
 
 import uka.transport.Transportable;
 import framework.libraries.serialization.TByteArray;
@@ -45,6 +47,15 @@ import framework.libraries.serialization.TMap;
  * 
  * For more information, see interface <i>StableStorage</i>
  * 
+ * In group-commit mode (see {@link #setGroupCommit(boolean)}), the entries
+ * stored and deleted are appended to a batch that a dedicated thread writes
+ * to both files with a single sync per file. {@link #storeAsync} and
+ * {@link #deleteAsync} return as soon as the entry is in the batch (the
+ * value can already be retrieved) with a {@link Commit} to wait until it is
+ * durable; {@link #store} and {@link #delete} wait for it, so that
+ * concurrent callers share the syncs. The entries may be stored and
+ * deleted by several threads in both modes.
+ * 
  * @author smenadel
  */
 public class BinaryStableStorage implements StableStorage {
@@ -61,6 +72,43 @@ public class BinaryStableStorage implements StableStorage {
 	protected TMap state = null;
 	protected boolean closed = true;
 
+	/** Compression of the values stored */
+	protected volatile Compression compression = new Compression();
+
+	/** Default maximum number of entries in a batch */
+	public static final int DEFAULT_MAX_BATCH = 256;
+
+	/** Default time to wait for more entries before syncing a batch (in microseconds) */
+	public static final int DEFAULT_MAX_DELAY = 0;
+
+	/** True in group-commit mode */
+	protected boolean groupCommit = false;
+
+	protected volatile int maxBatch = DEFAULT_MAX_BATCH;
+
+	protected volatile int maxDelay = DEFAULT_MAX_DELAY;
+
+	/** Batch being filled (group-commit mode) */
+	protected Commit pending = null;
+
+	/** Last batch created (group-commit mode) */
+	protected Commit last = null;
+
+	/** Thread that syncs the batches (group-commit mode) */
+	protected Thread syncer = null;
+
+	/** Lock of the files, taken before the lock of the storage */
+	protected final Object ioLock = new Object();
+
+	/* Batches synced */
+	public final LongAdder batches = new LongAdder();
+
+	/* Entries synced in batches */
+	public final LongAdder batchedEntries = new LongAdder();
+
+	/* Time spent writing and syncing the batches (in nanoseconds) */
+	public final LongAdder syncTime = new LongAdder();
+
 	protected static final byte UNIQUE = 0;
 	protected static final byte NORMAL = 1;
 	protected static final byte DELETE = 2;
@@ -79,6 +127,58 @@ public class BinaryStableStorage implements StableStorage {
 		}
 	}
 
+	/**
+	 * A batch of entries written with a single sync. It is the completion
+	 * returned to the callers of {@link BinaryStableStorage#storeAsync} and
+	 * {@link BinaryStableStorage#deleteAsync}.
+	 */
+	public static class Commit {
+		protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		protected final DataOutputStream out = new DataOutputStream(buffer);
+
+		protected int entries = 0;
+
+		protected long start = System.nanoTime();
+
+		private boolean durable = false;
+
+		/**
+		 * @return true if the entries of the batch are on disk
+		 */
+		public synchronized boolean isDurable() {
+			return durable;
+		}
+
+		/**
+		 * Wait until the entries of the batch are on disk
+		 */
+		public synchronized void waitDurable() {
+			boolean interrupted = false;
+			while (!durable) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		protected synchronized void done() {
+			durable = true;
+			notifyAll();
+		}
+	}
+
+	/** Commit of the operations that are durable when they return */
+	protected static final Commit DURABLE = new Commit();
+
+	static {
+		DURABLE.done();
+	}
+
 	public BinaryStableStorage(String path) {
 		try {
 			String path1 = path;
@@ -238,45 +338,287 @@ public class BinaryStableStorage implements StableStorage {
 	}
 
 	public void store(
+		int protocolKey,
+		long key,
+		Transportable value,
+		boolean unique) {
+		storeAsync(protocolKey, key, value, unique).waitDurable();
+	}
+
+	/**
+	 * Store an object as {@link #store} but, in group-commit mode, return
+	 * before it is durable.
+	 *
+	 * @return the commit of the entry
+	 */
+	public Commit storeAsync(
 		int protocolKey,
 		long key,
 		Transportable value,
 		boolean unique) {
 		try {
 			byte[] valueB;
-			valueB = DefaultSerialization.marshall(value);
+			valueB = compression.compress(DefaultSerialization.marshall(value));
 			byte uniqueB = unique ? UNIQUE : NORMAL;
 
-			updateState(state, protocolKey, key, valueB, uniqueB);
-			writeEntry(o1, protocolKey, key, valueB, uniqueB);
-			fd1.sync();
-			writeEntry(o2, protocolKey, key, valueB, uniqueB);
-			fd2.sync();
+			synchronized (this) {
+				if (groupCommit)
+					return append(protocolKey, key, valueB, uniqueB);
+
+				updateState(state, protocolKey, key, valueB, uniqueB);
+				writeEntry(o1, protocolKey, key, valueB, uniqueB);
+				fd1.sync();
+				writeEntry(o2, protocolKey, key, valueB, uniqueB);
+				fd2.sync();
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(1);
 		}
+		return DURABLE;
 	}
 
 	public void delete(int protocolKey, long key) {
+		deleteAsync(protocolKey, key).waitDurable();
+	}
+
+	/**
+	 * Delete the entries with the given keys as {@link #delete(int, long)}
+	 * but, in group-commit mode, return before it is durable.
+	 *
+	 * @return the commit of the deletion
+	 */
+	public Commit deleteAsync(int protocolKey, long key) {
 		try {
-			//Delete from memory
-			updateState(state, protocolKey, key, null, DELETE);
-			//Delete from files
-			writeEntry(o1, protocolKey, key, null, DELETE);
-			fd1.sync();
-			writeEntry(o2, protocolKey, key, null, DELETE);
-			fd2.sync();
+			synchronized (this) {
+				if (groupCommit)
+					return append(protocolKey, key, null, DELETE);
+
+				//Delete from memory
+				updateState(state, protocolKey, key, null, DELETE);
+				//Delete from files
+				writeEntry(o1, protocolKey, key, null, DELETE);
+				fd1.sync();
+				writeEntry(o2, protocolKey, key, null, DELETE);
+				fd2.sync();
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(1);
 		}
+		return DURABLE;
 	}
 
 	public void delete(int protocolKey, TCollection keys) {
+		Commit last = DURABLE;
 		Iterator it = keys.iterator();
 		while (it.hasNext()) {
-			delete(protocolKey, ((Long) it.next()).longValue());
+			last = deleteAsync(protocolKey, ((Long) it.next()).longValue());
+		}
+		// The batches are synced in order
+		last.waitDurable();
+	}
+
+	public void deleteBelow(int protocolKey, long key) {
+		Commit last = DURABLE;
+		try {
+			synchronized (this) {
+				TMap protMap = (TMap) state.get(new TInteger(protocolKey));
+				if (protMap == null)
+					return;
+				TLinkedList keys = new TLinkedList();
+				Iterator it = protMap.keySet().iterator();
+				while (it.hasNext()) {
+					TLong k = (TLong) it.next();
+					if (k.longValue() < key)
+						keys.addLast(k);
+				}
+				if (keys.isEmpty())
+					return;
+
+				if (groupCommit) {
+					it = keys.iterator();
+					while (it.hasNext())
+						last = append(protocolKey, ((TLong) it.next()).longValue(), null, DELETE);
+				} else {
+					// One sync per file for all the keys
+					it = keys.iterator();
+					while (it.hasNext()) {
+						long k = ((TLong) it.next()).longValue();
+						updateState(state, protocolKey, k, null, DELETE);
+						writeEntry(o1, protocolKey, k, null, DELETE);
+					}
+					fd1.sync();
+					it = keys.iterator();
+					while (it.hasNext())
+						writeEntry(o2, protocolKey, ((TLong) it.next()).longValue(), null, DELETE);
+					fd2.sync();
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		last.waitDurable();
+	}
+
+	/**
+	 * Enable or disable the group-commit mode. The entries pending are made
+	 * durable before it is disabled.
+	 */
+	public void setGroupCommit(boolean groupCommit) {
+		synchronized (ioLock) {
+			synchronized (this) {
+				if (groupCommit == this.groupCommit)
+					return;
+
+				this.groupCommit = groupCommit;
+				if (groupCommit) {
+					syncer = new Thread("StableStorageSyncThread") {
+						public void run() {
+							syncBatches();
+						}
+					};
+					syncer.setDaemon(true);
+					syncer.start();
+				} else {
+					commitPending();
+					syncer = null;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Set the size and the latency target of the batches in group-commit
+	 * mode. A batch is synced once it has <i>maxBatch</i> entries or
+	 * <i>maxDelay</i> microseconds after its first entry, whichever comes
+	 * first (with 0, a batch is synced as soon as the previous one is
+	 * durable).
+	 *
+	 * @param maxBatch
+	 *            maximum number of entries in a batch
+	 * @param maxDelay
+	 *            maximum time to wait for more entries (in microseconds)
+	 */
+	public synchronized void setBatching(int maxBatch, int maxDelay) {
+		if ((maxBatch < 1) || (maxDelay < 0))
+			throw new IllegalArgumentException("Wrong batching: " + maxBatch
+					+ " entries, " + maxDelay + " us");
+		this.maxBatch = maxBatch;
+		this.maxDelay = maxDelay;
+		notifyAll();
+	}
+
+	/**
+	 * Reset the statistics of the batches
+	 */
+	public void resetStatistics() {
+		batches.reset();
+		batchedEntries.reset();
+		syncTime.reset();
+	}
+
+	/**
+	 * Wait until all the entries stored and deleted so far are durable
+	 */
+	public void flush() {
+		Commit c;
+		synchronized (this) {
+			c = last;
+		}
+		// The batches are synced in order
+		if (c != null)
+			c.waitDurable();
+	}
+
+	// Append an entry to the batch being filled (the lock is held)
+	protected Commit append(int protocolKey, long key, byte[] value, byte type) {
+		updateState(state, protocolKey, key, value, type);
+		if (pending == null) {
+			pending = new Commit();
+			last = pending;
+			notifyAll();
+		}
+		Commit c = pending;
+		writeEntry(c.out, protocolKey, key, value, type);
+		c.entries++;
+		if (c.entries == maxBatch)
+			notifyAll();
+		return c;
+	}
+
+	// Body of the thread that syncs the batches
+	protected void syncBatches() {
+		Thread me = Thread.currentThread();
+		while (true) {
+			// Wait until a batch is full or old enough
+			synchronized (this) {
+				while (true) {
+					if (syncer != me)
+						return;
+					if (pending != null) {
+						long remaining = pending.start + maxDelay * 1000L
+								- System.nanoTime();
+						if ((pending.entries >= maxBatch) || (remaining <= 0))
+							break;
+						waitStorage(remaining);
+					} else
+						waitStorage(0);
+				}
+			}
+
+			synchronized (ioLock) {
+				Commit c;
+				synchronized (this) {
+					// The batch may have been committed by trim, clear, etc.
+					c = pending;
+					pending = null;
+				}
+				if (c != null)
+					commit(c);
+			}
+		}
+	}
+
+	// Wait on the storage for the given time in nanoseconds (0: no timeout)
+	private void waitStorage(long nanos) {
+		try {
+			if (nanos > 0)
+				wait(nanos / 1000000, (int) (nanos % 1000000));
+			else
+				wait();
+		} catch (InterruptedException e) {
+		}
+	}
+
+	// Write a batch to both files and sync them (the lock of the files is held)
+	protected void commit(Commit c) {
+		long start = System.nanoTime();
+		try {
+			c.buffer.writeTo(o1);
+			o1.flush();
+			fd1.sync();
+			c.buffer.writeTo(o2);
+			o2.flush();
+			fd2.sync();
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		syncTime.add(System.nanoTime() - start);
+		batches.increment();
+		batchedEntries.add(c.entries);
+		c.done();
+	}
+
+	// Commit the batch being filled, if any (both locks are held)
+	protected void commitPending() {
+		if (pending != null) {
+			Commit c = pending;
+			pending = null;
+			commit(c);
 		}
 	}
 
@@ -368,7 +710,7 @@ public class BinaryStableStorage implements StableStorage {
 				return null;
 			// Decode it
 			// Transorm it into the object
-			return DefaultSerialization.unmarshall( ((TByteArray)s.getFirst()).byteValue() );
+			return DefaultSerialization.unmarshall( compression.decompress(((TByteArray)s.getFirst()).byteValue()) );
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(1);
@@ -391,7 +733,7 @@ public class BinaryStableStorage implements StableStorage {
 
 			Iterator it = s.iterator();
 			while (it.hasNext()) {
-				Transportable o = DefaultSerialization.unmarshall( ((TByteArray) it.next()).byteValue() );
+				Transportable o = DefaultSerialization.unmarshall( compression.decompress(((TByteArray) it.next()).byteValue()) );
 				all.addLast(o);
 			}
 			return all;
@@ -402,10 +744,34 @@ public class BinaryStableStorage implements StableStorage {
 		return null; // never reached!
 	}
 
+	/**
+	 * Return the compression of the values stored
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Set the compression of the values stored. Values stored compressed
+	 * or not (e.g. by a previous run) are always read back.
+	 */
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+
 	/** 
 	 * Erase all log entries. <b>Use with care</b> 
 	 */
 	public void clear() {
+		synchronized (ioLock) {
+			synchronized (this) {
+				commitPending();
+				clearLocked();
+			}
+		}
+	}
+
+	protected void clearLocked() {
 		try {
 			closeStreams();
 			// Clear 1st file
@@ -426,6 +792,15 @@ public class BinaryStableStorage implements StableStorage {
 	 * objects in the stable storage file.
 	 */
 	public void trim() {
+		synchronized (ioLock) {
+			synchronized (this) {
+				commitPending();
+				trimLocked();
+			}
+		}
+	}
+
+	protected void trimLocked() {
 		try {
 			closeStreams();
 			//Trim 1st file
@@ -476,6 +851,18 @@ public class BinaryStableStorage implements StableStorage {
 	 * To properly exit the application. Log file(s) will never again be needed.
 	 */
 	public void close() {
+		synchronized (ioLock) {
+			synchronized (this) {
+				commitPending();
+				groupCommit = false;
+				syncer = null;
+				notifyAll();
+				closeLocked();
+			}
+		}
+	}
+
+	protected void closeLocked() {
 		try {
 			if (!closed) {
 				//Close the output streams
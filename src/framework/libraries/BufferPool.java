@@ -0,0 +1,178 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of large buffers of the same size, shared by several threads. A
+ * buffer is handed out as a {@link Chunk} with a reference count: it goes
+ * back to the pool when the last reference is released, so that slices of
+ * the buffer can be used by other threads after the owner has moved to
+ * another chunk. A chunk that is never released is simply garbage
+ * collected.
+ */
+public class BufferPool {
+    /**
+     * A buffer of the pool and its reference count
+     */
+    public static class Chunk {
+        private final BufferPool pool;
+        private final ByteBuffer buffer;
+        private final AtomicInteger references = new AtomicInteger();
+
+        Chunk(BufferPool pool, ByteBuffer buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return the buffer (shared by all the references)
+         */
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * @return the number of references
+         */
+        public int references() {
+            return references.get();
+        }
+
+        /**
+         * Add a reference to the chunk
+         */
+        public void retain() {
+            references.incrementAndGet();
+        }
+
+        /**
+         * Release a reference. The last one gives back the buffer to the pool.
+         */
+        public void release() {
+            if ((references.decrementAndGet() == 0) && (pool != null))
+                pool.recycle(this);
+        }
+    }
+
+    private final int bufferSize;
+
+    private final int maxPooled;
+
+    private final boolean direct;
+
+    private final ArrayDeque<Chunk> free = new ArrayDeque<Chunk>();
+
+    /* Chunks handed out */
+    public final LongAdder acquired = new LongAdder();
+
+    /* Chunks allocated because the pool was empty */
+    public final LongAdder allocated = new LongAdder();
+
+    /* Chunks given back to the pool */
+    public final LongAdder recycled = new LongAdder();
+
+    /* Chunks dropped because the pool was full */
+    public final LongAdder dropped = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param bufferSize
+     *            size of the buffers
+     * @param maxPooled
+     *            maximum number of free buffers kept
+     * @param direct
+     *            true for direct buffers, false for heap buffers
+     */
+    public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return the number of free buffers in the pool
+     */
+    public synchronized int size() {
+        return free.size();
+    }
+
+    /**
+     * Take a cleared buffer from the pool (or allocate it)
+     *
+     * @return a chunk with one reference
+     */
+    public Chunk acquire() {
+        acquired.increment();
+        Chunk c;
+        synchronized (this) {
+            c = free.pollLast();
+        }
+        if (c == null) {
+            allocated.increment();
+            c = new Chunk(this, direct ? ByteBuffer.allocateDirect(bufferSize)
+                    : ByteBuffer.allocate(bufferSize));
+        }
+        c.references.set(1);
+        return c;
+    }
+
+    /**
+     * Wrap a buffer that does not belong to the pool (e.g. for a message
+     * larger than the buffers of the pool)
+     *
+     * @return a chunk with one reference, that is not recycled
+     */
+    public static Chunk unpooled(ByteBuffer buffer) {
+        Chunk c = new Chunk(null, buffer);
+        c.references.set(1);
+        return c;
+    }
+
+    private void recycle(Chunk c) {
+        c.buffer.clear();
+        synchronized (this) {
+            if (free.size() < maxPooled) {
+                free.addLast(c);
+                recycled.increment();
+                return;
+            }
+        }
+        dropped.increment();
+    }
+
+    /**
+     * Reset the statistics
+     */
+    public void reset() {
+        acquired.reset();
+        allocated.reset();
+        recycled.reset();
+        dropped.reset();
+    }
+}
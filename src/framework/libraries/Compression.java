@@ -0,0 +1,350 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of serialized messages (Deflate).
+ *
+ * Messages whose size reaches the threshold are compressed, the others are
+ * left unchanged. A compressed frame starts with the flag {@link #DEFLATED},
+ * followed by the length of the uncompressed message (4 bytes) and by the
+ * deflated data. The first byte of a message serialized by
+ * {@link DefaultSerialization} or by the compact serialization is always
+ * smaller than 0x40, so compressed and uncompressed frames (including the
+ * ones written before compression was enabled) can coexist.
+ *
+ * A message is sent uncompressed when compressing it does not save space.
+ * The instances are thread-safe: every thread uses its own
+ * {@link java.util.zip.Deflater Deflater} and {@link java.util.zip.Inflater Inflater}.
+ */
+public class Compression {
+    /**
+     * Flag of a compressed frame
+     */
+    public static final byte DEFLATED = (byte) 0xC1;
+
+    /**
+     * Default threshold of the services (in bytes)
+     */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    /**
+     * Threshold that disables the compression
+     */
+    public static final int DISABLED = Integer.MAX_VALUE;
+
+    // Size of the header of a compressed frame
+    private static final int HEADER = 5;
+
+    // Largest uncompressed message accepted
+    private static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+    // Compressor, decompressor and buffer of a thread
+    private static class Codec {
+        final Deflater deflater;
+        final Inflater inflater = new Inflater();
+        int level;
+        byte[] buf = new byte[4096];
+
+        Codec(int level) {
+            this.deflater = new Deflater(level);
+            this.level = level;
+        }
+
+        byte[] buffer(int size) {
+            if (buf.length < size)
+                buf = new byte[Math.max(size, buf.length * 2)];
+            return buf;
+        }
+    }
+
+    private final ThreadLocal<Codec> codecs = new ThreadLocal<Codec>() {
+        protected Codec initialValue() {
+            return new Codec(level);
+        }
+    };
+
+    // Messages smaller than this are not compressed
+    private volatile int threshold;
+
+    // Level of the Deflater
+    private volatile int level;
+
+    /* Messages given to compress */
+    public final LongAdder frames = new LongAdder();
+
+    /* Messages actually compressed */
+    public final LongAdder compressedFrames = new LongAdder();
+
+    /* Size of the compressed messages before compression */
+    public final LongAdder bytesIn = new LongAdder();
+
+    /* Size of the compressed messages after compression (header included) */
+    public final LongAdder bytesOut = new LongAdder();
+
+    /* Time spent compressing (in nanoseconds) */
+    public final LongAdder compressTime = new LongAdder();
+
+    /* Compressed messages received */
+    public final LongAdder decompressedFrames = new LongAdder();
+
+    /* Time spent decompressing (in nanoseconds) */
+    public final LongAdder decompressTime = new LongAdder();
+
+    /**
+     * Constructor with the default threshold and the fastest level
+     */
+    public Compression() {
+        this(DEFAULT_THRESHOLD, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param threshold
+     *            messages smaller than threshold are not compressed
+     *            ({@link #DISABLED} to never compress)
+     * @param level
+     *            level of the compression (0-9)
+     */
+    public Compression(int threshold, int level) {
+        setThreshold(threshold);
+        setLevel(level);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        if ((level < Deflater.NO_COMPRESSION) || (level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Compression: wrong level " + level);
+        this.level = level;
+    }
+
+    /**
+     * @return the size of the compressed messages after compression divided
+     *         by their size before compression
+     */
+    public double getRatio() {
+        long in = bytesIn.sum();
+        return in == 0 ? 1.0 : (double) bytesOut.sum() / in;
+    }
+
+    public void reset() {
+        frames.reset();
+        compressedFrames.reset();
+        bytesIn.reset();
+        bytesOut.reset();
+        compressTime.reset();
+        decompressedFrames.reset();
+        decompressTime.reset();
+    }
+
+    /**
+     * Compress a message if it reaches the threshold
+     *
+     * @param b
+     *            the serialized message
+     * @return the compressed frame or b
+     */
+    public byte[] compress(byte[] b) {
+        frames.increment();
+        if (b.length < threshold)
+            return b;
+
+        Codec c = codecs.get();
+        int n = deflate(c, b, 0, b.length);
+        if (n < 0)
+            return b;
+
+        byte[] result = new byte[n];
+        System.arraycopy(c.buf, 0, result, 0, n);
+        return result;
+    }
+
+    /**
+     * Compress the message between the position and the limit of src into
+     * dst if it reaches the threshold. Otherwise, or if compressing does not
+     * save space, src is returned unchanged.
+     *
+     * @param src
+     *            the serialized message (in a heap buffer)
+     * @param dst
+     *            the buffer in which the compressed frame is written (it is
+     *            cleared first)
+     * @return the buffer to send (src, or dst flipped)
+     */
+    public ByteBuffer compress(ByteBuffer src, ByteBuffer dst) {
+        frames.increment();
+        int len = src.remaining();
+        if (len < threshold)
+            return src;
+
+        Codec c = codecs.get();
+        int n = deflate(c, src.array(), src.arrayOffset() + src.position(), len);
+        if ((n < 0) || (n > dst.remaining()))
+            return src;
+
+        dst.clear();
+        dst.put(c.buf, 0, n);
+        dst.flip();
+        return dst;
+    }
+
+    // Deflate len bytes of b in the buffer of the codec. Return the size
+    // of the frame or -1 if it is not smaller than the message.
+    private int deflate(Codec c, byte[] b, int off, int len) {
+        long start = System.nanoTime();
+        byte[] buf = c.buffer(len);
+        Deflater deflater = c.deflater;
+        if (c.level != level) {
+            c.level = level;
+            deflater.setLevel(level);
+        }
+        deflater.setInput(b, off, len);
+        deflater.finish();
+        int n = HEADER;
+        while (!deflater.finished() && (n < len))
+            n += deflater.deflate(buf, n, len - n);
+        boolean smaller = deflater.finished() && (n < len);
+        deflater.reset();
+        compressTime.add(System.nanoTime() - start);
+        if (!smaller)
+            return -1;
+
+        buf[0] = DEFLATED;
+        buf[1] = (byte) (len >>> 24);
+        buf[2] = (byte) (len >>> 16);
+        buf[3] = (byte) (len >>> 8);
+        buf[4] = (byte) len;
+        compressedFrames.increment();
+        bytesIn.add(len);
+        bytesOut.add(n);
+        return n;
+    }
+
+    /**
+     * @return true if the frame is compressed
+     */
+    public static boolean isCompressed(byte[] b) {
+        return (b.length > 0) && (b[0] == DEFLATED);
+    }
+
+    /**
+     * Decompress a frame
+     *
+     * @param b
+     *            a frame returned by {@link #compress(byte[])} (compressed or not)
+     * @return the serialized message
+     * @throws IOException
+     */
+    public byte[] decompress(byte[] b) throws IOException {
+        if (!isCompressed(b))
+            return b;
+
+        byte[] result = new byte[length(b, 0, b.length)];
+        inflate(codecs.get(), b, 0, b.length, result);
+        return result;
+    }
+
+    /**
+     * Decompress the frame between the position and the limit of src
+     *
+     * @param src
+     *            the frame (in a heap or direct buffer)
+     * @return src if the frame is not compressed, or a buffer containing the
+     *         serialized message that is valid until the next call to this
+     *         method by the same thread
+     * @throws IOException
+     */
+    public ByteBuffer decompress(ByteBuffer src) throws IOException {
+        if (!src.hasRemaining() || (src.get(src.position()) != DEFLATED))
+            return src;
+
+        byte[] b;
+        int off;
+        if (src.hasArray()) {
+            b = src.array();
+            off = src.arrayOffset() + src.position();
+        } else {
+            // Copy the frame out of the direct buffer
+            b = new byte[src.remaining()];
+            src.duplicate().get(b);
+            off = 0;
+        }
+        int len = length(b, off, src.remaining());
+        Codec c = codecs.get();
+        byte[] result = c.buffer(len);
+        inflate(c, b, off, src.remaining(), result);
+        return ByteBuffer.wrap(result, 0, len);
+    }
+
+    // Read the uncompressed length of a frame
+    private static int length(byte[] b, int off, int len) throws IOException {
+        if (len < HEADER)
+            throw new StreamCorruptedException("Compression: truncated frame");
+        int result = ((b[off + 1] & 0xFF) << 24) | ((b[off + 2] & 0xFF) << 16)
+                | ((b[off + 3] & 0xFF) << 8) | (b[off + 4] & 0xFF);
+        if ((result < 0) || (result > MAX_LENGTH))
+            throw new StreamCorruptedException("Compression: wrong length " + result);
+        return result;
+    }
+
+    private void inflate(Codec c, byte[] b, int off, int len, byte[] dst)
+            throws IOException {
+        long start = System.nanoTime();
+        int size = length(b, off, len);
+        Inflater inflater = c.inflater;
+        try {
+            inflater.setInput(b, off + HEADER, len - HEADER);
+            int n = 0;
+            while (n < size) {
+                int r = inflater.inflate(dst, n, size - n);
+                if (r == 0)
+                    break;
+                n += r;
+            }
+            if (n != size)
+                throw new StreamCorruptedException("Compression: corrupted frame");
+        } catch (DataFormatException ex) {
+            throw new StreamCorruptedException("Compression: " + ex.getMessage());
+        } finally {
+            inflater.reset();
+        }
+        decompressedFrames.increment();
+        decompressTime.add(System.nanoTime() - start);
+    }
+}
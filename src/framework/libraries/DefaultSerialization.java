@@ -24,9 +24,11 @@
  */
 package framework.libraries;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 
 import uka.transport.MarshalStream;
 import uka.transport.Transportable;
@@ -35,34 +37,280 @@ import uka.transport.UnmarshalStream;
 /**
  * @author mena
  *
- * To change the template for this generated type comment go to
- * Window&gt;Preferences&gt;Java&gt;Code Generation&gt;Code and Comments
+ * Marshalling and unmarshalling of {@link uka.transport.Transportable Transportable} objects.
+ *
+ * Each thread has its own marshalling engine: the streams and the growable
+ * buffer used to marshall a message are reused by the next message of the
+ * same thread. Messages can also be marshalled directly into a
+ * {@link java.nio.ByteBuffer ByteBuffer} (heap or direct) and unmarshalled
+ * from one, without intermediate byte array.
  */
 public class DefaultSerialization {
+    // Initial size of the buffer of an engine
+    private static final int INITIAL_SIZE = 4096;
+
+    // Buffers bigger than this are not kept by the engine after use
+    private static final int MAX_KEPT_SIZE = 1 << 20;
+
+    // Growable output buffer whose content can be read without copy
+    private static class Buffer extends OutputStream {
+        byte[] buf = new byte[INITIAL_SIZE];
+
+        int count = 0;
+
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(int size) {
+            if (size <= buf.length)
+                return;
+
+            int newSize = buf.length * 2;
+            while (newSize < size)
+                newSize = newSize * 2;
+            byte[] newBuf = new byte[newSize];
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            buf = newBuf;
+        }
+
+        // Forget the content (and shrink the buffer if it became too big)
+        void reset() {
+            count = 0;
+            if (buf.length > MAX_KEPT_SIZE)
+                buf = new byte[INITIAL_SIZE];
+        }
+    }
+
+    // Output stream that writes in a ByteBuffer
+    private static class ByteBufferOutput extends OutputStream {
+        ByteBuffer dst = null;
+
+        public void write(int b) {
+            dst.put((byte) b);
+        }
+
+        public void write(byte[] b, int off, int len) {
+            dst.put(b, off, len);
+        }
+    }
+
+    // Input stream that reads from a ByteBuffer
+    private static class ByteBufferInput extends InputStream {
+        ByteBuffer src = null;
+
+        public int read() {
+            if (!src.hasRemaining())
+                return -1;
+            return src.get() & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!src.hasRemaining())
+                return -1;
+
+            int n = Math.min(len, src.remaining());
+            src.get(b, off, n);
+            return n;
+        }
+
+        public int available() {
+            return src.remaining();
+        }
+    }
+
+    // MarshalStream that can be reused for another message
+    private static class ReusableMarshalStream extends MarshalStream {
+        ReusableMarshalStream(OutputStream os) throws IOException {
+            super(os);
+        }
+
+        // Prepare the stream for a new message written in os. Return false if
+        // the stream cannot be reused (Java serialization was used)
+        boolean reset(OutputStream os) {
+            if (oout_init)
+                return false;
+
+            out = os;
+            bufcnt = 0;
+            wireObjectTable.reset();
+            wireClassTable.reset();
+            return true;
+        }
+    }
+
+    // UnmarshalStream that can be reused for another message
+    private static class ReusableUnmarshalStream extends UnmarshalStream {
+        ReusableUnmarshalStream(InputStream is) throws IOException {
+            super(is);
+        }
+
+        // Prepare the stream for a new message read from is. Return false if
+        // the stream cannot be reused (Java serialization was used)
+        boolean reset(InputStream is) {
+            if (iin_init)
+                return false;
+
+            in = is;
+            buflen = 0;
+            bufcnt = 0;
+            wireObjectTable.clear();
+            wireConstrTable.clear();
+            return true;
+        }
+
+        // Number of bytes read from the input but not consumed, or -1 if
+        // unknown (Java serialization was used and may have read ahead)
+        int unread() {
+            if (iin_init)
+                return -1;
+            return buflen - bufcnt;
+        }
+    }
+
+    // The marshalling engine of a thread
+    private static class Engine {
+        final Buffer buffer = new Buffer();
+
+        final ByteBufferOutput output = new ByteBufferOutput();
+
+        final ByteBufferInput input = new ByteBufferInput();
+
+        ReusableMarshalStream mstream = null;
+
+        ReusableUnmarshalStream ustream = null;
+
+        // True while the engine marshalls or unmarshalls a message
+        boolean busy = false;
+
+        MarshalStream marshalStream(OutputStream os) throws IOException {
+            if ((mstream == null) || !mstream.reset(os))
+                mstream = new ReusableMarshalStream(os);
+            return mstream;
+        }
+
+        ReusableUnmarshalStream unmarshalStream(InputStream is) throws IOException {
+            if ((ustream == null) || !ustream.reset(is))
+                ustream = new ReusableUnmarshalStream(is);
+            return ustream;
+        }
+    }
+
+    private static final ThreadLocal<Engine> engines = new ThreadLocal<Engine>() {
+        protected Engine initialValue() {
+            return new Engine();
+        }
+    };
+
+    // Return the engine of the current thread. A new engine is returned
+    // if the engine of the thread is in use (reentrant call)
+    private static Engine acquire() {
+        Engine e = engines.get();
+        if (e.busy)
+            return new Engine();
+
+        e.busy = true;
+        return e;
+    }
+
+    private static void release(Engine e) {
+        e.busy = false;
+    }
+
     public static byte[] marshall(Transportable message) throws IOException{
-    // Outputstreams to transform objects into byte arrays.
-    ByteArrayOutputStream baos  = new ByteArrayOutputStream();
-    //ObjectOutputStream    oos   = new ObjectOutputStream(baos);
-    MarshalStream oos = new MarshalStream(baos);
+        Engine e = acquire();
+        try {
+            e.buffer.reset();
+            MarshalStream oos = e.marshalStream(e.buffer);
 
-    // Writes the object
-    oos.writeObject(message);
-    oos.flush();
+            // Writes the object
+            oos.writeObject(message);
+            oos.flush();
 
-    byte[] b = baos.toByteArray();
-    return b;
+            byte[] b = new byte[e.buffer.count];
+            System.arraycopy(e.buffer.buf, 0, b, 0, b.length);
+            return b;
+        } finally {
+            release(e);
+        }
+    }
+
+    /**
+     * Marshall a message directly into a buffer. The message is written
+     * from the position of the buffer and the position is moved after the
+     * message.
+     *
+     * @param message
+     *            the message to marshall
+     * @param dst
+     *            the buffer where the message is written
+     * @return the number of bytes written
+     * @throws BufferOverflowException
+     *             if the message does not fit in the remaining space of the
+     *             buffer (the content of the buffer after its position is then undefined)
+     */
+    public static int marshall(Transportable message, ByteBuffer dst) throws IOException{
+        Engine e = acquire();
+        int start = dst.position();
+        try {
+            e.output.dst = dst;
+            MarshalStream oos = e.marshalStream(e.output);
+
+            // Writes the object
+            oos.writeObject(message);
+            oos.flush();
+
+            return dst.position() - start;
+        } catch (BufferOverflowException ex) {
+            dst.position(start);
+            throw ex;
+        } finally {
+            e.output.dst = null;
+            release(e);
+        }
     }
 
     public static Transportable unmarshall(byte[] b) 
     throws IOException, ClassNotFoundException{
-    // Inputstreams to transform byte arrays into objects.
-    ByteArrayInputStream  bais  = new ByteArrayInputStream(b);
-    //ObjectInputStream     ois   = new ObjectInputStream(bais);
-    UnmarshalStream ois = new UnmarshalStream(bais);
-    
-    // Reads the object
-    Transportable o = (Transportable) ois.readObject();
-    return o;
+        return unmarshall(ByteBuffer.wrap(b));
     }
 
+    /**
+     * Unmarshall a message directly from a buffer. The message is read from
+     * the position of the buffer and the position is moved after the message
+     * (the stream reads ahead, the bytes it did not consume are given back).
+     * If the message falls back to Java serialization, the position is only
+     * known to be after the message, up to the limit of the buffer.
+     *
+     * @param src
+     *            the buffer containing the message
+     * @return the message
+     */
+    public static Transportable unmarshall(ByteBuffer src)
+    throws IOException, ClassNotFoundException{
+        Engine e = acquire();
+        try {
+            e.input.src = src;
+            ReusableUnmarshalStream ois = e.unmarshalStream(e.input);
+
+            // Reads the object
+            Transportable o = (Transportable) ois.readObject();
+            int unread = ois.unread();
+            if (unread > 0)
+                src.position(src.position() - unread);
+            return o;
+        } finally {
+            e.input.src = null;
+            release(e);
+        }
+    }
 }
@@ -0,0 +1,124 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries;
+
+import java.util.Iterator;
+
+import uka.transport.Transportable;
+import framework.libraries.serialization.TCollection;
+import framework.libraries.serialization.TList;
+
+/**
+ * A view of a stable storage whose stores and deletes return before they are
+ * durable, when the storage is a {@link BinaryStableStorage} in group-commit
+ * mode. The protocol that uses it calls {@link #waitDurable()} once at the
+ * end of each handler, before the events it triggered are executed, so that
+ * all the entries logged by the handler share a single commit. Other
+ * storages are used as they are.
+ */
+public class DeferredStableStorage implements StableStorage {
+	private StableStorage storage;
+
+	private BinaryStableStorage binary = null;
+
+	// Last commit not waited for yet
+	private BinaryStableStorage.Commit last = null;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param storage the storage that keeps the entries
+	 */
+	public DeferredStableStorage(StableStorage storage) {
+		this.storage = storage;
+		if (storage instanceof BinaryStableStorage)
+			this.binary = (BinaryStableStorage) storage;
+	}
+
+	/**
+	 * Wait until the entries stored and deleted through this view are
+	 * durable. The batches are synced in order, so the last one is enough.
+	 */
+	public void waitDurable() {
+		BinaryStableStorage.Commit commit;
+		synchronized (this) {
+			commit = last;
+			last = null;
+		}
+		if (commit != null)
+			commit.waitDurable();
+	}
+
+	public void store(int protKey, long key, Transportable log, boolean unique) {
+		if (binary == null) {
+			storage.store(protKey, key, log, unique);
+			return;
+		}
+		BinaryStableStorage.Commit commit = binary.storeAsync(protKey, key, log, unique);
+		synchronized (this) {
+			last = commit;
+		}
+	}
+
+	public void delete(int protKey, long key) {
+		if (binary == null) {
+			storage.delete(protKey, key);
+			return;
+		}
+		BinaryStableStorage.Commit commit = binary.deleteAsync(protKey, key);
+		synchronized (this) {
+			last = commit;
+		}
+	}
+
+	public void delete(int protKey, TCollection keys) {
+		Iterator it = keys.iterator();
+		while (it.hasNext())
+			delete(protKey, ((Long) it.next()).longValue());
+	}
+
+	public void deleteBelow(int protKey, long key) {
+		storage.deleteBelow(protKey, key);
+	}
+
+	public Transportable retrieve(int protKey, long key) {
+		return storage.retrieve(protKey, key);
+	}
+
+	public TList retrieveAll(int protKey, long key) {
+		return storage.retrieveAll(protKey, key);
+	}
+
+	public void clear() {
+		storage.clear();
+	}
+
+	public void trim() {
+		storage.trim();
+	}
+
+	public void close() {
+		waitDurable();
+		storage.close();
+	}
+
+	public void dump() {
+		storage.dump();
+	}
+}
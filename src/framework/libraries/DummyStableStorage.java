@@ -34,6 +34,7 @@ public class DummyStableStorage implements StableStorage {
     public TList retrieveAll(int protKey, long key){return new TArrayList();}
     public void delete(int protKey, TCollection keys){}
     public void delete(int protKey, long key){}
+    public void deleteBelow(int protKey, long key){}
     public void clear(){}
     public void trim(){}
     public void close(){}
@@ -0,0 +1,1034 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import uka.transport.Transportable;
+import framework.libraries.serialization.TCollection;
+import framework.libraries.serialization.TLinkedList;
+import framework.libraries.serialization.TList;
+import framework.libraries.serialization.TLong;
+
+/**
+ * This class implements the stable storage with an append-only log split
+ * in segments. Every record carries a CRC (instead of being written to two
+ * files) and only the location of the values is kept in memory: retrieve
+ * reads them back from the segments, that are mapped in memory once
+ * sealed.
+ *
+ * When a segment is full, it is sealed and the keys and locations of its
+ * records are written to an index file. Recovery reads the indexes of the
+ * sealed segments and scans the last segment only; a torn record at its
+ * end is dropped. Each record has a sequence number that orders it with
+ * the other records of its keys, whatever its segment. A background thread
+ * compacts the sealed segments that are mostly made of deleted and
+ * superseded records by copying their live records at the end of the log.
+ *
+ * As with <i>BinaryStableStorage</i>, retrieveAll returns the most recent
+ * value first. The log is made of the files <i>path.&lt;n&gt;.seg</i> and
+ * <i>path.&lt;n&gt;.idx</i>.
+ *
+ * For more information, see interface <i>StableStorage</i>
+ */
+public class SegmentedStableStorage implements StableStorage {
+	// Logging
+	private static final Logger logger =
+		Logger.getLogger(SegmentedStableStorage.class.getName());
+
+	/** Default size of the segments */
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	/** Default ratio of dead records from which a segment is compacted */
+	public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+	/** Time between two compactions of the background thread (in ms) */
+	protected static final long COMPACTION_PERIOD = 1000;
+
+	protected static final byte UNIQUE = 0;
+	protected static final byte NORMAL = 1;
+	protected static final byte DELETE = 2;
+
+	/** length::crc::seq::type::key1::key2 (the crc covers the rest of the record) */
+	protected static final int HEADER = 4 + 4 + 8 + 1 + 4 + 8;
+
+	/** seq::type::key1::key2::offset::length */
+	protected static final int INDEX_ENTRY = 8 + 1 + 4 + 8 + 4 + 4;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	/** A segment of the log */
+	protected static class Segment {
+		public final int id;
+		public final File file;
+		public final File indexFile;
+
+		/** Channel to append (and read) the records of the last segment */
+		public FileChannel channel = null;
+
+		/** Records of a sealed segment */
+		public MappedByteBuffer map = null;
+
+		/** Index entries of the last segment (written when it is sealed) */
+		public ByteArrayOutputStream index = null;
+
+		public DataOutputStream indexOut = null;
+
+		public int size = 0;
+
+		/** Bytes of the records that are not deleted or superseded */
+		public int live = 0;
+
+		/** Bytes of the deletions */
+		public int tombstones = 0;
+
+		public Segment(File base, int id) {
+			this.id = id;
+			this.file = new File(base.getPath() + "." + id + ".seg");
+			this.indexFile = new File(base.getPath() + "." + id + ".idx");
+		}
+	}
+
+	/** The location of a record */
+	protected static class Record {
+		public final long seq;
+		public final byte type;
+		public final int k1;
+		public final long k2;
+		public Segment segment;
+		public int offset;
+		public int length;
+
+		public Record(long seq, byte type, int k1, long k2, Segment segment,
+				int offset, int length) {
+			this.seq = seq;
+			this.type = type;
+			this.k1 = k1;
+			this.k2 = k2;
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/** Key of the index */
+	protected static final class Key {
+		public final int k1;
+		public final long k2;
+
+		public Key(int k1, long k2) {
+			this.k1 = k1;
+			this.k2 = k2;
+		}
+
+		public int hashCode() {
+			return k1 * 31 + (int) (k2 ^ (k2 >>> 32));
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return (k1 == k.k1) && (k2 == k.k2);
+		}
+	}
+
+	// Orders the records by sequence number
+	private static final Comparator<Record> BY_SEQ = new Comparator<Record>() {
+		public int compare(Record r1, Record r2) {
+			return (r1.seq < r2.seq) ? -1 : ((r1.seq == r2.seq) ? 0 : 1);
+		}
+	};
+
+	protected final File base;
+
+	protected int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+	protected volatile double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+	/** The segments by id; the last one is the one appended */
+	protected final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+
+	protected Segment active = null;
+
+	/** The live records of each key, the oldest first */
+	protected final HashMap<Key, ArrayList<Record>> index = new HashMap<Key, ArrayList<Record>>();
+
+	protected long nextSeq = 0;
+
+	/** If false, the records are forced to disk by flush, trim and close only */
+	protected boolean sync = true;
+
+	protected boolean closed = true;
+
+	/** Compression of the values stored */
+	protected volatile Compression compression = new Compression();
+
+	/** Taken before the lock of the storage to compact a segment */
+	protected final Object compactionLock = new Object();
+
+	protected Thread compactor = null;
+
+	protected final ByteBuffer header = ByteBuffer.allocate(HEADER);
+
+	protected final CRC32 crc = new CRC32();
+
+	/* Segments compacted */
+	public final LongAdder compactions = new LongAdder();
+
+	/* Records copied by the compactions */
+	public final LongAdder relocatedRecords = new LongAdder();
+
+	/* Bytes copied by the compactions */
+	public final LongAdder relocatedBytes = new LongAdder();
+
+	/* Segments scanned by the recovery (instead of reading their index) */
+	protected int scannedSegments = 0;
+
+	/* Time spent by the recovery (in nanoseconds) */
+	protected long recoveryTime = 0;
+
+	public SegmentedStableStorage(String path) {
+		this(path, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param path
+	 *            prefix of the files of the log
+	 * @param segmentSize
+	 *            size from which a segment is sealed
+	 */
+	public SegmentedStableStorage(String path, int segmentSize) {
+		this.base = new File(path);
+		this.segmentSize = segmentSize;
+		try {
+			File parent = base.getAbsoluteFile().getParentFile();
+			if (parent != null)
+				parent.mkdirs();
+			recover();
+			closed = false;
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		setCompaction(true);
+	}
+
+	/**
+	 * Rebuild the index from the segments found on disk
+	 */
+	protected void recover() throws IOException {
+		long start = System.nanoTime();
+
+		// Find the segments
+		File dir = base.getAbsoluteFile().getParentFile();
+		String prefix = base.getName() + ".";
+		String[] names = dir.list();
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; (names != null) && (i < names.length); i++) {
+			String n = names[i];
+			if (n.startsWith(prefix) && n.endsWith(".seg")) {
+				try {
+					ids.add(Integer.valueOf(n.substring(prefix.length(), n.length() - 4)));
+				} catch (NumberFormatException e) {
+					// Not a segment
+				}
+			}
+		}
+		Collections.sort(ids);
+
+		// Load the records of every segment. The deletions and the unique
+		// records are barriers for the older records of their keys.
+		HashMap<Key, ArrayList<Record>> records = new HashMap<Key, ArrayList<Record>>();
+		HashMap<Key, Long> barriers = new HashMap<Key, Long>();
+		for (int i = 0; i < ids.size(); i++) {
+			Segment s = new Segment(base, ids.get(i).intValue());
+			boolean last = (i == ids.size() - 1);
+			ArrayList<Record> l = readIndex(s);
+			boolean scanned = (l == null);
+			if (scanned) {
+				scannedSegments++;
+				l = scan(s, true);
+			}
+
+			Iterator<Record> it = l.iterator();
+			while (it.hasNext()) {
+				Record r = it.next();
+				nextSeq = Math.max(nextSeq, r.seq + 1);
+				Key k = new Key(r.k1, r.k2);
+				if (r.type == DELETE) {
+					s.tombstones += HEADER;
+				} else {
+					ArrayList<Record> kr = records.get(k);
+					if (kr == null) {
+						kr = new ArrayList<Record>(1);
+						records.put(k, kr);
+					}
+					kr.add(r);
+				}
+				if (r.type != NORMAL) {
+					Long b = barriers.get(k);
+					if ((b == null) || (b.longValue() < r.seq))
+						barriers.put(k, Long.valueOf(r.seq));
+				}
+			}
+
+			if (last && scanned) {
+				// Continue to append to the last segment
+				s.indexFile.delete();
+				open(s, l);
+			} else {
+				if (scanned)
+					writeIndex(s, l);
+				segments.put(s.id, s);
+				seal(s);
+			}
+		}
+
+		// Keep the records that are not behind a barrier, in order. A
+		// record copied by a compaction that did not complete is found
+		// twice: the copy is kept.
+		Iterator<Map.Entry<Key, ArrayList<Record>>> it = records.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, ArrayList<Record>> e = it.next();
+			Long b = barriers.get(e.getKey());
+			long barrier = (b == null) ? -1 : b.longValue();
+			ArrayList<Record> l = e.getValue();
+			Collections.sort(l, BY_SEQ);
+			ArrayList<Record> kept = new ArrayList<Record>(l.size());
+			for (int i = 0; i < l.size(); i++) {
+				Record r = l.get(i);
+				if (r.seq < barrier)
+					continue;
+				if (!kept.isEmpty() && (kept.get(kept.size() - 1).seq == r.seq)) {
+					Record other = kept.get(kept.size() - 1);
+					if (other.segment.id > r.segment.id)
+						continue;
+					kept.remove(kept.size() - 1);
+				}
+				kept.add(r);
+			}
+			for (int i = 0; i < kept.size(); i++) {
+				Record r = kept.get(i);
+				r.segment.live += HEADER + r.length;
+			}
+			if (!kept.isEmpty())
+				index.put(e.getKey(), kept);
+		}
+
+		if (active == null)
+			open(new Segment(base, segments.isEmpty() ? 0
+					: segments.lastKey().intValue() + 1), new ArrayList<Record>());
+
+		recoveryTime = System.nanoTime() - start;
+	}
+
+	/**
+	 * Read the index of a sealed segment
+	 *
+	 * @return the records, or null if there is no index or it is corrupted
+	 */
+	protected ArrayList<Record> readIndex(Segment s) throws IOException {
+		if (!s.indexFile.exists())
+			return null;
+
+		RandomAccessFile f = new RandomAccessFile(s.indexFile, "r");
+		try {
+			long length = f.length();
+			if ((length < 4) || ((length - 4) % INDEX_ENTRY != 0))
+				return null;
+			MappedByteBuffer b = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			int n = (int) ((length - 4) / INDEX_ENTRY);
+			crc.reset();
+			ByteBuffer entries = b.duplicate();
+			entries.limit(n * INDEX_ENTRY);
+			crc.update(entries);
+			if ((int) crc.getValue() != b.getInt(n * INDEX_ENTRY)) {
+				logger.warning("Index " + s.indexFile + " is corrupted");
+				return null;
+			}
+
+			ArrayList<Record> result = new ArrayList<Record>(n);
+			for (int i = 0; i < n; i++) {
+				long seq = b.getLong();
+				byte type = b.get();
+				int k1 = b.getInt();
+				long k2 = b.getLong();
+				int offset = b.getInt();
+				int len = b.getInt();
+				result.add(new Record(seq, type, k1, k2, s, offset, len));
+			}
+			s.size = (int) s.file.length();
+			return result;
+		} finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * Read the records of a segment and check their CRC. The segment is
+	 * truncated after the last correct record.
+	 */
+	protected ArrayList<Record> scan(Segment s, boolean truncate) throws IOException {
+		ArrayList<Record> result = new ArrayList<Record>();
+		RandomAccessFile f = new RandomAccessFile(s.file, "rw");
+		try {
+			long length = f.length();
+			MappedByteBuffer b = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			int pos = 0;
+			while (length - pos >= HEADER) {
+				int len = b.getInt(pos);
+				if ((len < 0) || (len > length - pos - HEADER))
+					break;
+				ByteBuffer r = b.duplicate();
+				r.position(pos + 8);
+				r.limit(pos + HEADER + len);
+				crc.reset();
+				crc.update(r);
+				if ((int) crc.getValue() != b.getInt(pos + 4))
+					break;
+
+				result.add(new Record(b.getLong(pos + 8), b.get(pos + 16),
+						b.getInt(pos + 17), b.getLong(pos + 21), s, pos, len));
+				pos += HEADER + len;
+			}
+			if (pos < length) {
+				logger.warning("Segment " + s.file + " is truncated after "
+						+ pos + " bytes");
+				if (truncate)
+					f.setLength(pos);
+			}
+			s.size = pos;
+			return result;
+		} finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * Write the index of a segment and sync it
+	 */
+	protected void writeIndex(Segment s, ArrayList<Record> l) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(l.size() * INDEX_ENTRY);
+		DataOutputStream out = new DataOutputStream(bytes);
+		Iterator<Record> it = l.iterator();
+		while (it.hasNext())
+			writeIndexEntry(out, it.next());
+		writeIndex(s, bytes.toByteArray());
+	}
+
+	protected void writeIndex(Segment s, byte[] entries) throws IOException {
+		crc.reset();
+		crc.update(entries, 0, entries.length);
+		FileOutputStream fos = new FileOutputStream(s.indexFile);
+		DataOutputStream out = new DataOutputStream(fos);
+		out.write(entries);
+		out.writeInt((int) crc.getValue());
+		out.flush();
+		fos.getFD().sync();
+		out.close();
+	}
+
+	protected static void writeIndexEntry(DataOutputStream out, Record r)
+			throws IOException {
+		out.writeLong(r.seq);
+		out.writeByte(r.type);
+		out.writeInt(r.k1);
+		out.writeLong(r.k2);
+		out.writeInt(r.offset);
+		out.writeInt(r.length);
+	}
+
+	/**
+	 * Open a segment to append records to it
+	 */
+	protected void open(Segment s, ArrayList<Record> l) throws IOException {
+		s.channel = new RandomAccessFile(s.file, "rw").getChannel();
+		s.channel.position(s.size);
+		s.index = new ByteArrayOutputStream();
+		s.indexOut = new DataOutputStream(s.index);
+		Iterator<Record> it = l.iterator();
+		while (it.hasNext())
+			writeIndexEntry(s.indexOut, it.next());
+		segments.put(s.id, s);
+		active = s;
+	}
+
+	/**
+	 * Map a sealed segment in memory
+	 */
+	protected void seal(Segment s) throws IOException {
+		RandomAccessFile f = new RandomAccessFile(s.file, "r");
+		try {
+			s.map = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, s.size);
+		} finally {
+			f.close();
+		}
+	}
+
+	/**
+	 * Seal the last segment and start a new one (the lock is held)
+	 */
+	protected void roll() throws IOException {
+		Segment s = active;
+		s.channel.force(false);
+		writeIndex(s, s.index.toByteArray());
+		s.channel.close();
+		s.channel = null;
+		s.index = null;
+		s.indexOut = null;
+		seal(s);
+		open(new Segment(base, s.id + 1), new ArrayList<Record>());
+		notifyAll();
+	}
+
+	/**
+	 * Append a record to the last segment (the lock is held)
+	 */
+	protected Record append(long seq, byte type, int k1, long k2, byte[] value)
+			throws IOException {
+		int len = (value == null) ? 0 : value.length;
+		if ((active.size > 0) && (active.size + HEADER + len > segmentSize))
+			roll();
+
+		header.clear();
+		header.putInt(len);
+		header.putInt(0);
+		header.putLong(seq);
+		header.put(type);
+		header.putInt(k1);
+		header.putLong(k2);
+		crc.reset();
+		crc.update(header.array(), 8, HEADER - 8);
+		if (len > 0)
+			crc.update(value, 0, len);
+		header.putInt(4, (int) crc.getValue());
+		header.flip();
+
+		ByteBuffer[] buffers = { header, ByteBuffer.wrap((len > 0) ? value : EMPTY) };
+		while (buffers[1].hasRemaining() || buffers[0].hasRemaining())
+			active.channel.write(buffers);
+
+		Record r = new Record(seq, type, k1, k2, active, active.size, len);
+		writeIndexEntry(active.indexOut, r);
+		active.size += HEADER + len;
+		if (type == DELETE)
+			active.tombstones += HEADER;
+		else
+			active.live += HEADER + len;
+		return r;
+	}
+
+	// Mark the records of a key as dead (the lock is held)
+	protected void kill(ArrayList<Record> l) {
+		Iterator<Record> it = l.iterator();
+		while (it.hasNext()) {
+			Record r = it.next();
+			r.segment.live -= HEADER + r.length;
+		}
+	}
+
+	public void store(int protKey, long key, Transportable log, boolean unique) {
+		try {
+			byte[] value = compression.compress(DefaultSerialization.marshall(log));
+			synchronized (this) {
+				Key k = new Key(protKey, key);
+				ArrayList<Record> l = index.get(k);
+				if (unique && (l != null)) {
+					kill(l);
+					l.clear();
+				}
+				if (l == null) {
+					l = new ArrayList<Record>(1);
+					index.put(k, l);
+				}
+				l.add(append(nextSeq++, unique ? UNIQUE : NORMAL, protKey, key, value));
+				if (sync)
+					active.channel.force(false);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	public Transportable retrieve(int protKey, long key) {
+		try {
+			byte[] value;
+			synchronized (this) {
+				ArrayList<Record> l = index.get(new Key(protKey, key));
+				if (l == null)
+					return null;
+				value = read(l.get(l.size() - 1));
+			}
+			return DefaultSerialization.unmarshall(compression.decompress(value));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		return null; // never reached!
+	}
+
+	public TList retrieveAll(int protKey, long key) {
+		try {
+			TLinkedList all = new TLinkedList();
+			ArrayList<byte[]> values = new ArrayList<byte[]>();
+			synchronized (this) {
+				ArrayList<Record> l = index.get(new Key(protKey, key));
+				if (l == null)
+					return all;
+				for (int i = l.size() - 1; i >= 0; i--)
+					values.add(read(l.get(i)));
+			}
+			Iterator<byte[]> it = values.iterator();
+			while (it.hasNext())
+				all.addLast(DefaultSerialization.unmarshall(compression.decompress(it.next())));
+			return all;
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		return null; // never reached!
+	}
+
+	/**
+	 * Read the value of a record and check its CRC (the lock is held)
+	 */
+	protected byte[] read(Record r) throws IOException {
+		ByteBuffer b;
+		Segment s = r.segment;
+		if (s.map != null) {
+			b = s.map.duplicate();
+			b.limit(r.offset + HEADER + r.length);
+			b.position(r.offset);
+		} else {
+			b = ByteBuffer.allocate(HEADER + r.length);
+			while (b.hasRemaining())
+				if (s.channel.read(b, r.offset + b.position()) < 0)
+					throw new IOException("Segment " + s.file + " is truncated");
+			b.flip();
+		}
+
+		int start = b.position();
+		int checksum = b.getInt(start + 4);
+		b.position(start + 8);
+		crc.reset();
+		crc.update(b.duplicate());
+		if ((int) crc.getValue() != checksum)
+			throw new IOException("Record " + r.seq + " of segment " + s.file
+					+ " is corrupted");
+		byte[] value = new byte[r.length];
+		b.position(start + HEADER);
+		b.get(value);
+		return value;
+	}
+
+	public void delete(int protKey, long key) {
+		try {
+			synchronized (this) {
+				deleteLocked(protKey, key);
+				if (sync)
+					active.channel.force(false);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	public void delete(int protKey, TCollection keys) {
+		try {
+			synchronized (this) {
+				Iterator it = keys.iterator();
+				while (it.hasNext()) {
+					Object o = it.next();
+					deleteLocked(protKey, (o instanceof TLong) ? ((TLong) o).longValue()
+							: ((Long) o).longValue());
+				}
+				// One sync for all the keys
+				if (sync)
+					active.channel.force(false);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	public void deleteBelow(int protKey, long key) {
+		try {
+			synchronized (this) {
+				ArrayList<Key> keys = new ArrayList<Key>();
+				Iterator<Key> it = index.keySet().iterator();
+				while (it.hasNext()) {
+					Key k = it.next();
+					if ((k.k1 == protKey) && (k.k2 < key))
+						keys.add(k);
+				}
+				if (keys.isEmpty())
+					return;
+
+				it = keys.iterator();
+				while (it.hasNext()) {
+					Key k = it.next();
+					deleteLocked(k.k1, k.k2);
+				}
+				// One sync for all the keys
+				if (sync)
+					active.channel.force(false);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	protected void deleteLocked(int protKey, long key) throws IOException {
+		ArrayList<Record> l = index.remove(new Key(protKey, key));
+		if (l == null)
+			return;
+		kill(l);
+		append(nextSeq++, DELETE, protKey, key, null);
+	}
+
+	/**
+	 * If false, the records are not forced to disk when they are stored
+	 * and deleted but by flush, trim and close only (e.g. for bulk loads).
+	 */
+	public synchronized void setSync(boolean sync) {
+		this.sync = sync;
+	}
+
+	/**
+	 * Force the records appended to disk
+	 */
+	public synchronized void flush() {
+		try {
+			active.channel.force(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Start or stop the background compaction
+	 */
+	public void setCompaction(boolean compaction) {
+		synchronized (this) {
+			if (compaction == (compactor != null))
+				return;
+			if (compaction) {
+				compactor = new Thread("StableStorageCompactionThread") {
+					public void run() {
+						compactSegments();
+					}
+				};
+				compactor.setDaemon(true);
+				compactor.start();
+			} else {
+				compactor = null;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Set the ratio of dead records (deleted or superseded) from which a
+	 * sealed segment is compacted by the background thread.
+	 */
+	public void setCompactionThreshold(double threshold) {
+		if ((threshold <= 0) || (threshold > 1))
+			throw new IllegalArgumentException("Wrong threshold: " + threshold);
+		this.compactionThreshold = threshold;
+	}
+
+	/**
+	 * Return the compression of the values stored
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Set the compression of the values stored. Values stored compressed
+	 * or not (e.g. by a previous run) are always read back.
+	 */
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * @return the time spent by the recovery of the log (in nanoseconds)
+	 */
+	public long getRecoveryTime() {
+		return recoveryTime;
+	}
+
+	/**
+	 * @return the number of segments scanned by the recovery (they had
+	 *         no index)
+	 */
+	public int getScannedSegments() {
+		return scannedSegments;
+	}
+
+	/**
+	 * @return the number of segments of the log
+	 */
+	public synchronized int getSegments() {
+		return segments.size();
+	}
+
+	/**
+	 * @return the size of the log in bytes
+	 */
+	public synchronized long getSize() {
+		long result = 0;
+		Iterator<Segment> it = segments.values().iterator();
+		while (it.hasNext())
+			result += it.next().size;
+		return result;
+	}
+
+	// Body of the compaction thread
+	protected void compactSegments() {
+		Thread me = Thread.currentThread();
+		while (true) {
+			synchronized (this) {
+				if (compactor != me)
+					return;
+				try {
+					wait(COMPACTION_PERIOD);
+				} catch (InterruptedException e) {
+				}
+				if (compactor != me)
+					return;
+			}
+
+			Segment s;
+			while ((s = candidate(compactionThreshold)) != null)
+				compact(s);
+		}
+	}
+
+	/**
+	 * Return the sealed segment with the highest ratio of dead records if
+	 * it reaches the threshold. The deletions are dead in the oldest
+	 * segment only: elsewhere they hide older records.
+	 */
+	protected synchronized Segment candidate(double threshold) {
+		Segment result = null;
+		double max = 0;
+		Iterator<Segment> it = segments.values().iterator();
+		while (it.hasNext()) {
+			Segment s = it.next();
+			if ((s == active) || (s.size == 0))
+				continue;
+			int dead = s.size - s.live;
+			if (s.id != segments.firstKey().intValue())
+				dead -= s.tombstones;
+			double ratio = (double) dead / s.size;
+			if ((ratio >= threshold) && (ratio > max)) {
+				max = ratio;
+				result = s;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Copy the live records of a sealed segment at the end of the log and
+	 * remove the segment
+	 */
+	protected void compact(Segment s) {
+		synchronized (compactionLock) {
+			try {
+				ArrayList<Record> l;
+				synchronized (this) {
+					if (segments.get(s.id) != s)
+						return;
+					l = readIndex(s);
+					if (l == null)
+						l = scan(s, false);
+				}
+
+				Iterator<Record> it = l.iterator();
+				while (it.hasNext()) {
+					Record r = it.next();
+					synchronized (this) {
+						if (segments.get(s.id) != s)
+							return;
+						if (r.type == DELETE) {
+							// Still needed if older segments remain
+							if (s.id != segments.firstKey().intValue())
+								relocate(r, null);
+						} else {
+							ArrayList<Record> kr = index.get(new Key(r.k1, r.k2));
+							for (int i = 0; (kr != null) && (i < kr.size()); i++) {
+								Record live = kr.get(i);
+								if ((live.segment == s) && (live.offset == r.offset)) {
+									relocate(r, live);
+									break;
+								}
+							}
+						}
+					}
+				}
+
+				synchronized (this) {
+					if (segments.get(s.id) != s)
+						return;
+					// The copies are on disk before the segment is removed
+					active.channel.force(false);
+					segments.remove(s.id);
+					s.map = null;
+					s.indexFile.delete();
+					s.file.delete();
+					compactions.increment();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.exit(1);
+			}
+		}
+	}
+
+	// Copy a record at the end of the log with the same sequence number and
+	// update its location in the index (the lock is held)
+	private void relocate(Record r, Record live) throws IOException {
+		byte[] value = (r.type == DELETE) ? null : read(r);
+		Record copy = append(r.seq, r.type, r.k1, r.k2, value);
+		if (live != null) {
+			live.segment.live -= HEADER + live.length;
+			live.segment = copy.segment;
+			live.offset = copy.offset;
+		}
+		relocatedRecords.increment();
+		relocatedBytes.add(HEADER + r.length);
+	}
+
+	/**
+	 * Erase all log entries. <b>Use with care</b>
+	 */
+	public void clear() {
+		synchronized (compactionLock) {
+			synchronized (this) {
+				try {
+					removeSegments();
+					nextSeq = 0;
+					open(new Segment(base, 0), new ArrayList<Record>());
+				} catch (IOException e) {
+					e.printStackTrace();
+					System.exit(1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compact the stable storage. All the sealed segments with dead records
+	 * are compacted.
+	 */
+	public void trim() {
+		Segment s;
+		while ((s = candidate(Double.MIN_VALUE)) != null)
+			compact(s);
+		flush();
+	}
+
+	/**
+	 * To properly exit the application. Log file(s) will never again be needed.
+	 */
+	public void close() {
+		setCompaction(false);
+		synchronized (compactionLock) {
+			synchronized (this) {
+				if (closed)
+					return;
+				try {
+					removeSegments();
+				} catch (IOException e) {
+					e.printStackTrace();
+					System.exit(1);
+				}
+				closed = true;
+			}
+		}
+	}
+
+	// Close and delete all the segments (the locks are held)
+	protected void removeSegments() throws IOException {
+		Iterator<Segment> it = segments.values().iterator();
+		while (it.hasNext()) {
+			Segment s = it.next();
+			if (s.channel != null)
+				s.channel.close();
+			s.map = null;
+			s.indexFile.delete();
+			s.file.delete();
+		}
+		segments.clear();
+		index.clear();
+		active = null;
+	}
+
+	/**
+	 * For debug only -- Not documented
+	 */
+	public synchronized void dump() {
+		System.err.println("-----DUMP Segmented storage-----");
+		Iterator<Segment> it = segments.values().iterator();
+		while (it.hasNext()) {
+			Segment s = it.next();
+			System.err.println("Segment " + s.id + ": " + s.size + " bytes, "
+					+ s.live + " live, " + s.tombstones + " deletions");
+		}
+		Iterator<Map.Entry<Key, ArrayList<Record>>> it2 = index.entrySet().iterator();
+		while (it2.hasNext()) {
+			Map.Entry<Key, ArrayList<Record>> e = it2.next();
+			System.err.println("ProtKey:" + e.getKey().k1 + ", Key: "
+					+ e.getKey().k2 + ". Size: " + e.getValue().size());
+		}
+		System.err.println("-----------------------------");
+	}
+}
@@ -24,6 +24,8 @@
  */
 package framework.libraries;
 
+import java.nio.ByteBuffer;
+
 import uka.transport.Transportable;
 
 /**
@@ -54,4 +56,12 @@ public interface Serialize {
 	 * @throws IOException
 	 */
 	public Transportable unmarshall(byte[] b);
+	/**
+	 * Unmarshalls and returns the Object previously marshalled between the position 
+	 * and the limit of the buffer passed as parameter.
+	 * 
+	 * @param b The buffer containing the marshalled object
+	 * @return The unmarshalled object (e.g. a <i>GroupCommMessage</i>)
+	 */
+	public Transportable unmarshall(ByteBuffer b);
 }
@@ -107,6 +107,18 @@ public interface StableStorage {
 	 */
     void delete(int protKey, long key);
 
+	/**
+	 * This method deletes all log entries of the <i>protocol key</i> passed as parameter
+	 * whose key is smaller than <i>key</i>. It is used to truncate the log of a protocol
+	 * whose keys are instance numbers (e.g. below a checkpoint).
+	 *
+     * @param protKey The protocol key. Typically, every protocol uses the same key
+     * all the time. Different protocols should use different protocol keys to avoid
+     * side effects among them.
+     * @param  key The smallest key kept.
+	 */
+    void deleteBelow(int protKey, long key);
+
     /** 
      * This method erases all log entries. <b>It is very dangerous, so use it with care</b> 
      */
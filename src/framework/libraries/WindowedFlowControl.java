@@ -0,0 +1,58 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries;
+
+/**
+* A flow control where every protocol owns a window of credit, expressed both in bytes
+* and in messages. A protocol <i>allocs</i> credit when it buffers a message and <i>frees</i>
+* it when the message leaves its buffers: the flow control is blocked as long as the window
+* of some protocol is exhausted, as if the protocol had called <i>block</i>.
+*
+* Protocols that only use <i>block</i> and <i>release</i> keep working unchanged.
+*/
+public interface WindowedFlowControl extends FlowControl
+  {
+	/**
+	 * This method sets the window of the protocol. A fresh key has an unbounded window.
+	 * 
+	 * @param key The key used by the flow control to identify the calling protocol
+	 * @param bytes The maximum number of bytes the protocol may buffer
+	 * @param messages The maximum number of messages the protocol may buffer
+	 */
+    public void setWindow(int key, long bytes, int messages);
+
+	/**
+	 * This method consumes credit of the protocol. The calling thread is never suspended.
+	 * 
+	 * @param key The key used by the flow control to identify the calling protocol
+	 * @param messages The number of messages buffered by the protocol
+	 * @param bytes The size of these messages
+	 * @return true if the protocol still has credit left
+	 */
+    public boolean alloc(int key, int messages, int bytes);
+
+	/**
+	 * This method gives credit back to the protocol.
+	 * 
+	 * @param key The key used by the flow control to identify the calling protocol
+	 * @param messages The number of messages that left the buffers of the protocol
+	 * @param bytes The size of these messages
+	 */
+    public void free(int key, int messages, int bytes);
+  }
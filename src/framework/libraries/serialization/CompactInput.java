@@ -0,0 +1,160 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries.serialization;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import uka.transport.Transportable;
+
+/**
+ * Input of the {@link CompactSerialization compact serialization}.
+ * It reads the data of a {@link CompactOutput} from a
+ * {@link java.nio.ByteBuffer ByteBuffer}, starting at its position.
+ */
+public class CompactInput {
+    // The buffer read
+    private final ByteBuffer buf;
+
+    /**
+     * Constructor
+     *
+     * @param src
+     *            the buffer read
+     */
+    public CompactInput(ByteBuffer src) {
+        this.buf = src;
+    }
+
+    private void require(int n) throws EOFException {
+        if (buf.remaining() < n)
+            throw new EOFException("CompactInput: unexpected end of data");
+    }
+
+    public int readByte() throws IOException {
+        require(1);
+        return buf.get();
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    /**
+     * Read an unsigned variable length integer
+     */
+    public int readVarInt() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new StreamCorruptedException("CompactInput: malformed integer");
+    }
+
+    /**
+     * Read an unsigned variable length long
+     */
+    public long readVarLong() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new StreamCorruptedException("CompactInput: malformed long");
+    }
+
+    /**
+     * Read a signed integer written by {@link CompactOutput#writeInt(int)}
+     */
+    public int readInt() throws IOException {
+        int v = readVarInt();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Read a signed long written by {@link CompactOutput#writeLong(long)}
+     */
+    public long readLong() throws IOException {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        return Float.intBitsToFloat(buf.getInt());
+    }
+
+    public void readBytes(byte[] b, int off, int len) throws IOException {
+        require(len);
+        buf.get(b, off, len);
+    }
+
+    /**
+     * Read a length prefixed byte array
+     */
+    public byte[] readByteArray() throws IOException {
+        int len = readVarInt();
+        if (len < 0)
+            throw new StreamCorruptedException("CompactInput: negative length");
+        byte[] b = new byte[len];
+        readBytes(b, 0, len);
+        return b;
+    }
+
+    /**
+     * Read a string written by {@link CompactOutput#writeChars(String)}
+     */
+    public String readChars() throws IOException {
+        int len = readVarInt();
+        if (len < 0)
+            throw new StreamCorruptedException("CompactInput: negative length");
+        char[] chars = new char[len];
+        try {
+            for (int i = 0; i < len; i++) {
+                int c = buf.get() & 0xFF;
+                if (c < 0x80) {
+                    chars[i] = (char) c;
+                } else if ((c & 0xE0) == 0xC0) {
+                    chars[i] = (char) (((c & 0x1F) << 6) | (buf.get() & 0x3F));
+                } else {
+                    int c2 = buf.get() & 0x3F;
+                    chars[i] = (char) (((c & 0x0F) << 12) | (c2 << 6) | (buf.get() & 0x3F));
+                }
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new EOFException("CompactInput: unexpected end of data");
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Read an object written by {@link CompactOutput#writeObject(Transportable)}
+     */
+    public Transportable readObject() throws IOException, ClassNotFoundException {
+        return CompactSerialization.readObject(this);
+    }
+}
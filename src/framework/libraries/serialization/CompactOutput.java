@@ -0,0 +1,188 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries.serialization;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import uka.transport.Transportable;
+
+/**
+ * Output of the {@link CompactSerialization compact serialization}.
+ *
+ * Integers are written as variable length integers (7 bits per byte,
+ * zig-zag encoded when signed). The output either grows its own buffer
+ * or writes in a buffer supplied by the caller, in which case a
+ * {@link java.nio.BufferOverflowException BufferOverflowException} is
+ * thrown when the buffer is full.
+ */
+public class CompactOutput {
+    // Initial size of a growable buffer
+    private static final int INITIAL_SIZE = 1024;
+
+    // The buffer written
+    private ByteBuffer buf;
+
+    // True if the buffer belongs to this output and can grow
+    private final boolean growable;
+
+    /**
+     * Constructor of an output that grows its own heap buffer
+     */
+    public CompactOutput() {
+        this.buf = ByteBuffer.allocate(INITIAL_SIZE);
+        this.growable = true;
+    }
+
+    /**
+     * Constructor of an output that writes in a buffer from its position
+     *
+     * @param dst
+     *            the buffer written
+     */
+    public CompactOutput(ByteBuffer dst) {
+        this.buf = dst;
+        this.growable = false;
+    }
+
+    /**
+     * @return the buffer written (its position is the end of the data)
+     */
+    public ByteBuffer buffer() {
+        return buf;
+    }
+
+    /**
+     * Forget all the data written
+     */
+    public void reset() {
+        buf.clear();
+    }
+
+    private void ensure(int n) {
+        if (buf.remaining() >= n)
+            return;
+        if (!growable)
+            throw new BufferOverflowException();
+
+        int size = buf.capacity() * 2;
+        while (size - buf.position() < n)
+            size = size * 2;
+        ByteBuffer newBuf = ByteBuffer.allocate(size);
+        buf.flip();
+        newBuf.put(buf);
+        buf = newBuf;
+    }
+
+    public void writeByte(int b) {
+        ensure(1);
+        buf.put((byte) b);
+    }
+
+    public void writeBoolean(boolean b) {
+        writeByte(b ? 1 : 0);
+    }
+
+    /**
+     * Write an unsigned variable length integer
+     */
+    public void writeVarInt(int v) {
+        ensure(5);
+        while ((v & ~0x7F) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    /**
+     * Write an unsigned variable length long
+     */
+    public void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    /**
+     * Write a signed integer (small absolute values use few bytes)
+     */
+    public void writeInt(int v) {
+        writeVarInt((v << 1) ^ (v >> 31));
+    }
+
+    /**
+     * Write a signed long (small absolute values use few bytes)
+     */
+    public void writeLong(long v) {
+        writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    public void writeFloat(float f) {
+        ensure(4);
+        buf.putInt(Float.floatToIntBits(f));
+    }
+
+    public void writeBytes(byte[] b, int off, int len) {
+        ensure(len);
+        buf.put(b, off, len);
+    }
+
+    /**
+     * Write a length prefixed byte array
+     */
+    public void writeByteArray(byte[] b) {
+        writeVarInt(b.length);
+        writeBytes(b, 0, b.length);
+    }
+
+    /**
+     * Write a string as its length in chars followed by its modified UTF-8
+     * encoding (any sequence of chars is preserved)
+     */
+    public void writeChars(String s) {
+        int len = s.length();
+        writeVarInt(len);
+        ensure(len * 3);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if ((c >= 0x0001) && (c <= 0x007F)) {
+                buf.put((byte) c);
+            } else if (c <= 0x07FF) {
+                buf.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buf.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Write an object (with its type tag)
+     */
+    public void writeObject(Transportable o) throws IOException {
+        CompactSerialization.writeObject(o, this);
+    }
+}
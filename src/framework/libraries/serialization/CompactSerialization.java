@@ -0,0 +1,536 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries.serialization;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import uka.transport.Transportable;
+import framework.GroupCommMessage;
+import framework.PID;
+import framework.libraries.DefaultSerialization;
+
+/**
+ * Compact serialization of the framework {@link uka.transport.Transportable
+ * Transportable} types.
+ *
+ * The schema of the serialization is the table of type tags below: each
+ * object is written as a one byte tag followed by the fields of its type,
+ * written one after the other by the {@link Codec codec} of the type. No
+ * class descriptor is written. Objects whose exact class has no codec are
+ * written with the FALLBACK tag followed by their
+ * {@link framework.libraries.DefaultSerialization uka} serialization.
+ *
+ * Unlike the uka serialization, shared references are not preserved: an
+ * object referenced twice in a message is unmarshalled as two equal
+ * objects. Messages must therefore not contain cycles. For this reason the
+ * stacks keep the uka serialization; this format is only used by the
+ * benchmarks. As with the uka serialization, a TTreeMap is unmarshalled
+ * with the natural order of its keys (no comparator is written).
+ *
+ * All the processes must use the same table of tags. The codecs of types
+ * that do not belong to the framework are registered by their class
+ * (see {@link #register(int, Class, Codec)}); such classes are listed in the
+ * table by name, so that they are loaded when their tag is first read.
+ */
+public class CompactSerialization {
+    /**
+     * Writes and reads the fields of a type
+     */
+    public interface Codec {
+        public void write(Transportable o, CompactOutput out) throws IOException;
+
+        public Transportable read(CompactInput in) throws IOException, ClassNotFoundException;
+    }
+
+    // Type tags
+    public static final int NULL = 0;
+
+    public static final int FALLBACK = 1;
+
+    public static final int TINTEGER = 2;
+
+    public static final int TLONG = 3;
+
+    public static final int TBOOLEAN = 4;
+
+    public static final int TFLOAT = 5;
+
+    public static final int TSTRING = 6;
+
+    public static final int TUTF8STRING = 7;
+
+    public static final int TBYTEARRAY = 8;
+
+    public static final int TLINKEDLIST = 9;
+
+    public static final int TARRAYLIST = 10;
+
+    public static final int THASHSET = 11;
+
+    public static final int THASHMAP = 12;
+
+    public static final int TLINKEDHASHMAP = 13;
+
+    public static final int TTREEMAP = 14;
+
+    public static final int GROUPCOMMMESSAGE = 15;
+
+    public static final int PID = 16;
+
+    public static final int ABCASTMESSAGEID = 17;
+
+    public static final int TLONGHASHSET = 18;
+
+    public static final int TLONGHASHMAP = 19;
+
+    public static final int TLONGTREEMAP = 20;
+
+    // Greatest tag + 1
+    private static final int MAX_TAGS = 64;
+
+    // Classes registered outside of the framework, by tag
+    private static final String[] externalClasses = new String[MAX_TAGS];
+    static {
+        externalClasses[ABCASTMESSAGEID] = "groupcomm.common.abcast.AbcastMessageID";
+    }
+
+    // The codecs by tag (replaced upon registration)
+    private static volatile Codec[] codecs = new Codec[MAX_TAGS];
+
+    // The classes by tag
+    private static final Class[] classes = new Class[MAX_TAGS];
+
+    // The tags by class (replaced upon registration)
+    private static volatile Map<Class, Integer> tags = new IdentityHashMap<Class, Integer>();
+
+    /**
+     * Register the codec of a class
+     *
+     * @param tag
+     *            the tag of the class
+     * @param c
+     *            the class (subclasses are not concerned)
+     * @param codec
+     *            the codec of the class
+     */
+    public static synchronized void register(int tag, Class c, Codec codec) {
+        if ((tag <= FALLBACK) || (tag >= MAX_TAGS))
+            throw new IllegalArgumentException("CompactSerialization: invalid tag " + tag);
+        if ((classes[tag] != null) && (classes[tag] != c))
+            throw new IllegalArgumentException("CompactSerialization: tag " + tag
+                    + " already used by " + classes[tag].getName());
+
+        Codec[] newCodecs = (Codec[]) codecs.clone();
+        newCodecs[tag] = codec;
+        Map<Class, Integer> newTags = new IdentityHashMap<Class, Integer>(tags);
+        newTags.put(c, Integer.valueOf(tag));
+
+        classes[tag] = c;
+        codecs = newCodecs;
+        tags = newTags;
+    }
+
+    // The output of each thread
+    private static final ThreadLocal<CompactOutput> outputs = new ThreadLocal<CompactOutput>() {
+        protected CompactOutput initialValue() {
+            return new CompactOutput();
+        }
+    };
+
+    public static byte[] marshall(Transportable message) throws IOException {
+        CompactOutput out = outputs.get();
+        // The output of the thread is in use (reentrant call)
+        if (out == null)
+            out = new CompactOutput();
+        outputs.set(null);
+
+        try {
+            out.reset();
+            writeObject(message, out);
+
+            ByteBuffer buf = out.buffer();
+            byte[] b = new byte[buf.position()];
+            buf.flip();
+            buf.get(b);
+            return b;
+        } finally {
+            if (out.buffer().capacity() <= (1 << 20))
+                outputs.set(out);
+            else
+                outputs.remove();
+        }
+    }
+
+    /**
+     * Marshall a message directly into a buffer. The message is written from
+     * the position of the buffer and the position is moved after the message.
+     *
+     * @return the number of bytes written
+     * @throws java.nio.BufferOverflowException
+     *             if the message does not fit in the buffer
+     */
+    public static int marshall(Transportable message, ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        try {
+            writeObject(message, new CompactOutput(dst));
+        } catch (java.nio.BufferOverflowException ex) {
+            dst.position(start);
+            throw ex;
+        }
+        return dst.position() - start;
+    }
+
+    public static Transportable unmarshall(byte[] b) throws IOException, ClassNotFoundException {
+        return unmarshall(ByteBuffer.wrap(b));
+    }
+
+    /**
+     * Unmarshall a message directly from a buffer. The message is read from
+     * the position of the buffer and the position is moved after the message.
+     */
+    public static Transportable unmarshall(ByteBuffer src) throws IOException,
+            ClassNotFoundException {
+        return readObject(new CompactInput(src));
+    }
+
+    static void writeObject(Transportable o, CompactOutput out) throws IOException {
+        if (o == null) {
+            out.writeByte(NULL);
+            return;
+        }
+
+        Integer tag = tags.get(o.getClass());
+        if (tag == null) {
+            out.writeByte(FALLBACK);
+            out.writeByteArray(DefaultSerialization.marshall(o));
+            return;
+        }
+
+        out.writeByte(tag.intValue());
+        codecs[tag.intValue()].write(o, out);
+    }
+
+    static Transportable readObject(CompactInput in) throws IOException, ClassNotFoundException {
+        int tag = in.readByte();
+        if (tag == NULL)
+            return null;
+        if (tag == FALLBACK)
+            return DefaultSerialization.unmarshall(in.readByteArray());
+        if ((tag < 0) || (tag >= MAX_TAGS))
+            throw new StreamCorruptedException("CompactSerialization: invalid tag " + tag);
+
+        Codec codec = codecs[tag];
+        if (codec == null) {
+            // Load the class, which registers its codec
+            if (externalClasses[tag] != null)
+                Class.forName(externalClasses[tag]);
+            codec = codecs[tag];
+            if (codec == null)
+                throw new StreamCorruptedException("CompactSerialization: unknown tag " + tag);
+        }
+
+        return codec.read(in);
+    }
+
+    // Write the elements of a collection
+    private static void writeElements(Iterator it, int size, CompactOutput out)
+            throws IOException {
+        out.writeVarInt(size);
+        while (it.hasNext())
+            writeObject((Transportable) it.next(), out);
+    }
+
+    // Write the entries of a map
+    private static void writeEntries(Map m, CompactOutput out) throws IOException {
+        out.writeVarInt(m.size());
+        Iterator it = m.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry e = (Map.Entry) it.next();
+            writeObject((Transportable) e.getKey(), out);
+            writeObject((Transportable) e.getValue(), out);
+        }
+    }
+
+    // Read the entries of a map
+    private static void readEntries(Map m, CompactInput in) throws IOException,
+            ClassNotFoundException {
+        int size = in.readVarInt();
+        for (int i = 0; i < size; i++) {
+            Transportable key = readObject(in);
+            m.put(key, readObject(in));
+        }
+    }
+
+    // Write sorted keys as the first key followed by the differences
+    // between consecutive keys
+    private static void writeKeys(long[] keys, CompactOutput out) {
+        out.writeVarInt(keys.length);
+        long previous = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0)
+                out.writeLong(keys[i]);
+            else
+                out.writeVarLong(keys[i] - previous);
+            previous = keys[i];
+        }
+    }
+
+    private static long[] readKeys(CompactInput in) throws IOException {
+        int size = in.readVarInt();
+        if (size < 0)
+            throw new StreamCorruptedException("CompactSerialization: negative size");
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = (i == 0) ? in.readLong() : keys[i - 1] + in.readVarLong();
+        return keys;
+    }
+
+    static {
+        register(TINTEGER, TInteger.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) {
+                out.writeInt(((TInteger) o).intValue());
+            }
+
+            public Transportable read(CompactInput in) throws IOException {
+                return new TInteger(in.readInt());
+            }
+        });
+        register(TLONG, TLong.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) {
+                out.writeLong(((TLong) o).longValue());
+            }
+
+            public Transportable read(CompactInput in) throws IOException {
+                return new TLong(in.readLong());
+            }
+        });
+        register(TBOOLEAN, TBoolean.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) {
+                out.writeBoolean(((TBoolean) o).booleanValue());
+            }
+
+            public Transportable read(CompactInput in) throws IOException {
+                return new TBoolean(in.readBoolean());
+            }
+        });
+        register(TFLOAT, TFloat.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) {
+                out.writeFloat(((TFloat) o).floatValue());
+            }
+
+            public Transportable read(CompactInput in) throws IOException {
+                return new TFloat(in.readFloat());
+            }
+        });
+        register(TSTRING, TString.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) {
+                out.writeChars(o.toString());
+            }
+
+            public Transportable read(CompactInput in) throws IOException {
+                return new TString(in.readChars());
+            }
+        });
+        register(TUTF8STRING, TUtf8String.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) {
+                out.writeByteArray(((TUtf8String) o).byteValue());
+            }
+
+            public Transportable read(CompactInput in) throws IOException {
+                return new TUtf8String(in.readByteArray());
+            }
+        });
+        register(TBYTEARRAY, TByteArray.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) {
+                out.writeByteArray(((TByteArray) o).byteValue());
+            }
+
+            public Transportable read(CompactInput in) throws IOException {
+                return new TByteArray(in.readByteArray());
+            }
+        });
+        register(TLINKEDLIST, TLinkedList.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) throws IOException {
+                TLinkedList l = (TLinkedList) o;
+                writeElements(l.contents.iterator(), l.contents.size(), out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException,
+                    ClassNotFoundException {
+                TLinkedList l = new TLinkedList();
+                int size = in.readVarInt();
+                for (int i = 0; i < size; i++)
+                    l.contents.add(readObject(in));
+                return l;
+            }
+        });
+        register(GROUPCOMMMESSAGE, GroupCommMessage.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) throws IOException {
+                // contents is not visible through GroupCommMessage
+                TLinkedList m = (TLinkedList) o;
+                writeElements(m.contents.iterator(), m.contents.size(), out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException,
+                    ClassNotFoundException {
+                GroupCommMessage m = new GroupCommMessage();
+                TLinkedList l = m;
+                int size = in.readVarInt();
+                for (int i = 0; i < size; i++)
+                    l.contents.add(readObject(in));
+                return m;
+            }
+        });
+        register(TARRAYLIST, TArrayList.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) throws IOException {
+                TArrayList l = (TArrayList) o;
+                writeElements(l.contents.iterator(), l.contents.size(), out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException,
+                    ClassNotFoundException {
+                TArrayList l = new TArrayList();
+                int size = in.readVarInt();
+                l.contents.ensureCapacity(size);
+                for (int i = 0; i < size; i++)
+                    l.contents.add(readObject(in));
+                return l;
+            }
+        });
+        register(THASHSET, THashSet.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) throws IOException {
+                THashSet s = (THashSet) o;
+                writeElements(s.contents.iterator(), s.contents.size(), out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException,
+                    ClassNotFoundException {
+                THashSet s = new THashSet();
+                int size = in.readVarInt();
+                for (int i = 0; i < size; i++)
+                    s.contents.add(readObject(in));
+                return s;
+            }
+        });
+        register(THASHMAP, THashMap.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) throws IOException {
+                writeEntries(((THashMap) o).contents, out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException,
+                    ClassNotFoundException {
+                THashMap m = new THashMap();
+                readEntries(m.contents, in);
+                return m;
+            }
+        });
+        register(TLINKEDHASHMAP, TLinkedHashMap.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) throws IOException {
+                writeEntries(((TLinkedHashMap) o).contents, out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException,
+                    ClassNotFoundException {
+                TLinkedHashMap m = new TLinkedHashMap();
+                readEntries(m.contents, in);
+                return m;
+            }
+        });
+        register(TTREEMAP, TTreeMap.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) throws IOException {
+                writeEntries(((TTreeMap) o).contents, out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException,
+                    ClassNotFoundException {
+                TTreeMap m = new TTreeMap();
+                readEntries(m.contents, in);
+                return m;
+            }
+        });
+        register(TLONGHASHSET, TLongHashSet.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) {
+                writeKeys(((TLongHashSet) o).toArray(), out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException {
+                long[] keys = readKeys(in);
+                TLongHashSet s = new TLongHashSet(keys.length);
+                for (int i = 0; i < keys.length; i++)
+                    s.add(keys[i]);
+                return s;
+            }
+        });
+        register(TLONGHASHMAP, TLongHashMap.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) throws IOException {
+                TLongHashMap m = (TLongHashMap) o;
+                long[] keys = m.keys();
+                writeKeys(keys, out);
+                for (int i = 0; i < keys.length; i++)
+                    writeObject(m.get(keys[i]), out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException,
+                    ClassNotFoundException {
+                long[] keys = readKeys(in);
+                TLongHashMap m = new TLongHashMap(keys.length);
+                for (int i = 0; i < keys.length; i++)
+                    m.put(keys[i], readObject(in));
+                return m;
+            }
+        });
+        register(TLONGTREEMAP, TLongTreeMap.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) throws IOException {
+                TLongTreeMap m = (TLongTreeMap) o;
+                writeKeys(m.keys(), out);
+                for (int i = m.start; i < m.end; i++)
+                    writeObject(m.values[i], out);
+            }
+
+            public Transportable read(CompactInput in) throws IOException,
+                    ClassNotFoundException {
+                long[] keys = readKeys(in);
+                TLongTreeMap m = new TLongTreeMap(keys.length);
+                for (int i = 0; i < keys.length; i++)
+                    m.put(keys[i], readObject(in));
+                return m;
+            }
+        });
+        register(PID, PID.class, new Codec() {
+            public void write(Transportable o, CompactOutput out) {
+                PID p = (PID) o;
+                out.writeByteArray(p.ip.getAddress());
+                out.writeVarInt(p.port);
+                out.writeInt(p.incarnation);
+            }
+
+            public Transportable read(CompactInput in) throws IOException {
+                InetAddress ip = InetAddress.getByAddress(in.readByteArray());
+                int port = in.readVarInt();
+                return new PID(ip, port, in.readInt());
+            }
+        });
+    }
+}
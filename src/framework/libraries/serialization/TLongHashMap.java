@@ -0,0 +1,358 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+// Transportable map from longs to objects
+package framework.libraries.serialization;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import uka.transport.Transportable;
+
+/**
+ * Map from longs (or ints) to objects that does not box its keys. It is an
+ * open addressing hash table with linear probing; the keys are marshalled
+ * as raw longs.
+ *
+ * The map must not be modified while it is iterated.
+ */
+public class TLongHashMap implements Transportable, Cloneable {
+
+	private static final int MIN_CAPACITY = 8;
+
+	// The keys, the values and the slots in use (the capacity is a power of 2)
+	long[] keys;
+	Transportable[] values;
+	boolean[] used;
+	int size;
+
+	public TLongHashMap(){
+		this(MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * @param expected number of mappings that fit without resizing
+	 */
+	public TLongHashMap(int expected){
+		allocate(expected);
+	}
+
+	private void allocate(int expected){
+		int capacity = MIN_CAPACITY;
+		while (capacity < expected * 2)
+			capacity <<= 1;
+		keys = new long[capacity];
+		values = new Transportable[capacity];
+		used = new boolean[capacity];
+	}
+
+	// Slot of k, or -1 if k is not mapped
+	private int slot(long k){
+		int mask = keys.length - 1;
+		int i = TLongHashSet.hash(k, mask);
+		while (used[i]) {
+			if (keys[i] == k)
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	public boolean containsKey(long k){
+		return slot(k) >= 0;
+	}
+
+	public Transportable get(long k){
+		int i = slot(k);
+		return (i < 0) ? null : values[i];
+	}
+
+	/**
+	 * @return the previous value of k or null
+	 */
+	public Transportable put(long k, Transportable o){
+		int mask = keys.length - 1;
+		int i = TLongHashSet.hash(k, mask);
+		while (used[i]) {
+			if (keys[i] == k) {
+				Transportable old = values[i];
+				values[i] = o;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = k;
+		values[i] = o;
+		used[i] = true;
+		if (++size * 2 > keys.length)
+			resize(keys.length * 2);
+		return null;
+	}
+
+	/**
+	 * @return the value of k or null
+	 */
+	public Transportable remove(long k){
+		int i = slot(k);
+		if (i < 0)
+			return null;
+		Transportable old = values[i];
+
+		// Shift back the following mappings of the cluster
+		int mask = keys.length - 1;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (!used[j])
+				break;
+			int h = TLongHashSet.hash(keys[j], mask);
+			if ((j > i) ? ((h <= i) || (h > j)) : ((h <= i) && (h > j))) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		used[i] = false;
+		values[i] = null;
+		size--;
+		return old;
+	}
+
+	private void resize(int capacity){
+		long[] oldKeys = keys;
+		Transportable[] oldValues = values;
+		boolean[] oldUsed = used;
+		keys = new long[capacity];
+		values = new Transportable[capacity];
+		used = new boolean[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldUsed[i]) {
+				int j = TLongHashSet.hash(oldKeys[i], mask);
+				while (used[j])
+					j = (j + 1) & mask;
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+				used[j] = true;
+			}
+	}
+
+	public void clear(){
+		Arrays.fill(used, false);
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @return the keys in ascending order
+	 */
+	public long[] keys(){
+		long[] result = new long[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++)
+			if (used[i])
+				result[n++] = keys[i];
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * @return an iterator over the keys (in no particular order)
+	 */
+	public PrimitiveIterator.OfLong keyIterator(){
+		return new PrimitiveIterator.OfLong() {
+			private int next = advance(used, 0);
+
+			public boolean hasNext(){
+				return next < used.length;
+			}
+
+			public long nextLong(){
+				if (next >= used.length)
+					throw new NoSuchElementException();
+				long k = keys[next];
+				next = advance(used, next + 1);
+				return k;
+			}
+		};
+	}
+
+	/**
+	 * @return an iterator over the values (in no particular order)
+	 */
+	public Iterator valueIterator(){
+		return new Iterator() {
+			private int next = advance(used, 0);
+
+			public boolean hasNext(){
+				return next < used.length;
+			}
+
+			public Object next(){
+				if (next >= used.length)
+					throw new NoSuchElementException();
+				Object o = values[next];
+				next = advance(used, next + 1);
+				return o;
+			}
+
+			public void remove(){
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private static int advance(boolean[] used, int i){
+		while ((i < used.length) && !used[i])
+			i++;
+		return i;
+	}
+
+	public String toString(){
+		StringBuffer sb = new StringBuffer("TLongHashMap{");
+		long[] k = keys();
+		for (int i = 0; i < k.length; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(k[i]).append('=').append(get(k[i]));
+		}
+		return sb.append('}').toString();
+	}
+
+	public boolean equals(Object o){
+		throw new InternalError("TLongHashMap not implementing equals");
+	}
+
+	public int compareTo(Object o){
+		throw new InternalError("TLongHashMap not implementing compareTo");
+	}
+
+	public Object clone(){
+		TLongHashMap clone;
+		try {
+			clone = (TLongHashMap) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError();
+		}
+		clone.keys = (long[]) keys.clone();
+		clone.values = (Transportable[]) values.clone();
+		clone.used = (boolean[]) used.clone();
+		return clone;
+	}
+
+	/*
+	* Code for uka.transport serialization
+	*/
+
+   /**
+	* The number of elements
+	*/
+   protected static final int _SIZE = uka.transport.BasicIO.SIZEOF_int;
+   private int _nbelements;
+
+   /** Used by uka.transport.UnmarshalStream to unmarshal the object */
+   public  TLongHashMap(uka.transport.UnmarshalStream _stream)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	 this(_stream, _SIZE);
+	 _stream.accept(_SIZE);
+   }
+
+   protected TLongHashMap(uka.transport.UnmarshalStream  _stream, int _size)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	 _stream.request(_size);
+	 byte[] _buffer = _stream.getBuffer();
+	 int    _pos    = _stream.getPosition();
+	 _nbelements = uka.transport.BasicIO.extractInt(_buffer, _pos);
+	 _pos += uka.transport.BasicIO.SIZEOF_int;
+   }
+
+   /** Method of interface Transportable, it must be declared public.
+	   It is called from within UnmarshalStream after creating the
+	   object and assigning a stream reference to it. */
+   public void unmarshalReferences(uka.transport.UnmarshalStream _stream)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	   allocate(_nbelements);
+	   for(int i = 0; i < _nbelements; i++){
+		   long k = _stream.readLong();
+		   put(k, (Transportable) _stream.readObject());
+	   }
+   }
+
+   /** Called directly by uka.transport.MarshalStream */
+   public void marshal(uka.transport.MarshalStream _stream)
+	 throws java.io.IOException
+   {
+	 _stream.reserve(_SIZE);
+	 byte[] _buffer = _stream.getBuffer();
+	 int    _pos    = _stream.getPosition();
+	 marshalPrimitives(_buffer, _pos);
+	 _stream.deliver(_SIZE);
+	 marshalReferences(_stream);
+   }
+
+   protected void marshalPrimitives(byte[] _buffer, int _pos)
+	 throws java.io.IOException
+   {
+	 _nbelements = size;
+	 _pos = uka.transport.BasicIO.insert(_buffer, _pos, _nbelements);
+   }
+
+   protected void marshalReferences(uka.transport.MarshalStream _stream)
+	 throws java.io.IOException
+   {
+	   for(int i = 0; i < keys.length; i++){
+		   if (used[i]) {
+			   _stream.writeLong(keys[i]);
+			   _stream.writeObject(values[i]);
+		   }
+	   }
+   }
+
+   public final Object deepClone(uka.transport.DeepClone _helper)
+	 throws CloneNotSupportedException
+   {
+	 Object _copy = clone();
+	 _helper.add(this, _copy);
+	 ((TLongHashMap) _copy).deepCloneReferences(_helper);
+	 return _copy;
+   }
+
+   /** Clone all references to other objects. Use the
+	   DeepClone to resolve cycles */
+   protected void deepCloneReferences(uka.transport.DeepClone _helper)
+	 throws CloneNotSupportedException
+   {
+	   for (int i = 0; i < values.length; i++) {
+		   if (used[i])
+			   values[i] = (Transportable) _helper.doDeepClone(values[i]);
+	   }
+   }
+}
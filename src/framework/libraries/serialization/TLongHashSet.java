@@ -0,0 +1,296 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+// Transportable set of longs
+package framework.libraries.serialization;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import uka.transport.Transportable;
+
+/**
+ * Set of longs (or ints) that does not box its elements. It is an open
+ * addressing hash table with linear probing; the elements are marshalled
+ * as raw longs.
+ *
+ * The set must not be modified while it is iterated.
+ */
+public class TLongHashSet implements Transportable, Cloneable {
+
+	private static final int MIN_CAPACITY = 8;
+
+	// The elements and the slots in use (the capacity is a power of 2)
+	long[] keys;
+	boolean[] used;
+	int size;
+
+	public TLongHashSet(){
+		this(MIN_CAPACITY / 2);
+	}
+
+	/**
+	 * @param expected number of elements that fit without resizing
+	 */
+	public TLongHashSet(int expected){
+		int capacity = MIN_CAPACITY;
+		while (capacity < expected * 2)
+			capacity <<= 1;
+		keys = new long[capacity];
+		used = new boolean[capacity];
+	}
+
+	static int hash(long k, int mask){
+		int h = (int) (k ^ (k >>> 32)) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	// Slot of k, or -1 if k is not in the set
+	private int slot(long k){
+		int mask = keys.length - 1;
+		int i = hash(k, mask);
+		while (used[i]) {
+			if (keys[i] == k)
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	public boolean contains(long k){
+		return slot(k) >= 0;
+	}
+
+	/**
+	 * @return true if k was not in the set
+	 */
+	public boolean add(long k){
+		int mask = keys.length - 1;
+		int i = hash(k, mask);
+		while (used[i]) {
+			if (keys[i] == k)
+				return false;
+			i = (i + 1) & mask;
+		}
+		keys[i] = k;
+		used[i] = true;
+		if (++size * 2 > keys.length)
+			resize(keys.length * 2);
+		return true;
+	}
+
+	/**
+	 * @return true if k was in the set
+	 */
+	public boolean remove(long k){
+		int i = slot(k);
+		if (i < 0)
+			return false;
+
+		// Shift back the following elements of the cluster
+		int mask = keys.length - 1;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (!used[j])
+				break;
+			int h = hash(keys[j], mask);
+			if ((j > i) ? ((h <= i) || (h > j)) : ((h <= i) && (h > j))) {
+				keys[i] = keys[j];
+				i = j;
+			}
+		}
+		used[i] = false;
+		size--;
+		return true;
+	}
+
+	private void resize(int capacity){
+		long[] oldKeys = keys;
+		boolean[] oldUsed = used;
+		keys = new long[capacity];
+		used = new boolean[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldUsed[i]) {
+				int j = hash(oldKeys[i], mask);
+				while (used[j])
+					j = (j + 1) & mask;
+				keys[j] = oldKeys[i];
+				used[j] = true;
+			}
+	}
+
+	public void clear(){
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @return the elements in ascending order
+	 */
+	public long[] toArray(){
+		long[] result = new long[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++)
+			if (used[i])
+				result[n++] = keys[i];
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * @return an iterator over the elements (in no particular order)
+	 */
+	public PrimitiveIterator.OfLong iterator(){
+		return new PrimitiveIterator.OfLong() {
+			private int next = advance(0);
+
+			private int advance(int i){
+				while ((i < used.length) && !used[i])
+					i++;
+				return i;
+			}
+
+			public boolean hasNext(){
+				return next < used.length;
+			}
+
+			public long nextLong(){
+				if (next >= used.length)
+					throw new NoSuchElementException();
+				long k = keys[next];
+				next = advance(next + 1);
+				return k;
+			}
+		};
+	}
+
+	public String toString(){
+		return "TLongHashSet{" + Arrays.toString(toArray()) + "}";
+	}
+
+	public boolean equals(Object o){
+		throw new InternalError("TLongHashSet not implementing equals");
+	}
+
+	public int compareTo(Object o){
+		throw new InternalError("TLongHashSet not implementing compareTo");
+	}
+
+	public Object clone(){
+		TLongHashSet clone;
+		try {
+			clone = (TLongHashSet) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError();
+		}
+		clone.keys = (long[]) keys.clone();
+		clone.used = (boolean[]) used.clone();
+		return clone;
+	}
+
+	/*
+	* Code for uka.transport serialization
+	*/
+
+   /**
+	* The number of elements
+	*/
+   protected static final int _SIZE = uka.transport.BasicIO.SIZEOF_int;
+   private int _nbelements;
+
+   /** Used by uka.transport.UnmarshalStream to unmarshal the object */
+   public  TLongHashSet(uka.transport.UnmarshalStream _stream)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	 this(_stream, _SIZE);
+	 _stream.accept(_SIZE);
+   }
+
+   protected TLongHashSet(uka.transport.UnmarshalStream  _stream, int _size)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	 _stream.request(_size);
+	 byte[] _buffer = _stream.getBuffer();
+	 int    _pos    = _stream.getPosition();
+	 _nbelements = uka.transport.BasicIO.extractInt(_buffer, _pos);
+	 _pos += uka.transport.BasicIO.SIZEOF_int;
+   }
+
+   /** Method of interface Transportable, it must be declared public.
+	   It is called from within UnmarshalStream after creating the
+	   object and assigning a stream reference to it. */
+   public void unmarshalReferences(uka.transport.UnmarshalStream _stream)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	   int capacity = MIN_CAPACITY;
+	   while (capacity < _nbelements * 2)
+		   capacity <<= 1;
+	   keys = new long[capacity];
+	   used = new boolean[capacity];
+	   for(int i = 0; i < _nbelements; i++){
+		   add(_stream.readLong());
+	   }
+   }
+
+   /** Called directly by uka.transport.MarshalStream */
+   public void marshal(uka.transport.MarshalStream _stream)
+	 throws java.io.IOException
+   {
+	 _stream.reserve(_SIZE);
+	 byte[] _buffer = _stream.getBuffer();
+	 int    _pos    = _stream.getPosition();
+	 marshalPrimitives(_buffer, _pos);
+	 _stream.deliver(_SIZE);
+	 marshalReferences(_stream);
+   }
+
+   protected void marshalPrimitives(byte[] _buffer, int _pos)
+	 throws java.io.IOException
+   {
+	 _nbelements = size;
+	 _pos = uka.transport.BasicIO.insert(_buffer, _pos, _nbelements);
+   }
+
+   protected void marshalReferences(uka.transport.MarshalStream _stream)
+	 throws java.io.IOException
+   {
+	   for(int i = 0; i < keys.length; i++){
+		   if (used[i])
+			   _stream.writeLong(keys[i]);
+	   }
+   }
+
+   public final Object deepClone(uka.transport.DeepClone _helper)
+	 throws CloneNotSupportedException
+   {
+	 Object _copy = clone();
+	 _helper.add(this, _copy);
+	 return _copy;
+   }
+}
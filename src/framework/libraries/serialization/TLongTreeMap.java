@@ -0,0 +1,313 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+// Transportable sorted map from longs to objects
+package framework.libraries.serialization;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import uka.transport.Transportable;
+
+/**
+ * Map from longs to objects sorted by key, that does not box its keys.
+ * The mappings are kept in two sorted arrays, so that adding a key greater
+ * than all the others and removing the smallest key (e.g. instance numbers
+ * of consensus) take constant time. Other insertions and removals shift
+ * the mappings that follow.
+ *
+ * The map must not be modified while it is iterated.
+ */
+public class TLongTreeMap implements Transportable, Cloneable {
+
+	private static final int MIN_CAPACITY = 8;
+
+	// The mappings are between start (included) and end (excluded)
+	long[] keys;
+	Transportable[] values;
+	int start;
+	int end;
+
+	public TLongTreeMap(){
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expected number of mappings that fit without resizing
+	 */
+	public TLongTreeMap(int expected){
+		int capacity = Math.max(expected, MIN_CAPACITY);
+		keys = new long[capacity];
+		values = new Transportable[capacity];
+	}
+
+	private int index(long k){
+		return Arrays.binarySearch(keys, start, end, k);
+	}
+
+	public boolean containsKey(long k){
+		return index(k) >= 0;
+	}
+
+	public Transportable get(long k){
+		int i = index(k);
+		return (i < 0) ? null : values[i];
+	}
+
+	/**
+	 * @return the previous value of k or null
+	 */
+	public Transportable put(long k, Transportable o){
+		int i = index(k);
+		if (i >= 0) {
+			Transportable old = values[i];
+			values[i] = o;
+			return old;
+		}
+		i = -(i + 1);
+
+		if ((i == start) && (start > 0)) {
+			start--;
+			keys[start] = k;
+			values[start] = o;
+			return null;
+		}
+		if (end == keys.length) {
+			// Move the mappings to the beginning of larger arrays if needed
+			int n = end - start;
+			int capacity = (n * 2 > keys.length) ? keys.length * 2 : keys.length;
+			long[] newKeys = (capacity == keys.length) ? keys : new long[capacity];
+			Transportable[] newValues = (capacity == keys.length) ? values
+					: new Transportable[capacity];
+			System.arraycopy(keys, start, newKeys, 0, n);
+			System.arraycopy(values, start, newValues, 0, n);
+			if (newValues == values)
+				Arrays.fill(values, n, end, null);
+			keys = newKeys;
+			values = newValues;
+			i = i - start;
+			start = 0;
+			end = n;
+		}
+		System.arraycopy(keys, i, keys, i + 1, end - i);
+		System.arraycopy(values, i, values, i + 1, end - i);
+		keys[i] = k;
+		values[i] = o;
+		end++;
+		return null;
+	}
+
+	/**
+	 * @return the value of k or null
+	 */
+	public Transportable remove(long k){
+		int i = index(k);
+		if (i < 0)
+			return null;
+		Transportable old = values[i];
+
+		if (i == start) {
+			values[start++] = null;
+		} else {
+			System.arraycopy(keys, i + 1, keys, i, end - i - 1);
+			System.arraycopy(values, i + 1, values, i, end - i - 1);
+			values[--end] = null;
+		}
+		if (start == end)
+			start = end = 0;
+		return old;
+	}
+
+	public long firstKey(){
+		if (start == end)
+			throw new NoSuchElementException();
+		return keys[start];
+	}
+
+	public long lastKey(){
+		if (start == end)
+			throw new NoSuchElementException();
+		return keys[end - 1];
+	}
+
+	public void clear(){
+		Arrays.fill(values, start, end, null);
+		start = end = 0;
+	}
+
+	public boolean isEmpty(){
+		return start == end;
+	}
+
+	public int size(){
+		return end - start;
+	}
+
+	/**
+	 * @return the keys in ascending order
+	 */
+	public long[] keys(){
+		long[] result = new long[end - start];
+		System.arraycopy(keys, start, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * @return an iterator over the values in ascending order of their keys
+	 */
+	public Iterator valueIterator(){
+		return new Iterator() {
+			private int next = start;
+
+			public boolean hasNext(){
+				return next < end;
+			}
+
+			public Object next(){
+				if (next >= end)
+					throw new NoSuchElementException();
+				return values[next++];
+			}
+
+			public void remove(){
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	public String toString(){
+		StringBuffer sb = new StringBuffer("TLongTreeMap{");
+		for (int i = start; i < end; i++) {
+			if (i > start)
+				sb.append(", ");
+			sb.append(keys[i]).append('=').append(values[i]);
+		}
+		return sb.append('}').toString();
+	}
+
+	public boolean equals(Object o){
+		throw new InternalError("TLongTreeMap not implementing equals");
+	}
+
+	public int compareTo(Object o){
+		throw new InternalError("TLongTreeMap not implementing compareTo");
+	}
+
+	public Object clone(){
+		TLongTreeMap clone;
+		try {
+			clone = (TLongTreeMap) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError();
+		}
+		clone.keys = (long[]) keys.clone();
+		clone.values = (Transportable[]) values.clone();
+		return clone;
+	}
+
+	/*
+	* Code for uka.transport serialization
+	*/
+
+   /**
+	* The number of elements
+	*/
+   protected static final int _SIZE = uka.transport.BasicIO.SIZEOF_int;
+   private int _nbelements;
+
+   /** Used by uka.transport.UnmarshalStream to unmarshal the object */
+   public  TLongTreeMap(uka.transport.UnmarshalStream _stream)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	 this(_stream, _SIZE);
+	 _stream.accept(_SIZE);
+   }
+
+   protected TLongTreeMap(uka.transport.UnmarshalStream  _stream, int _size)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	 _stream.request(_size);
+	 byte[] _buffer = _stream.getBuffer();
+	 int    _pos    = _stream.getPosition();
+	 _nbelements = uka.transport.BasicIO.extractInt(_buffer, _pos);
+	 _pos += uka.transport.BasicIO.SIZEOF_int;
+   }
+
+   /** Method of interface Transportable, it must be declared public.
+	   It is called from within UnmarshalStream after creating the
+	   object and assigning a stream reference to it. */
+   public void unmarshalReferences(uka.transport.UnmarshalStream _stream)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	   int capacity = Math.max(_nbelements, MIN_CAPACITY);
+	   keys = new long[capacity];
+	   values = new Transportable[capacity];
+	   for(int i = 0; i < _nbelements; i++){
+		   long k = _stream.readLong();
+		   put(k, (Transportable) _stream.readObject());
+	   }
+   }
+
+   /** Called directly by uka.transport.MarshalStream */
+   public void marshal(uka.transport.MarshalStream _stream)
+	 throws java.io.IOException
+   {
+	 _stream.reserve(_SIZE);
+	 byte[] _buffer = _stream.getBuffer();
+	 int    _pos    = _stream.getPosition();
+	 marshalPrimitives(_buffer, _pos);
+	 _stream.deliver(_SIZE);
+	 marshalReferences(_stream);
+   }
+
+   protected void marshalPrimitives(byte[] _buffer, int _pos)
+	 throws java.io.IOException
+   {
+	 _nbelements = end - start;
+	 _pos = uka.transport.BasicIO.insert(_buffer, _pos, _nbelements);
+   }
+
+   protected void marshalReferences(uka.transport.MarshalStream _stream)
+	 throws java.io.IOException
+   {
+	   for(int i = start; i < end; i++){
+		   _stream.writeLong(keys[i]);
+		   _stream.writeObject(values[i]);
+	   }
+   }
+
+   public final Object deepClone(uka.transport.DeepClone _helper)
+	 throws CloneNotSupportedException
+   {
+	 Object _copy = clone();
+	 _helper.add(this, _copy);
+	 ((TLongTreeMap) _copy).deepCloneReferences(_helper);
+	 return _copy;
+   }
+
+   /** Clone all references to other objects. Use the
+	   DeepClone to resolve cycles */
+   protected void deepCloneReferences(uka.transport.DeepClone _helper)
+	 throws CloneNotSupportedException
+   {
+	   for (int i = start; i < end; i++) {
+		   values[i] = (Transportable) _helper.doDeepClone(values[i]);
+	   }
+   }
+}
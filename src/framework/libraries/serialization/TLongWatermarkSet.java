@@ -0,0 +1,251 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+// Transportable set of longs kept as a watermark and a bitmap
+package framework.libraries.serialization;
+
+import uka.transport.Transportable;
+
+/**
+ * Set of non negative longs that are added roughly in ascending order
+ * (e.g. message ids of a sender). It is kept as a watermark (all the longs
+ * below it are in the set) plus a ring bitmap for the longs added above
+ * it. The memory used only depends on the distance between the watermark
+ * and the greatest long in the set: the bitmap shrinks back to its initial
+ * size whenever the watermark catches up with the greatest long. Neither
+ * <i>contains</i> nor <i>add</i> allocate, unless the bitmap grows.
+ */
+public class TLongWatermarkSet implements Transportable, Cloneable {
+
+	// Initial size of the bitmap (in number of 64 bits words)
+	private static final int INITIAL_WORDS = 2;
+
+	// All the longs smaller than filled are in the set
+	long filled;
+
+	// Greatest long in the set (filled - 1 if there is none above filled)
+	long max;
+
+	// Ring of bits for the longs >= filled (bit i of the ring
+	// corresponds to long i, modulo the size of the ring)
+	long[] bits;
+
+	public TLongWatermarkSet(){
+		this(0);
+	}
+
+	/**
+	 * @param first the smallest long not in the set
+	 */
+	public TLongWatermarkSet(long first){
+		filled = first;
+		max = first - 1;
+		bits = new long[INITIAL_WORDS];
+	}
+
+	public boolean contains(long k){
+		if (k < filled)
+			return true;
+		if (k > max)
+			return false;
+		return (bits[word(k)] & (1L << k)) != 0;
+	}
+
+	/**
+	 * @return true if k was not in the set
+	 */
+	public boolean add(long k){
+		if (k < filled)
+			return false;
+
+		ensureCapacity(k);
+		int w = word(k);
+		long mask = 1L << k;
+		if ((bits[w] & mask) != 0)
+			return false;
+		bits[w] |= mask;
+		if (k > max)
+			max = k;
+
+		// Move the watermark over the longs added so far
+		while ((filled <= max) && testAndClear(filled))
+			filled++;
+		if ((filled > max) && (bits.length > INITIAL_WORDS))
+			bits = new long[INITIAL_WORDS];
+		return true;
+	}
+
+	/**
+	 * @return the smallest long not in the set (all the smaller ones are)
+	 */
+	public long getWatermark(){
+		return filled;
+	}
+
+	/**
+	 * @return the number of longs above the watermark the bitmap can hold
+	 */
+	public int getCapacity(){
+		return bits.length * 64;
+	}
+
+	// Return true and clear the bit if k is in the ring
+	private boolean testAndClear(long k){
+		int w = word(k);
+		long mask = 1L << k;
+		if ((bits[w] & mask) == 0)
+			return false;
+		bits[w] &= ~mask;
+		return true;
+	}
+
+	// Return true if the ring covers k
+	private boolean covered(long k){
+		return (k >>> 6) - (filled >>> 6) < bits.length;
+	}
+
+	private int word(long k){
+		return (int) ((k >>> 6) % bits.length);
+	}
+
+	// Grow the ring so that it covers k
+	private void ensureCapacity(long k){
+		if (covered(k))
+			return;
+
+		long needed = (k >>> 6) - (filled >>> 6) + 1;
+		int size = bits.length;
+		while (size < needed)
+			size = size * 2;
+
+		long[] newBits = new long[size];
+		for (long i = filled >>> 6; i < (filled >>> 6) + bits.length; i++)
+			newBits[(int) (i % size)] = bits[(int) (i % bits.length)];
+		bits = newBits;
+	}
+
+	public String toString(){
+		StringBuffer sb = new StringBuffer();
+		sb.append("TLongWatermarkSet{<" + filled);
+		for (long i = filled + 1; i <= max; i++)
+			if (contains(i))
+				sb.append("," + i);
+		sb.append("}");
+		return sb.toString();
+	}
+
+	public boolean equals(Object o){
+		throw new InternalError("TLongWatermarkSet not implementing equals");
+	}
+
+	public int compareTo(Object o){
+		throw new InternalError("TLongWatermarkSet not implementing compareTo");
+	}
+
+	public Object clone(){
+		TLongWatermarkSet clone;
+		try {
+			clone = (TLongWatermarkSet) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new InternalError();
+		}
+		clone.bits = (long[]) bits.clone();
+		return clone;
+	}
+
+	/*
+	* Code for uka.transport serialization
+	*/
+
+   /**
+	* The watermark, the greatest long and the number of words of the ring
+	*/
+   protected static final int _SIZE = 2 * uka.transport.BasicIO.SIZEOF_long
+	   + uka.transport.BasicIO.SIZEOF_int;
+   private int _nbwords;
+
+   /** Used by uka.transport.UnmarshalStream to unmarshal the object */
+   public  TLongWatermarkSet(uka.transport.UnmarshalStream _stream)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	 this(_stream, _SIZE);
+	 _stream.accept(_SIZE);
+   }
+
+   protected TLongWatermarkSet(uka.transport.UnmarshalStream  _stream, int _size)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	 _stream.request(_size);
+	 byte[] _buffer = _stream.getBuffer();
+	 int    _pos    = _stream.getPosition();
+	 filled = uka.transport.BasicIO.extractLong(_buffer, _pos);
+	 _pos += uka.transport.BasicIO.SIZEOF_long;
+	 max = uka.transport.BasicIO.extractLong(_buffer, _pos);
+	 _pos += uka.transport.BasicIO.SIZEOF_long;
+	 _nbwords = uka.transport.BasicIO.extractInt(_buffer, _pos);
+	 _pos += uka.transport.BasicIO.SIZEOF_int;
+   }
+
+   /** Method of interface Transportable, it must be declared public.
+	   It is called from within UnmarshalStream after creating the
+	   object and assigning a stream reference to it. */
+   public void unmarshalReferences(uka.transport.UnmarshalStream _stream)
+	 throws java.io.IOException, ClassNotFoundException
+   {
+	   // The words are marshalled from the one of the watermark on
+	   bits = new long[_nbwords];
+	   for (long i = filled >>> 6; i < (filled >>> 6) + _nbwords; i++)
+		   bits[word(i << 6)] = _stream.readLong();
+   }
+
+   /** Called directly by uka.transport.MarshalStream */
+   public void marshal(uka.transport.MarshalStream _stream)
+	 throws java.io.IOException
+   {
+	 _stream.reserve(_SIZE);
+	 byte[] _buffer = _stream.getBuffer();
+	 int    _pos    = _stream.getPosition();
+	 marshalPrimitives(_buffer, _pos);
+	 _stream.deliver(_SIZE);
+	 marshalReferences(_stream);
+   }
+
+   protected void marshalPrimitives(byte[] _buffer, int _pos)
+	 throws java.io.IOException
+   {
+	 _nbwords = bits.length;
+	 _pos = uka.transport.BasicIO.insert(_buffer, _pos, filled);
+	 _pos = uka.transport.BasicIO.insert(_buffer, _pos, max);
+	 _pos = uka.transport.BasicIO.insert(_buffer, _pos, _nbwords);
+   }
+
+   protected void marshalReferences(uka.transport.MarshalStream _stream)
+	 throws java.io.IOException
+   {
+	   for (long i = filled >>> 6; i < (filled >>> 6) + bits.length; i++)
+		   _stream.writeLong(bits[word(i << 6)]);
+   }
+
+   public final Object deepClone(uka.transport.DeepClone _helper)
+	 throws CloneNotSupportedException
+   {
+	 Object _copy = clone();
+	 _helper.add(this, _copy);
+	 return _copy;
+   }
+}
@@ -0,0 +1,191 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+// Transportable class for String, stored in UTF-8
+package framework.libraries.serialization;
+
+import java.nio.charset.Charset;
+
+import uka.transport.Transportable;
+
+/**
+ * Transportable string whose canonical form is its UTF-8 encoding.
+ *
+ * The string is encoded at most once (when it is first marshalled or
+ * compared) and decoded at most once (when {@link #toString()} is first
+ * called). It is marshalled as its length followed by the raw UTF-8 bytes.
+ *
+ * Instances are immutable: the array returned by {@link #byteValue()}
+ * must not be modified.
+ */
+public class TUtf8String implements Transportable{
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // UTF-8 encoding of the string (null until needed)
+    private byte[] value;
+
+    // The decoded string (null until needed)
+    private transient String string;
+
+    // Constructor
+    public TUtf8String(String string){
+	if (string == null)
+	    throw new NullPointerException("TUtf8String: null string");
+	this.string = string;
+    }
+
+    public TUtf8String(byte[] value){
+	if (value == null)
+	    throw new NullPointerException("TUtf8String: null value");
+	this.value = value;
+    }
+
+    /**
+     * @return the UTF-8 encoding of the string (must not be modified)
+     */
+    public byte[] byteValue(){
+	byte[] v = value;
+	if (v == null) {
+	    v = string.getBytes(UTF8);
+	    value = v;
+	}
+	return v;
+    }
+
+    // Cache the hash code for the string
+    private int hash; // Default to 0
+
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            byte[] val = byteValue();
+            for (int i = 0; i < val.length; i++)
+                h = 31*h + val[i];
+            hash = h;
+        }
+        return h;
+    }
+
+    public boolean equals(Object obj) {
+	if (this == obj)
+	    return true;
+	if (obj instanceof TUtf8String) {
+	    TUtf8String str = (TUtf8String)obj;
+	    if ((string != null) && (str.string != null))
+		return string.equals(str.string);
+	    return java.util.Arrays.equals(byteValue(), str.byteValue());
+	}
+	return false;
+    }
+
+    public int compareTo(Object obj){
+        throw new InternalError("TUtf8String not implementing compareTo");
+    }
+
+    public String toString(){
+	String s = string;
+	if (s == null) {
+	    s = new String(value, UTF8);
+	    string = s;
+	}
+	return s;
+    }
+
+    /**
+     *  Methods defined by the Transportable interface
+     */
+
+    // Size of primitive fields
+   protected static final int _SIZE = uka.transport.BasicIO.SIZEOF_int; //value's length
+
+   // Length of the UTF-8 encoding
+   transient private int _length;
+
+   /** Used by uka.transport.UnmarshalStream to unmarshal the object */
+   public  TUtf8String(uka.transport.UnmarshalStream _stream)
+   throws java.io.IOException, ClassNotFoundException
+   {
+   this(_stream, _SIZE);
+   _stream.accept(_SIZE);
+   }
+
+   protected TUtf8String(uka.transport.UnmarshalStream  _stream, int _size)
+   throws java.io.IOException, ClassNotFoundException
+   {
+   _stream.request(_size);
+   byte[] _buffer = _stream.getBuffer();
+   int    _pos    = _stream.getPosition();
+   _length = uka.transport.BasicIO.extractInt(_buffer, _pos);
+   _pos += uka.transport.BasicIO.SIZEOF_int;
+   }
+
+   /** Method of interface Transportable, it must be declared public.
+   It is called from within UnmarshalStream after creating the
+   object and assigning a stream reference to it. */
+   public void unmarshalReferences(uka.transport.UnmarshalStream _stream)
+   throws java.io.IOException, ClassNotFoundException
+   {
+       //Extracting the raw UTF-8 bytes
+       value = new byte[_length];
+       _stream.readFully(value, 0, _length);
+   }
+
+   /** Called directly by uka.transport.MarshalStream */
+   public void marshal(uka.transport.MarshalStream _stream)
+   throws java.io.IOException
+   {
+   _stream.reserve(_SIZE);
+   byte[] _buffer = _stream.getBuffer();
+   int    _pos    = _stream.getPosition();
+   marshalPrimitives(_buffer, _pos);
+   _stream.deliver(_SIZE);
+   marshalReferences(_stream);
+   }
+
+   protected void marshalPrimitives(byte[] _buffer, int _pos)
+   throws java.io.IOException
+   {
+   _length = byteValue().length;
+   _pos = uka.transport.BasicIO.insert(_buffer, _pos, _length);
+   }
+
+   protected void marshalReferences(uka.transport.MarshalStream _stream)
+   throws java.io.IOException
+   {
+       //Inserting the raw UTF-8 bytes
+       _stream.write(value, 0, _length);
+   }
+
+   public final Object deepClone(uka.transport.DeepClone _helper)
+   throws CloneNotSupportedException
+   {
+   Object _copy = clone();
+   _helper.add(this, _copy);
+   ((TUtf8String) _copy).deepCloneReferences(_helper);
+   return _copy;
+   }
+
+   /** Clone all references to other objects. Use the
+   DeepClone to resolve cycles */
+   protected void deepCloneReferences(uka.transport.DeepClone _helper)
+   throws CloneNotSupportedException
+   {
+       //The UTF-8 bytes are immutable: they are shared by the copy
+   }
+}
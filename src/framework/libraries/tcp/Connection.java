@@ -18,6 +18,7 @@
  */
 package framework.libraries.tcp;
 
+import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -81,6 +82,14 @@ public class Connection implements Comparable, Transportable {
 	 * protocol.
 	 */
 	TCPStackInterface parent = null;
+	/**
+	 * Size of the buffer of the socket's InputStream
+	 */
+	private static final int RECEIVE_BUFFER = 16 * 1024;
+	/**
+	 * Buffer for the lengths read from the socket
+	 */
+	private byte[] header = new byte[4];
 	/**
 	 * Tells whether the active threads must exit
 	 */
@@ -132,10 +141,27 @@ public class Connection implements Comparable, Transportable {
 	 * @param sock parent The object that inserts event into the stack 
 	 */
 	public Connection(PID myself, PID remote, TCPStackInterface parent) {
+		this(myself, remote, parent, true);
+	}
+
+	/**
+	 * Constructor used by the subclasses that run the connection with their 
+	 * own threads (see {@link SelectorTCP}). If <i>threads</i> is false, 
+	 * no thread is started.
+	 * 
+	 * @param myself The PID of the local process
+	 * @param remote PID of the remote process (null if it is not known yet)
+	 * @param parent The object that inserts event into the stack 
+	 * @param threads Whether the threads of this class must be started
+	 */
+	protected Connection(PID myself, PID remote, TCPStackInterface parent,
+			boolean threads) {
 		this.myself = myself;
 		this.remote = remote;
 		this.parent = parent;
 		selfConnected = myself.equals(remote);
+		if (!threads)
+			return;
 		if (selfConnected) {
 			startThread(selfSendReceiveThread, "selfSendReceiveThread");
 		} else {
@@ -200,12 +226,15 @@ public class Connection implements Comparable, Transportable {
 	 * to be actually written to the socket.
 	 * 
 	 * @param message The message to be asynchronously sent
+	 * @return false, since the next message has to wait for 
+	 * <i>readyForNextMessage</i>
 	 */
-	public synchronized void setMessageToSend(byte[] message) {
+	public synchronized boolean setMessageToSend(byte[] message) {
 		if (messageToSend != null)
 			throw new RuntimeException("messageToSend != null!!!!");
 		messageToSend = message;
 		notifyAll();
+		return false;
 	}
 
 	/**
@@ -251,7 +280,8 @@ public class Connection implements Comparable, Transportable {
 				socket = new Socket(remote.ip, remote.port);                                
 				// Good!! We got a connection... but
 				// DON'T notify it with parent.opened() yet 
-				is = socket.getInputStream();
+				is = new BufferedInputStream(socket.getInputStream(),
+						RECEIVE_BUFFER);
 				os = socket.getOutputStream();
                 
                 // Deactivate Nagle algorithm
@@ -306,7 +336,8 @@ public class Connection implements Comparable, Transportable {
 			    os = socket.getOutputStream();
 				//Send local PID
 				sendPID();
-				is = socket.getInputStream();
+				is = new BufferedInputStream(socket.getInputStream(),
+						RECEIVE_BUFFER);
 
 				//Wait for remote PID
 				PID remPID = readPID();
@@ -546,9 +577,8 @@ public class Connection implements Comparable, Transportable {
 	 *           been reached.
 	 */
 	private int treatInt() throws EOFException, IOException {
-		byte[] t = new byte[4];
-		readIS(t);
-		return bytesToInt(t);
+		readIS(header);
+		return bytesToInt(header);
 	}
 
 	/**
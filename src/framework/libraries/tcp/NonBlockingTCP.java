@@ -153,10 +153,15 @@ public interface NonBlockingTCP{
      * If this method is called twice before receiving the <i>readyForNextMessage</i> notification, the effects are unpredictable 
      * (usually the previous message will be overwritten by the new one, and thus lost forever).
      * 
+     * Pipelined connections (see {@link SelectorTCP}) queue several messages: as long as this method returns <i>true</i>, 
+     * the next message can be given right away, without waiting for <i>readyForNextMessage</i>.
+     * 
      * @param b The message (already serialized) to be sent
      * @param c The connection that will be used
+     * @return <i>true</i> if the connection accepts the next message right away, <i>false</i> if the next message 
+     * must wait for <i>readyForNextMessage</i>
      */
-    public void setMessageToSend(byte[] b, Connection c);
+    public boolean setMessageToSend(byte[] b, Connection c);
     //upon readyForNextMessage(Connection c)
 
     /**
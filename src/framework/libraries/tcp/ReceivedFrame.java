@@ -0,0 +1,72 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries.tcp;
+
+import java.nio.ByteBuffer;
+
+import framework.libraries.BufferPool;
+
+/**
+ * A message received by a connection of {@link SelectorTCP}, that is still
+ * in the receive buffer of the connection. The buffer is shared with other
+ * messages and reused once they are all released: the frame must not be
+ * used after {@link #release()}.
+ */
+public class ReceivedFrame {
+	private ByteBuffer data;
+
+	private BufferPool.Chunk chunk;
+
+	ReceivedFrame(ByteBuffer data, BufferPool.Chunk chunk) {
+		this.data = data;
+		this.chunk = chunk;
+	}
+
+	/**
+	 * Return the message, between the position and the limit of the buffer
+	 */
+	public ByteBuffer buffer() {
+		return data;
+	}
+
+	/**
+	 * Return a copy of the message
+	 */
+	public byte[] toByteArray() {
+		byte[] b = new byte[data.remaining()];
+		data.duplicate().get(b);
+		return b;
+	}
+
+	/**
+	 * Release the receive buffer
+	 */
+	public void release() {
+		if (chunk != null) {
+			chunk.release();
+			chunk = null;
+			data = null;
+		}
+	}
+
+	public String toString() {
+		return "ReceivedFrame(" + ((data == null) ? "released" : data.remaining()
+				+ " bytes") + ")";
+	}
+}
@@ -0,0 +1,908 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package framework.libraries.tcp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+import framework.Constants;
+import framework.PID;
+import framework.libraries.BufferPool;
+
+/**
+ * This class runs the TCP {@link Connection connections} and
+ * {@link Server servers} of a process with a single thread, that
+ * multiplexes all the sockets with a {@link Selector}. Connect, accept,
+ * read and write are non-blocking, so that the number of threads does
+ * not grow with the number of connections.
+ *
+ * The connections created by this class behave as the ones of class
+ * {@link Connection} (see interfaces <i>NonBlockingTCP</i> and
+ * <i>TCPStackInterface</i>) and use the same connection protocol and
+ * framing, so that both kinds of connection can talk to each other. The
+ * methods of <i>parent</i> are called by the selector thread.
+ *
+ * Sending is pipelined: a connection queues the messages given by
+ * <i>setMessageToSend</i> and writes them with gathering writes. It
+ * accepts messages until the queued bytes reach the high watermark, and
+ * then calls <i>readyForNextMessage</i> once they drop to the low
+ * watermark. With watermarks (0, 1), messages are sent one at a time
+ * as by the threaded connections.
+ *
+ * Connections read into large buffers taken from a {@link BufferPool}
+ * and parse all the messages of a read at once. The messages are handed
+ * to <i>parent</i> as {@link ReceivedFrame slices} of the buffer, without
+ * copy; a buffer goes back to the pool once its messages are released.
+ */
+public class SelectorTCP implements Runnable {
+	/**
+	 * Maximum number of messages written with one system call
+	 */
+	private static final int MAX_GATHER = 32;
+	/**
+	 * Size of the receive buffers, and number of free ones kept
+	 */
+	public static final int CHUNK_SIZE = 64 * 1024;
+	private static final int MAX_POOLED_CHUNKS = 64;
+	/**
+	 * A connection moves to another receive buffer when less than this
+	 * is left for the next read
+	 */
+	private static final int MIN_READ = 4096;
+	/**
+	 * Maximum length of a host name in the connection protocol
+	 */
+	private static final int MAX_HOST_LENGTH = 1024;
+
+	/**
+	 * Default watermarks of the send queues (in bytes)
+	 */
+	public static final int DEFAULT_LOW_WATERMARK = 64 * 1024;
+	public static final int DEFAULT_HIGH_WATERMARK = 256 * 1024;
+
+	/**
+	 * Default maximum length of a message received (in bytes)
+	 */
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	/**
+	 * Reference to the local process
+	 */
+	private PID myself;
+	/**
+	 * The parent object that will insert the events into the stack.
+	 */
+	private TCPStackInterface parent;
+	/**
+	 * The local PID, as sent during the connection protocol
+	 */
+	private byte[] pid;
+	/**
+	 * The selector and the thread that runs it
+	 */
+	private Selector selector;
+	private Thread thread;
+	private volatile boolean open = true;
+	/**
+	 * Servers and connections to be updated by the selector thread
+	 */
+	private ArrayList<Object> pending = new ArrayList<Object>();
+	private ArrayList<Object> updating = new ArrayList<Object>();
+	private final Object pendingLock = new Object();
+	/**
+	 * Buffers of a gathering write (used by the selector thread only)
+	 */
+	private ByteBuffer[] gather = new ByteBuffer[2 * MAX_GATHER];
+	/**
+	 * Watermarks of the send queues
+	 */
+	private volatile int lowWatermark = DEFAULT_LOW_WATERMARK;
+	private volatile int highWatermark = DEFAULT_HIGH_WATERMARK;
+	/**
+	 * Maximum length of a message received: a connection announcing a
+	 * longer one is closed
+	 */
+	private volatile int maxFrameLength = DEFAULT_MAX_FRAME_LENGTH;
+
+	/* Receive buffers of the connections */
+	public final BufferPool pool = new BufferPool(CHUNK_SIZE,
+			MAX_POOLED_CHUNKS, true);
+
+	/* Messages received, and their total size */
+	public final LongAdder frames = new LongAdder();
+	public final LongAdder frameBytes = new LongAdder();
+
+	/* Messages larger than the receive buffers */
+	public final LongAdder largeFrames = new LongAdder();
+
+	/* Bytes of partial messages moved to another receive buffer */
+	public final LongAdder movedBytes = new LongAdder();
+
+	/* Size of the largest message received */
+	private volatile int maxFrame = 0;
+
+	/**
+	 * Open the selector and start its thread.
+	 *
+	 * @param myself The PID of the local process
+	 * @param parent The object that inserts event into the stack
+	 */
+	public SelectorTCP(PID myself, TCPStackInterface parent) throws IOException {
+		this.myself = myself;
+		this.parent = parent;
+
+		byte[] host = myself.ip.getHostName().getBytes();
+		ByteBuffer b = ByteBuffer.allocate(12 + host.length).order(
+				ByteOrder.LITTLE_ENDIAN);
+		b.putInt(host.length).put(host).putInt(myself.port).putInt(
+				myself.incarnation);
+		pid = b.array();
+
+		selector = Selector.open();
+		thread = new Thread(Constants.THREADGROUP, this, "TCPSelectorThread");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Listen on the port of the local process. Upon an incoming connection,
+	 * method <i>accepted</i> of <i>parent</i> is called.
+	 */
+	public Server startServer() throws IOException {
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		channel.configureBlocking(false);
+		channel.socket().bind(new InetSocketAddress(myself.port));
+
+		SelectorServer s = new SelectorServer(channel);
+		post(s);
+		return s;
+	}
+
+	/**
+	 * Connect to a remote process. Method <i>connected</i> of <i>parent</i>
+	 * is called once the connection is established or has failed.
+	 */
+	public Connection connect(PID remote) {
+		SelectorConnection c = new SelectorConnection(remote, null);
+		post(c);
+		return c;
+	}
+
+	/**
+	 * Set the watermarks of the send queues of the connections.
+	 *
+	 * @param low Number of queued bytes under which a full connection
+	 * is ready again
+	 * @param high Number of queued bytes from which a connection is full
+	 */
+	public void setWatermarks(int low, int high) {
+		if ((low < 0) || (high <= low))
+			throw new IllegalArgumentException("Invalid watermarks: " + low
+					+ ", " + high);
+		lowWatermark = low;
+		highWatermark = high;
+	}
+
+	/**
+	 * Set the maximum length of a message received. A connection that
+	 * announces a longer message is closed (as broken), before any buffer
+	 * is allocated for it.
+	 *
+	 * @param length Maximum length of a message (in bytes)
+	 */
+	public void setMaxFrameLength(int length) {
+		if (length <= 0)
+			throw new IllegalArgumentException("Invalid maximum message length: "
+					+ length);
+		maxFrameLength = length;
+	}
+
+	/**
+	 * @return the size of the largest message received
+	 */
+	public int getMaxFrame() {
+		return maxFrame;
+	}
+
+	/**
+	 * Reset the statistics of the received messages and of the pool
+	 */
+	public void reset() {
+		frames.reset();
+		frameBytes.reset();
+		largeFrames.reset();
+		movedBytes.reset();
+		maxFrame = 0;
+		pool.reset();
+	}
+
+	/**
+	 * Close all the servers and connections and stop the selector thread.
+	 */
+	public void close() {
+		open = false;
+		selector.wakeup();
+	}
+
+	// Ask the selector thread to update a server or a connection
+	private void post(Object o) {
+		synchronized (pendingLock) {
+			pending.add(o);
+			if (pending.size() > 1)
+				return;
+		}
+		selector.wakeup();
+	}
+
+	/**
+	 * Thread that waits for the sockets to be ready and does the
+	 * non-blocking I/O.
+	 */
+	public void run() {
+		while (open) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				System.err.println("SelectorTCP : run : I/O error");
+				e.printStackTrace();
+				System.exit(1);
+			}
+
+			ArrayList<Object> l;
+			synchronized (pendingLock) {
+				l = pending;
+				pending = updating;
+				updating = l;
+			}
+			for (int i = 0; i < l.size(); i++) {
+				Object o = l.get(i);
+				if (o instanceof SelectorServer)
+					((SelectorServer) o).update();
+				else
+					((SelectorConnection) o).update();
+			}
+			l.clear();
+
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+			while (it.hasNext()) {
+				SelectionKey key = it.next();
+				it.remove();
+				if (!key.isValid())
+					continue;
+				Object o = key.attachment();
+				if (o instanceof SelectorServer)
+					((SelectorServer) o).accept();
+				else
+					((SelectorConnection) o).ready();
+			}
+		}
+
+		Iterator<SelectionKey> it = selector.keys().iterator();
+		while (it.hasNext()) {
+			Object o = it.next().attachment();
+			if (o instanceof SelectorServer)
+				((SelectorServer) o).closeChannel();
+			else
+				((SelectorConnection) o).close();
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * A message (or the local PID) to be written on a connection
+	 */
+	private static class Frame {
+		ByteBuffer header;
+		ByteBuffer body;
+		// Set by setMessageToSend (as opposed to sendMessage)
+		boolean async;
+		boolean done = false;
+
+		Frame(byte[] message, boolean async) {
+			header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(0, message.length);
+			body = ByteBuffer.wrap(message);
+			this.async = async;
+		}
+
+		Frame(byte[] raw) {
+			header = ByteBuffer.wrap(raw);
+			body = EMPTY;
+		}
+
+		boolean written() {
+			return !header.hasRemaining() && !body.hasRemaining();
+		}
+
+		synchronized void complete() {
+			done = true;
+			notifyAll();
+		}
+
+		synchronized void waitDone() {
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException ie) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Server accepting connections with the selector
+	 */
+	private class SelectorServer extends Server {
+		private ServerSocketChannel channel;
+		private boolean registered = false;
+		private boolean closed = false;
+
+		SelectorServer(ServerSocketChannel channel) {
+			super(myself);
+			this.channel = channel;
+		}
+
+		public synchronized void close() {
+			closed = true;
+			post(this);
+		}
+
+		// Called by the selector thread
+		void update() {
+			synchronized (this) {
+				if (closed) {
+					closeChannel();
+					return;
+				}
+			}
+			if (registered)
+				return;
+			try {
+				channel.register(selector, SelectionKey.OP_ACCEPT, this);
+				registered = true;
+			} catch (IOException e) {
+				System.err.println("SelectorTCP : register : I/O error");
+				e.printStackTrace();
+				System.exit(1);
+			}
+		}
+
+		void accept() {
+			while (true) {
+				SocketChannel s = null;
+				try {
+					s = channel.accept();
+				} catch (IOException e) {
+					System.err.println("SelectorTCP : accept : I/O error");
+					e.printStackTrace();
+					System.exit(1);
+				}
+				if (s == null)
+					return;
+				new SelectorConnection(null, s).update();
+			}
+		}
+
+		void closeChannel() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Connection run by the selector thread. The fields without comment
+	 * are only used by the selector thread.
+	 */
+	private class SelectorConnection extends Connection {
+		private SocketChannel channel;
+		private SelectionKey key = null;
+		// Connection to the local process (without socket)
+		private boolean self;
+		// Whether the connection was initiated by the local process
+		private boolean initiator;
+		private boolean connecting = false;
+		private boolean inputClosed = false;
+		private boolean outputShut = false;
+		private boolean closed = false;
+		// Receive buffer: the bytes between parsed and the position are
+		// not parsed yet, and needed bytes are needed to parse the next
+		// message (0 if unknown)
+		private BufferPool.Chunk chunk = null;
+		private ByteBuffer in;
+		private int parsed = 0;
+		private int needed = 0;
+		// Frames being written, in order
+		private ArrayDeque<Frame> out = new ArrayDeque<Frame>();
+		// Frames given by the other threads (protected by this)
+		private ArrayList<Frame> outgoing = new ArrayList<Frame>();
+		// Bytes given by setMessageToSend and not written yet, and whether
+		// the parent waits for readyForNextMessage (protected by this)
+		private long queued = 0;
+		private boolean readyPending = true;
+
+		SelectorConnection(PID remote, SocketChannel channel) {
+			super(myself, remote, SelectorTCP.this.parent, false);
+			this.channel = channel;
+			initiator = (channel == null);
+			self = myself.equals(remote);
+		}
+
+		public synchronized void disconnect() {
+			exit = true;
+			post(this);
+		}
+
+		public synchronized void startSender() {
+			sender = true;
+			post(this);
+		}
+
+		public synchronized void stopSender() {
+			sender = false;
+		}
+
+		public synchronized void startReceiver() {
+			receiver = true;
+			post(this);
+		}
+
+		public synchronized void stopReceiver() {
+			receiver = false;
+			post(this);
+		}
+
+		/**
+		 * Queue the message.
+		 *
+		 * @return true if the connection accepts the next message right
+		 * away, false if it is full (<i>readyForNextMessage</i> will be
+		 * called)
+		 */
+		public synchronized boolean setMessageToSend(byte[] message) {
+			if (readyPending && ((messageToSend != null) || (queued > 0)))
+				throw new RuntimeException("messageToSend != null!!!!");
+			post(this);
+			if (self) {
+				messageToSend = message;
+				readyPending = true;
+				return false;
+			}
+			outgoing.add(new Frame(message, true));
+			queued += message.length + 4;
+			if (queued < highWatermark)
+				return true;
+			readyPending = true;
+			return false;
+		}
+
+		/**
+		 * Queue the message and wait until it is written to the socket
+		 * (without waiting if called by the selector thread).
+		 */
+		public void sendMessage(byte[] b) {
+			if (self) {
+				parent.recv(b, this);
+				return;
+			}
+			Frame f = new Frame(b, false);
+			synchronized (this) {
+				outgoing.add(f);
+			}
+			post(this);
+			if (Thread.currentThread() != thread)
+				f.waitDone();
+		}
+
+		private synchronized boolean exiting() {
+			return exit;
+		}
+
+		private synchronized boolean receiving() {
+			return receiver && !exit;
+		}
+
+		// Called by the selector thread after a call of the other threads
+		void update() {
+			if (closed) {
+				close();
+				return;
+			}
+			if (self) {
+				updateSelf();
+				return;
+			}
+			if (key == null) {
+				register();
+				return;
+			}
+			if (exiting() && !connected) {
+				close();
+				return;
+			}
+			try {
+				synchronized (this) {
+					out.addAll(outgoing);
+					outgoing.clear();
+				}
+				if (!connecting) {
+					write();
+					parse();
+					interest();
+				}
+			} catch (IOException e) {
+				fail();
+				return;
+			}
+			notifyReady();
+		}
+
+		private void register() {
+			if (!initiator) {
+				// Protocol for the connection receiver: send local PID
+				try {
+					socket = channel.socket();
+					channel.configureBlocking(false);
+					socket.setTcpNoDelay(true);
+					key = channel.register(selector, SelectionKey.OP_READ, this);
+					setChunk(pool.acquire());
+					out.add(new Frame(pid));
+					write();
+				} catch (IOException e) {
+					close();
+				}
+				return;
+			}
+
+			// Protocol for the connection initiator
+			try {
+				channel = SocketChannel.open();
+				socket = channel.socket();
+				channel.configureBlocking(false);
+				socket.setTcpNoDelay(true);
+				key = channel.register(selector, 0, this);
+				setChunk(pool.acquire());
+				if (channel.connect(new InetSocketAddress(remote.ip, remote.port)))
+					key.interestOps(SelectionKey.OP_READ);
+				else {
+					connecting = true;
+					key.interestOps(SelectionKey.OP_CONNECT);
+				}
+			} catch (IOException e) {
+				connectFailed();
+			}
+		}
+
+		private void connectFailed() {
+			close();
+			parent.connected(remote, null);
+		}
+
+		private void updateSelf() {
+			boolean first;
+			synchronized (this) {
+				first = !connected;
+				connected = true;
+			}
+			if (first)
+				parent.connected(remote, this);
+
+			byte[] m = null;
+			synchronized (this) {
+				if (receiver && !exit && (messageToSend != null)) {
+					m = messageToSend;
+					messageToSend = null;
+				}
+			}
+			if (m != null)
+				parent.recv(m, this);
+			notifyReady();
+		}
+
+		// Called by the selector thread when the socket is ready
+		void ready() {
+			if (connecting) {
+				if (!key.isConnectable())
+					return;
+				try {
+					if (!channel.finishConnect())
+						return;
+				} catch (IOException e) {
+					connectFailed();
+					return;
+				}
+				connecting = false;
+				key.interestOps(SelectionKey.OP_READ);
+				return;
+			}
+
+			try {
+				if (key.isReadable())
+					read();
+				if (!closed && key.isWritable())
+					write();
+				if (!closed)
+					interest();
+			} catch (IOException e) {
+				fail();
+				return;
+			}
+			if (!closed)
+				notifyReady();
+		}
+
+		private void read() throws IOException {
+			prepareRead();
+			if (channel.read(in) < 0) {
+				inputClosed = true;
+				if (!connected) {
+					// Connection closed during the connection protocol
+					fail();
+				} else {
+					parent.closed(this);
+					if (outputShut)
+						close();
+				}
+				return;
+			}
+			parse();
+		}
+
+		private void setChunk(BufferPool.Chunk c) {
+			chunk = c;
+			in = c.buffer();
+			in.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		// Make room for the next read in the receive buffer, and for the
+		// whole message being received. The buffer is reused if no message
+		// refers to it, otherwise the partial message is moved to another
+		// one.
+		private void prepareRead() {
+			int unparsed = in.position() - parsed;
+			if ((unparsed == 0) && (chunk.references() == 1)) {
+				in.clear();
+				parsed = 0;
+				return;
+			}
+			if ((needed > 0) ? (parsed + needed <= in.capacity())
+					: (in.remaining() >= MIN_READ))
+				return;
+
+			int size = Math.max(needed, unparsed + MIN_READ);
+			if ((chunk.references() == 1) && (size <= in.capacity())) {
+				in.limit(in.position());
+				in.position(parsed);
+				in.compact();
+			} else {
+				ByteBuffer rest = in.duplicate();
+				rest.limit(in.position());
+				rest.position(parsed);
+				BufferPool.Chunk c;
+				if (size > pool.getBufferSize())
+					c = BufferPool.unpooled(ByteBuffer.allocate(size));
+				else
+					c = pool.acquire();
+				BufferPool.Chunk old = chunk;
+				setChunk(c);
+				in.put(rest);
+				old.release();
+			}
+			parsed = 0;
+			movedBytes.add(unparsed);
+		}
+
+		// Parse the PID of the remote process and the messages received
+		private void parse() throws IOException {
+			int end = in.position();
+			needed = 0;
+			while (!closed && (end - parsed >= 4)) {
+				int length = in.getInt(parsed);
+				if (!connected) {
+					if ((length < 0) || (length > MAX_HOST_LENGTH))
+						throw new IOException("Invalid connection protocol");
+					if (end - parsed < length + 12) {
+						needed = length + 12;
+						break;
+					}
+					byte[] host = new byte[length];
+					ByteBuffer b = in.duplicate();
+					b.position(parsed + 4);
+					b.get(host);
+					int port = in.getInt(parsed + 4 + length);
+					int incarnation = in.getInt(parsed + 8 + length);
+					parsed += length + 12;
+					InetAddress inet;
+					try {
+						inet = InetAddress.getByName(new String(host));
+					} catch (UnknownHostException ex) {
+						throw new IOException();
+					}
+					remoteConnected(new PID(inet, port, incarnation));
+				} else if (exiting()) {
+					// Discard the messages received after disconnect
+					parsed = end;
+				} else {
+					if (!receiving())
+						break;
+					if ((length < 0) || (length > maxFrameLength))
+						throw new IOException("Invalid message length: " + length);
+					if (end - parsed < length + 4) {
+						needed = length + 4;
+						break;
+					}
+					ByteBuffer m = in.duplicate();
+					m.limit(parsed + 4 + length);
+					m.position(parsed + 4);
+					parsed += length + 4;
+
+					frames.increment();
+					frameBytes.add(length);
+					if (length > maxFrame)
+						maxFrame = length;
+					if (length + 4 > pool.getBufferSize())
+						largeFrames.increment();
+
+					//Deliver message to the transport
+					chunk.retain();
+					parent.recv(new ReceivedFrame(m.slice(), chunk), this);
+				}
+			}
+		}
+
+		private void remoteConnected(PID p) throws IOException {
+			if (!initiator) {
+				remote = p;
+				synchronized (this) {
+					connected = true;
+				}
+				parent.accepted(this);
+				return;
+			}
+
+			if (exiting()) {
+				close();
+				return;
+			}
+			if (!p.equals(remote)) {
+				//Ooops, different incarnation
+				close();
+				parent.broken(this);
+				return;
+			}
+			//Send local PID
+			out.addFirst(new Frame(pid));
+			write();
+			synchronized (this) {
+				connected = true;
+			}
+			parent.connected(remote, this);
+		}
+
+		// Write as many frames as possible, then shut down the output
+		// after a disconnection
+		private void write() throws IOException {
+			while (!out.isEmpty()) {
+				int n = 0;
+				long length = 0;
+				Iterator<Frame> it = out.iterator();
+				while (it.hasNext() && (n < gather.length)) {
+					Frame f = it.next();
+					gather[n++] = f.header;
+					gather[n++] = f.body;
+					length += f.header.remaining() + f.body.remaining();
+				}
+				long written = channel.write(gather, 0, n);
+				while (!out.isEmpty() && out.peekFirst().written())
+					complete(out.removeFirst());
+				if (written < length)
+					// The socket buffer is full
+					break;
+			}
+
+			if (out.isEmpty() && connected && !outputShut && exiting()) {
+				outputShut = true;
+				socket.shutdownOutput();
+				if (inputClosed)
+					close();
+			}
+		}
+
+		private void complete(Frame f) {
+			if (f.async) {
+				synchronized (this) {
+					queued -= f.header.capacity() + f.body.capacity();
+				}
+			} else
+				f.complete();
+		}
+
+		private void interest() {
+			if (closed)
+				return;
+			int ops = 0;
+			if (!inputClosed && (!connected || exiting() || receiving()))
+				ops |= SelectionKey.OP_READ;
+			if (!out.isEmpty())
+				ops |= SelectionKey.OP_WRITE;
+			key.interestOps(ops);
+		}
+
+		private void notifyReady() {
+			boolean notify;
+			synchronized (this) {
+				notify = connected && sender && !exit && readyPending
+						&& (messageToSend == null) && (queued <= lowWatermark);
+				if (notify)
+					readyPending = false;
+			}
+			if (notify)
+				parent.readyForNextMessage(this);
+		}
+
+		// The socket failed: the connection is broken
+		private void fail() {
+			if (closed)
+				return;
+			close();
+			if (connected || initiator)
+				parent.broken(this);
+		}
+
+		// Close the socket and release the threads blocked in sendMessage
+		void close() {
+			closed = true;
+			synchronized (this) {
+				exit = true;
+				out.addAll(outgoing);
+				outgoing.clear();
+			}
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+				}
+			}
+			while (!out.isEmpty())
+				out.removeFirst().complete();
+			if (chunk != null) {
+				chunk.release();
+				chunk = null;
+			}
+		}
+	}
+}
@@ -82,6 +82,15 @@ public class Server implements Runnable {
 		listen.start();
 	}
 
+	/**
+	 * Constructor used by the subclasses that accept the connections with 
+	 * their own threads (see {@link SelectorTCP}). No socket is opened 
+	 * and no thread is started.
+	 */
+	protected Server(PID myself) {
+		this.myself = myself;
+	}
+
 	/**
 	 * Thread that listens for new connections. </br>
 	 * When a new connection arrives from a remote process, it tries to add it to
@@ -89,6 +89,15 @@ public interface TCPStackInterface{
      * @param c The Connection that received the message
      */
     public void recv(byte[] b, Connection c);
+    /**
+     * This method notifies of a message reception from the network, when the message is still in the 
+     * receive buffer of the connection (see {@link SelectorTCP}). The frame has to be released once 
+     * the message is unmarshalled.
+     * 
+     * @param f The message (yet to be unmarshalled)
+     * @param c The Connection that received the message
+     */
+    public void recv(ReceivedFrame f, Connection c);
      //public void sendMessage(byte[] b, Connection c); /*May block*/
      //public void startReceiver(Connection c);
      //public void stopReceiver(Connection c);
@@ -25,6 +25,7 @@ package groupcomm.common.abcast;
 
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -38,16 +39,17 @@ import framework.PID;
 import framework.libraries.FlowControl;
 import framework.libraries.Timer;
 import framework.libraries.Trigger;
+import framework.libraries.WindowedFlowControl;
 import framework.libraries.serialization.TArrayList;
 import framework.libraries.serialization.TBoolean;
 import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.THashMap;
 import framework.libraries.serialization.THashSet;
 import framework.libraries.serialization.TLinkedHashMap;
+import framework.libraries.serialization.TLinkedList;
 import framework.libraries.serialization.TList;
 import framework.libraries.serialization.TLong;
 import framework.libraries.serialization.TMap;
-import framework.libraries.serialization.TSet;
 
 /**
  * <b> This class implements the common code for algorithm abcast. </b>
@@ -68,6 +70,10 @@ public class AbcastImpl {
 
     // Variables for flow control
     private FlowControl flow_control;
+    // Not null if the flow control counts credits (messages not A-delivered)
+    private WindowedFlowControl credits = null;
+    // Bytes of the messages not A-delivered that block the flow control
+    private long windowBytes = WINDOW_BYTES;
     private int fc_key;
     private int nbMsgsSent = 0;
 
@@ -75,29 +81,63 @@ public class AbcastImpl {
     private Timer timer;
     private boolean timerOn = false;
     private final int INACTIVITY_TIMEOUT = 5 * 1000;//10 * 1000; // seconds
+    // Period of the fetch requests (id ordering)
+    private final int FETCH_TIMEOUT = 1000;
+    // Key of the fetch timer (the instances start at 1)
+    private static final TLong FETCH_TIMER = new TLong(0);
 
     // Known processes, to send the broadcast messages : Contains PID
     private TArrayList known;
-    // A-delivered messages : Set (AbcastMessageID)
-    private TSet aDelivered;
+    // A-delivered messages : watermark and bitmap per sender
+    private DeliveredSet aDelivered;
     // A-Undelivered messages : FIFO-order Map (AbcastMessageID -> GroupCommMessage m)
     private TLinkedHashMap aUndelivered;
-    // Bound for old A-delivered messages : Table (PID -> Integer) 
-    private TMap maxIdProProc;
     // id for consensus requests
     private long k;
+    // id of the next consensus whose decision is delivered
+    private long kDeliver;
+    // Decisions that arrived before the ones of previous instances : Table (TLong k -> TLinkedHashMap)
+    private TMap earlyDecisions;
+    // Messages proposed in the instances not delivered yet : Table (TLong k -> TCollection (AbcastMessageID))
+    private TMap proposals;
+    // A-Undelivered messages proposed in the instances not delivered yet : Set (AbcastMessageID)
+    private THashSet proposed;
     // id for highest consensus ever heard from
     private long gossipK;
     // Abcast message current id
     private AbcastMessageID abcastId;
-    // Is a consensus running ?
-    private boolean consensusStarted;
+    // Maximum number of consensus running in parallel
+    private int window = 1;
+    // Does consensus order the message ids only (not the messages) ?
+    private boolean idOrdering = false;
+    // Decided messages not A-delivered yet, in delivery order (id ordering) :
+    // FIFO-order Map (AbcastMessageID -> GroupCommMessage m, null until m is received)
+    private TLinkedHashMap waiting;
+    // A-delivered messages, kept to answer fetch requests until a majority
+    // of the processes A-delivered them (id ordering) :
+    // FIFO-order Map (AbcastMessageID -> GroupCommMessage m)
+    private TLinkedHashMap kept;
+    // Messages waiting or kept, by instance of their decision (id ordering) :
+    // Map (AbcastMessageID -> TLong k)
+    private THashMap decidedIn;
+    // Messages waiting or kept, by decision (id ordering) :
+    // FIFO-order Map (TLong k -> TLinkedList (AbcastMessageID))
+    private TLinkedHashMap decisions;
+    // Instance below which each other process A-delivered all the decided
+    // messages, as it told us (id ordering) : Map (PID -> TLong k)
+    private THashMap delivered;
+    // Instance last told to the other processes (id ordering)
+    private long reported = 1;
+    // Decided messages whose payload has been requested (id ordering) : Set (AbcastMessageID)
+    private THashSet fetching;
 
     public static final int MIN_LOCALLY_ABCAST = 1;
     //public static final int MAX_UNDELIVERED = 8;
     //public static final int MAX_PROPOSE = 4;
     public static final int MSGS_PER_CONSENSUS = 4;
-    private int max_locally_abcast = MSGS_PER_CONSENSUS;
+    public static final long WINDOW_BYTES = 4 * 1024 * 1024;
+    // Batching of the messages in the consensus instances
+    private BatchingPolicy batching = new FixedBatchingPolicy(MSGS_PER_CONSENSUS, MIN_LOCALLY_ABCAST);
 
     private static final Logger logger =
 	Logger.getLogger(AbcastImpl.class.getName());
@@ -121,15 +161,105 @@ public class AbcastImpl {
 	logger.entering("AbcastImpl","<constr>");
 	this.abcast = abcast;
 	this.flow_control = fc;
+	if (fc instanceof WindowedFlowControl)
+	    this.credits = (WindowedFlowControl) fc;
     this.myself = myself;
     this.timer = t;
-	aDelivered = new THashSet();
+	aDelivered = new DeliveredSet();
 	aUndelivered = new TLinkedHashMap();
-	maxIdProProc = new THashMap();
+	earlyDecisions = new THashMap();
+	proposals = new THashMap();
+	proposed = new THashSet();
+	waiting = new TLinkedHashMap();
+	kept = new TLinkedHashMap();
+	decidedIn = new THashMap();
+	decisions = new TLinkedHashMap();
+	delivered = new THashMap();
+	fetching = new THashSet();
 	abcastId = new AbcastMessageID(myself, 0);
 	logger.exiting("AbcastImpl","<constr>");
     }
 
+    /**
+     * Set the maximum number of consensus instances running in parallel
+     * (1 by default). Instances k+1 to k+window-1 are proposed while
+     * instance k is undecided, with messages not proposed in the running
+     * instances; the decisions are delivered in instance order.
+     *
+     * @param window The number of consensus instances
+     */
+    public void setConsensusWindow(int window) {
+	if (window < 1)
+	    throw new RuntimeException("AbcastImpl: the consensus window must be at least 1: "
+				       + window);
+	this.window = window;
+    }
+
+    /**
+     * Set the policy that chooses the messages of a proposal and the bound
+     * of the flow control (a {@link FixedBatchingPolicy} by default). The
+     * bound of the flow control is multiplied by the consensus window.
+     *
+     * @param batching The batching policy
+     */
+    public void setBatchingPolicy(BatchingPolicy batching) {
+	this.batching = batching;
+    }
+
+    /**
+     * @return the batching policy
+     */
+    public BatchingPolicy getBatchingPolicy() {
+	return batching;
+    }
+
+    // Bound of the flow control
+    private int maxLocallyAbcast() {
+	return batching.maxLocallyAbcast() * window;
+    }
+
+    /**
+     * Set the size of the messages abcast and not A-delivered yet above which
+     * the flow control is blocked (4 MB by default), as estimated by
+     * {@link BatchingStatistics#sizeOf(uka.transport.Transportable)}. It is
+     * only used when the flow control counts credits.
+     *
+     * @param bytes The window of the flow control in bytes
+     */
+    public void setWindowBytes(long bytes) {
+	if (bytes < 1)
+	    throw new RuntimeException("AbcastImpl: the window must be positive: "
+				       + bytes);
+	this.windowBytes = bytes;
+	if (initialized)
+	    setCreditWindow();
+    }
+
+    // Follow the bound of the flow control with the window of credits
+    private void setCreditWindow() {
+	if (credits != null)
+	    credits.setWindow(fc_key, windowBytes,
+			      Math.max(1, maxLocallyAbcast()));
+    }
+
+    /**
+     * Make consensus order the ids of the messages instead of the messages
+     * themselves (false by default). The messages are A-delivered from the
+     * copies received by Pt2Pt; the copy of a decided message not received
+     * yet is fetched from the other processes. A message is kept to answer
+     * the fetch requests until a majority of the processes A-delivered it,
+     * so that the processes that crash do not make the others keep all the
+     * later messages in memory. All the processes of the group must use the same setting, before the
+     * <i>Init</i> event.
+     *
+     * @param idOrdering True if consensus orders the message ids only
+     */
+    public void setIdOrdering(boolean idOrdering) {
+	if (initialized)
+	    throw new RuntimeException("AbcastImpl: id ordering set after init");
+	this.idOrdering = idOrdering;
+    }
+
     /**
      * Handler for the <i>Init</i> event. </br>
      * It sends the list of known processes to the lower layer allowing them to communicate with us
@@ -148,9 +278,10 @@ public class AbcastImpl {
 	    throw new GroupCommException("AbcastImpl already initialized.");
 	initialized = true;
     fc_key = flow_control.getFreshKey();
+    setCreditWindow();
 	k = 1;
+	kDeliver = 1;
     gossipK = 1;
-	consensusStarted = false;
     // timer
     //timer.schedule(new TLong(k), false, INACTIVITY_TIMEOUT);
     //timerOn = true;
@@ -168,9 +299,16 @@ public class AbcastImpl {
 	PID pid;
 	while (it.hasNext()) {
 	    pid = (PID)it.next();
-	    maxIdProProc.put(pid, new TLong(-1));
+	    aDelivered.addProcess(pid);
+	    if (!pid.equals(myself))
+		delivered.put(pid, new TLong(1));
 	}
 
+	// The decided messages not received yet are fetched again, and the
+	// other processes told what we A-delivered, on a timer of their own
+	if (idOrdering)
+	    timer.schedule(FETCH_TIMER, true, FETCH_TIMEOUT);
+
 	// join-remove
 	GroupCommEventArgs jrl = new GroupCommEventArgs();
 	jrl.addLast(new THashSet(p)); // join
@@ -199,30 +337,34 @@ public class AbcastImpl {
     aUndelivered.put(id, cloneM);
 
     //Flow control
-    //flow_control.alloc(fc_key, 1);
     nbMsgsSent++; 
-    if (nbMsgsSent >= max_locally_abcast)
+    if (credits != null)
+        credits.alloc(fc_key, 1, creditSize(cloneM));
+    else if (nbMsgsSent >= maxLocallyAbcast())
         flow_control.block(fc_key);
     
     TriggerItem propose = testAndConsensus();
    
 	msg.tpack(id);
 	// id::m
-	Iterator it = ((TList)known.clone()).iterator();
+	// The message is serialized once for all the destinations
+	TLinkedList dests = new TLinkedList();
+	Iterator it = known.iterator();
 	while (it.hasNext()) {
 	    PID pid = (PID)it.next();
-        if(!pid.equals(myself)){ // Sergio - 8 mar 2006 - added for optimization
-            GroupCommMessage newMess = msg.cloneGroupCommMessage();
-            GroupCommEventArgs  pt2ptSend = new GroupCommEventArgs();
-            pt2ptSend.addLast(newMess);
-            pt2ptSend.addLast(pid);
-            pt2ptSend.addLast(new TBoolean(false)); // not promisc
-            logger.log(Level.FINE,
-                   "Sending Pt2Pt message id: {0} to {1}\n\tMessage: {2}",
-                   new Object[]{id, pid,newMess});
-            abcast.trigger (Constants.PT2PTSEND, pt2ptSend);
-        }
+        if(!pid.equals(myself)) // Sergio - 8 mar 2006 - added for optimization
+            dests.addLast(pid);
 	}
+    if (!dests.isEmpty()) {
+        GroupCommEventArgs  pt2ptSend = new GroupCommEventArgs();
+        pt2ptSend.addLast(msg);
+        pt2ptSend.addLast(dests);
+        pt2ptSend.addLast(new TBoolean(false)); // not promisc
+        logger.log(Level.FINE,
+               "Sending Pt2Pt message id: {0} to {1}\n\tMessage: {2}",
+               new Object[]{id, dests, msg});
+        abcast.trigger (Constants.PT2PTMULTISEND, pt2ptSend);
+    }
 
     // Sergio - 8 mar 2006 - added for optimization
     if (propose != null)
@@ -258,14 +400,30 @@ public class AbcastImpl {
         logger.exiting("AbcastImpl","handlePt2PtDeliver");
         return;
     }
+    if(t instanceof TList){ //somebody asks for the messages it has to deliver
+        handleFetch((TList) t, ((TLong) msg.tunpack()).longValue(), source);
+        logger.exiting("AbcastImpl","handlePt2PtDeliver");
+        return;
+    }
     AbcastMessageID id = (AbcastMessageID) t; 
 	// msg = m
 	logger.log(Level.FINE,
 		   "Receiving message id: {0} from {1}\n\tMessage: {2}", 
 		   new Object[]{id, source, msg});
-	if (! aUndelivered.containsKey(id) &&
-	    ! aDelivered.contains(id) &&
-	    ! (id.id <= ((TLong)maxIdProProc.get(id.proc)).longValue())) {
+	if (waiting.containsKey(id)) {
+	    // Already decided (id ordering): A-deliver it if it was missing
+	    if (waiting.get(id) == null) {
+		waiting.put(id, msg);
+		fetching.remove(id);
+		TLinkedHashMap toTrigger = new TLinkedHashMap();
+		deliverWaiting(toTrigger);
+		//Flow control
+		if (credits == null && nbMsgsSent < maxLocallyAbcast())
+		    flow_control.release(fc_key);
+		adeliver(toTrigger);
+	    }
+	} else if (! aUndelivered.containsKey(id) &&
+	    ! aDelivered.contains(id)) {
 	    aUndelivered.put(id, msg);
         TriggerItem propose = testAndConsensus();
 
@@ -287,7 +445,7 @@ public class AbcastImpl {
 	    }
         */
         //Flow control
-        if (nbMsgsSent >= max_locally_abcast)
+        if (credits == null && nbMsgsSent >= maxLocallyAbcast())
             flow_control.block(fc_key);       
 
 	    if (propose != null)
@@ -296,11 +454,75 @@ public class AbcastImpl {
 	logger.exiting("AbcastImpl","handlePt2PtDeliver");
     }
     
+    // Send the copies we have of the requested messages to the source, and
+    // discard the messages a majority of the processes A-delivered
+    private void handleFetch(TList ids, long sourceDelivered, PID source) {
+	Iterator it = ids.iterator();
+	while (it.hasNext()) {
+	    AbcastMessageID id = (AbcastMessageID)it.next();
+	    GroupCommMessage m = (GroupCommMessage)aUndelivered.get(id);
+	    if (m == null)
+		m = (GroupCommMessage)waiting.get(id);
+	    if (m == null)
+		m = (GroupCommMessage)kept.get(id);
+	    if (m != null) {
+		GroupCommMessage reply = m.cloneGroupCommMessage();
+		// id::m
+		reply.tpack(id);
+		GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+		pt2ptSend.addLast(reply);
+		pt2ptSend.addLast(source);
+		pt2ptSend.addLast(new TBoolean(false)); // not promisc
+		abcast.trigger(Constants.PT2PTSEND, pt2ptSend);
+	    }
+	}
+
+	if (sourceDelivered > ((TLong)delivered.get(source)).longValue()) {
+	    delivered.put(source, new TLong(sourceDelivered));
+	    discardKept();
+	}
+    }
+
+    // Instance below which all the decided messages are A-delivered
+    private long deliveredInstance() {
+	if (waiting.isEmpty())
+	    return kDeliver;
+	Transportable first = (Transportable)waiting.keySet().iterator().next();
+	return ((TLong)decidedIn.get(first)).longValue();
+    }
+
+    // Discard the kept messages of the instances a majority of the processes
+    // (us included) A-delivered
+    private void discardKept() {
+	long[] instances = new long[delivered.size() + 1];
+	instances[0] = deliveredInstance();
+	int i = 1;
+	Iterator it = delivered.values().iterator();
+	while (it.hasNext())
+	    instances[i++] = ((TLong)it.next()).longValue();
+	// Instance below which a majority A-delivered all the decided messages
+	Arrays.sort(instances);
+	long min = instances[(instances.length - 1) / 2];
+	while (! decisions.isEmpty()) {
+	    TLong kDecision = (TLong)decisions.keySet().iterator().next();
+	    if (kDecision.longValue() >= min)
+		return;
+	    it = ((TLinkedList)decisions.remove(kDecision)).iterator();
+	    while (it.hasNext()) {
+		Transportable id = (Transportable)it.next();
+		kept.remove(id);
+		decidedIn.remove(id);
+	    }
+	}
+    }
+
     /**
      * The handler for the <i>Decide</i> event. <br/>
      * It happends when consensus has decided an order to ADeliver messages
      * We are sure that it's the same for everybody, but we test
-     * if the message isn't already delivered.
+     * if the message isn't already delivered. The decision is shared
+     * with consensus: it is read but not modified. With id ordering, the
+     * decision is the list of the ids to A-deliver.
      *
      * @param ev <dl>
      *               <dt> arg1: GroupCommMessage (k::Decision) </dt> <dd> The decision </dd>
@@ -310,73 +532,190 @@ public class AbcastImpl {
      */
     public void handleDecide(GroupCommEventArgs ev) throws GroupCommException {
 	logger.entering("AbcastImpl","handleDecide");
-	TLinkedHashMap undelivered = (TLinkedHashMap)ev.removeFirst();
+	Transportable undelivered = ev.removeFirst();
 	long kdecision = ((TLong)(ev.removeFirst())).longValue();
-	if (kdecision + 1 != k) 
-	    throw new GroupCommException("AbcastImpl: handleDecide: Unordered decide event: incoming = "
-				  +kdecision+", expected = "+(k-1));
-
-    //Feed-back for flow-control
-    if(undelivered.size() < MSGS_PER_CONSENSUS) max_locally_abcast = Math.min(MSGS_PER_CONSENSUS * 2, max_locally_abcast + 1);
-    if(undelivered.size() > MSGS_PER_CONSENSUS) max_locally_abcast = Math.max(MIN_LOCALLY_ABCAST, max_locally_abcast - 1);
+	if (kdecision < kDeliver || kdecision >= k)
+	    throw new GroupCommException("AbcastImpl: handleDecide: Unexpected decide event: incoming = "
+				  +kdecision+", expected between "+kDeliver+" and "+(k-1));
+
+	// The decisions are delivered in instance order
+	if (kdecision != kDeliver) {
+	    earlyDecisions.put(new TLong(kdecision), undelivered);
+	    logger.exiting("AbcastImpl","handleDecide");
+	    return;
+	}
 
-	GroupCommMessage msg, delivered;
-	AbcastMessageID id;
 	TLinkedHashMap toTrigger = new TLinkedHashMap();
-	while (! undelivered.isEmpty()) {
-	    id = (AbcastMessageID)undelivered.keySet().iterator().next(); //firstKey();
-	    msg = (GroupCommMessage)undelivered.remove(id);
-	    delivered = msg.cloneGroupCommMessage();
-	    long maxId = ((TLong)maxIdProProc.get(id.proc)).longValue();
-	    if (!aDelivered.contains(id) && id.id > maxId) {
-		// Remove the id from aUndelivered
-		aUndelivered.remove(id);
-		// add it in aDelivered
-		aDelivered.add (id);
-		// Book for adeliver later
-		toTrigger.put(id, delivered);
-		//Flow control
-		if(id.proc.equals(myself)){
-            //flow_control.free(fc_key, 1);
-            nbMsgsSent--; 
-		}
-		// update the highest aDelivered table 
-		AbcastMessageID newID = new AbcastMessageID(id.proc, maxId+1);
-		while (aDelivered.contains(newID)) {
-		    aDelivered.remove(newID);
-		    maxId++;
-		    newID.id++;
-		}
-		maxIdProProc.put(id.proc, new TLong(maxId));
-	    }
+	while (undelivered != null) {
+	    decide(undelivered, toTrigger);
+	    // The messages proposed in this instance and not decided
+	    // can be proposed again
+	    TCollection ids = (TCollection)proposals.remove(new TLong(kDeliver));
+	    if (ids != null)
+		proposed.removeAll(ids);
+	    kDeliver++;
+	    undelivered = earlyDecisions.remove(new TLong(kDeliver));
 	}
     
     //Flow control
-    if (nbMsgsSent < max_locally_abcast)
+    if (credits == null && nbMsgsSent < maxLocallyAbcast())
         flow_control.release(fc_key);
 
-	consensusStarted = false;
-    // timer
-    timer.schedule(new TLong(k), false, INACTIVITY_TIMEOUT);
-    timerOn = true;
+    // timer (k has not changed if it was already scheduled)
+    if (!timerOn) {
+        timer.schedule(new TLong(k), false, INACTIVITY_TIMEOUT);
+        timerOn = true;
+    }
 
 	TriggerItem propose = testAndConsensus();
 
 	//Now, it's time to adeliver all messages
+	adeliver(toTrigger);
+	
+	if (propose!=null)
+	    abcast.trigger(propose.type, propose.args);
+	
+	logger.exiting("AbcastImpl","handleDecide");
+    }
+
+    // Book the messages of a decision that are not delivered yet in toTrigger
+    private void decide(Transportable decision, TLinkedHashMap toTrigger) {
+	TCollection ids;
+	if (idOrdering)
+	    ids = (TCollection)decision;
+	else
+	    ids = ((TLinkedHashMap)decision).keySet();
+
+    //Feed-back for flow-control
+    batching.decided(kDeliver, ids.size());
+    setCreditWindow();
+
+	AbcastMessageID id;
+	Iterator it = ids.iterator();
+	while (it.hasNext()) {
+	    id = (AbcastMessageID)it.next();
+	    if (isDelivered(id))
+		continue;
+	    if (idOrdering) {
+		// The message is A-delivered once received and once the
+		// messages decided before it are
+		if (!waiting.containsKey(id)) {
+		    waiting.put(id, aUndelivered.remove(id));
+		    proposed.remove(id);
+		    TLong kObj = new TLong(kDeliver);
+		    decidedIn.put(id, kObj);
+		    TLinkedList decided = (TLinkedList)decisions.get(kObj);
+		    if (decided == null) {
+			decided = new TLinkedList();
+			decisions.put(kObj, decided);
+		    }
+		    decided.addLast(id);
+		}
+	    } else {
+		GroupCommMessage msg = (GroupCommMessage)((TLinkedHashMap)decision).get(id);
+		deliver(id, msg.cloneGroupCommMessage(), toTrigger);
+	    }
+	}
+	if (idOrdering)
+	    deliverWaiting(toTrigger);
+    }
+
+    // Book the decided messages in toTrigger, in order, up to the first
+    // one not received yet, which is fetched (id ordering)
+    private void deliverWaiting(TLinkedHashMap toTrigger) {
+	while (! waiting.isEmpty()) {
+	    AbcastMessageID id = (AbcastMessageID)waiting.keySet().iterator().next(); //firstKey();
+	    GroupCommMessage msg = (GroupCommMessage)waiting.get(id);
+	    if (msg == null) {
+		fetch(false);
+		return;
+	    }
+	    waiting.remove(id);
+	    // The application may unpack the message A-delivered
+	    kept.put(id, msg.cloneGroupCommMessage());
+	    deliver(id, msg, toTrigger);
+	}
+    }
+
+    // Ask the other processes for the decided messages not received yet
+    // (again, or only the ones not requested yet) and tell them below which
+    // instance we A-delivered all the decided messages
+    private void fetch(boolean again) {
+	TLinkedList missing = new TLinkedList();
+	Iterator it = waiting.keySet().iterator();
+	while (it.hasNext()) {
+	    AbcastMessageID id = (AbcastMessageID)it.next();
+	    if (waiting.get(id) == null && (again || !fetching.contains(id))) {
+		missing.addLast(id);
+		fetching.add(id);
+	    }
+	}
+	long deliveredK = deliveredInstance();
+	if (missing.isEmpty() && deliveredK == reported)
+	    return;
+	reported = deliveredK;
+	discardKept();
+	TLinkedList dests = new TLinkedList();
+	it = known.iterator();
+	while (it.hasNext()) {
+	    PID pid = (PID)it.next();
+	    if(!pid.equals(myself))
+		dests.addLast(pid);
+	}
+	if (!dests.isEmpty()) {
+	    GroupCommMessage request = new GroupCommMessage();
+	    // deliveredK::missing
+	    request.tpack(new TLong(deliveredK));
+	    request.tpack(missing);
+	    GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+	    pt2ptSend.addLast(request);
+	    pt2ptSend.addLast(dests);
+	    pt2ptSend.addLast(new TBoolean(false)); // not promisc
+	    logger.log(Level.FINE,
+		       "Fetching messages {0} from {1}",
+		       new Object[]{missing, dests});
+	    abcast.trigger (Constants.PT2PTMULTISEND, pt2ptSend);
+	}
+    }
+
+    // Has the message already been A-delivered ?
+    private boolean isDelivered(AbcastMessageID id) {
+	return aDelivered.contains(id);
+    }
+
+    // Book a message not delivered yet in toTrigger
+    private void deliver(AbcastMessageID id, GroupCommMessage msg, TLinkedHashMap toTrigger) {
+	// Remove the id from aUndelivered
+	aUndelivered.remove(id);
+	proposed.remove(id);
+	// add it in aDelivered
+	aDelivered.add(id);
+	// Book for adeliver later
+	toTrigger.put(id, msg);
+	//Flow control
+	if(id.proc.equals(myself)){
+            nbMsgsSent--; 
+            if (credits != null)
+                credits.free(fc_key, 1, creditSize(msg));
+	}
+    }
+
+    // Credit taken by a message of ours (its copy A-delivered has the same size)
+    private int creditSize(GroupCommMessage msg) {
+	return (int)Math.min(Integer.MAX_VALUE, BatchingStatistics.sizeOf(msg));
+    }
+
+    // ADeliver the messages booked in toTrigger
+    private void adeliver(TLinkedHashMap toTrigger) {
 	while (! toTrigger.isEmpty()) {
-	    id = (AbcastMessageID)toTrigger.keySet().iterator().next(); //firstKey();
-	    msg = (GroupCommMessage)toTrigger.remove(id);
+	    AbcastMessageID id = (AbcastMessageID)toTrigger.keySet().iterator().next(); //firstKey();
+	    GroupCommMessage msg = (GroupCommMessage)toTrigger.remove(id);
 	    // ADeliver message
 	    GroupCommEventArgs adeliver = new GroupCommEventArgs();
 	    adeliver.addLast(msg);
-        adeliver.addLast(id.proc);
+	    adeliver.addLast(id.proc);
 	    abcast.trigger(Constants.ADELIVER, adeliver);
 	}
-	
-	if (propose!=null)
-	    abcast.trigger(propose.type, propose.args);
-	
-	logger.exiting("AbcastImpl","handleDecide");
     }
 
     /**
@@ -385,65 +724,88 @@ public class AbcastImpl {
      * This is an optimization to save messages tha are sent
      *
      * @param ev <dl>
-     *               <dt> arg: GroupCommMessage (timerKey) </dt> <dd> Timer key. Discarded </dd>
+     *               <dt> arg: GroupCommMessage (timerKey) </dt> <dd> Timer key </dd>
      *           </dl>
      *
      * @exception None
      */
     public void handleTimeout(GroupCommEventArgs arg){
         logger.entering("AbcastImpl", "handleTimeout");
+        // Ask again for the decided messages not received yet (id ordering)
+        if (FETCH_TIMER.equals(arg.removeFirst())) {
+            fetch(true);
+            logger.exiting("AbcastImpl", "handleTimeout");
+            return;
+        }
         timerOn = false;
 
-        Iterator it = ((TList)known.clone()).iterator();
-        TLong kObj = new TLong(k);
+        TLinkedList dests = new TLinkedList();
+        Iterator it = known.iterator();
         while (it.hasNext()) {
             PID pid = (PID)it.next();
-            if(!pid.equals(myself)){
-                GroupCommMessage myK = new GroupCommMessage();
-                myK.tpack(kObj);
-                GroupCommEventArgs  pt2ptSend = new GroupCommEventArgs();
-                pt2ptSend.addLast(myK);
-                pt2ptSend.addLast(pid);
-                pt2ptSend.addLast(new TBoolean(false)); // not promisc
-                logger.log(Level.FINE,
-                       "Sending special Pt2Pt message myK to {0}\n\tMessage: {1}",
-                       new Object[]{pid, myK});
-                abcast.trigger (Constants.PT2PTSEND, pt2ptSend);
-            }
+            if(!pid.equals(myself))
+                dests.addLast(pid);
+        }
+        if (!dests.isEmpty()) {
+            GroupCommMessage myK = new GroupCommMessage();
+            myK.tpack(new TLong(k));
+            GroupCommEventArgs  pt2ptSend = new GroupCommEventArgs();
+            pt2ptSend.addLast(myK);
+            pt2ptSend.addLast(dests);
+            pt2ptSend.addLast(new TBoolean(false)); // not promisc
+            logger.log(Level.FINE,
+                   "Sending special Pt2Pt message myK to {0}\n\tMessage: {1}",
+                   new Object[]{dests, myK});
+            abcast.trigger (Constants.PT2PTMULTISEND, pt2ptSend);
         }
         logger.exiting("AbcastImpl", "handleTimeout");
     }
 
     private TriggerItem testAndConsensus() {
 	logger.entering("AbcastImpl","testAndConsensus");
-	if ( !consensusStarted && (!aUndelivered.isEmpty() || gossipK > k) ) {
+	// Messages not proposed in the running instances
+	int available = aUndelivered.size() - proposed.size();
+	if ( (k - kDeliver < window) && (available > 0 || gossipK > k) ) {
 	    //I only take maximum of message IDs for the consensus
-	    TMap propose;
-        int sizePropose = Math.max(MSGS_PER_CONSENSUS/2, aUndelivered.size()/2);
-	    if(aUndelivered.size() > sizePropose){
-        // Prevents glitches with tons of messages
-		TCollection ids = aUndelivered.keySet();
-		propose = new TLinkedHashMap();		
-		Iterator it = ids.iterator();
-		for  (int tune=0;
-		      tune < sizePropose && it.hasNext();
-		      tune++){
-		    AbcastMessageID id = (AbcastMessageID)it.next();
-		    propose.put(id, aUndelivered.get(id));
+	    TMap propose = new TLinkedHashMap();
+        int sizePropose = batching.proposalSize(available);
+        long maxBytes = batching.proposalBytes();
+        long bytes = 0;
+	    Iterator it = aUndelivered.keySet().iterator();
+	    while (propose.size() < sizePropose && it.hasNext()){
+		AbcastMessageID id = (AbcastMessageID)it.next();
+		if (!proposed.contains(id)) {
+		    GroupCommMessage m = (GroupCommMessage)aUndelivered.get(id);
+		    long size = BatchingStatistics.sizeOf(m);
+		    if (!propose.isEmpty() && bytes + size > maxBytes)
+			break;
+		    propose.put(id, m);
+		    bytes += size;
 		}
-	    }else{
-		propose = (TLinkedHashMap)aUndelivered.clone();
 	    }
+	    batching.proposed(k, propose.size(), bytes);
 	    TLong kObj = new TLong(k);
+	    // The messages proposed are not proposed again until the
+	    // instance is delivered
+	    proposals.put(kObj, propose.keySet());
+	    proposed.addAll(propose.keySet());
+	    // With id ordering, only the ids are proposed
+	    Transportable value = propose;
+	    if (idOrdering) {
+		TLinkedList ids = new TLinkedList();
+		it = propose.keySet().iterator();
+		while (it.hasNext())
+		    ids.addLast((Transportable)it.next());
+		value = ids;
+	    }
         logger.log(Level.FINE,
                "Launching consensus#{1}:\n\tValue: {0}", 
-               new Object[]{propose , kObj});
+               new Object[]{value , kObj});
 	    k++;
 	    GroupCommEventArgs run = new GroupCommEventArgs();
 	    run.addLast(known); //clone not necessary since group is static
-	    run.addLast(propose);
+	    run.addLast(value);
 	    run.addLast(kObj);
-	    consensusStarted = true;
         // timer
         if(timerOn){
             timer.cancel(new TLong(k-1));
@@ -468,10 +830,12 @@ public class AbcastImpl {
 	PrintStream err = new PrintStream(out);
 	err.println("======== AbcastImpl: dump =======");
 	err.println(" Initialized: "+String.valueOf(initialized));
-	err.println(" ConsensusRunning: "+String.valueOf(consensusStarted));
+	err.println(" ConsensusRunning: "+(k - kDeliver)+" (window: "+window+")");
 	err.println(" Next consensus id: "+k);
+	err.println(" Next consensus delivered: "+kDeliver);
+	err.println(" Id ordering: "+idOrdering);
 	err.println(" Last AbcastMessage id used:\n\t"+abcastId);
-	err.println(" Flow Control threshold: "+MIN_LOCALLY_ABCAST);
+	err.println(" Flow Control threshold: "+maxLocallyAbcast());
 	err.println("\t used: "+nbMsgsSent);
 	err.println(" Known processes: size: "+known.size());
 	Iterator it = known.iterator();
@@ -482,15 +846,14 @@ public class AbcastImpl {
 	}
 	err.println(" A-Undelivered messages:");
 	err.println("   "+aUndelivered.toString());
-	err.println(" A-Delivered messages IDs:");
-	it = aDelivered.iterator();
-	AbcastMessageID id;
-	while (it.hasNext()) {
-	    id = (AbcastMessageID)it.next();
-	    err.println("\t"+id);
+	if (idOrdering) {
+	    err.println(" Decided messages not A-delivered yet:");
+	    err.println("   "+waiting.keySet().toString());
+	    err.println(" Messages kept to answer fetch requests: "+kept.size());
+	    err.println(" Instances A-delivered by the processes: "+delivered);
 	}
-	err.println("   and all message with id <= ");
-	err.println("\t"+maxIdProProc.toString());
+	err.println(" A-Delivered messages IDs:");
+	err.println("\t"+aDelivered);
 	err.println("==================================");
     }
 }
@@ -26,6 +26,9 @@ package groupcomm.common.abcast;
 import uka.transport.Transportable;
 import framework.Compressable;
 import framework.PID;
+import framework.libraries.serialization.CompactInput;
+import framework.libraries.serialization.CompactOutput;
+import framework.libraries.serialization.CompactSerialization;
 
 /**
  * <b> This class implements a data stucture to identify ABCast messages. </b><br>
@@ -121,6 +124,29 @@ public class AbcastMessageID implements Compressable, Comparable, Transportable
 	return tmp.hashCode();
     }
 
+    /**
+     *  Codec of the compact serialization
+     */
+    static {
+	CompactSerialization.register(CompactSerialization.ABCASTMESSAGEID,
+		AbcastMessageID.class, new CompactSerialization.Codec() {
+		    public void write(Transportable o, CompactOutput out)
+			throws java.io.IOException
+		    {
+			AbcastMessageID m = (AbcastMessageID) o;
+			out.writeLong(m.id);
+			out.writeObject(m.proc);
+		    }
+
+		    public Transportable read(CompactInput in)
+			throws java.io.IOException, ClassNotFoundException
+		    {
+			long id = in.readLong();
+			return new AbcastMessageID((PID) in.readObject(), id);
+		    }
+		});
+    }
+
     /**
      *  Methods defined by the Transportable interface
      *  Generated automatically with javaparty
@@ -0,0 +1,111 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package groupcomm.common.abcast;
+
+/**
+ * Batching policy that adapts the number of messages per proposal to a
+ * target consensus latency, and bounds the size of a proposal in bytes.
+ * The latency of the instances proposed by this process is smoothed; the
+ * limit grows by one message after a full batch decided faster than the
+ * target, and shrinks by a quarter while the smoothed latency is above
+ * it (additive increase, multiplicative decrease). The limit shrinks at
+ * most once per round of instances: the instances proposed before a cut
+ * ran with the old limit, so their decisions do not cut it again. A
+ * process may abcast one proposal (the limit) before being blocked by the
+ * flow control, so that a message waits at most for the instance running
+ * and its own.
+ */
+public class AdaptiveBatchingPolicy implements BatchingPolicy {
+    /**
+     * Largest number of messages per proposal
+     */
+    public static final int MAX_MESSAGES = 1024;
+
+    // Target latency (ns)
+    private long targetLatency;
+    // Largest size of a proposal (bytes)
+    private long maxBytes;
+    // Current limit of the number of messages per proposal
+    private int limit;
+    // Smoothed latency of the instances (ns), -1 until the first one
+    private long latency = -1;
+    // Last instance proposed
+    private long lastProposed = 0;
+    // Last instance proposed when the limit was cut
+    private long cut = 0;
+
+    private BatchingStatistics statistics = new BatchingStatistics();
+
+    /**
+     * Constructor.
+     *
+     * @param targetLatency The target latency of consensus in microseconds
+     * @param maxBytes      The largest size of a proposal in bytes
+     * @param initial       The initial number of messages per proposal
+     */
+    public AdaptiveBatchingPolicy(long targetLatency, long maxBytes, int initial) {
+	if (targetLatency <= 0 || maxBytes <= 0 || initial < 1)
+	    throw new RuntimeException("AdaptiveBatchingPolicy: invalid parameters: "
+				       + targetLatency + ", " + maxBytes + ", " + initial);
+	this.targetLatency = targetLatency * 1000;
+	this.maxBytes = maxBytes;
+	this.limit = Math.min(initial, MAX_MESSAGES);
+	statistics.limit = limit;
+    }
+
+    public int proposalSize(int available) {
+	return limit;
+    }
+
+    public long proposalBytes() {
+	return maxBytes;
+    }
+
+    public void proposed(long k, int messages, long bytes) {
+	statistics.proposed(k, messages, bytes);
+	lastProposed = Math.max(lastProposed, k);
+    }
+
+    public void decided(long k, int messages) {
+	long l = statistics.decided(k);
+	if (l < 0)
+	    return;
+	if (latency < 0)
+	    latency = l;
+	else
+	    latency = (7 * latency + l) / 8;
+
+	if (latency > targetLatency) {
+	    if (k > cut) {
+		limit = Math.max(1, limit * 3 / 4);
+		cut = lastProposed;
+	    }
+	} else if (l <= targetLatency && messages >= limit)
+	    limit = Math.min(MAX_MESSAGES, limit + 1);
+	statistics.limit = limit;
+    }
+
+    public int maxLocallyAbcast() {
+	return limit;
+    }
+
+    public BatchingStatistics getStatistics() {
+	return statistics;
+    }
+}
@@ -0,0 +1,72 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package groupcomm.common.abcast;
+
+/**
+ * Policy of the abcast implementations for batching the messages in
+ * consensus instances: how many messages (and bytes) a proposal contains
+ * and how many messages a process may abcast before being blocked by the
+ * flow control. The abcast implementation tells the policy when it
+ * proposes a batch and when the decision of an instance is delivered, so
+ * that the policy can adapt to the decisions. A policy is used by a single
+ * abcast, within its handlers.
+ */
+public interface BatchingPolicy {
+    /**
+     * Maximum number of messages of the next proposal
+     *
+     * @param available The number of messages that can be proposed
+     */
+    public int proposalSize(int available);
+
+    /**
+     * Maximum size of the next proposal in bytes, as estimated by
+     * {@link BatchingStatistics#sizeOf(uka.transport.Transportable)}.
+     * A proposal contains at least one message, whatever its size.
+     */
+    public long proposalBytes();
+
+    /**
+     * A batch is proposed to consensus instance k
+     *
+     * @param k        The consensus instance
+     * @param messages The number of messages of the batch
+     * @param bytes    The estimated size of the batch
+     */
+    public void proposed(long k, int messages, long bytes);
+
+    /**
+     * The decision of consensus instance k is delivered
+     *
+     * @param k        The consensus instance
+     * @param messages The number of messages decided
+     */
+    public void decided(long k, int messages);
+
+    /**
+     * Maximum number of messages abcast by this process and not
+     * A-delivered yet, above which the flow control is blocked
+     */
+    public int maxLocallyAbcast();
+
+    /**
+     * The statistics of the batches chosen by this policy
+     */
+    public BatchingStatistics getStatistics();
+}
@@ -0,0 +1,147 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package groupcomm.common.abcast;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+import uka.transport.Transportable;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TCollection;
+import framework.libraries.serialization.TLong;
+import framework.libraries.serialization.TLongHashMap;
+import framework.libraries.serialization.TMap;
+import framework.libraries.serialization.TString;
+import framework.libraries.serialization.TUtf8String;
+
+/**
+ * Statistics of the batches proposed by an abcast to consensus, kept by
+ * its {@link BatchingPolicy}. The latency of an instance is the time from
+ * its proposal to the delivery of its decision. Times are in nanoseconds.
+ * The counters can be read by any thread; the other methods are called
+ * by the policy only.
+ */
+public class BatchingStatistics {
+    // Largest number of instances proposed and not decided that are timed
+    private static final int MAX_STARTED = 1024;
+
+    /* Batches proposed */
+    public final LongAdder proposals = new LongAdder();
+
+    /* Messages proposed */
+    public final LongAdder proposedMessages = new LongAdder();
+
+    /* Estimated size of the messages proposed */
+    public final LongAdder proposedBytes = new LongAdder();
+
+    /* Decisions delivered */
+    public final LongAdder decisions = new LongAdder();
+
+    /* Decisions of instances proposed by this process */
+    public final LongAdder timedDecisions = new LongAdder();
+
+    /* Total latency of the timed decisions */
+    public final LongAdder decisionLatency = new LongAdder();
+
+    /* Number of messages of the last batch proposed and of the biggest one */
+    public volatile long lastProposal = 0;
+    public volatile long maxProposal = 0;
+
+    /* Latency of the last timed decision */
+    public volatile long lastLatency = 0;
+
+    /* Current limit of the number of messages per batch of the policy */
+    public volatile long limit = 0;
+
+    // Time at which the instances not decided were proposed (k -> TLong)
+    private TLongHashMap started = new TLongHashMap();
+
+    /**
+     * Account for a batch proposed to instance k
+     */
+    public void proposed(long k, int messages, long bytes) {
+	proposals.increment();
+	proposedMessages.add(messages);
+	proposedBytes.add(bytes);
+	lastProposal = messages;
+	if (messages > maxProposal)
+	    maxProposal = messages;
+	if (!started.containsKey(k)) {
+	    // Instances whose decision was never delivered
+	    if (started.size() >= MAX_STARTED)
+		started.clear();
+	    started.put(k, new TLong(System.nanoTime()));
+	}
+    }
+
+    /**
+     * Account for the decision of instance k
+     *
+     * @return the latency of the instance, or -1 if it is not known
+     */
+    public long decided(long k) {
+	decisions.increment();
+	TLong start = (TLong)started.remove(k);
+	if (start == null)
+	    return -1;
+	long latency = System.nanoTime() - start.longValue();
+	timedDecisions.increment();
+	decisionLatency.add(latency);
+	lastLatency = latency;
+	return latency;
+    }
+
+    /**
+     * Reset the counters
+     */
+    public void reset() {
+	proposals.reset();
+	proposedMessages.reset();
+	proposedBytes.reset();
+	decisions.reset();
+	timedDecisions.reset();
+	decisionLatency.reset();
+	maxProposal = 0;
+    }
+
+    /**
+     * Estimate the size of a message in bytes: the size of its byte arrays
+     * and strings, found through its lists and maps, and 8 bytes for any
+     * other object (ids, numbers, ...). It does not serialize the message.
+     */
+    public static long sizeOf(Transportable m) {
+	if (m instanceof TByteArray)
+	    return ((TByteArray)m).byteValue().length;
+	if (m instanceof TUtf8String)
+	    return ((TUtf8String)m).byteValue().length;
+	if (m instanceof TString)
+	    return 2 * m.toString().length();
+	Iterator it;
+	if (m instanceof TCollection)
+	    it = ((TCollection)m).iterator();
+	else if (m instanceof TMap)
+	    it = ((TMap)m).values().iterator();
+	else
+	    return 8;
+	long size = 8;
+	while (it.hasNext())
+	    size += sizeOf((Transportable)it.next());
+	return size;
+    }
+}
@@ -39,13 +39,13 @@ import framework.libraries.Trigger;
 import framework.libraries.serialization.TArrayList;
 import framework.libraries.serialization.TBoolean;
 import framework.libraries.serialization.TCollection;
-import framework.libraries.serialization.THashMap;
 import framework.libraries.serialization.THashSet;
 import framework.libraries.serialization.TInteger;
 import framework.libraries.serialization.TLinkedList;
 import framework.libraries.serialization.TList;
+import framework.libraries.serialization.TLongHashMap;
+import framework.libraries.serialization.TLongTreeMap;
 import framework.libraries.serialization.TLong;
-import framework.libraries.serialization.TMap;
 import framework.libraries.serialization.TSet;
 import framework.libraries.serialization.TSortedMap;
 import framework.libraries.serialization.TTreeMap;
@@ -79,23 +79,21 @@ public class ConcDynAbcastImpl {
     // Known processes, to send the broadcast messages : Contains PID
     private TArrayList known = null;
     // private LinkedList known;
-    // A-delivered messages : Set (AbcastMessageID)
-    private THashSet aDelivered = null;
+    // A-delivered messages : watermark and bitmap per sender
+    private DeliveredSet aDelivered = null;
     // A-Undelivered messages : Ordered Maps (AbcastMessageID -> GroupCommMessage m)
     //    1) Messages proposed in a running consensus
     //    2) Other messages
     private TTreeMap proposed;
     private TTreeMap unproposed;
     // A Map between consensus ID and Messages proposed
-    private TTreeMap KtoID;
-    // Bound for old A-delivered messages : Table (PID -> Integer)
-    private THashMap maxIdProProc = null;
+    private TLongTreeMap KtoID;
     // id for consensus requests
     private long k;
     // id of the next consensus to be decided
     private long nextKToBeDecided;
     // Map of consensus decided too early
-    private THashMap alreadyDecided;
+    private TLongHashMap alreadyDecided;
     // Abcast message current id
     private AbcastMessageID abcastId;
     // How many consensus started ?
@@ -156,8 +154,8 @@ public class ConcDynAbcastImpl {
         this.myself = myself;
         proposed = new TTreeMap();
         unproposed = new TTreeMap();
-        KtoID = new TTreeMap();
-        alreadyDecided = new THashMap();
+        KtoID = new TLongTreeMap();
+        alreadyDecided = new TLongHashMap();
         abcastId = new AbcastMessageID(myself, 0);
         // Lists to store events when
         // initData=false
@@ -201,13 +199,12 @@ public class ConcDynAbcastImpl {
                     if( known.get(i).equals(known.get(j)) )
                         throw new GroupCommException("Process" + known.get(i) +
                         " appears more than once in the group.");
-            aDelivered = new THashSet();
+            aDelivered = new DeliveredSet();
             // init maximum id of Adelivered message
-            maxIdProProc = new THashMap();
             Iterator it = known.iterator();
             while (it.hasNext()) {
                 PID pid = (PID)it.next();
-                maxIdProProc.put (pid, new TLong(-1));
+                aDelivered.addProcess(pid);
             }
             // flow control
             //flow_control.setThreshold(fc_key, Math.max(MAX_PROPOSE / known.size(), 1));
@@ -256,16 +253,12 @@ public class ConcDynAbcastImpl {
         // payload = id::type::(pid)::m
         payload.tpack(new TBoolean(false));
         // payload = isinit::id::type::(pid)::m
-        Iterator it = ((TList)known.clone()).iterator();
-        while (it.hasNext()) {
-            PID pid = (PID)it.next();
-            GroupCommMessage newMess = payload.cloneGroupCommMessage();
-            GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
-            pt2ptSend.addLast(newMess);
-            pt2ptSend.addLast(pid);
-            pt2ptSend.addLast(new TBoolean(false)); // not promisc
-            abcast.trigger (Constants.PT2PTSEND, pt2ptSend);
-        }	
+        // The message is serialized once for all the destinations
+        GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+        pt2ptSend.addLast(payload);
+        pt2ptSend.addLast(new TLinkedList(known));
+        pt2ptSend.addLast(new TBoolean(false)); // not promisc
+        abcast.trigger (Constants.PT2PTMULTISEND, pt2ptSend);
         logger.exiting("ConcDynAbcastImpl","handleAbcast");    
     }
     
@@ -299,12 +292,10 @@ public class ConcDynAbcastImpl {
         
         if(isinit) {
             if(!initData){
-                // msg = maxIdProProc::aDelivered::k::known::newProcesses
+                // msg = aDelivered::k::known::newProcesses
                 GroupCommMessage mClone = msg.cloneGroupCommMessage();
                 // mClone = msg
-                maxIdProProc = (THashMap)msg.tunpack();
-                // msg = aDelivered::k::known::newProcesses
-                aDelivered = (THashSet)msg.tunpack();
+                aDelivered = (DeliveredSet)msg.tunpack();
                 // msg = k::known::newProcesses
                 k = ((TLong)msg.tunpack()).longValue();
                 nextKToBeDecided = k;
@@ -383,26 +374,21 @@ public class ConcDynAbcastImpl {
             AbcastMessageID id = (AbcastMessageID)msg.tunpack();
             // msg = type::(pid)::payload
             if( known.contains(id.proc) &&
-                    (id.id > ((TLong)maxIdProProc.get(id.proc)).longValue()) &&
                     ! aDelivered.contains(id) &&
                     ! proposed.containsKey(id) &&
                     ! unproposed.containsKey(id)){
                 unproposed.put(id, msg);//Doesn't need to be cloned
-                Iterator it = known.iterator();
                 mClone.tpack(new TBoolean(false));
                 // msg = false::id::type::(pid)::payload
                 
                 //To deliver all events in the end
                 TLinkedList toTrigger = new TLinkedList();
                 
-                while (it.hasNext()) {
-                    PID pid = (PID)it.next();
-                    GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
-                    pt2ptSend.addLast(mClone.cloneGroupCommMessage());
-                    pt2ptSend.addLast(pid);
-                    pt2ptSend.addLast(new TBoolean(false)); // not promisc
-                    toTrigger.addLast(new TriggerItem(Constants.PT2PTSEND, pt2ptSend));
-                } // End of WHILE
+                GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+                pt2ptSend.addLast(mClone);
+                pt2ptSend.addLast(new TLinkedList(known));
+                pt2ptSend.addLast(new TBoolean(false)); // not promisc
+                toTrigger.addLast(new TriggerItem(Constants.PT2PTMULTISEND, pt2ptSend));
                 
                 testAndConsensus(toTrigger);
                 
@@ -430,7 +416,8 @@ public class ConcDynAbcastImpl {
      */
     public void handleDecide(GroupCommEventArgs ev) throws GroupCommException {
         logger.entering("ConcDynAbcastImpl","handleDecide");
-        TTreeMap undelivered = (TTreeMap)ev.removeFirst();
+        // The decision is shared with consensus: copy it before consuming it
+        TTreeMap undelivered = (TTreeMap)((TTreeMap)ev.removeFirst()).clone();
         long kdecision = ((TLong)ev.removeFirst()).longValue();
         
         if (!initData) 
@@ -438,7 +425,7 @@ public class ConcDynAbcastImpl {
         
         // Messages proposed and not decided are put in "unproposed"
         // Messages to be delivered are removed from "unproposed" and "proposed"      
-        TLinkedList IDList = (TLinkedList) KtoID.remove(new TLong(kdecision));
+        TLinkedList IDList = (TLinkedList) KtoID.remove(kdecision);
 	TCollection ids = undelivered.keySet();
 	Iterator it = ids.iterator();
 	while (it.hasNext()){
@@ -457,7 +444,7 @@ public class ConcDynAbcastImpl {
         }
         
         if (kdecision != nextKToBeDecided){
-            alreadyDecided.put(new TLong(kdecision), undelivered);
+            alreadyDecided.put(kdecision, undelivered);
         } else{            
             // This list will contain all events to be triggered, and we'll 
             // trigger them at the end of this method
@@ -470,11 +457,10 @@ public class ConcDynAbcastImpl {
                 TSortedMap special = new TTreeMap();
                 while ( !undelivered.isEmpty()) {
                     AbcastMessageID id = (AbcastMessageID)undelivered.firstKey();
-                    GroupCommMessage msg = (GroupCommMessage)undelivered.remove(id);
+                    GroupCommMessage msg = ((GroupCommMessage)undelivered.remove(id)).cloneGroupCommMessage();
                     // msg = type::(pid)::payload
                     
                     if( known.contains(id.proc) &&
-                            (id.id > ((TLong)maxIdProProc.get(id.proc)).longValue()) &&
                             ! aDelivered.contains(id) ){
                         
                         TInteger type=(TInteger) msg.tunpack();
@@ -511,7 +497,7 @@ public class ConcDynAbcastImpl {
                             known.add(pid); //Add new process to known
                             newProc.add(pid); //Add it to newProc, too
                             // init maximum id of Adelivered message for newP
-                            maxIdProProc.put(pid, new TLong(-1));
+                            aDelivered.addProcess(pid);
                             // flow control
                             //flow_control.setThreshold(fc_key, Math.max(MAX_PROPOSE / known.size(), 1));
                             fc_threshold = Math.max(MAX_PROPOSE / known.size(), 1);
@@ -539,8 +525,8 @@ public class ConcDynAbcastImpl {
                     case Constants.REM:
                         if(known.contains(pid)){
                             known.remove(pid);//Remove PID from known
-                            // remove maximum id of Adelivered message for pid
-                            maxIdProProc.remove(pid);
+                            // remove the A-delivered messages of pid
+                            aDelivered.removeProcess(pid);
                             // flow control
                             //flow_control.setThreshold(fc_key, Math.max(MAX_PROPOSE / known.size(), 1));
                             fc_threshold = Math.max(MAX_PROPOSE / known.size(), 1);
@@ -573,16 +559,6 @@ public class ConcDynAbcastImpl {
                             }
                             unproposed = temp;                    
                             
-                            // remove also msgs that came from pid in ADelivered
-                            THashSet tmp2 = new THashSet();
-                            it = aDelivered.iterator();
-                            while(it.hasNext()){
-                                AbcastMessageID rid = (AbcastMessageID)it.next();
-                                if(!rid.proc.equals(pid)){
-                                    tmp2.add(rid);
-                                }
-                            }
-                            aDelivered = tmp2;
                             
                             //remove also msgs that came from pid in "special"
                             //TODO: to test it, consensus has to run very slow
@@ -641,12 +617,10 @@ public class ConcDynAbcastImpl {
                     // msgInit = known::newProc
                     msgInit.tpack(new TLong(k));
                     // msgInit = k::known::newProc
-                    msgInit.tpack((THashSet)aDelivered.clone());
+                    msgInit.tpack((DeliveredSet)aDelivered.clone());
                     // msgInit = aDelivered::k::known::newProc
-                    msgInit.tpack((TMap)maxIdProProc.clone());
-                    // msgInit = maxIdProProc::aDelivered::k::known::newProc
                     msgInit.tpack(new TBoolean(true));
-                    // msgInit = true::maxIdProProc::aDelivered::k::known::newProc
+                    // msgInit = true::aDelivered::k::known::newProc
                     it = newProc.iterator();
                     while (it.hasNext()) {
                         PID pid = (PID)it.next();
@@ -716,7 +690,7 @@ public class ConcDynAbcastImpl {
                 // Increase the Id of the next consensus to be decided
                 nextKToBeDecided++;
                 // Check if it is already decided
-                undelivered = (TTreeMap) alreadyDecided.remove(new TLong(nextKToBeDecided));
+                undelivered = (TTreeMap) alreadyDecided.remove(nextKToBeDecided);
             }
             
             //Finally, we trigger all events
@@ -761,15 +735,6 @@ public class ConcDynAbcastImpl {
                 //flow_control.free(fc_key, 1);
                 fc_used--; if(fc_used < fc_threshold) flow_control.release(fc_key);
             }
-            // update the highest aDelivered table
-            long maxId = ((TLong)maxIdProProc.get(id.proc)).longValue();
-            AbcastMessageID newID = new AbcastMessageID(id.proc, maxId + 1);
-            while (aDelivered.contains(newID)) {
-                aDelivered.remove(newID);
-                maxId++;
-                newID.id++;
-            }
-            maxIdProProc.put(id.proc, new TLong(maxId));
             
             // ADeliver message
             GroupCommEventArgs adeliver = new GroupCommEventArgs();
@@ -804,7 +769,7 @@ public class ConcDynAbcastImpl {
                 IDList.add(id);
             }
             TLong kObj = new TLong(k);
-            KtoID.put(kObj, IDList);
+            KtoID.put(k, IDList);
             logger.log(Level.FINE,
                     "Launching consensus#{1}:\n\tValue: {0}\n\tProcesses:{2}", 
                     new Object[]{propose, kObj, known});
@@ -874,14 +839,7 @@ public class ConcDynAbcastImpl {
             err.println(" A-Undelivered other messages:");
             err.println("   " + unproposed);            
             err.println(" A-Delivered messages ids:");
-            it = aDelivered.iterator();
-            AbcastMessageID id;
-            while (it.hasNext()) {
-                id = (AbcastMessageID)it.next();
-                err.println("\t" + id);
-            }
-            err.println("   and all message where id less or equal than:");
-            err.println("\t"+maxIdProProc);
+            err.println("\t" + aDelivered);
         } 
         err.println("==============================");
     }
@@ -0,0 +1,163 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package groupcomm.common.abcast;
+
+import java.util.Iterator;
+
+import uka.transport.Transportable;
+import framework.PID;
+import framework.libraries.serialization.THashMap;
+import framework.libraries.serialization.TLongWatermarkSet;
+
+/**
+ * Ids of the A-delivered messages. The ids of each sender are kept in a
+ * {@link TLongWatermarkSet}: a watermark below which all the messages are
+ * delivered and a bitmap for the messages delivered above it (out of
+ * order). The memory used does not grow with the number of messages
+ * delivered, and looking up an id does not allocate.
+ */
+public class DeliveredSet implements Transportable, Cloneable {
+    // Table (PID -> TLongWatermarkSet)
+    private THashMap senders;
+
+    public DeliveredSet() {
+	senders = new THashMap();
+    }
+
+    /**
+     * Start tracking the messages of a process (none delivered yet)
+     */
+    public void addProcess(PID pid) {
+	senders.put(pid, new TLongWatermarkSet());
+    }
+
+    /**
+     * Stop tracking the messages of a process
+     */
+    public void removeProcess(PID pid) {
+	senders.remove(pid);
+    }
+
+    /**
+     * Has the message been delivered ? False if its sender is not tracked.
+     */
+    public boolean contains(AbcastMessageID id) {
+	TLongWatermarkSet set = (TLongWatermarkSet) senders.get(id.proc);
+	return (set != null) && set.contains(id.id);
+    }
+
+    /**
+     * Mark the message as delivered
+     *
+     * @return true if it was not delivered yet
+     */
+    public boolean add(AbcastMessageID id) {
+	TLongWatermarkSet set = (TLongWatermarkSet) senders.get(id.proc);
+	if (set == null) {
+	    set = new TLongWatermarkSet();
+	    senders.put(id.proc, set);
+	}
+	return set.add(id.id);
+    }
+
+    /**
+     * Return the highest id such that all the messages of the process
+     * up to it are delivered (-1 if none)
+     */
+    public long getMaxId(PID pid) {
+	TLongWatermarkSet set = (TLongWatermarkSet) senders.get(pid);
+	if (set == null)
+	    return -1;
+	return set.getWatermark() - 1;
+    }
+
+    public String toString() {
+	return senders.toString();
+    }
+
+    public Object clone() {
+	DeliveredSet clone;
+	try {
+	    clone = (DeliveredSet) super.clone();
+	} catch (CloneNotSupportedException e) {
+	    throw new InternalError();
+	}
+	clone.senders = new THashMap();
+	Iterator it = senders.keySet().iterator();
+	while (it.hasNext()) {
+	    PID pid = (PID) it.next();
+	    clone.senders.put(pid,
+		(TLongWatermarkSet) ((TLongWatermarkSet) senders.get(pid)).clone());
+	}
+	return clone;
+    }
+
+    /**
+     *  Methods defined by the Transportable interface
+     */
+
+    // Size of primitive fields
+    protected static final int _SIZE = 0;
+
+    /** Used by uka.transport.UnmarshalStream to unmarshal the object */
+    public  DeliveredSet(uka.transport.UnmarshalStream _stream)
+	throws java.io.IOException, ClassNotFoundException
+    {
+	this(_stream, _SIZE);
+	_stream.accept(_SIZE);
+    }
+
+    protected DeliveredSet(uka.transport.UnmarshalStream  _stream, int _size)
+	throws java.io.IOException, ClassNotFoundException
+    {
+	_stream.request(_size); 
+    }
+
+    /** Method of interface Transportable, it must be declared public.
+	It is called from within UnmarshalStream after creating the 
+	object and assigning a stream reference to it. */
+    public void unmarshalReferences(uka.transport.UnmarshalStream _stream)
+	throws java.io.IOException, ClassNotFoundException
+    {
+	senders = (THashMap) _stream.readObject();
+    }
+
+    /** Called directly by uka.transport.MarshalStream */
+    public void marshal(uka.transport.MarshalStream _stream)
+	throws java.io.IOException
+    {
+	_stream.reserve(_SIZE);
+	_stream.deliver(_SIZE);
+	marshalReferences(_stream);
+    }
+
+    protected void marshalReferences(uka.transport.MarshalStream _stream)
+	throws java.io.IOException
+    {
+	_stream.writeObject(senders);
+    }
+
+    public final Object deepClone(uka.transport.DeepClone _helper)
+	throws CloneNotSupportedException
+    {
+	Object _copy = clone();
+	_helper.add(this, _copy);
+	return _copy;
+    }
+}
@@ -40,7 +40,6 @@ import framework.libraries.Trigger;
 import framework.libraries.serialization.TArrayList;
 import framework.libraries.serialization.TBoolean;
 import framework.libraries.serialization.TCollection;
-import framework.libraries.serialization.THashMap;
 import framework.libraries.serialization.THashSet;
 import framework.libraries.serialization.TInteger;
 import framework.libraries.serialization.TLinkedHashMap;
@@ -83,12 +82,10 @@ public class DynAbcastImpl {
     // Known processes, to send the broadcast messages : Contains PID
     private TArrayList known = null;
     // private LinkedList known;
-    // A-delivered messages : Set (AbcastMessageID)
-    private THashSet aDelivered = null;
+    // A-delivered messages : watermark and bitmap per sender
+    private DeliveredSet aDelivered = null;
     // A-Undelivered messages : FIFO-order Map (AbcastMessageID -> GroupCommMessage m)
     private TLinkedHashMap aUndelivered = null;
-    // Bound for old A-delivered messages : Table (PID -> Integer)
-    private THashMap maxIdProProc = null;
     // id for consensus requests
     private long k;
     // id for highest consensus ever heard from
@@ -102,7 +99,8 @@ public class DynAbcastImpl {
     //public static final int MAX_UNDELIVERED = 8;
     //public static final int MAX_PROPOSE = 4;
     public static final int MSGS_PER_CONSENSUS = 4;
-    private int max_locally_abcast = MSGS_PER_CONSENSUS;
+    // Batching of the messages in the consensus instances
+    private BatchingPolicy batching = new FixedBatchingPolicy(MSGS_PER_CONSENSUS, MIN_LOCALLY_ABCAST);
     //private boolean nullDecision = false;
 
     private TLinkedList whenAbcast;
@@ -154,6 +152,23 @@ public class DynAbcastImpl {
 	logger.exiting("DynAbcastImpl","<constr>");    
     }
 
+    /**
+     * Set the policy that chooses the messages of a proposal and the bound
+     * of the flow control (a {@link FixedBatchingPolicy} by default).
+     *
+     * @param batching The batching policy
+     */
+    public void setBatchingPolicy(BatchingPolicy batching) {
+	this.batching = batching;
+    }
+
+    /**
+     * @return the batching policy
+     */
+    public BatchingPolicy getBatchingPolicy() {
+	return batching;
+    }
+
     /**
      * Handler for the <i>Init</i> event. </br>
      * It sends the list of known processes to the lower layer allowing them to communicate with us
@@ -186,13 +201,12 @@ public class DynAbcastImpl {
 		    if( known.get(i).equals(known.get(j)) )
 			throw new GroupCommException("Process" + known.get(i) +
 						" appears more than once in the group.");
-   	    aDelivered = new THashSet();
+   	    aDelivered = new DeliveredSet();
 	    // init maximum id of Adelivered message
-	    maxIdProProc = new THashMap();
 	    Iterator it = known.iterator();
 	    while (it.hasNext()) {
 		PID pid = (PID)it.next();
-		maxIdProProc.put (pid, new TLong(-1));
+		aDelivered.addProcess(pid);
 	    }
 
         // timer
@@ -251,7 +265,7 @@ public class DynAbcastImpl {
     //Flow control
     //flow_control.alloc(fc_key, 1);
     nbMsgsSent++; 
-    if (nbMsgsSent >= max_locally_abcast)
+    if (nbMsgsSent >= batching.maxLocallyAbcast())
         flow_control.block(fc_key);
    
     testAndConsensus(toTrigger);
@@ -263,20 +277,23 @@ public class DynAbcastImpl {
 	payload.tpack(new TBoolean(false));
 	// payload = isinit::id::type::(pid)::m
     
-	Iterator it = ((TList)known.clone()).iterator();
+	// The message is serialized once for all the destinations
+	TLinkedList dests = new TLinkedList();
+	Iterator it = known.iterator();
 	while (it.hasNext()) {
 	    PID pid = (PID)it.next();
-        if(!pid.equals(myself)){ // Sergio - 8 mar 2006 - added for optimization
-            GroupCommMessage newMess = payload.cloneGroupCommMessage();
-            GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
-            pt2ptSend.addLast(newMess);
-            pt2ptSend.addLast(pid);
-            pt2ptSend.addLast(new TBoolean(false)); // not promisc
-            logger.log(Level.FINE,
-                   "Sending Pt2Pt message id: {0} to {1}\n\tMessage: {2}",
-                   new Object[]{id, pid,newMess});
-            toTrigger.addLast(new TriggerItem(Constants.PT2PTSEND, pt2ptSend));
-        }
+        if(!pid.equals(myself)) // Sergio - 8 mar 2006 - added for optimization
+            dests.addLast(pid);
+    }
+    if (!dests.isEmpty()) {
+        GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+        pt2ptSend.addLast(payload);
+        pt2ptSend.addLast(dests);
+        pt2ptSend.addLast(new TBoolean(false)); // not promisc
+        logger.log(Level.FINE,
+               "Sending Pt2Pt message id: {0} to {1}\n\tMessage: {2}",
+               new Object[]{id, dests, payload});
+        toTrigger.addLast(new TriggerItem(Constants.PT2PTMULTISEND, pt2ptSend));
     }
 
     //Finally, we trigger all events
@@ -325,12 +342,10 @@ public class DynAbcastImpl {
 
 	if(isinit) {
 	    if(!initData){
-		// msg = maxIdProProc::aDelivered::k::known::newProcesses
+		// msg = aDelivered::k::known::newProcesses
 		GroupCommMessage mClone = msg.cloneGroupCommMessage();
 		// mClone = msg
-		maxIdProProc = (THashMap)msg.tunpack();
-		// msg = aDelivered::k::known::newProcesses
-		aDelivered = (THashSet)msg.tunpack();
+		aDelivered = (DeliveredSet)msg.tunpack();
 		// msg = k::known::newProcesses
 		k = ((TLong)msg.tunpack()).longValue();
 		// msg = known::newProcesses
@@ -437,7 +452,6 @@ public class DynAbcastImpl {
                new Object[]{id, source, msg});
 
 	    if( known.contains(id.proc) &&
-		(id.id > ((TLong)maxIdProProc.get(id.proc)).longValue()) &&
 	        ! aDelivered.contains(id) &&
 		! aUndelivered.containsKey(id) ){
 
@@ -445,7 +459,7 @@ public class DynAbcastImpl {
             TLinkedList toTrigger = new TLinkedList();
 
             aUndelivered.put(id, msg);//Doesn't need to be cloned
-            if (nbMsgsSent >= max_locally_abcast)
+            if (nbMsgsSent >= batching.maxLocallyAbcast())
                 flow_control.block(fc_key);
 
             // Sergio - 8 mar 2006 - removed for optimization
@@ -491,7 +505,8 @@ public class DynAbcastImpl {
 	logger.entering("DynAbcastImpl","handleDecide");
 //	if(imDead)
 //	    throw new GroupCommException("I am dead!! Consensus can't decide");
-	TLinkedHashMap undelivered = (TLinkedHashMap)ev.removeFirst();
+	// The decision is shared with consensus: copy it before consuming it
+	TLinkedHashMap undelivered = (TLinkedHashMap)((TLinkedHashMap)ev.removeFirst()).clone();
 	long kdecision = ((TLong)ev.removeFirst()).longValue();
 
 	if (!initData) 
@@ -502,8 +517,7 @@ public class DynAbcastImpl {
 				      "incoming = "+kdecision+", expected = "+(k-1));
 
     //Feed-back for flow-control
-    if(undelivered.size() < MSGS_PER_CONSENSUS) max_locally_abcast = Math.min(MSGS_PER_CONSENSUS * 2, max_locally_abcast + 1);
-    if(undelivered.size() > MSGS_PER_CONSENSUS) max_locally_abcast = Math.max(MIN_LOCALLY_ABCAST, max_locally_abcast - 1);
+    batching.decided(kdecision, undelivered.size());
 
 //    nullDecision = undelivered.isEmpty();
 //    if(nullDecision) logger.info("Warning: A null decision has been taken");
@@ -516,11 +530,10 @@ public class DynAbcastImpl {
 	TLinkedHashMap special = new TLinkedHashMap();
 	while ( !undelivered.isEmpty()) {
         AbcastMessageID id = (AbcastMessageID) undelivered.keySet().iterator().next(); //.firstKey();
-	    GroupCommMessage msg = (GroupCommMessage)undelivered.remove(id);
+	    GroupCommMessage msg = ((GroupCommMessage)undelivered.remove(id)).cloneGroupCommMessage();
 	    // msg = type::(pid)::payload
 
 	    if( known.contains(id.proc) &&
-		(id.id > ((TLong)maxIdProProc.get(id.proc)).longValue()) &&
 	        ! aDelivered.contains(id) ){
 
 		TInteger type=(TInteger) msg.tunpack();
@@ -556,7 +569,7 @@ public class DynAbcastImpl {
 		    known.add(pid); //Add new process to known
 		    newProc.add(pid); //Add it to newProc, too
 		    // init maximum id of Adelivered message for newP
-		    maxIdProProc.put(pid, new TLong(-1));
+		    aDelivered.addProcess(pid);
            
             // join-remove
             TSet singleton = new THashSet();
@@ -575,8 +588,8 @@ public class DynAbcastImpl {
 	    case Constants.REM:
 		if(known.contains(pid)){
 		    known.remove(pid);//Remove PID from known
-		    // remove maximum id of Adelivered message for pid
-		    maxIdProProc.remove(pid);
+		    // remove the A-delivered messages of pid
+		    aDelivered.removeProcess(pid);
 
             // remove all msgs that came from pid in aUndelivered
 		    TLinkedHashMap temp = new TLinkedHashMap();
@@ -590,16 +603,6 @@ public class DynAbcastImpl {
 		    }
 		    aUndelivered = temp;
 
-		    // remove also msgs that came from pid in ADelivered
-		    THashSet tmp2 = new THashSet();
-		    it = aDelivered.iterator();
-		    while(it.hasNext()){
-			AbcastMessageID rid = (AbcastMessageID)it.next();
-			if(!rid.proc.equals(pid)){
-			    tmp2.add(rid);
-			}
-		    }
-		    aDelivered = tmp2;
 
 		    //remove also msgs that came from pid in "special"
 		    //TODO: to test it, consensus has to run very slow
@@ -644,7 +647,7 @@ public class DynAbcastImpl {
 	    }
 	}
 
-    if (nbMsgsSent < max_locally_abcast)
+    if (nbMsgsSent < batching.maxLocallyAbcast())
         flow_control.release(fc_key);
     
 	consensusStarted = false;
@@ -662,12 +665,10 @@ public class DynAbcastImpl {
 	    // msgInit = known::newProc
 	    msgInit.tpack(new TLong(k));
 	    // msgInit = k::known::newProc
-	    msgInit.tpack((THashSet)aDelivered.clone());
+	    msgInit.tpack((DeliveredSet)aDelivered.clone());
 	    // msgInit = aDelivered::k::known::newProc
-	    msgInit.tpack((TMap)maxIdProProc.clone());
-	    // msgInit = maxIdProProc::aDelivered::k::known::newProc
 	    msgInit.tpack(new TBoolean(true));
-	    // msgInit = true::maxIdProProc::aDelivered::k::known::newProc
+	    // msgInit = true::aDelivered::k::known::newProc
 	    Iterator it = newProc.iterator();
 	    while (it.hasNext()) {
 		PID pid = (PID)it.next();
@@ -734,24 +735,25 @@ public class DynAbcastImpl {
         logger.entering("DynAbcastImpl", "handleTimeout");
         timerOn = false;
 
-        TLong kObj = new TLong(k);
-        TBoolean isinit = new TBoolean(false);
-        Iterator it = ((TList)known.clone()).iterator();
+        TLinkedList dests = new TLinkedList();
+        Iterator it = known.iterator();
         while (it.hasNext()) {
             PID pid = (PID)it.next();
-            if(!pid.equals(myself)){
-                GroupCommMessage myK = new GroupCommMessage();
-                myK.tpack(kObj);
-                myK.tpack(isinit);
-                GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
-                pt2ptSend.addLast(myK);
-                pt2ptSend.addLast(pid);
-                pt2ptSend.addLast(new TBoolean(false)); // not promisc
-                logger.log(Level.FINE,
-                       "Sending special Pt2Pt message to {0}\n\tMessage: {1}",
-                       new Object[]{pid, myK});
-                abcast.trigger(Constants.PT2PTSEND, pt2ptSend);
-            }
+            if(!pid.equals(myself))
+                dests.addLast(pid);
+        }
+        if (!dests.isEmpty()) {
+            GroupCommMessage myK = new GroupCommMessage();
+            myK.tpack(new TLong(k));
+            myK.tpack(new TBoolean(false));
+            GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+            pt2ptSend.addLast(myK);
+            pt2ptSend.addLast(dests);
+            pt2ptSend.addLast(new TBoolean(false)); // not promisc
+            logger.log(Level.FINE,
+                   "Sending special Pt2Pt message to {0}\n\tMessage: {1}",
+                   new Object[]{dests, myK});
+            abcast.trigger(Constants.PT2PTMULTISEND, pt2ptSend);
         }
         logger.exiting("DynAbcastImpl", "handleTimeout");
     }
@@ -773,15 +775,6 @@ public class DynAbcastImpl {
             //flow_control.free(fc_key, 1);
             nbMsgsSent--; 
         }
-	    // update the highest aDelivered table
-	    long maxId = ((TLong)maxIdProProc.get(id.proc)).longValue();
-	    AbcastMessageID newID = new AbcastMessageID(id.proc, maxId + 1);
-	    while (aDelivered.contains(newID)) {
-		aDelivered.remove(newID);
-		maxId++;
-		newID.id++;
-	    }
-	    maxIdProProc.put(id.proc, new TLong(maxId));
 
 	    // ADeliver message
 	    GroupCommEventArgs adeliver = new GroupCommEventArgs();
@@ -800,22 +793,21 @@ public class DynAbcastImpl {
 	logger.entering("DynAbcastImpl","testAndConsensus");
 	if ( !consensusStarted && (!aUndelivered.isEmpty() || gossipK > k) ) {
 	    //I only take maximum of message IDs for the consensus
-	    TMap propose;
-        int sizePropose = Math.max(MSGS_PER_CONSENSUS/2, aUndelivered.size()/2);
-        if(aUndelivered.size() > sizePropose){
-        //Prevents glitches with tons of messages
-		TCollection ids = aUndelivered.keySet();
-		propose = new TLinkedHashMap();		
-		Iterator it = ids.iterator();
-		for  (int tune=0;
-		      tune < sizePropose && it.hasNext();
-		      tune++){
-		    AbcastMessageID id = (AbcastMessageID)it.next();
-		    propose.put(id, aUndelivered.get(id));
-		}        
-	    }else{
-		propose = (TLinkedHashMap)aUndelivered.clone();
+	    TMap propose = new TLinkedHashMap();
+        int sizePropose = batching.proposalSize(aUndelivered.size());
+        long maxBytes = batching.proposalBytes();
+        long bytes = 0;
+	    Iterator it = aUndelivered.keySet().iterator();
+	    while (propose.size() < sizePropose && it.hasNext()){
+		AbcastMessageID id = (AbcastMessageID)it.next();
+		GroupCommMessage m = (GroupCommMessage)aUndelivered.get(id);
+		long size = BatchingStatistics.sizeOf(m);
+		if (!propose.isEmpty() && bytes + size > maxBytes)
+		    break;
+		propose.put(id, m);
+		bytes += size;
 	    }
+	    batching.proposed(k, propose.size(), bytes);
 	    TLong kObj = new TLong(k);
 	    logger.log(Level.FINE,
 		       "Launching consensus#{1}:\n\tValue: {0}\n\tProcesses:{2}", 
@@ -867,14 +859,7 @@ public class DynAbcastImpl {
 	    err.println("   " + aUndelivered);
         err.println(" A-Undelivered Size: " + aUndelivered.size() + " TIME: "+System.currentTimeMillis());
 	    err.println(" A-Delivered messages ids:");
-	    it = aDelivered.iterator();
-	    AbcastMessageID id;
-	    while (it.hasNext()) {
-		id = (AbcastMessageID)it.next();
-		err.println("\t" + id);
-	    }
-	    err.println("   and all message where id less or equal than:");
-	    err.println("\t"+maxIdProProc);
+	    err.println("\t" + aDelivered);
 	} 
 	err.println("==============================");
     }
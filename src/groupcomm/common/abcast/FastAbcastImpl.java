@@ -109,15 +109,13 @@ public class FastAbcastImpl {
 	// Others processes, to send the estimate, propose: Does Not Contains MYSELF
 	private TArrayList others;
 
-	// A-delivered messages : Set (AbcastMessageID)
-	private TSet aDelivered;
+	// A-delivered messages : watermark and bitmap per sender
+	private DeliveredSet aDelivered;
 
 	// A-Undelivered messages : FIFO-Order Map (AbcastMessageID -> GroupCommMessage
 	// m)
 	private TLinkedHashMap aUndelivered;
 
-	// Bound for old A-delivered messages : Table (PID -> Integer)
-	private TMap maxIdProProc;
 
 	// Decision that are RBCast but not yet acknowledged
 	private TMap decisionToBroadcast;
@@ -182,7 +180,8 @@ public class FastAbcastImpl {
 	//public static final int MAX_UNDELIVERED = 8;
 	//public static final int MAX_PROPOSE = 4;
     public static final int MSGS_PER_CONSENSUS = 4;
-    private int max_locally_abcast = MSGS_PER_CONSENSUS;
+    // Batching of the messages in the consensus instances
+    private BatchingPolicy batching = new FixedBatchingPolicy(MSGS_PER_CONSENSUS, MIN_LOCALLY_ABCAST);
     
     public static final int MAX_MESSAGES_PER_ACK = 2;
     
@@ -214,9 +213,8 @@ public class FastAbcastImpl {
 		this.trigger = abcast;
 		this.flow_control = fc;
 		this.myself = myself;
-		aDelivered = new THashSet();
+		aDelivered = new DeliveredSet();
 		aUndelivered = new TLinkedHashMap();
-		maxIdProProc = new THashMap();
 		abcastId = new AbcastMessageID(myself, 0);
 
 		decisionToBroadcast = new TLinkedHashMap();
@@ -226,6 +224,24 @@ public class FastAbcastImpl {
 		logger.exiting("FastAbcastImpl", "<constr>");
 	}
 
+	/**
+	 * Set the policy that chooses the messages of an estimate and the bound
+	 * of the flow control (a {@link FixedBatchingPolicy} by default)
+	 * 
+	 * @param batching
+	 *            The batching policy
+	 */
+	public void setBatchingPolicy(BatchingPolicy batching) {
+		this.batching = batching;
+	}
+
+	/**
+	 * @return the batching policy
+	 */
+	public BatchingPolicy getBatchingPolicy() {
+		return batching;
+	}
+
 	/**
 	 * Handler for the <i>Init</i> event. </br> It sends the list of known
 	 * processes to the lower layer allowing them to communicate with us
@@ -279,7 +295,7 @@ public class FastAbcastImpl {
 		PID pid;
 		while (it.hasNext()) {
 			pid = (PID) it.next();
-			maxIdProProc.put(pid, new TLong(-1));
+			aDelivered.addProcess(pid);
 		}
 
 		// Init the coordinator
@@ -337,7 +353,7 @@ public class FastAbcastImpl {
 			adeliver.addLast(id.proc);
 			trigger.trigger(Constants.ADELIVER, adeliver);
 
-			maxIdProProc.put(id.proc, new TLong(id.id));
+			aDelivered.add(id);
 			return;
 		}
       
@@ -346,7 +362,7 @@ public class FastAbcastImpl {
 		//Flow control
 		//flow_control.alloc(fc_key, 1);
 		nbMsgsSent++;
-		if (nbMsgsSent >= max_locally_abcast)
+		if (nbMsgsSent >= batching.maxLocallyAbcast())
 			flow_control.block(fc_key);
 
 		// Sends a new estimate to coordinator, if it explicetely asks for it
@@ -580,6 +596,9 @@ public class FastAbcastImpl {
 		this.round = -1;
 		this.timeStamp = -1;
 		this.estimate = newEstimate;
+        if (!newEstimate.isEmpty())
+            batching.proposed(this.k, newEstimate.size(),
+                    BatchingStatistics.sizeOf(newEstimate));
         
         if ((this.k % UPDATEK_PERIOD) == 0)
             sendCurrentK(toTrigger);         
@@ -775,14 +794,12 @@ public class FastAbcastImpl {
 		while (i.hasNext()) {
 			AbcastMessageID t = (AbcastMessageID) i.next();
 
-			long maxId = ((TLong) maxIdProProc.get(t.proc)).longValue();
-			if ((!aUndelivered.containsKey(t)) && (!aDelivered.contains(t))
-					&& (maxId < t.id))
+			if ((!aUndelivered.containsKey(t)) && (!aDelivered.contains(t)))
 				aUndelivered.put(t, estim.get(t));
 		}
 
 		//Flow control
-        if (nbMsgsSent >= max_locally_abcast)
+        if (nbMsgsSent >= batching.maxLocallyAbcast())
 			flow_control.block(fc_key);
 
 		if ((rmess != round) || (kmess != k))
@@ -823,13 +840,7 @@ public class FastAbcastImpl {
 		if (numEstimate >= majority) {
 			// If estimate is empty, then take aUndelivered as an estimate
 			if (estimate.size() == 0) {
-				estimate = new TLinkedHashMap();
-				Iterator it = aUndelivered.keySet().iterator();
-                int sizeEstimate = Math.max(MSGS_PER_CONSENSUS/2, aUndelivered.size()/2);
-				while (it.hasNext() && (estimate.size() < sizeEstimate)) {
-					AbcastMessageID id = (AbcastMessageID) it.next();
-					estimate.put(id, aUndelivered.get(id));
-				}
+				estimate = batch(null);
 			}
 
 			// If estimate contains messages, send a proposal else
@@ -964,16 +975,15 @@ public class FastAbcastImpl {
             Iterator it = msgs.keySet().iterator();
             while (it.hasNext()) {
                 AbcastMessageID msgID = (AbcastMessageID) it.next();
-                long maxId = ((TLong) maxIdProProc.get(msgID.proc)).longValue();
                 if ((!aUndelivered.containsKey(msgID))
-                        && (!aDelivered.contains(msgID)) && (msgID.id > maxId)) {
+                        && (!aDelivered.contains(msgID))) {
                     aUndelivered.put(msgID, msgs.get(msgID));
                 }
             }
 
 			// Flow Control
 			//Flow control
-            if (nbMsgsSent >= max_locally_abcast)
+            if (nbMsgsSent >= batching.maxLocallyAbcast())
 				flow_control.block(fc_key);
 		}
 
@@ -1084,11 +1094,12 @@ public class FastAbcastImpl {
 				// m = <<k::CONS_BROADCAST::decision::newPropose::processCurrentK>>
 
 				//Broadcast decision to others except source
+				TLinkedList dests = new TLinkedList();
 				for (int i = 0; i < others.size(); i++) {
 					if (!source.equals(others.get(i)))
-						triggerSend(toTrigger, decisionK
-								.cloneGroupCommMessage(), (PID) others.get(i));
+						dests.addLast(others.get(i));
 				}
+				triggerSend(toTrigger, decisionK, dests);
 
 				decisionToBroadcast.remove(kObj);
 			}
@@ -1121,13 +1132,7 @@ public class FastAbcastImpl {
 					new GroupCommMessage());
 		else {
 			if (!aUndelivered.isEmpty()) {
-				estimate = new TLinkedHashMap();
-				Iterator it = aUndelivered.keySet().iterator();
-                int sizeEstimate = Math.max(MSGS_PER_CONSENSUS/2, aUndelivered.size()/2);
-				while (it.hasNext() && (estimate.size() < sizeEstimate)) {
-					AbcastMessageID id = (AbcastMessageID) it.next();
-					estimate.put(id, aUndelivered.get(id));
-				}
+				estimate = batch(null);
 
 				sendEstimate(toTrigger);
 			} else if (this.phase != 5) {
@@ -1202,19 +1207,19 @@ public class FastAbcastImpl {
 			m.tpack(new TLong(k));
 			// m = <<k::CONS_BROADCAST::decision::newPropose>>
 			//Broadcast decision to others
+			TLinkedList dests = new TLinkedList();
 			for (int i = 0; i < others.size(); i++) {
 				if (!source.equals(others.get(i)))
-					triggerSend(toTrigger, m.cloneGroupCommMessage(),
-                            (PID) others.get(i));
+					dests.addLast(others.get(i));
 			}
+			triggerSend(toTrigger, m, dests);
             m.tunpack();
             m.tunpack();
         }
 		
         //Feed-back for flow-control
         TLinkedHashMap toBeDelivered = (TLinkedHashMap) deepClone(m.tunpack());
-        if(toBeDelivered.size() < MSGS_PER_CONSENSUS) max_locally_abcast = Math.min(MSGS_PER_CONSENSUS * 2, max_locally_abcast + 1);
-        if(toBeDelivered.size() > MSGS_PER_CONSENSUS) max_locally_abcast = Math.max(MIN_LOCALLY_ABCAST, max_locally_abcast - 1);
+        batching.decided(k, toBeDelivered.size());
          
         // Adeliver messages contained in decision
 		logger.log(
@@ -1228,8 +1233,7 @@ public class FastAbcastImpl {
 			AbcastMessageID id = (AbcastMessageID) toBeDelivered.keySet().iterator().next(); //firstKey();
 			GroupCommMessage msg = (GroupCommMessage) toBeDelivered.remove(id);
 			// delivered = msg.cloneGroupCommMessage();
-			long maxId = ((TLong) maxIdProProc.get(id.proc)).longValue();
-			if (!aDelivered.contains(id) && id.id > maxId) {
+			if (!aDelivered.contains(id)) {
 				// Remove the id from aUndelivered
 				aUndelivered.remove(id);
 				// add it in aDelivered
@@ -1250,21 +1254,12 @@ public class FastAbcastImpl {
                     for (int i = 0; i<sizeOthers; i++)
                         ((CompressedSet) messagesSendToProc.get(others.get(i))).add(id);
 				}
-
-				// update the highest aDelivered table
-				AbcastMessageID newID = new AbcastMessageID(id.proc, maxId + 1);
-				while (aDelivered.contains(newID)) {
-					aDelivered.remove(newID);
-					maxId++;
-					newID.id++;
-				}
-				maxIdProProc.put(id.proc, new TLong(maxId));
 			}
 		}
        
 		// Flow Control
 		// Flow control
-        if (nbMsgsSent < max_locally_abcast)
+        if (nbMsgsSent < batching.maxLocallyAbcast())
 			flow_control.release(fc_key);
 
 		// Start next internal consensus
@@ -1280,13 +1275,7 @@ public class FastAbcastImpl {
 			optimizeFirstRound = true;
 		} else {
 			optimizeFirstRound = false;
-			newEstimate = new TLinkedHashMap();
-			Iterator it = aUndelivered.keySet().iterator();
-            int sizeEstimate = Math.max(MSGS_PER_CONSENSUS/2, aUndelivered.size()/2);
-			while (it.hasNext() && (newEstimate.size() < sizeEstimate)) {
-				AbcastMessageID id = (AbcastMessageID) it.next();
-				newEstimate.put(id, aUndelivered.get(id));
-			}
+			newEstimate = batch(null);
 		}
 
 		// Update the current K
@@ -1296,6 +1285,31 @@ public class FastAbcastImpl {
 		logger.exiting("FastAbcastImpl", "processRBcast");
 	}
 
+	/**
+	 * The first messages of aUndelivered that are not delivered nor in
+	 * <i>exclude</i>, as many as the batching policy allows
+	 */
+	private TLinkedHashMap batch(TMap exclude) {
+		TLinkedHashMap result = new TLinkedHashMap();
+		int size = batching.proposalSize(aUndelivered.size());
+		long maxBytes = batching.proposalBytes();
+		long bytes = 0;
+		Iterator it = aUndelivered.keySet().iterator();
+		while (it.hasNext() && (result.size() < size)) {
+			AbcastMessageID id = (AbcastMessageID) it.next();
+			if (((exclude != null) && exclude.containsKey(id))
+					|| aDelivered.contains(id))
+				continue;
+			GroupCommMessage m = (GroupCommMessage) aUndelivered.get(id);
+			long mBytes = BatchingStatistics.sizeOf(m);
+			if (!result.isEmpty() && (bytes + mBytes > maxBytes))
+				break;
+			result.put(id, m);
+			bytes += mBytes;
+		}
+		return result;
+	}
+
 	/**
 	 * Send a message with the current estimate to the current coordinator (the
 	 * local process mustn't be the coordinator)
@@ -1452,17 +1466,8 @@ public class FastAbcastImpl {
 
 		// m = <<>>
 		TLinkedHashMap newPropose = new TLinkedHashMap();
-		if (coordinator.equals(known.get(0))) {
-			Iterator i = aUndelivered.keySet().iterator();
-            int sizeEstimate = Math.max(MSGS_PER_CONSENSUS/2, aUndelivered.size()/2);
-			while (i.hasNext() && (newPropose.size() < sizeEstimate)) {
-				AbcastMessageID id = (AbcastMessageID) i.next();
-				long maxId = ((TLong) maxIdProProc.get(id.proc)).longValue();
-				if ((!estimate.containsKey(id)) && (!aDelivered.contains(id))
-						&& (id.id > maxId))
-					newPropose.put(id, aUndelivered.get(id));
-			}
-		}
+		if (coordinator.equals(known.get(0)))
+			newPropose = batch(estimate);
 
 		decisionMessage.tpack(newPropose);
 		// m = <<newPropose>>
@@ -1475,8 +1480,8 @@ public class FastAbcastImpl {
 	}
 
 	/**
-	 * Triggers a <i>PointToPointSend</i> event for each process in the second
-	 * parameter.
+	 * Triggers a single <i>PointToPointMultiSend</i> event for all the
+	 * processes in the second parameter. The message is serialized once.
 	 * 
 	 * @param m
 	 *            The message to be sent.
@@ -1484,9 +1489,16 @@ public class FastAbcastImpl {
 	 *            The processes that the message is to be sent to.
 	 */
 	private void triggerSend(LinkedList toTrigger, GroupCommMessage m, TList g) {
-		for (int i = 0; i < g.size(); i++) {
-			triggerSend(toTrigger, m.cloneGroupCommMessage(), (PID) g.get(i));
-		}
+		if (g.isEmpty())
+			return;
+
+		GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+		pt2ptSend.addLast(m.cloneGroupCommMessage());
+		pt2ptSend.addLast(new TLinkedList(g));
+		pt2ptSend.addLast(new TBoolean(false)); // not promisc
+		logger.log(Level.FINE, "Sending Pt2Pt message {0} to {1}",
+				new Object[] { m, g });
+		toTrigger.addLast(new TriggerItem(Constants.PT2PTMULTISEND, pt2ptSend));
 	}
 
 	/**
@@ -1532,14 +1544,7 @@ public class FastAbcastImpl {
 		err.println(" A-Undelivered messages:");
 		err.println("   " + aUndelivered.toString());
 		err.println(" A-Delivered messages IDs:");
-		it = aDelivered.iterator();
-		AbcastMessageID id;
-		while (it.hasNext()) {
-			id = (AbcastMessageID) it.next();
-			err.println("\t" + id);
-		}
-		err.println("   and all message with id <= ");
-		err.println("\t" + maxIdProProc.toString());
+		err.println("\t" + aDelivered);
         err.println(" Decision that are not surely delivered by everyone: " );
         err.println("  " + decisionToBroadcast);
         err.println(" Last decision taken by processes: ");
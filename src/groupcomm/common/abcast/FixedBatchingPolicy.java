@@ -0,0 +1,78 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package groupcomm.common.abcast;
+
+/**
+ * The batching policy the abcast implementations have always used: a
+ * proposal contains half of the messages that can be proposed, and at
+ * least half of a nominal number of messages per consensus. The flow
+ * control bound grows by one after a decision smaller than the nominal
+ * number and shrinks by one after a bigger one. The size of the messages
+ * is not taken into account.
+ */
+public class FixedBatchingPolicy implements BatchingPolicy {
+    // Nominal number of messages per consensus
+    private int msgsPerConsensus;
+    // Smallest bound of the flow control
+    private int minLocallyAbcast;
+    // Current bound of the flow control
+    private int maxLocallyAbcast;
+
+    private BatchingStatistics statistics = new BatchingStatistics();
+
+    /**
+     * Constructor.
+     *
+     * @param msgsPerConsensus The nominal number of messages per consensus
+     * @param minLocallyAbcast The smallest bound of the flow control
+     */
+    public FixedBatchingPolicy(int msgsPerConsensus, int minLocallyAbcast) {
+	this.msgsPerConsensus = msgsPerConsensus;
+	this.minLocallyAbcast = minLocallyAbcast;
+	this.maxLocallyAbcast = msgsPerConsensus;
+	statistics.limit = msgsPerConsensus;
+    }
+
+    public int proposalSize(int available) {
+	return Math.max(msgsPerConsensus/2, available/2);
+    }
+
+    public long proposalBytes() {
+	return Long.MAX_VALUE;
+    }
+
+    public void proposed(long k, int messages, long bytes) {
+	statistics.proposed(k, messages, bytes);
+    }
+
+    public void decided(long k, int messages) {
+	statistics.decided(k);
+	//Feed-back for flow-control
+	if(messages < msgsPerConsensus) maxLocallyAbcast = Math.min(msgsPerConsensus * 2, maxLocallyAbcast + 1);
+	if(messages > msgsPerConsensus) maxLocallyAbcast = Math.max(minLocallyAbcast, maxLocallyAbcast - 1);
+    }
+
+    public int maxLocallyAbcast() {
+	return maxLocallyAbcast;
+    }
+
+    public BatchingStatistics getStatistics() {
+	return statistics;
+    }
+}
@@ -33,7 +33,6 @@ import framework.GroupCommEventArgs;
 import framework.GroupCommException;
 import framework.GroupCommMessage;
 import framework.PID;
-import framework.libraries.DefaultSerialization;
 import framework.libraries.FlowControl;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TBoolean;
@@ -41,6 +40,7 @@ import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.THashMap;
 import framework.libraries.serialization.THashSet;
 import framework.libraries.serialization.TInteger;
+import framework.libraries.serialization.TLinkedList;
 import framework.libraries.serialization.TList;
 import framework.libraries.serialization.TMap;
 import framework.libraries.serialization.TSet;
@@ -61,6 +61,11 @@ import framework.libraries.serialization.TSet;
  * <dd> Reports about currently suspected processes. It should be triggered
  * every time the list of suspected changes. </dd>
  * </dl>
+ * <b> Ownership: </b> the value proposed belongs to consensus once
+ * proposed, and the decision is shared with consensus (and with the
+ * messages that send it) when it is triggered: neither of them may be
+ * modified by the upper layer. A layer that needs to change a decision
+ * has to copy it first.
  */
 public class Consensus {
 	/**
@@ -241,7 +246,7 @@ public class Consensus {
         if (group.size() == 1) {
             // Consensus with one only process
             // We decide the value proposed
-            triggerDecision(deepClone(o), k_parObj);
+            triggerDecision(o, k_parObj);
             logger.exiting("ConsensusHandlers", "handlePropose");
             return;
         }
@@ -251,10 +256,9 @@ public class Consensus {
         // Has its decision already arrived??
         if (decision != null) {
             decided.remove(k_parObj);
-            Transportable clone = (Transportable) deepClone(decision);
             // reSendDecision(decision, k_parObj, group, null); DONE EARLIER
             executions.remove(k_parObj);
-            triggerDecision(clone, k_parObj);
+            triggerDecision(decision, k_parObj);
             removeProcesses(k_parObj);
             logger.exiting("ConsensusHandlers", "handlePropose");
             return;
@@ -272,10 +276,9 @@ public class Consensus {
             if (decision != null) {
                 waitPropose.remove(k_parObj);
                 decided.remove(k_parObj);
-                Transportable clone = (Transportable) deepClone(decision);
                 // reSendDecision(decision, k_parObj, group, null); DONE EARLIER
                 executions.remove(k_parObj);
-                triggerDecision(clone, k_parObj);
+                triggerDecision(decision, k_parObj);
                 removeProcesses(k_parObj);
                 logger.exiting("ConsensusHandlers", "handlePropose");
                 return;
@@ -388,8 +391,6 @@ public class Consensus {
         	// m = <<group>>
                        
             if (getExecution(kmessObj).hasStarted()) {                
-            	Transportable clone = deepClone(decision);               
-                
                 if (!myself.equals(source)) {
                     TList group = (TList) m.tunpack();
                     // m = <<>>
@@ -398,7 +399,7 @@ public class Consensus {
                 
                 executions.remove(kmessObj);
                 removeProcesses(kmessObj);
-                triggerDecision(clone, kmessObj);
+                triggerDecision(decision, kmessObj);
             } else {     
                 decided.put(kmessObj, decision);
                 // if (!myself.equals(source)) {Impossible!!
@@ -475,24 +476,6 @@ public class Consensus {
         logger.exiting("ConsensusHandlers", "triggerDecision");
     }
 
-    /**
-     * Makes a copy in memory of the parameter. If the parameter has references
-     * to other objects, they are also cloned. This is necessary to avoid
-     * side-effects at higher-lever protocols.
-     * 
-     * @param o
-     *            The object to deep-clone
-     * @return
-     * @throws IOException
-     * @throws ClassNotFoundException
-     */
-    private Transportable deepClone(Transportable o) throws IOException,
-            ClassNotFoundException {
-        // TODO: There have to be better ways to do deep-clone!!!
-        return DefaultSerialization
-                .unmarshall(DefaultSerialization.marshall(o));
-    }
-
     /**
      * Sends the decision again. This is done to simulate the bahaviour of
      * Reliable Broadcast in static environments.
@@ -524,24 +507,41 @@ public class Consensus {
         int index = group.indexOf(myself);
         int f = (group.size() / 2); // Since group does not contain the initial
                                     // sender of decision
+        TLinkedList dests = new TLinkedList();
         for (int i = 1; i <= f; i++) {
             PID pi = (PID) group.get((index + i) % group.size());
             // if (!pi.equals(myself)
             // && (dontsend == null || !pi.equals(dontsend))) {
             //   SHOULD BE IMPOSSIBLE
-            if (/*!pi.equals(myself) &&*/ !pi.equals(dontsend)) {
-                GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
-                pt2ptSend.addLast(decisionMessage.cloneGroupCommMessage());
-                pt2ptSend.addLast(pi);
-                pt2ptSend.addLast(new TBoolean(false));
-                // not promisc
-                logger.log(Level.FINE, "Sending Broadcast message {0} to {1}",
-                        new Object[] { decisionMessage, pi });
-                trigger.trigger(Constants.PT2PTSEND, pt2ptSend);
-            }
+            if (/*!pi.equals(myself) &&*/ !pi.equals(dontsend))
+                dests.addLast(pi);
         }
+        triggerSend(decisionMessage, dests);
     }
     
+    /**
+     * Triggers a single <i>PointToPointMultiSend</i> event for all the
+     * processes in the second parameter. The message is serialized once.
+     * 
+     * @param m
+     *            The message to be sent.
+     * @param g
+     *            The processes that the message is to be sent to.
+     */
+    private void triggerSend(GroupCommMessage m, TList g) {
+        if (g.isEmpty())
+            return;
+
+        GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+        pt2ptSend.addLast(m);
+        pt2ptSend.addLast(g);
+        pt2ptSend.addLast(new TBoolean(false));
+        // not promisc
+        logger.log(Level.FINE, "Sending Broadcast message {0} to {1}",
+                new Object[] { m, g });
+        trigger.trigger(Constants.PT2PTMULTISEND, pt2ptSend);
+    }
+
     /**
      * Sends the decision tag again. This is done to simulate the bahaviour of
      * Reliable Broadcast in static environments.
@@ -570,22 +570,16 @@ public class Consensus {
         int index = group.indexOf(myself);
         int f = (group.size() / 2); // Since group does not contain the initial
                                     // sender of decision
+        TLinkedList dests = new TLinkedList();
         for (int i = 1; i <= f; i++) {
             PID pi = (PID) group.get((index + i) % group.size());
             // if (!pi.equals(myself)
             // && (dontsend == null || !pi.equals(dontsend))) {
             //   SHOULD BE IMPOSSIBLE
-            if (/*!pi.equals(myself) &&*/ !pi.equals(dontsend)) {
-                GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
-                pt2ptSend.addLast(decisionMessage.cloneGroupCommMessage());
-                pt2ptSend.addLast(pi);
-                pt2ptSend.addLast(new TBoolean(false));
-                // not promisc
-                logger.log(Level.FINE, "Sending Broadcast message {0} to {1}",
-                        new Object[] { decisionMessage, pi });
-                trigger.trigger(Constants.PT2PTSEND, pt2ptSend);
-            }
+            if (/*!pi.equals(myself) &&*/ !pi.equals(dontsend))
+                dests.addLast(pi);
         }
+        triggerSend(decisionMessage, dests);
     }
 
     /**
@@ -32,7 +32,6 @@ import framework.GroupCommEventArgs;
 import framework.GroupCommException;
 import framework.GroupCommMessage;
 import framework.PID;
-import framework.libraries.DefaultSerialization;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TArrayList;
 import framework.libraries.serialization.TBoolean;
@@ -343,9 +342,9 @@ public class ConsensusExecution implements Transportable {
             // START: ADDED BY ORUTTI
             if (r == 0){
             	if(m.size() == 1){// Sergio: Included due to a bug in static-appia-abcast, when the coordinator is catching up
-            		firstEstimate = deepClone(m.tpeek(0)); 
+            		firstEstimate = m.tpeek(0); 
             	} else {
-            		firstEstimate = deepClone(m.tpeek(1)); // 1 instead 0 because CONS_PROPOSE was pushed
+            		firstEstimate = m.tpeek(1); // 1 instead 0 because CONS_PROPOSE was pushed
                                                        // in method pushback
             	}
             }
@@ -364,7 +363,7 @@ public class ConsensusExecution implements Transportable {
 
         estimate = m.tunpack();
         if (round == 0){ 
-            firstEstimate = deepClone(estimate);
+            firstEstimate = estimate;
         }
         lastUpdated = round;
         logger
@@ -543,23 +542,6 @@ public class ConsensusExecution implements Transportable {
         return firstEstimate;
     }
 
-    /**
-     * Makes a copy in memory of the parameter. If the parameter has references
-     * to other objects, they are also cloned. This is necessary to avoid
-     * side-effects at higher-lever protocols.
-     * 
-     * @param o
-     *            The object to deep-clone
-     * @return
-     * @throws IOException
-     * @throws ClassNotFoundException
-     */
-    private Transportable deepClone(Transportable o) throws IOException,
-            ClassNotFoundException {
-        // TODO: There have to be better ways to do deep-clone!!!
-        return DefaultSerialization
-                .unmarshall(DefaultSerialization.marshall(o));
-    }
     
     /**
      * This method manages the transition to the next round. It updates several
@@ -609,7 +591,7 @@ public class ConsensusExecution implements Transportable {
                 phase = 2;
             } else {
                 // If this is round #1, directly send proposal to the others
-                firstEstimate = deepClone(estimate);
+                firstEstimate = estimate;
                 sendPropose();
                 // Proceed to phase 4
                 phase = 4;
@@ -792,8 +774,8 @@ public class ConsensusExecution implements Transportable {
     }
 
     /**
-     * Triggers a <i>PointToPointSend</i> event for each process in the second
-     * parameter.
+     * Triggers a single <i>PointToPointMultiSend</i> event for all the
+     * processes in the second parameter. The message is serialized once.
      * 
      * @param m
      *            The message to be sent.
@@ -801,9 +783,16 @@ public class ConsensusExecution implements Transportable {
      *            The processes that the message is to be sent to.
      */
     private void triggerSend(GroupCommMessage m, TList g) {
-        for (int i = 0; i < g.size(); i++) {
-            triggerSend(m.cloneGroupCommMessage(), (PID) g.get(i));
-        }
+        if (g.isEmpty())
+            return;
+
+        GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+        pt2ptSend.addLast(m.cloneGroupCommMessage());
+        pt2ptSend.addLast(new TLinkedList(g));
+        pt2ptSend.addLast(new TBoolean(false)); // not promisc
+        logger.log(Level.FINE, "Sending Pt2Pt message {0} to {1}",
+                new Object[] { m, g });
+        trigger.trigger(Constants.PT2PTMULTISEND, pt2ptSend);
     }
 
     /**
@@ -33,7 +33,6 @@ import framework.GroupCommEventArgs;
 import framework.GroupCommException;
 import framework.GroupCommMessage;
 import framework.PID;
-import framework.libraries.DefaultSerialization;
 import framework.libraries.FlowControl;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TBoolean;
@@ -41,6 +40,7 @@ import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.THashMap;
 import framework.libraries.serialization.THashSet;
 import framework.libraries.serialization.TInteger;
+import framework.libraries.serialization.TLinkedList;
 import framework.libraries.serialization.TList;
 import framework.libraries.serialization.TMap;
 import framework.libraries.serialization.TSet;
@@ -165,7 +165,7 @@ public class ConsensusMR {
 		if (group.size() == 1) {
 			// ConsensusMR with one only process
 			// We decide the value proposed
-			triggerDecision(deepClone(o), k_parObj);
+			triggerDecision(o, k_parObj);
 			logger.exiting("ConsensusMRHandlers", "handleRun");
 			return;
 		}
@@ -174,14 +174,13 @@ public class ConsensusMR {
 		// Has its decision already arrived??
 		if (decision != null) {
 			decided.remove(k_parObj);
-			Transportable clone = (Transportable) deepClone(decision);
 			reSendDecision(
 				decision,
 				k_parObj,
 				group,
 				null);
 			executions.remove(k_parObj);
-			triggerDecision(clone, k_parObj);
+			triggerDecision(decision, k_parObj);
 			removeProcesses(k_parObj);
 			logger.exiting("ConsensusMRHandlers", "handleRun");
 			return;
@@ -239,14 +238,13 @@ public class ConsensusMR {
 				// m = <<group>>
 
 				if (getExecution(kObj).hasStarted()) {
-					Transportable clone = deepClone(decision);
 					if (!myself.equals(source)) {
 						TList group = (TList) m.tunpack();
 						// m = <<>>
 						reSendDecision(decision, kObj, group, source);
 					}
 					executions.remove(kObj);
-					triggerDecision(clone, kObj);
+					triggerDecision(decision, kObj);
 					removeProcesses(kObj);
 				} else {
 					decided.put(kObj, decision);
@@ -305,12 +303,6 @@ public class ConsensusMR {
 		logger.exiting("ConsensusMRHandlers", "triggerDecision");
 	}
 
-    private Transportable deepClone(Transportable o)
-        throws IOException, ClassNotFoundException {
-        //TODO: There have to be better ways to do deep-clone!!!
-        return DefaultSerialization.unmarshall(DefaultSerialization.marshall(o));
-    }
-
     private void reSendDecision(
         Transportable decision,
         Transportable kObj,
@@ -326,20 +318,24 @@ public class ConsensusMR {
         //m = <<CONS_BROADCAST::decision::group>>
         decisionMessage.tpack(kObj);
         //m = <<k::CONS_BROADCAST::decision::group>>
+        TLinkedList dests = new TLinkedList();
         for (int i = 0; i < group.size(); i++){
         	PID pi = (PID) group.get(i);
-            if (!pi.equals(myself) && (dontsend == null || !pi.equals(dontsend)) ) {
-                GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
-                pt2ptSend.addLast(decisionMessage.cloneGroupCommMessage());
-                pt2ptSend.addLast(pi);
-                pt2ptSend.addLast(new TBoolean(false));
-                // not promisc
-                logger.log(
-                    Level.FINE,
-                    "Sending Broadcast message {0} to {1}",
-                    new Object[] { decisionMessage, pi });
-                trigger.trigger(Constants.PT2PTSEND, pt2ptSend);
-            }
+            if (!pi.equals(myself) && (dontsend == null || !pi.equals(dontsend)) )
+                dests.addLast(pi);
+        }
+        if (!dests.isEmpty()) {
+            // The message is serialized once for all the destinations
+            GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+            pt2ptSend.addLast(decisionMessage);
+            pt2ptSend.addLast(dests);
+            pt2ptSend.addLast(new TBoolean(false));
+            // not promisc
+            logger.log(
+                Level.FINE,
+                "Sending Broadcast message {0} to {1}",
+                new Object[] { decisionMessage, dests });
+            trigger.trigger(Constants.PT2PTMULTISEND, pt2ptSend);
         }
     }
 
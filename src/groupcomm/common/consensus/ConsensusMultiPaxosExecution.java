@@ -0,0 +1,538 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package groupcomm.common.consensus;
+
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import uka.transport.Transportable;
+import framework.Constants;
+import framework.GroupCommEventArgs;
+import framework.GroupCommMessage;
+import framework.PID;
+import framework.libraries.Trigger;
+import framework.libraries.serialization.TArrayList;
+import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TInteger;
+import framework.libraries.serialization.TLinkedList;
+import framework.libraries.serialization.TList;
+import framework.libraries.serialization.TLong;
+import framework.libraries.serialization.TLongTreeMap;
+import framework.libraries.serialization.TLongWatermarkSet;
+
+/**
+ * Multi-Paxos execution of all the consensus instances of a process
+ * (used by {@link ConsensusPaxos} in Multi-Paxos mode). <br>
+ * The leader given by Omega runs the read phase (<i>prepare</i>) once for
+ * all the instances it has not finished yet. Once a majority promised its
+ * ballot, it decides every instance with a single write phase
+ * (<i>accept</i>), until another process gets a higher ballot. The
+ * instances are numbered by longs and the ballot b belongs to the process
+ * b mod n of the group, as the rounds of {@link ConsensusPaxosExecution}.
+ * <br>
+ * The values accepted are kept until all the instances below them are
+ * finished, so that a new leader learns the values that may have been
+ * decided. The decisions are diffused by ConsensusPaxos.
+ */
+public class ConsensusMultiPaxosExecution {
+    /**
+     * Identifiers of Multi-Paxos messages
+     */
+    public static final int CONS_PREPARE = 15972;
+    public static final int CONS_PROMISE = 15973;
+    public static final int CONS_REJECT = 15974;
+    public static final int CONS_ACCEPT = 15975;
+    public static final int CONS_ACCEPTED = 15976;
+
+    // Ballot of the values known to be decided
+    private static final int DECIDED = Integer.MAX_VALUE;
+
+    private static final Logger logger =
+	Logger.getLogger(ConsensusMultiPaxosExecution.class.getName());
+
+    private PID myself;
+    private Trigger trigger;
+
+    // The group, the group but myself and the number of acks to wait for
+    private TList group = null;
+    private TList others;
+    private int n;
+    private int limit;
+
+    // The current leader (null if not known yet)
+    private PID leader = null;
+
+    /* Acceptor */
+
+    // Highest ballot promised
+    private int promised = -1;
+    // Values accepted : Table (k -> TInteger ballot) and (k -> value)
+    private TLongTreeMap acceptedBallot = new TLongTreeMap();
+    private TLongTreeMap acceptedValue = new TLongTreeMap();
+    // Instances finished
+    private TLongWatermarkSet finished;
+    // Promise only to the leader given by Omega (leader leases), and the
+    // last prepare of another process : (from, ballot, source)
+    private boolean leaderOnly = false;
+    private long deferredFrom;
+    private int deferredBallot;
+    private PID deferredSource = null;
+
+    /* Leader */
+
+    // My ballot (-1: none), being prepared or established
+    private int ballot = -1;
+    private boolean preparing = false;
+    private boolean established = false;
+    // Instances from which the ballot is prepared
+    private long from;
+    // Instances below floor are finished by a process of the majority
+    private long floor;
+    private int nbPromise;
+    // Values reported by the promises : Table (k -> TInteger ballot) and (k -> value)
+    private TLongTreeMap recoveredBallot = new TLongTreeMap();
+    private TLongTreeMap recoveredValue = new TLongTreeMap();
+    // Values proposed locally : Table (k -> value)
+    private TLongTreeMap proposals = new TLongTreeMap();
+    // Instances in the write phase : Table (k -> TInteger nbAck)
+    private TLongTreeMap writing = new TLongTreeMap();
+    // Instances below it are decided, by my ballot or a previous one
+    private long decided;
+
+    /**
+     * @param first the first instance run (the ones below are never run)
+     */
+    public ConsensusMultiPaxosExecution(PID myself, Trigger trigger, long first) {
+	this.myself = myself;
+	this.trigger = trigger;
+	this.finished = new TLongWatermarkSet(first);
+	this.decided = first;
+    }
+
+    /**
+     * Start instance k with a proposal. Only the leader writes it.
+     */
+    public void processStart(long k, Transportable proposal, TList group) {
+	setGroup(group);
+	if (finished.contains(k) || proposals.containsKey(k))
+	    return;
+	proposals.put(k, proposal);
+
+	if (established && (k >= floor) && !writing.containsKey(k)
+	    && !acceptedDecided(k))
+	    write(k, proposal);
+    }
+
+    /**
+     * Promise a ballot only to the process Omega gives as leader: with
+     * leader leases, no other process can prepare a ballot while the
+     * lease granted to the leader runs, since Omega does not change the
+     * leader before the lease expires. The prepares of the other
+     * processes wait until they become leader.
+     */
+    public void setLeaderOnly(boolean leaderOnly) {
+	this.leaderOnly = leaderOnly;
+    }
+
+    /**
+     * Instances below the bound are decided, as far as the leader knows
+     * (-1 if my ballot is not established). Once it finished them, it
+     * knows all the values decided before, if it holds the lease.
+     */
+    public long getReadBound() {
+	return established ? decided : -1;
+    }
+
+    /**
+     * Instances below the bound are finished.
+     */
+    public long getFinishedBound() {
+	return finished.getWatermark();
+    }
+
+    /**
+     * Has instance k been started locally ?
+     */
+    public boolean hasStarted(long k) {
+	return proposals.containsKey(k);
+    }
+
+    /**
+     * The leader changed. If it is myself, prepare a new ballot for the
+     * instances not finished yet.
+     */
+    public void processNewLeader(PID newLeader, TList group) {
+	setGroup(group);
+	if (newLeader.equals(leader))
+	    return;
+	leader = newLeader;
+	if ((deferredSource != null) && deferredSource.equals(leader)) {
+	    deferredSource = null;
+	    processPrepare(deferredFrom, deferredBallot, leader);
+	}
+
+	if (!isLeader()) {
+	    preparing = false;
+	    established = false;
+	    return;
+	}
+	prepare();
+    }
+
+    /**
+     * Receive a prepare of a leader for the instances from <i>from</i> on.
+     */
+    public void processPrepare(long from, int b, PID source) {
+	if (leaderOnly && !source.equals(leader)) {
+	    deferredFrom = from;
+	    deferredBallot = b;
+	    deferredSource = source;
+	    return;
+	}
+	if (b < promised) {
+	    sendReject(source, from, promised);
+	    return;
+	}
+	promise(b);
+
+	TLinkedList entries = new TLinkedList();
+	long[] ks = acceptedBallot.keys();
+	for (int i = 0; i < ks.length; i++)
+	    if (ks[i] >= from) {
+		entries.addLast(new TLong(ks[i]));
+		entries.addLast(acceptedBallot.get(ks[i]));
+		entries.addLast(acceptedValue.get(ks[i]));
+	    }
+
+	GroupCommMessage m = new GroupCommMessage();
+	//m = <<>>
+	m.tpack(entries);
+	//m = <<entries>>
+	m.tpack(new TLong(finished.getWatermark()));
+	//m = <<floor::entries>>
+	m.tpack(new TInteger(b));
+	//m = <<ballot::floor::entries>>
+	m.tpack(new TInteger(CONS_PROMISE));
+	//m = <<CONS_PROMISE::ballot::floor::entries>>
+	m.tpack(new TLong(from));
+	//m = <<from::CONS_PROMISE::ballot::floor::entries>>
+	triggerSend(m, source);
+    }
+
+    /**
+     * Receive a promise for my ballot with the values accepted by its
+     * sender (k::ballot::value ...) and the instances it finished
+     * (all below <i>floorFrom</i>).
+     */
+    public void processPromise(int b, long floorFrom, TList entries) {
+	if (!preparing || (b != ballot))
+	    return;
+
+	floor = Math.max(floor, floorFrom);
+	Iterator it = entries.iterator();
+	while (it.hasNext()) {
+	    long k = ((TLong) it.next()).longValue();
+	    TInteger w = (TInteger) it.next();
+	    Transportable v = (Transportable) it.next();
+	    TInteger old = (TInteger) recoveredBallot.get(k);
+	    if ((old == null) || (w.intValue() > old.intValue())) {
+		recoveredBallot.put(k, w);
+		recoveredValue.put(k, v);
+	    }
+	}
+
+	nbPromise++;
+	if (nbPromise == limit)
+	    establish();
+    }
+
+    /**
+     * A process promised a higher ballot than mine.
+     */
+    public void processReject(int b) {
+	if (b <= ballot)
+	    return;
+	promise(b);
+	if (isLeader())
+	    prepare();
+    }
+
+    /**
+     * Receive the value of the leader for instance k.
+     */
+    public void processAccept(long k, int b, Transportable v, PID source) {
+	if (b < promised) {
+	    sendReject(source, k, promised);
+	    return;
+	}
+	promise(b);
+	if (!acceptedDecided(k)) {
+	    acceptedBallot.put(k, new TInteger(b));
+	    acceptedValue.put(k, v);
+	}
+
+	GroupCommMessage m = new GroupCommMessage();
+	//m = <<>>
+	m.tpack(new TInteger(b));
+	//m = <<ballot>>
+	m.tpack(new TInteger(CONS_ACCEPTED));
+	//m = <<CONS_ACCEPTED::ballot>>
+	m.tpack(new TLong(k));
+	//m = <<k::CONS_ACCEPTED::ballot>>
+	triggerSend(m, source);
+    }
+
+    /**
+     * Receive an ack for the value of instance k. Decide once a majority
+     * accepted it.
+     */
+    public void processAccepted(long k, int b) {
+	if (!established || (b != ballot))
+	    return;
+	TInteger nbAck = (TInteger) writing.get(k);
+	if (nbAck == null)
+	    return;
+
+	if (nbAck.intValue() + 1 < limit) {
+	    writing.put(k, new TInteger(nbAck.intValue() + 1));
+	    return;
+	}
+	writing.remove(k);
+	broadcastDecision(k, acceptedValue.get(k));
+    }
+
+    /**
+     * The decision of instance k is known (not delivered yet, maybe).
+     */
+    public void processDecision(long k, Transportable decision) {
+	writing.remove(k);
+	if (finished.contains(k))
+	    return;
+	acceptedBallot.put(k, new TInteger(DECIDED));
+	acceptedValue.put(k, decision);
+    }
+
+    /**
+     * Instance k is finished: forget the values accepted below the
+     * instances finished.
+     */
+    public void processFinished(long k) {
+	finished.add(k);
+	proposals.remove(k);
+	writing.remove(k);
+	long watermark = finished.getWatermark();
+	while (!acceptedBallot.isEmpty() && (acceptedBallot.firstKey() < watermark)) {
+	    acceptedValue.remove(acceptedBallot.firstKey());
+	    acceptedBallot.remove(acceptedBallot.firstKey());
+	}
+    }
+
+    private void setGroup(TList g) {
+	if (group != null)
+	    return;
+	n = g.size();
+	group = new TArrayList();
+	others = new TArrayList();
+	for (int i = 0; i < n; i++) {
+	    PID p = (PID) g.get(i);
+	    group.add(p);
+	    if (!p.equals(myself))
+		others.add(p);
+	}
+	// Majority, myself included
+	limit = n / 2;
+    }
+
+    private boolean isLeader() {
+	return myself.equals(leader);
+    }
+
+    private boolean acceptedDecided(long k) {
+	TInteger w = (TInteger) acceptedBallot.get(k);
+	return (w != null) && (w.intValue() == DECIDED);
+    }
+
+    // Promise ballot b; a leader with a lower ballot is not anymore
+    private void promise(int b) {
+	if (b > promised)
+	    promised = b;
+	if ((ballot >= 0) && (b > ballot)) {
+	    preparing = false;
+	    established = false;
+	}
+    }
+
+    // Choose a ballot higher than any promised and run the read phase
+    private void prepare() {
+	int index = group.indexOf(myself);
+	int b = index;
+	while (b <= promised)
+	    b = b + n;
+	ballot = b;
+	promised = b;
+	from = finished.getWatermark();
+	floor = from;
+	writing.clear();
+	recoveredBallot.clear();
+	recoveredValue.clear();
+	// My own promise
+	long[] ks = acceptedBallot.keys();
+	for (int i = 0; i < ks.length; i++)
+	    if (ks[i] >= from) {
+		recoveredBallot.put(ks[i], acceptedBallot.get(ks[i]));
+		recoveredValue.put(ks[i], acceptedValue.get(ks[i]));
+	    }
+
+	// No value can have been accepted before the first ballot
+	if (b == 0) {
+	    preparing = false;
+	    establish();
+	    return;
+	}
+
+	preparing = true;
+	established = false;
+	nbPromise = 0;
+	logger.log(Level.FINE, "Preparing ballot {0} from instance {1}",
+		   new Object[] { new TInteger(b), new TLong(from) });
+
+	GroupCommMessage m = new GroupCommMessage();
+	//m = <<>>
+	m.tpack(new TInteger(b));
+	//m = <<ballot>>
+	m.tpack(new TInteger(CONS_PREPARE));
+	//m = <<CONS_PREPARE::ballot>>
+	m.tpack(new TLong(from));
+	//m = <<from::CONS_PREPARE::ballot>>
+	triggerSend(m, others);
+    }
+
+    // A majority promised: write the values reported, then mine
+    private void establish() {
+	preparing = false;
+	established = true;
+	decided = floor;
+	logger.log(Level.FINE, "Ballot {0} established from instance {1}",
+		   new Object[] { new TInteger(ballot), new TLong(floor) });
+
+	long[] ks = recoveredBallot.keys();
+	for (int i = 0; i < ks.length; i++) {
+	    if ((ks[i] < floor) || finished.contains(ks[i]))
+		continue;
+	    decided = Math.max(decided, ks[i] + 1);
+	    Transportable v = recoveredValue.get(ks[i]);
+	    if (((TInteger) recoveredBallot.get(ks[i])).intValue() == DECIDED)
+		broadcastDecision(ks[i], v);
+	    else
+		write(ks[i], v);
+	}
+	recoveredBallot.clear();
+	recoveredValue.clear();
+
+	ks = proposals.keys();
+	for (int i = 0; i < ks.length; i++)
+	    if ((ks[i] >= floor) && !writing.containsKey(ks[i])
+		&& !acceptedDecided(ks[i]))
+		write(ks[i], proposals.get(ks[i]));
+    }
+
+    // Write phase of instance k with my ballot
+    private void write(long k, Transportable v) {
+	acceptedBallot.put(k, new TInteger(ballot));
+	acceptedValue.put(k, v);
+	writing.put(k, new TInteger(0));
+	if (limit == 0) {
+	    writing.remove(k);
+	    broadcastDecision(k, v);
+	    return;
+	}
+
+	GroupCommMessage m = new GroupCommMessage();
+	//m = <<>>
+	m.tpack(v);
+	//m = <<value>>
+	m.tpack(new TInteger(ballot));
+	//m = <<ballot::value>>
+	m.tpack(new TInteger(CONS_ACCEPT));
+	//m = <<CONS_ACCEPT::ballot::value>>
+	m.tpack(new TLong(k));
+	//m = <<k::CONS_ACCEPT::ballot::value>>
+	triggerSend(m, others);
+    }
+
+    private void sendReject(PID receiver, long k, int b) {
+	GroupCommMessage m = new GroupCommMessage();
+	//m = <<>>
+	m.tpack(new TInteger(b));
+	//m = <<promised>>
+	m.tpack(new TInteger(CONS_REJECT));
+	//m = <<CONS_REJECT::promised>>
+	m.tpack(new TLong(k));
+	//m = <<k::CONS_REJECT::promised>>
+	triggerSend(m, receiver);
+    }
+
+    private void broadcastDecision(long k, Transportable decision) {
+	decided = Math.max(decided, k + 1);
+	GroupCommMessage m = new GroupCommMessage();
+	//m = <<>>
+	m.tpack(group);
+	//m = <<group>>
+	m.tpack(decision);
+	//m = <<decision::group>>
+	m.tpack(new TInteger(ConsensusPaxosExecution.CONS_DECISION));
+	//m = <<CONS_DECISION::decision::group>>
+	m.tpack(new TLong(k));
+	//m = <<k::CONS_DECISION::decision::group>>
+	triggerSend(m, group);
+    }
+
+    // The message is serialized once for all the processes of g
+    private void triggerSend(GroupCommMessage m, TList g) {
+	if (g.isEmpty())
+	    return;
+
+	GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+	pt2ptSend.addLast(m);
+	pt2ptSend.addLast(new TLinkedList(g));
+	pt2ptSend.addLast(new TBoolean(false)); // not promisc
+	logger.log(Level.FINE, "Sending Pt2Pt message {0} to {1}",
+		   new Object[] { m, g });
+	trigger.trigger(Constants.PT2PTMULTISEND, pt2ptSend);
+    }
+
+    private void triggerSend(GroupCommMessage m, PID p) {
+	GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+	pt2ptSend.addLast(m);
+	pt2ptSend.addLast(p);
+	pt2ptSend.addLast(new TBoolean(false)); // not promisc
+	logger.log(Level.FINE, "Sending Pt2Pt message {0} to {1}",
+		   new Object[] { m, p });
+	trigger.trigger(Constants.PT2PTSEND, pt2ptSend);
+    }
+
+    public String toString() {
+	return "(** leader: " + leader + " ballot: " + ballot
+	    + (established ? " established" : (preparing ? " preparing" : ""))
+	    + " promised: " + promised + " finished: " + finished
+	    + " accepted: " + acceptedBallot + " writing: " + writing
+	    + " proposals: " + proposals.keys().length + " **)";
+    }
+}
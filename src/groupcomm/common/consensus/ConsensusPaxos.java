@@ -33,7 +33,6 @@ import framework.GroupCommEventArgs;
 import framework.GroupCommException;
 import framework.GroupCommMessage;
 import framework.PID;
-import framework.libraries.DefaultSerialization;
 import framework.libraries.FlowControl;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TArrayList;
@@ -42,7 +41,9 @@ import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.THashMap;
 import framework.libraries.serialization.THashSet;
 import framework.libraries.serialization.TInteger;
+import framework.libraries.serialization.TLinkedList;
 import framework.libraries.serialization.TList;
+import framework.libraries.serialization.TLong;
 import framework.libraries.serialization.TMap;
 import framework.libraries.serialization.TSet;
 
@@ -89,6 +90,9 @@ public class ConsensusPaxos {
     private TMap monitored = new THashMap();
     private TMap groupMonitored = new THashMap();
 
+    // Execution of all the instances in Multi-Paxos mode (null otherwise)
+    private ConsensusMultiPaxosExecution multiPaxos = null;
+
     private static final Logger logger =
 	Logger.getLogger(ConsensusPaxos.class.getName());
 
@@ -107,6 +111,47 @@ public class ConsensusPaxos {
 	logger.exiting("ConsensusPaxosHandlers", "<constr>");
     }
 
+    /**
+     * Run the instances in Multi-Paxos mode: the leader runs the read phase
+     * once for all the instances, then decides each one with a write
+     * phase only. The instance ids must be TLongs. All the processes of
+     * the group must use the same setting, before the first instance.
+     *
+     * @param multi True for the Multi-Paxos mode
+     * @param first The id of the first instance run
+     */
+    public void setMultiPaxos(boolean multi, long first) {
+	if (fc_key != -1)
+	    throw new RuntimeException("ConsensusPaxos: Multi-Paxos set after the first instance");
+	multiPaxos = multi ? new ConsensusMultiPaxosExecution(myself, trigger, first) : null;
+    }
+
+    /**
+     * In Multi-Paxos mode, promise ballots only to the leader given by
+     * Omega, for the leader leases (see ConsensusMultiPaxosExecution).
+     */
+    public void setLeaderLease(boolean leaderLease) {
+	if (multiPaxos == null)
+	    throw new RuntimeException("ConsensusPaxos: leader leases need the Multi-Paxos mode");
+	multiPaxos.setLeaderOnly(leaderLease);
+    }
+
+    /**
+     * The instances the Multi-Paxos leader must have finished before it
+     * reads locally: all those below the bound (-1 if this process is not
+     * the leader, or not yet).
+     */
+    public long getReadBound() {
+	return (multiPaxos != null) ? multiPaxos.getReadBound() : -1;
+    }
+
+    /**
+     * The instances below the bound are finished (Multi-Paxos mode).
+     */
+    public long getFinishedBound() {
+	return (multiPaxos != null) ? multiPaxos.getFinishedBound() : -1;
+    }
+
     /**
      * Handler pour l'�v�nement <i>Run</i>.
      * Lance une nouvelle �x�cution de consensus.
@@ -160,7 +205,7 @@ public class ConsensusPaxos {
 	if (group.size() == 1) {
 	    // ConsensusPaxos with one only process
 	    // We decide the value proposed
-	    triggerDecision(deepClone(o), k_parObj);
+	    triggerDecision(o, k_parObj);
 	    logger.exiting("ConsensusPaxosHandlers", "handleRun");
 	    return;
 	}
@@ -169,14 +214,13 @@ public class ConsensusPaxos {
 	// Has its decision already arrived??
 	if (decision != null) {
 	    decided.remove(k_parObj);
-	    Transportable clone = deepClone(decision);
 	    reSendDecision(
 			   decision,
 			   k_parObj,
 			   group,
 			   null);
 	    executions.remove(k_parObj);
-	    triggerDecision(clone, k_parObj);
+	    triggerDecision(decision, k_parObj);
 	    removeProcesses(k_parObj);
 	    logger.exiting("ConsensusPaxosHandlers", "handleRun");
 	    return;
@@ -186,7 +230,10 @@ public class ConsensusPaxos {
 	    throw new GroupCommException("Impossible to finish before starting consensus!");
 
 	addProcesses(k_parObj, group);
-	getExecution(k_parObj).processStart(o, group);
+	if (multiPaxos != null)
+	    multiPaxos.processStart(instance(k_parObj), o, group);
+	else
+	    getExecution(k_parObj).processStart(o, group);
 	logger.exiting("ConsensusPaxosHandlers", "handleRun");
     }
 
@@ -205,6 +252,17 @@ public class ConsensusPaxos {
 	// m = <<k::type::payload>>
 	Transportable kObj = (Transportable) m.tunpack();
 	// m = <<type::payload>> 
+	PID source = (PID) e.get(1);
+	int type = ((TInteger) m.tunpack()).intValue();
+	// m = <<payload>>
+	// The read phase of Multi-Paxos is for all the instances from k on
+	if ((multiPaxos != null) && (type == ConsensusMultiPaxosExecution.CONS_PREPARE
+				     || type == ConsensusMultiPaxosExecution.CONS_PROMISE
+				     || type == ConsensusMultiPaxosExecution.CONS_REJECT)) {
+	    handleMultiPaxos(type, instance(kObj), m, source);
+	    logger.exiting("ConsensusPaxosHandlers", "handlePt2PtDeliver");
+	    return;
+	}
 	if (finished.contains((Compressable) kObj) || decided.containsKey(kObj)) {
 	    logger.log(
 		       Level.FINE,
@@ -213,11 +271,8 @@ public class ConsensusPaxos {
 	    logger.exiting("ConsensusPaxosHandlers", "handlePt2PtDeliver");
 	    return;
 	}
-	PID source = (PID) e.get(1);
-	int type = ((TInteger) m.tunpack()).intValue();
 	int r;
 	Transportable estimate;
-	// m = <<payload>>
 	switch (type) {
 	case ConsensusPaxosExecution.CONS_READ:
 	    // m = <<r::propose>>
@@ -247,6 +302,17 @@ public class ConsensusPaxos {
 	    r = ((TInteger) m.tunpack()).intValue();
 	    getExecution(kObj).processAckWrite(r);
 	    break;
+	case ConsensusMultiPaxosExecution.CONS_ACCEPT:
+	    // m = <<r::value>>
+	    r = ((TInteger) m.tunpack()).intValue();
+	    estimate = m.tunpack();
+	    multiPaxos.processAccept(instance(kObj), r, estimate, source);
+	    break;
+	case ConsensusMultiPaxosExecution.CONS_ACCEPTED:
+	    // m = <<r>>
+	    r = ((TInteger) m.tunpack()).intValue();
+	    multiPaxos.processAccepted(instance(kObj), r);
+	    break;
 	case ConsensusPaxosExecution.CONS_NACKWRITE:
 	    // m = <<r::propose>>
 	    r = ((TInteger) m.tunpack()).intValue();
@@ -257,15 +323,20 @@ public class ConsensusPaxos {
 	    Transportable decision = m.tunpack();
 	    // m = <<group>>
 
-	    if (getExecution(kObj).hasStarted()) {
-		Transportable clone = deepClone(decision);
+	    boolean started;
+	    if (multiPaxos != null) {
+		multiPaxos.processDecision(instance(kObj), decision);
+		started = multiPaxos.hasStarted(instance(kObj));
+	    } else
+		started = getExecution(kObj).hasStarted();
+	    if (started) {
 		if (!myself.equals(source)) {
 		    TList group = (TList) m.tunpack();
 		    // m = <<>>
 		    reSendDecision(decision, kObj, group, source);
 		}
 		executions.remove(kObj);
-		triggerDecision(clone, kObj);
+		triggerDecision(decision, kObj);
 		removeProcesses(kObj);
 	    } else {
 		decided.put(kObj, decision);
@@ -292,6 +363,11 @@ public class ConsensusPaxos {
 	logger.entering("ConsensusPaxosHandlers", "handleSuspect");
 	PID leader = (PID) e.get(0);
 	TList group = (TList) e.get(1);
+	if (multiPaxos != null) {
+	    multiPaxos.processNewLeader(leader, group);
+	    logger.exiting("ConsensusPaxosHandlers", "handleSuspect");
+	    return;
+	}
 	TSet ins = (TSet) groupMonitored.get(group);
 
 	if (ins != null) {
@@ -317,6 +393,8 @@ public class ConsensusPaxos {
 	//flow_control.free(fc_key, 1);
     fc_used--; if(fc_used < fc_threshold) flow_control.release(fc_key);
 	finished.add((Compressable) kObj);
+	if (multiPaxos != null)
+	    multiPaxos.processFinished(((TLong) kObj).longValue());
 
 	GroupCommEventArgs e = new GroupCommEventArgs();
 	e.addLast(o);
@@ -329,10 +407,32 @@ public class ConsensusPaxos {
 	logger.exiting("ConsensusPaxosHandlers", "triggerDecision");
     }
 
-    private Transportable deepClone(Transportable o)
-        throws IOException, ClassNotFoundException {
-        //TODO: There have to be better ways to do deep-clone!!!
-        return DefaultSerialization.unmarshall(DefaultSerialization.marshall(o));
+    // Messages of the read phase of Multi-Paxos
+    private void handleMultiPaxos(int type, long from, GroupCommMessage m, PID source)
+	throws GroupCommException {
+	int b = ((TInteger) m.tunpack()).intValue();
+	switch (type) {
+	case ConsensusMultiPaxosExecution.CONS_PREPARE:
+	    // m = <<>>
+	    multiPaxos.processPrepare(from, b, source);
+	    break;
+	case ConsensusMultiPaxosExecution.CONS_PROMISE:
+	    // m = <<floor::entries>>
+	    long floor = ((TLong) m.tunpack()).longValue();
+	    TList entries = (TList) m.tunpack();
+	    multiPaxos.processPromise(b, floor, entries);
+	    break;
+	default:
+	    // CONS_REJECT, m = <<>>
+	    multiPaxos.processReject(b);
+	}
+    }
+
+    // Number of an instance in Multi-Paxos mode
+    private long instance(Transportable kObj) throws GroupCommException {
+	if (!(kObj instanceof TLong))
+	    throw new GroupCommException("ConsensusPaxos: Multi-Paxos needs TLong instance ids: " + kObj);
+	return ((TLong) kObj).longValue();
     }
 
     private void reSendDecision(
@@ -350,20 +450,24 @@ public class ConsensusPaxos {
         //m = <<CONS_BROADCAST::decision::group>>
         decisionMessage.tpack(kObj);
         //m = <<k::CONS_BROADCAST::decision::group>>
+        TLinkedList dests = new TLinkedList();
         for (int i = 0; i < group.size(); i++){
         	PID pi = (PID) group.get(i);
-            if (!pi.equals(myself) && (dontsend == null || !pi.equals(dontsend)) ) {
-                GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
-                pt2ptSend.addLast(decisionMessage.cloneGroupCommMessage());
-                pt2ptSend.addLast(pi);
-                pt2ptSend.addLast(new TBoolean(false));
-                // not promisc
-                logger.log(
-			   Level.FINE,
-			   "Sending Broadcast message {0} to {1}",
-			   new Object[] { decisionMessage, pi });
-                trigger.trigger(Constants.PT2PTSEND, pt2ptSend);
-            }
+            if (!pi.equals(myself) && (dontsend == null || !pi.equals(dontsend)) )
+                dests.addLast(pi);
+        }
+        if (!dests.isEmpty()) {
+            // The message is serialized once for all the destinations
+            GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+            pt2ptSend.addLast(decisionMessage);
+            pt2ptSend.addLast(dests);
+            pt2ptSend.addLast(new TBoolean(false));
+            // not promisc
+            logger.log(
+                Level.FINE,
+                "Sending Broadcast message {0} to {1}",
+                new Object[] { decisionMessage, dests });
+            trigger.trigger(Constants.PT2PTMULTISEND, pt2ptSend);
         }
     }
 
@@ -389,8 +493,17 @@ public class ConsensusPaxos {
 	TSet Sk;
 	if (groupMonitored.containsKey(group))
 	    Sk = (TSet) groupMonitored.get(group);
-	else
+	else {
 	    Sk = new THashSet();
+	    // The leader is kept from one instance to the next: the group
+	    // stays monitored even when no instance runs, otherwise the
+	    // suspicions are forgotten and every instance starts with the
+	    // first process as leader, even if it crashed
+	    GroupCommEventArgs e0 = new GroupCommEventArgs();
+	    e0.addLast(group); //Start
+	    e0.addLast(new TArrayList()); //Stop
+	    trigger.trigger(Constants.STARTSTOPMONITOR, e0);
+	}
 	Sk.add(kObj);
 	groupMonitored.put(group, Sk);
 
@@ -485,6 +598,8 @@ public class ConsensusPaxos {
 	err.println("Decisions arrived: " + decided);
 	err.println("Finished executions: " + finished);
 	err.println("Processes monitored: " + monitored);
+	if (multiPaxos != null)
+	    err.println("Multi-Paxos: " + multiPaxos);
 	err.println("===================================");
     }
 }
@@ -35,6 +35,7 @@ import framework.libraries.Trigger;
 import framework.libraries.serialization.TArrayList;
 import framework.libraries.serialization.TBoolean;
 import framework.libraries.serialization.TInteger;
+import framework.libraries.serialization.TLinkedList;
 import framework.libraries.serialization.TList;
 
 /** 
@@ -441,10 +442,20 @@ public class ConsensusPaxosExecution implements Transportable{
 	triggerSend(decisionMessage, group);
     }
 
+    // The message is serialized once for all the processes of g
     private void triggerSend(GroupCommMessage m, TList g) {
-	for (int i = 0; i < g.size(); i++) {
-	    triggerSend(m.cloneGroupCommMessage(), (PID) g.get(i));
-	}
+	if (g.isEmpty())
+	    return;
+
+	GroupCommEventArgs pt2ptSend = new GroupCommEventArgs();
+	pt2ptSend.addLast(m.cloneGroupCommMessage());
+	pt2ptSend.addLast(new TLinkedList(g));
+	pt2ptSend.addLast(new TBoolean(false)); // not promisc
+	logger.log(
+		   Level.FINE,
+		   "Sending Pt2Pt message {0} to {1}",
+		   new Object[] { m, g });
+	trigger.trigger(Constants.PT2PTMULTISEND, pt2ptSend);
     }
 
     private void triggerSend(GroupCommMessage m, PID p) {
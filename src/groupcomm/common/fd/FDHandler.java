@@ -35,6 +35,7 @@ import framework.libraries.serialization.THashMap;
 import framework.libraries.serialization.THashSet;
 import framework.libraries.serialization.TInteger;
 import framework.libraries.serialization.TLinkedList;
+import framework.libraries.serialization.TLong;
 import framework.libraries.serialization.TMap;
 import framework.libraries.serialization.TSet;
 
@@ -62,6 +63,9 @@ public class FDHandler {
     //Timeout value (milliseconds)
     private int sendTimeOut = DEFAULT_SEND_TIMEOUT;
 
+    //Lease of the leader renewed by the heartbeats (null if none)
+    private LeaderLease lease = null;
+
     private static final Logger logger =
 	Logger.getLogger(FDHandler.class.getName());
 
@@ -93,6 +97,15 @@ public class FDHandler {
 	logger.exiting("FDHandler", "<constr> 4 parameters");
     }
 
+    /**
+     * Renew the lease of the leader with the heartbeats: the answers to the
+     * pings of the leader grant it the lease, and the leader pings every
+     * process at every period, even if they ping it.
+     */
+    public void setLease(LeaderLease lease) {
+	this.lease = lease;
+    }
+
     public TLinkedList getState(){
 	TLinkedList state = new TLinkedList();
 	
@@ -117,7 +130,7 @@ public class FDHandler {
 
 		processes.put(p, new TInteger(0));
 		timer.schedule(p, true, sendTimeOut);
-		triggerAlive(p, true);
+		triggerAlive(p, true, now(), false);
 	    }
 	}
 
@@ -166,7 +179,7 @@ public class FDHandler {
 	}
 	//p's timer expires...
 	//  time to Send a ping to p
-	triggerAlive(pid, true);
+	triggerAlive(pid, true, now(), false);
 	logger.exiting("FDHandler", "handleTimeOut");
     }
 
@@ -178,6 +191,9 @@ public class FDHandler {
 	PID src = (PID) msg.tunpack();
 	boolean original = ((TBoolean) msg.tunpack()).booleanValue();
 	PID dest = (PID) msg.tunpack();
+	// Sending time of the ping, and lease granted by the answer
+	long time = ((TLong) msg.tunpack()).longValue();
+	boolean granted = ((TBoolean) msg.tunpack()).booleanValue();
 
 	if (!dest.equals(myself)) {
 	    //Maybe I'm another incarnation. Discard it
@@ -189,17 +205,20 @@ public class FDHandler {
 	    // I have to reset its timer
 	    // and remove it from the suspects (if he was inside)
 	    processes.put(src, new TInteger(0));
-	    timer.reset(src);
+	    if ((lease == null) || !lease.isLeader())
+		timer.reset(src);
 
 	    if (suspects.contains(src)) {
 		suspects.remove(src);
 		triggerSuspect();
 	    }
 	}
+	if (!original && granted && (lease != null))
+	    lease.renewed(src, time);
 	if (original) {
 	    //I am not the one which launches the heartbeat.
 	    // I reply
-	    triggerAlive(src, false);
+	    triggerAlive(src, false, time, (lease != null) && lease.grant(src));
 	}
 	logger.exiting("FDHandler", "handleAlive");
     }
@@ -253,7 +272,7 @@ public class FDHandler {
 	    if (!processes.containsKey(p) && !p.equals(myself)) {
 		processes.put(p, new TInteger(0));
 		timer.schedule(p, true, sendTimeOut);
-		triggerAlive(p, true);
+		triggerAlive(p, true, now(), false);
 	    }
 	}
 
@@ -285,9 +304,15 @@ public class FDHandler {
 	logger.exiting("FDHandler", "stop");
     }
 
-    private void triggerAlive(PID dest, boolean orig) {
+    private long now() {
+	return (lease != null) ? lease.now() : 0;
+    }
+
+    private void triggerAlive(PID dest, boolean orig, long time, boolean granted) {
 	logger.entering("FDHandler", "triggerAlive");
 	GroupCommMessage m = new GroupCommMessage();
+	m.tpack(new TBoolean(granted));
+	m.tpack(new TLong(time));
 	m.tpack(dest);
 	m.tpack(new TBoolean(orig));
 	m.tpack(myself);
@@ -319,6 +344,8 @@ public class FDHandler {
 	err.println(" Suspected Processes: " + suspects);
 	err.println(" Send timeout: " + sendTimeOut);
 	err.println(" Suspect timeout: " + n);
+	if (lease != null)
+	    err.println(" Lease: " + lease);
 	err.println("===================================");
     }
 }
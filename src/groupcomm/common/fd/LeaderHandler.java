@@ -27,6 +27,7 @@ import framework.Constants;
 import framework.GroupCommEventArgs;
 import framework.GroupCommException;
 import framework.PID;
+import framework.libraries.Timer;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.THashMap;
@@ -51,6 +52,13 @@ public class LeaderHandler {
     // Object that routes outgoing events
     private Trigger trigger = null;
 
+    // Lease granted to the leader (null if none), and the timer that ends
+    // the postponement of a leader change
+    private LeaderLease lease = null;
+    private Timer timer = null;
+    private boolean postponed = false;
+    private static final TInteger LEASE_TIMER = new TInteger(0);
+
     private static final Logger logger = Logger.getLogger(LeaderHandler.class
             .getName());
 
@@ -62,6 +70,16 @@ public class LeaderHandler {
         logger.exiting("LeaderHandler", "<constr> 4 parameters");
     }
 
+    /**
+     * Grant a lease to the leader (see {@link LeaderLease}): the leader of
+     * a group only changes once the lease granted to the previous one has
+     * expired.
+     */
+    public void setLease(LeaderLease lease, Timer timer) {
+        this.lease = lease;
+        this.timer = timer;
+    }
+
     private TLinkedList getAllProcesses() {
         TLinkedList result = new TLinkedList();
 
@@ -144,6 +162,23 @@ public class LeaderHandler {
         logger.entering("LeaderHandler", "handleSuspect");
 
         suspected = (TSet) e.removeFirst();
+        elect();
+
+        logger.exiting("LeaderHandler", "handleSuspect");
+    }
+
+    /**
+     * Handler for the timeout that ends the postponement of a leader change,
+     * once the lease granted to the previous leader has expired.
+     */
+    public void handleTimeOut(GroupCommEventArgs e) {
+        logger.entering("LeaderHandler", "handleTimeOut");
+        postponed = false;
+        elect();
+        logger.exiting("LeaderHandler", "handleTimeOut");
+    }
+
+    private void elect() {
         TCollection allGroups = processes.keySet();
         Iterator it = allGroups.iterator();
 
@@ -159,12 +194,32 @@ public class LeaderHandler {
 
             // Si le leader a chang� -> trigger l'�v�nement
             if (!leader.equals((PID) processes.get(l))) {
-                processes.put(l, leader);
-                triggerNewLeader(l, leader);
+                if (mayTrust(leader)) {
+                    processes.put(l, leader);
+                    triggerNewLeader(l, leader);
+                }
+            } else if (lease != null) {
+                // A postponed change is no longer wanted
+                lease.setLeader(leader);
             }
         }
+    }
 
-        logger.exiting("LeaderHandler", "handleSuspect");
+    // Can the leader change to newLeader now? Otherwise, try again when
+    // the lease granted to the current one expires
+    private boolean mayTrust(PID newLeader) {
+        if (lease == null)
+            return true;
+        long wait = lease.changeAllowedAt(newLeader) - lease.now();
+        if (wait <= 0) {
+            lease.setLeader(newLeader);
+            return true;
+        }
+        if (!postponed) {
+            postponed = true;
+            timer.schedule(LEASE_TIMER, false, (int) wait + 1);
+        }
+        return false;
     }
 
     /**
@@ -182,6 +237,8 @@ public class LeaderHandler {
             cProcesses.put(s, new TInteger(n + 1));
         }
 
+        if (lease != null)
+            lease.setLeader((PID) processes.get(s));
         triggerNewLeader(s, (PID) processes.get(s));
 
         logger.exiting("LeaderHandler", "start");
@@ -229,6 +286,8 @@ public class LeaderHandler {
         PrintStream err = new PrintStream(out);
         err.println("========= LeaderHandler: dump =========");
         err.println(" Monitored Processes: " + processes);
+        if (lease != null)
+            err.println(" Lease: " + lease);
         err.println("===================================");
     }
 }
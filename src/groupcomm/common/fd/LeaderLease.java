@@ -0,0 +1,183 @@
+/**
+*  Fortika - Robust Group Communication
+*  Copyright (C) 2002-2006  Sergio Mena de la Cruz (EPFL) (sergio.mena@epfl.ch)
+*
+*  This program is free software; you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation; either version 2 of the License, or
+*  (at your option) any later version.
+*
+*  This program is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with this program; if not, write to the Free Software
+*  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package groupcomm.common.fd;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import framework.PID;
+import framework.libraries.serialization.THashMap;
+import framework.libraries.serialization.TList;
+import framework.libraries.serialization.TLong;
+
+/**
+ * Lease of the leader given by Omega (see {@link LeaderHandler}), renewed
+ * by the heartbeats of the failure detector (see {@link FDHandler}). <br>
+ * A process grants the lease to its leader when it answers one of its
+ * pings: it promises to trust no other leader during <i>duration</i>
+ * milliseconds of its clock. The leader holds the lease while a majority
+ * of the group, itself included, granted it. It counts <i>duration</i>
+ * minus the drift of the clocks from the sending of the ping, with its
+ * own clock. Thus no two processes hold the lease at the same time, as
+ * long as the clocks do not drift from each other by more than
+ * <i>drift</i> (relative rate).
+ */
+public class LeaderLease {
+    private PID myself;
+
+    // Number of grants (mine included) needed to hold the lease
+    private int majority;
+
+    // Duration of a grant (milliseconds) and bound of the clock drift
+    private long duration;
+    private double drift;
+
+    // The leader trusted by this process (null if none yet), and the one it
+    // waits to trust instead (null if none): it grants no lease meanwhile
+    private PID leader = null;
+    private PID candidate = null;
+
+    // Sending time of the last ping granted : Table (PID -> TLong)
+    private THashMap renewals = new THashMap();
+
+    // The process this process granted the lease to, and until when
+    private PID granted = null;
+    private long grantedUntil = 0;
+
+    public LeaderLease(PID myself, TList group, long duration, double drift) {
+	if ((duration <= 0) || (drift < 0) || (drift >= 1))
+	    throw new RuntimeException("LeaderLease: invalid duration or drift");
+	this.myself = myself;
+	this.majority = group.size() / 2 + 1;
+	this.duration = duration;
+	this.drift = drift;
+    }
+
+    /**
+     * The clock of the lease, in milliseconds. It must not go backwards.
+     */
+    public long now() {
+	return System.nanoTime() / 1000000;
+    }
+
+    public PID getLeader() {
+	return leader;
+    }
+
+    public boolean isLeader() {
+	return myself.equals(leader);
+    }
+
+    /**
+     * Trust a new leader (or keep trusting the current one). The grants of
+     * the previous one are forgotten.
+     */
+    public void setLeader(PID newLeader) {
+	candidate = null;
+	if (newLeader.equals(leader))
+	    return;
+	leader = newLeader;
+	renewals.clear();
+    }
+
+    /**
+     * Time from which this process may trust <i>newLeader</i>, i.e. the end
+     * of the lease granted to another process (Long.MIN_VALUE if none).
+     * Until then, this process grants the lease to no one, otherwise the
+     * current leader would keep it.
+     */
+    public long changeAllowedAt(PID newLeader) {
+	if (!newLeader.equals(leader))
+	    candidate = newLeader;
+	if ((granted == null) || granted.equals(newLeader))
+	    return Long.MIN_VALUE;
+	return grantedUntil;
+    }
+
+    /**
+     * Process <i>p</i> pinged this process: grant it the lease if it is
+     * the leader.
+     *
+     * @return true if the lease is granted
+     */
+    public boolean grant(PID p) {
+	if ((candidate != null) || !p.equals(leader) || p.equals(myself))
+	    return false;
+	granted = p;
+	grantedUntil = now() + duration;
+	return true;
+    }
+
+    /**
+     * Process <i>p</i> granted the lease, answering a ping sent at time
+     * <i>sent</i>.
+     */
+    public void renewed(PID p, long sent) {
+	if (!isLeader())
+	    return;
+	TLong last = (TLong) renewals.get(p);
+	if ((last == null) || (last.longValue() < sent))
+	    renewals.put(p, new TLong(sent));
+    }
+
+    /**
+     * Time until which this process holds the lease (Long.MIN_VALUE if it
+     * does not).
+     */
+    public long getExpiry() {
+	if (!isLeader())
+	    return Long.MIN_VALUE;
+	// A lease granted to another process must have expired
+	if ((granted != null) && !granted.equals(myself) && (now() < grantedUntil))
+	    return Long.MIN_VALUE;
+	if (majority == 1)
+	    return Long.MAX_VALUE;
+	if (renewals.size() < majority - 1)
+	    return Long.MIN_VALUE;
+
+	// The oldest grant among the most recent ones of a majority
+	// (values() is a set: equal times would be merged)
+	long[] sent = new long[renewals.size()];
+	Iterator it = renewals.keySet().iterator();
+	for (int i = 0; it.hasNext(); i++)
+	    sent[i] = ((TLong) renewals.get((PID) it.next())).longValue();
+	Arrays.sort(sent);
+	return sent[sent.length - majority + 1] + (long) (duration * (1 - drift));
+    }
+
+    /**
+     * Does this process hold the lease ?
+     */
+    public boolean holds() {
+	return now() < getExpiry();
+    }
+
+    public long getDuration() {
+	return duration;
+    }
+
+    public double getDrift() {
+	return drift;
+    }
+
+    public String toString() {
+	return "(** leader: " + leader + " candidate: " + candidate + " expiry: " + getExpiry() + " renewals: "
+	    + renewals + " granted: " + granted + " until: " + grantedUntil + " **)";
+    }
+}
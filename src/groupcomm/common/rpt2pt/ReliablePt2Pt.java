@@ -49,6 +49,7 @@ import framework.libraries.serialization.TMap;
 import framework.libraries.serialization.TSet;
 import framework.libraries.tcp.Connection;
 import framework.libraries.tcp.NonBlockingTCP;
+import framework.libraries.tcp.ReceivedFrame;
 import framework.libraries.tcp.Server;
 
 /**
@@ -58,6 +59,7 @@ import framework.libraries.tcp.Server;
  * <dl>
  * <dt> <i>Init</i>           </dt> <dd> Initializes the Reliable and unreliable layer. </dd>
  * <dt> <i>Pt2PtSend</i>      </dt> <dd> Sends a message to a process reliably.         </dd>
+ * <dt> <i>Pt2PtMultiSend</i> </dt> <dd> Sends a message to several processes reliably. </dd>
  * <dt> <i>Recv</i>           </dt> <dd> Receives a message from a process unreliably.  </dd>
  * <dt> <i>JoinRemoveList</i> </dt> <dd> Processes to be added or to be removed 
  *                                       into/from the known processes.                 </dd>
@@ -704,25 +706,7 @@ public class ReliablePt2Pt {
 					Level.FINE,
 					"Sending message to {0}:\n\tMessage:{1}",
 					new Object[] { pid, m });
-				byte[] b = serialize.marshall(m);
-				ConnectionData cd = (ConnectionData) connections.get(pid);
-				if (cd.sendingThreadReady) {
-					// The sending thread is blocked on the output buffer, since  it's empty
-					// ... thus, the message should be sent immediately
-					tcp.setMessageToSend(b, getConnection(pid));
-					cd.sendingThreadReady = false;
-					cd.full = false;
-				} else {
-					// The output buffer is not empty
-					// ... thus, queue the message for deferred sending
-					cd.bufferOut.addLast(new TByteArray(b));
-					if (!blocked && cd.bufferOut.size() > fc_threshold) {
-						//Block application
-						logger.fine("Blocking application's flow control");
-						flow_control.block(fc_key);
-						blocked = true;
-					}
-				}
+				enqueue(pid, new TByteArray(serialize.marshall(m)));
 				break;
 			case ST_CLOSED :
 				//Message discarded
@@ -739,6 +723,105 @@ public class ReliablePt2Pt {
 		logger.exiting("ReliablePt2Pt", "handlePt2PtSend");
 	}
 
+	/**
+	 * The handler for the <i>Pt2PtMultiSend</i> event. </br>
+	 * It sends a message to several processes. The message is serialized
+	 * only once and the same buffer is queued for every destination.
+	 *
+	 * @param l <dl>
+	 *              <dt> arg1 : GroupCommMessage  </dt> <dd> The message.   </dd>
+	 *              <dt> arg2 : TCollection       </dt> <dd> The destinations of the message. </dd>
+	 *              <dt> arg3 : Boolean           </dt> <dd> Attribute used by the destinations </dd>
+	 *          </dl>
+	 */
+	public void handlePt2PtMultiSend(GroupCommEventArgs arg)
+		throws GroupCommException {
+		logger.entering("ReliablePt2Pt", "handlePt2PtMultiSend");
+		GroupCommMessage m = (GroupCommMessage) arg.removeFirst();
+		TCollection pids = (TCollection) arg.removeFirst();
+		boolean promisc = ((TBoolean) arg.removeFirst()).booleanValue();
+
+		if (m == null)
+			throw new GroupCommException(
+				"ReliablePt2Pt:handlePt2PtMultiSend:" + "Message can't be null");
+
+		if (promisc) {
+			//m = PROMISC::<payload>
+			m.tpack(new TInteger(PROMISC));
+		} else {
+			//m = NORMAL::<payload>
+			m.tpack(new TInteger(NORMAL));
+		}
+
+		// The buffer is shared by all destinations: it must not be modified
+		TByteArray b = null;
+		Iterator it = pids.iterator();
+		while (it.hasNext()) {
+			PID pid = (PID) it.next();
+			switch (getState(pid)) {
+				case ST_NULL :
+					throw new GroupCommException(
+						"ReliablePt2Pt:handlePt2PtMultiSend:"
+							+ "Connection to pid "
+							+ pid
+							+ " doesn't exist");
+				case ST_HIDDEN :
+					throw new GroupCommException(
+						"ReliablePt2Pt:handlePt2PtMultiSend:"
+							+ "Connection to pid "
+							+ pid
+							+ " doesn't exist (hidden)");
+				case ST_CONNECTING :
+				case ST_CROSS :
+				case ST_CONNECTED :
+					logger.log(
+						Level.FINE,
+						"Sending message to {0}:\n\tMessage:{1}",
+						new Object[] { pid, m });
+					if (b == null)
+						b = new TByteArray(serialize.marshall(m));
+					enqueue(pid, b);
+					break;
+				case ST_CLOSED :
+					//Message discarded
+					logger.log(
+						Level.FINE,
+						"Discarding message to {0}:\n\tMessage:{1}",
+						new Object[] { pid, m });
+					break;
+				default :
+					throw new GroupCommException(
+						"ReliablePt2Pt:handlePt2PtMultiSend:"
+							+ "Hmmm, weird. State of pid unknown");
+			}
+		}
+		logger.exiting("ReliablePt2Pt", "handlePt2PtMultiSend");
+	}
+
+	// Send the serialized message b to pid, or queue it if the
+	// connection is busy
+	private void enqueue(PID pid, TByteArray b) throws GroupCommException {
+		ConnectionData cd = (ConnectionData) connections.get(pid);
+		if (cd.sendingThreadReady) {
+			// The sending thread is blocked on the output buffer, since  it's empty
+			// (or the connection is pipelined and not full)
+			// ... thus, the message should be sent immediately
+			cd.sendingThreadReady =
+				tcp.setMessageToSend(b.byteValue(), getConnection(pid));
+			cd.full = false;
+		} else {
+			// The output buffer is not empty
+			// ... thus, queue the message for deferred sending
+			cd.bufferOut.addLast(b);
+			if (!blocked && cd.bufferOut.size() > fc_threshold) {
+				//Block application
+				logger.fine("Blocking application's flow control");
+				flow_control.block(fc_key);
+				blocked = true;
+			}
+		}
+	}
+
 	public void handleReadyForNextMessage(GroupCommEventArgs arg) {
 		logger.entering("ReliablePt2Pt", "handleReadyForNextMessage");
 		Connection c = (Connection) arg.removeFirst();
@@ -753,10 +836,14 @@ public class ReliablePt2Pt {
 		}
 		ConnectionData cd = (ConnectionData) connections.get(pid);
 		if (cd.bufferOut.size() > 0) {
-			logger.fine("Sending first message in the output buffer");
-			byte[] b = ((TByteArray)cd.bufferOut.removeFirst()).byteValue();
-			tcp.setMessageToSend(b, c);
-			cd.sendingThreadReady = false;
+			logger.fine("Sending first messages in the output buffer");
+			// A pipelined connection accepts several messages
+			boolean ready = true;
+			while (ready && cd.bufferOut.size() > 0) {
+				byte[] b = ((TByteArray)cd.bufferOut.removeFirst()).byteValue();
+				ready = tcp.setMessageToSend(b, c);
+			}
+			cd.sendingThreadReady = ready;
 			if (blocked && !fullQueues()) {
 				logger.fine("Releasing application's flow control");
 				flow_control.release(fc_key);
@@ -792,14 +879,31 @@ public class ReliablePt2Pt {
 	 *                      upper layer.
 	 */
 	public void handleRecv(GroupCommEventArgs arg) throws GroupCommException {
-		logger.entering("ReliablePt2Pt", "handleRecv");
-		byte[] b = ((TByteArray) arg.removeFirst()).byteValue();
+		TByteArray b = (TByteArray) arg.removeFirst();
 		Connection c = (Connection) arg.removeFirst();
 
+		recv(b, c);
+	}
+
+	/**
+	 * The handler for the <i>Recv</i> event of a message still in the
+	 * receive buffer of the connection (see {@link #handleRecv(GroupCommEventArgs)}).
+	 * The frame is released.
+	 *
+	 * @param f The message
+	 * @param c The connection
+	 */
+	public void handleRecv(ReceivedFrame f, Connection c) throws GroupCommException {
+		recv(f, c);
+	}
+
+	// Handle a received message: a byte array or a frame
+	private void recv(Object b, Connection c) throws GroupCommException {
+		logger.entering("ReliablePt2Pt", "handleRecv");
 		PID pid = tcp.getRemotePID(c);
         GroupCommMessage m = null;
 		try {
-			m = (GroupCommMessage) serialize.unmarshall(b);
+			m = (GroupCommMessage) unmarshall(b);
 		} catch (Exception e) {
 			if (getState(pid) == ST_CONNECTED) {
 				logger.log(
@@ -1256,6 +1360,19 @@ public class ReliablePt2Pt {
 		return (--cd.joins > 0);
 	}
 
+	// Unmarshall a received message: a byte array, or a frame still in the
+	// receive buffer of the connection (which is released)
+	private Transportable unmarshall(Object b) {
+		if (!(b instanceof ReceivedFrame))
+			return serialize.unmarshall(((TByteArray) b).byteValue());
+		ReceivedFrame f = (ReceivedFrame) b;
+		try {
+			return serialize.unmarshall(f.buffer());
+		} finally {
+			f.release();
+		}
+	}
+
 	private boolean fullQueues() {
 		//Check all queues to know whether they're full
 		TCollection keys = connections.keySet();
@@ -23,12 +23,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import framework.CompressedLongSet;
-
 import seqSamoa.exceptions.InterruptedSchedulerException;
 import seqSamoa.exceptions.NotInAComputationException;
 import seqSamoa.exceptions.UndeclaredCallOrResponseException;
@@ -121,7 +120,6 @@ public class BoundModuleOrderManager implements ConcurrencyManager {
 					}
 
 					scheduler.finishComputation(this, currentComputation);
-					currentComputation = null;
 				}
 			} catch (Exception ie) {
 				//ie.printStackTrace();
@@ -152,7 +150,7 @@ public class BoundModuleOrderManager implements ConcurrencyManager {
 	private LinkedList<Computation> scheduledComputations = new LinkedList<Computation>();
 
 	// List of computations that are finished
-	private CompressedLongSet finishedComputations = new CompressedLongSet();
+	private CompletionTracker finishedComputations = new CompletionTracker(1);
 
 	// The next computation id available
 	private long nextComputationID = 1;
@@ -185,36 +183,53 @@ public class BoundModuleOrderManager implements ConcurrencyManager {
 	
 	public void waitEnd(long cID)
 			throws InterruptedSchedulerException {
-		synchronized (finishedComputations) {
-			while (!finishedComputations.contains(cID)) {
-				try {
-					finishedComputations.wait();
-				} catch (InterruptedException ie) {
-					throw new InterruptedSchedulerException(cID);
-				}
-			}
+		try {
+			finishedComputations.waitFor(cID);
+		} catch (InterruptedException ie) {
+			throw new InterruptedSchedulerException(cID);
 		}
 	}
 
 	// Schedule a new computation (i.e., a new external call or response)
 	public long addExternalTask(AtomicTask task) {
 		synchronized (scheduledComputations) {
-			// Create the computation
-			Computation c = new Computation(this.nextComputationID);
-			c.readyTasks.addLast(task);
+			long cID = newComputation(task);
 
-			// 	Increment cID for the following computation
-			this.nextComputationID++;
+			// Notify since new computations are possibly executable
+			scheduledComputations.notifyAll();
+			return cID;
+		}
+	}
 
-			// Add the computation to scheduled computation
-			scheduledComputations.addLast(c);
+	// Schedule a burst of new computations, in the order of the list
+	public long addExternalTasks(List<AtomicTask> tasks) {
+		synchronized (scheduledComputations) {
+			long first = this.nextComputationID;
+
+			Iterator<AtomicTask> it = tasks.iterator();
+			while (it.hasNext())
+				newComputation(it.next());
 
 			// Notify since new computations are possibly executable
 			scheduledComputations.notifyAll();
-			return c.cID;
+			return first;
 		}
 	}
 
+	// Create the computation of an external task and add it to the
+	// scheduled computations (the lock on them is held)
+	private long newComputation(AtomicTask task) {
+		Computation c = new Computation(this.nextComputationID);
+		c.readyTasks.addLast(task);
+
+		// Increment cID for the following computation
+		this.nextComputationID++;
+
+		// Add the computation to scheduled computation
+		scheduledComputations.addLast(c);
+		return c.cID;
+	}
+
 	// Schedule a new internal call or response
 	public void addInternalTask(AtomicTask task)
 			throws NotInAComputationException {
@@ -263,6 +278,22 @@ public class BoundModuleOrderManager implements ConcurrencyManager {
 		}
 	}
 	
+	// Returns the number of computations not yet started
+	public int readyQueueSize() {
+		synchronized (scheduledComputations) {
+			return scheduledComputations.size();
+		}
+	}
+
+	// Returns the number of computations not yet finished
+	public long computationsInFlight() {
+		long issued;
+		synchronized (scheduledComputations) {
+			issued = this.nextComputationID - 1;
+		}
+		return issued - finishedComputations.getFinishedCount();
+	}
+
 	// Returns the current atomic task
 	public AtomicTask currentTask() {
 		Computation c = currentComputation();
@@ -500,14 +531,18 @@ public class BoundModuleOrderManager implements ConcurrencyManager {
 	}
 
 	// Finish the computation
-	private void finishComputation(Thread thread, Computation c) {
-		synchronized(finishedComputations) {
-			// The computation is finished
-			finishedComputations.add(c.cID);
+	private void finishComputation(TaskThread thread, Computation c) {
+		synchronized (scheduledComputations) {
+			thread.currentComputation = null;
 
-			// Notify since version access rights
-			finishedComputations.notifyAll();
+			// Notify the thread that waits to execute a computation
+			// sequentially (it waits until no thread executes one)
+			if (sequentialThread != null)
+				scheduledComputations.notifyAll();
 		}
+
+		// The computation is finished (wakes up the threads waiting for it)
+		finishedComputations.add(c.cID);
 	}
 
 	// Compute the mixed influences and dependencies between services
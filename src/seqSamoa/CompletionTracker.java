@@ -0,0 +1,336 @@
+/**
+ *  SAMOA - PROTOCOL FRAMEWORK
+ *  Copyright (C) 2005  Olivier Rütti (EPFL) (olivier.rutti@a3.epfl.ch)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package seqSamoa;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The <CODE>CompletionTracker</CODE> keeps track of the computations
+ * that are finished in a {@link seqSamoa.ConcurrencyManager concurrency manager}.
+ *
+ * Finished computations are stored as a watermark (all the computations below
+ * the watermark are finished) plus a bitmap for the computations that finish
+ * out of order. The memory used only depends on the distance between the
+ * oldest unfinished computation and the newest finished one, and recording
+ * a computation does not allocate.
+ *
+ * Threads waiting for the end of a computation register themselves
+ * for this computation only. They are woken up when this computation
+ * finishes and not upon the end of any other computation.
+ */
+public class CompletionTracker {
+	// This class represents a thread waiting for the end of a computation
+	private static class Waiter {
+		public final long cID;
+
+		public final Thread thread;
+
+		public volatile boolean done = false;
+
+		public Waiter next;
+
+		public Waiter(long cID, Thread thread) {
+			this.cID = cID;
+			this.thread = thread;
+		}
+	}
+
+	// Initial size of the bitmap (in number of 64 bits words)
+	private static final int INITIAL_WORDS = 16;
+
+	// All computations smaller than filled are finished
+	private long filled;
+
+	// Ring of bits for the computations >= filled (bit i of the ring
+	// corresponds to computation i, modulo the size of the ring)
+	private long[] bits = new long[INITIAL_WORDS];
+
+	// The threads waiting for the end of some computation
+	private Waiter waiters = null;
+
+	// The number of threads woken up so far
+	private long wakeups = 0;
+
+	// The number of computations recorded so far
+	private long finished = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param first
+	 * 		the id of the first computation
+	 */
+	public CompletionTracker(long first) {
+		if (first < 0)
+			throw new IllegalArgumentException("Negative computation id: " + first);
+
+		this.filled = first;
+	}
+
+	/**
+	 * Record that the computation identified by cID is finished and
+	 * wake up the threads waiting for it.
+	 *
+	 * @param cID
+	 * 		the id of the finished computation
+	 */
+	public synchronized void add(long cID) {
+		if (cID < filled)
+			return;
+
+		ensureCapacity(cID);
+		int w = word(cID);
+		long mask = 1L << cID;
+		if ((bits[w] & mask) != 0)
+			return;
+		bits[w] |= mask;
+		finished++;
+
+		// Move the watermark over the computations finished so far
+		while (testAndClear(filled))
+			filled++;
+
+		// Wake up the waiters whose computation is now finished
+		Waiter prev = null;
+		Waiter waiter = waiters;
+		while (waiter != null) {
+			if (containsLocked(waiter.cID)) {
+				waiter.done = true;
+				LockSupport.unpark(waiter.thread);
+				wakeups++;
+
+				if (prev == null)
+					waiters = waiter.next;
+				else
+					prev.next = waiter.next;
+			} else {
+				prev = waiter;
+			}
+			waiter = waiter.next;
+		}
+	}
+
+	/**
+	 * Return true if the computation identified by cID is finished
+	 *
+	 * @param cID
+	 * 		the id of the computation
+	 * @return true if the computation is finished
+	 */
+	public synchronized boolean contains(long cID) {
+		return containsLocked(cID);
+	}
+
+	/**
+	 * Return only when the computation identified by cID is finished
+	 *
+	 * @param cID
+	 * 		the id of the computation
+	 * @throws InterruptedException
+	 * 		if the calling thread is interrupted while waiting
+	 */
+	public void waitFor(long cID) throws InterruptedException {
+		Waiter w;
+		synchronized (this) {
+			if (containsLocked(cID))
+				return;
+
+			w = new Waiter(cID, Thread.currentThread());
+			w.next = waiters;
+			waiters = w;
+		}
+
+		while (!w.done) {
+			LockSupport.park(this);
+
+			if (Thread.interrupted()) {
+				synchronized (this) {
+					if (w.done)
+						return;
+					remove(w);
+				}
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * Length of the full sequence of finished computations. In other words,
+	 * if this method returns k, all the computations smaller than k are finished.
+	 *
+	 * @return the watermark of finished computations
+	 */
+	public synchronized long getFilled() {
+		return filled;
+	}
+
+	/**
+	 * Return the number of threads currently waiting for the end of a computation
+	 *
+	 * @return the number of waiting threads
+	 */
+	public synchronized int getWaitersCount() {
+		int result = 0;
+		for (Waiter w = waiters; w != null; w = w.next)
+			result++;
+
+		return result;
+	}
+
+	/**
+	 * Return the number of threads woken up so far
+	 *
+	 * @return the number of wake-ups
+	 */
+	public synchronized long getWakeupsCount() {
+		return wakeups;
+	}
+
+	/**
+	 * Return the number of computations recorded so far
+	 *
+	 * @return the number of finished computations
+	 */
+	public synchronized long getFinishedCount() {
+		return finished;
+	}
+
+	public synchronized String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("[<" + filled);
+
+		long limit = ((filled >>> 6) + bits.length) << 6;
+		for (long i = filled + 1; i < limit; i++)
+			if (containsLocked(i))
+				sb.append("," + i);
+
+		sb.append("]");
+		return sb.toString();
+	}
+
+	private boolean containsLocked(long cID) {
+		if (cID < filled)
+			return true;
+		if (!covered(cID))
+			return false;
+
+		return (bits[word(cID)] & (1L << cID)) != 0;
+	}
+
+	// Return true and clear the bit if the computation is marked as finished
+	private boolean testAndClear(long cID) {
+		if (!covered(cID))
+			return false;
+
+		int w = word(cID);
+		long mask = 1L << cID;
+		if ((bits[w] & mask) == 0)
+			return false;
+
+		bits[w] &= ~mask;
+		return true;
+	}
+
+	// Return true if the ring covers the computation cID
+	private boolean covered(long cID) {
+		return (cID >>> 6) - (filled >>> 6) < bits.length;
+	}
+
+	private int word(long cID) {
+		return (int) ((cID >>> 6) % bits.length);
+	}
+
+	// Grow the ring so that it covers the computation cID
+	private void ensureCapacity(long cID) {
+		if (covered(cID))
+			return;
+
+		long needed = (cID >>> 6) - (filled >>> 6) + 1;
+		int size = bits.length;
+		while (size < needed)
+			size = size * 2;
+
+		long[] newBits = new long[size];
+		for (long i = filled >>> 6; i < (filled >>> 6) + bits.length; i++)
+			newBits[(int) (i % size)] = bits[(int) (i % bits.length)];
+		bits = newBits;
+	}
+
+	private void remove(Waiter toRemove) {
+		Waiter prev = null;
+		for (Waiter w = waiters; w != null; w = w.next) {
+			if (w == toRemove) {
+				if (prev == null)
+					waiters = w.next;
+				else
+					prev.next = w.next;
+				return;
+			}
+			prev = w;
+		}
+	}
+
+	/**
+	 * For testing.
+	 */
+	public static void main(String[] args) throws Exception {
+		CompletionTracker t = new CompletionTracker(1);
+		check(t.toString(), "[<1]");
+		t.add(3);
+		check(t.toString(), "[<1,3]");
+		t.add(1);
+		check(t.toString(), "[<2,3]");
+		t.add(2);
+		check(t.toString(), "[<4]");
+		t.add(5000);
+		check("" + t.contains(5000), "true");
+		check("" + t.contains(4999), "false");
+		for (long i = 4; i < 5000; i++)
+			t.add(i);
+		check(t.toString(), "[<5001]");
+
+		final CompletionTracker t2 = new CompletionTracker(0);
+		Thread waiter = new Thread() {
+			public void run() {
+				try {
+					t2.waitFor(7);
+				} catch (InterruptedException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+		};
+		waiter.start();
+		while (t2.getWaitersCount() == 0)
+			Thread.sleep(1);
+		for (long i = 0; i < 7; i++)
+			t2.add(i);
+		check("" + t2.getWakeupsCount(), "0");
+		t2.add(7);
+		waiter.join();
+		check("" + t2.getWakeupsCount(), "1");
+	}
+
+	private static void check(String s1, String s2) {
+		if (!s1.equals(s2)) {
+			System.out.println("The result of an operation should be\n  "
+					+ s2 + "\nnot\n  " + s1 + " !");
+			System.exit(1);
+		}
+	}
+}
@@ -18,6 +18,8 @@
  */
 package seqSamoa;
 
+import java.util.List;
+
 import seqSamoa.exceptions.InterruptedSchedulerException;
 import seqSamoa.exceptions.NotInAComputationException;
 
@@ -62,6 +64,21 @@ public interface ConcurrencyManager {
      */
     public long addExternalTask(AtomicTask task);
     
+    /**
+     * This method allows to schedule a burst of {@link AtomicTask tasks}
+     * that correspond to external {@link seqSamoa.Service service} calls
+     * or responses. The effect is the same as calling 
+     * {@link #addExternalTask(AtomicTask) addExternalTask} for each task in the
+     * order of the list, but the manager is synchronized only once. 
+     * 
+     * @param tasks  
+     * 			The {@link seqSamoa.AtomicTask tasks} to be scheduled
+     * @return
+     * 			The identifier of the computation that results from the
+     * 		    first task (the following tasks get consecutive identifiers)
+     */
+    public long addExternalTasks(List<AtomicTask> tasks);
+    
     /**
      * This method allows to schedule a new {@link AtomicTask task}
      * that corresponds to an internal {@link seqSamoa.Service service} call
@@ -105,6 +122,22 @@ public interface ConcurrencyManager {
      */
     public void stackReconfigured(ProtocolStack stack);
     
+    /**
+     * This method returns the number of computations that are scheduled
+     * but not yet started by the concurrency manager.
+     * 
+     * @return the number of computations waiting to be executed
+     */
+    public int readyQueueSize();
+    
+    /**
+     * This method returns the number of computations that are scheduled
+     * or executed, i.e., that are not finished yet.
+     * 
+     * @return the number of computations not finished yet
+     */
+    public long computationsInFlight();
+    
     /**
      * Start the concurrency manager
      */
@@ -0,0 +1,415 @@
+/**
+ *  SAMOA - PROTOCOL FRAMEWORK
+ *  Copyright (C) 2005  Olivier Rütti (EPFL) (olivier.rutti@a3.epfl.ch)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package seqSamoa;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import framework.libraries.WindowedFlowControl;
+
+/**
+ * The <CODE>CreditFlowControl</CODE> is a credit-based flow control. Each
+ * key owns a window expressed both in bytes and in messages. Protocols
+ * consume credit with {@link #alloc(int, int, int) alloc} when they buffer
+ * a message and give it back with {@link #free(int, int, int) free} when the
+ * message leaves their buffers. A key is closed when its credit is exhausted
+ * or when the protocol explicitly {@link #block(int) blocks} it, exactly as
+ * with {@link seqSamoa.SamoaFlowControl SamoaFlowControl}.
+ *
+ * Credit accounting is lock-free. Threads entering the stack only read a
+ * single counter as long as no key is closed. When some key is closed,
+ * they wait on a fair lock, so that they are woken up in arrival order
+ * once all keys are open again.
+ *
+ * Protocols that only use <i>block</i> and <i>release</i> keep working
+ * unchanged, so they can move to credits one by one through the
+ * {@link framework.libraries.WindowedFlowControl WindowedFlowControl}
+ * interface.
+ */
+public class CreditFlowControl implements WindowedFlowControl {
+    // Reason why a key is closed
+    private static final int BLOCKED = 1;
+    private static final int NO_CREDIT = 2;
+
+    // Default window of a fresh key (i.e., unbounded)
+    public static final long DEFAULT_WINDOW_BYTES = Long.MAX_VALUE;
+    public static final int DEFAULT_WINDOW_MESSAGES = Integer.MAX_VALUE;
+
+    // This class represents the window attached to a key
+    private static class Window {
+        public volatile long maxBytes = DEFAULT_WINDOW_BYTES;
+
+        public volatile int maxMessages = DEFAULT_WINDOW_MESSAGES;
+
+        public final AtomicLong usedBytes = new AtomicLong(0);
+
+        public final AtomicInteger usedMessages = new AtomicInteger(0);
+
+        // Bit field composed of BLOCKED and NO_CREDIT
+        public final AtomicInteger state = new AtomicInteger(0);
+
+        // Time when the key was closed for the last time
+        public volatile long closedSince = 0;
+
+        public final AtomicLong closedTime = new AtomicLong(0);
+
+        public final AtomicLong closedCount = new AtomicLong(0);
+
+        protected void reset() {
+            maxBytes = DEFAULT_WINDOW_BYTES;
+            maxMessages = DEFAULT_WINDOW_MESSAGES;
+            usedBytes.set(0);
+            usedMessages.set(0);
+            closedTime.set(0);
+            closedCount.set(0);
+        }
+
+        protected boolean exhausted() {
+            return (usedBytes.get() >= maxBytes)
+                    || (usedMessages.get() >= maxMessages);
+        }
+    }
+
+    private final Window[] windows;
+
+    private final boolean[] inUse;
+
+    // Next key never handed out
+    private volatile int nextKey = 0;
+
+    private final ConcurrentLinkedQueue<Integer> releasedKeys;
+
+    // Number of keys currently closed
+    private final AtomicInteger closedKeys = new AtomicInteger(0);
+
+    // Fair lock on which the producers wait
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private final Condition open = lock.newCondition();
+
+    // Time spent by producers waiting in enter()
+    private final AtomicLong producersWaitTime = new AtomicLong(0);
+
+    private final AtomicLong producersWaitCount = new AtomicLong(0);
+
+    /**
+     * Constructor
+     *
+     * @param keys
+     *            number of resources where we need to have a flow control
+     */
+    public CreditFlowControl(int keys) {
+        this.windows = new Window[keys];
+        for (int i = 0; i < keys; i++)
+            this.windows[i] = new Window();
+        this.inUse = new boolean[keys];
+        this.releasedKeys = new ConcurrentLinkedQueue<Integer>();
+    }
+
+    /**
+     * Set the window of the "key" resource
+     *
+     * @param key
+     *            the "key" of the resource
+     * @param bytes
+     *            the maximum number of bytes the resource may hold
+     * @param messages
+     *            the maximum number of messages the resource may hold
+     */
+    public void setWindow(int key, long bytes, int messages) {
+        if ((bytes <= 0) || (messages <= 0))
+            throw new IllegalArgumentException("Window must be positive: "
+                    + bytes + " bytes, " + messages + " messages");
+
+        Window w = windows[key];
+        w.maxBytes = bytes;
+        w.maxMessages = messages;
+        refresh(key);
+    }
+
+    /**
+     * Consume credit of the "key" resource. The caller is never blocked.
+     *
+     * @param key
+     *            the "key" of the resource
+     * @param messages
+     *            the number of messages buffered by the resource
+     * @param bytes
+     *            the size of these messages
+     * @return true if the resource still has credit left
+     */
+    public boolean alloc(int key, int messages, int bytes) {
+        Window w = windows[key];
+        w.usedMessages.addAndGet(messages);
+        w.usedBytes.addAndGet(bytes);
+
+        return !refresh(key);
+    }
+
+    /**
+     * Give credit back to the "key" resource.
+     *
+     * @param key
+     *            the "key" of the resource
+     * @param messages
+     *            the number of messages that left the resource
+     * @param bytes
+     *            the size of these messages
+     */
+    public void free(int key, int messages, int bytes) {
+        Window w = windows[key];
+        w.usedMessages.addAndGet(-messages);
+        w.usedBytes.addAndGet(-bytes);
+
+        refresh(key);
+    }
+
+    /**
+     * Block the "key" resource.
+     *
+     * @param key
+     *            the "key" of the resource
+     */
+    public void block(int key) {
+        setState(key, BLOCKED, true);
+    }
+
+    /**
+     * Release the "key" resource.
+     *
+     * @param key
+     *            the "key" of the resource
+     */
+    public void release(int key) {
+        setState(key, BLOCKED, false);
+    }
+
+    /**
+     * Wait until every registered resource is open
+     */
+    public void enter() {
+        if (closedKeys.get() == 0)
+            return;
+
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            while (closedKeys.get() > 0)
+                open.awaitUninterruptibly();
+        } finally {
+            lock.unlock();
+        }
+
+        producersWaitTime.addAndGet(System.nanoTime() - start);
+        producersWaitCount.incrementAndGet();
+    }
+
+    /**
+     * Get a key number for a resource
+     *
+     * @return a free key
+     */
+    synchronized public int getFreshKey() {
+        int freshKey;
+
+        Integer released = releasedKeys.poll();
+        if (released != null)
+            freshKey = released;
+        else if (nextKey < windows.length)
+            freshKey = nextKey++;
+        else
+            throw new RuntimeException("Key overflow!!!");
+
+        windows[freshKey].reset();
+        inUse[freshKey] = true;
+        refresh(freshKey);
+        setState(freshKey, BLOCKED, false);
+
+        return freshKey;
+    }
+
+    /**
+     * Release a key number for a resource
+     */
+    synchronized public void releaseKey(int key) {
+        if (!inUse[key])
+            throw new IllegalArgumentException("Key " + key + " is not in use");
+
+        inUse[key] = false;
+        windows[key].reset();
+        refresh(key);
+        setState(key, BLOCKED, false);
+
+        releasedKeys.add(key);
+    }
+
+    /**
+     * Return the bytes that the "key" resource may still buffer
+     *
+     * @param key
+     *            the "key" of the resource
+     * @return the current credit in bytes
+     */
+    public long getCreditBytes(int key) {
+        Window w = windows[key];
+        return w.maxBytes - w.usedBytes.get();
+    }
+
+    /**
+     * Return the number of messages that the "key" resource may still buffer
+     *
+     * @param key
+     *            the "key" of the resource
+     * @return the current credit in messages
+     */
+    public int getCreditMessages(int key) {
+        Window w = windows[key];
+        return w.maxMessages - w.usedMessages.get();
+    }
+
+    /**
+     * Return the time during which the "key" resource has been closed
+     * (i.e., blocked or out of credit), including the current period
+     *
+     * @param key
+     *            the "key" of the resource
+     * @return the time in nanoseconds
+     */
+    public long getBlockedTime(int key) {
+        Window w = windows[key];
+        long result = w.closedTime.get();
+        if (w.state.get() != 0)
+            result += System.nanoTime() - w.closedSince;
+
+        return result;
+    }
+
+    /**
+     * Return the number of times the "key" resource has been closed
+     *
+     * @param key
+     *            the "key" of the resource
+     * @return the number of times the resource has been closed
+     */
+    public long getBlockedCount(int key) {
+        return windows[key].closedCount.get();
+    }
+
+    /**
+     * Return the total time spent by producers waiting in {@link #enter()}
+     *
+     * @return the time in nanoseconds
+     */
+    public long getProducersWaitTime() {
+        return producersWaitTime.get();
+    }
+
+    /**
+     * Return the number of times a producer had to wait in {@link #enter()}
+     *
+     * @return the number of waits
+     */
+    public long getProducersWaitCount() {
+        return producersWaitCount.get();
+    }
+
+    /**
+     * Return the number of keys handed out so far (released keys included)
+     *
+     * @return the number of keys handed out so far
+     */
+    public int getKeysCount() {
+        return nextKey;
+    }
+
+    /**
+     * Print the state of each key
+     *
+     * @param out
+     *            the stream where the state is printed
+     */
+    public void dump(OutputStream out) {
+        PrintStream err = new PrintStream(out);
+        err.println("========= Credit Flow Control: dump =========");
+        for (int i = 0; i < nextKey; i++) {
+            Window w = windows[i];
+            err.println("Key #" + i + ". Used: " + inUse[i] + ". State: "
+                    + w.state.get() + ". Credit: " + getCreditBytes(i)
+                    + " bytes, " + getCreditMessages(i)
+                    + " messages. Blocked: " + getBlockedCount(i)
+                    + " times, " + (getBlockedTime(i) / 1000000) + " ms");
+        }
+        err.println("Producers waited " + producersWaitCount.get()
+                + " times, " + (producersWaitTime.get() / 1000000) + " ms");
+        err.flush();
+    }
+
+    // Set or clear the NO_CREDIT flag according to the credit left.
+    // Returns true if the key is out of credit.
+    private boolean refresh(int key) {
+        Window w = windows[key];
+        boolean exhausted;
+        do {
+            exhausted = w.exhausted();
+            setState(key, NO_CREDIT, exhausted);
+            // Another thread may have changed the credit in between
+        } while (exhausted != w.exhausted());
+
+        return exhausted;
+    }
+
+    // Set or clear a flag of the key and maintain the closed keys counter
+    private void setState(int key, int flag, boolean set) {
+        Window w = windows[key];
+        while (true) {
+            int old = w.state.get();
+            int updated = set ? (old | flag) : (old & ~flag);
+            if (old == updated)
+                return;
+
+            if (w.state.compareAndSet(old, updated)) {
+                if ((old == 0) && (updated != 0)) {
+                    w.closedSince = System.nanoTime();
+                    w.closedCount.incrementAndGet();
+                    closedKeys.incrementAndGet();
+                } else if ((old != 0) && (updated == 0)) {
+                    w.closedTime.addAndGet(System.nanoTime() - w.closedSince);
+                    if (closedKeys.decrementAndGet() == 0)
+                        wakeUp();
+                }
+                return;
+            }
+        }
+    }
+
+    // Wake up the producers waiting in enter() (in arrival order)
+    private void wakeUp() {
+        lock.lock();
+        try {
+            open.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
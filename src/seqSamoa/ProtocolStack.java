@@ -54,6 +54,7 @@ import seqSamoa.services.udp.UDP;
 import uka.transport.Transportable;
 import framework.PID;
 import framework.libraries.BinaryStableStorage;
+import framework.libraries.FlowControl;
 import framework.libraries.StableStorage;
 import framework.libraries.serialization.TList;
 
@@ -65,10 +66,13 @@ public class ProtocolStack {
 	protected boolean isReconfigured;
 		
 	// Flow Control
-	protected SamoaFlowControl fc;
+	protected FlowControl fc;
 
 	// Scheduler
 	protected SamoaScheduler scheduler;
+
+	// Statistics
+	protected StackStatistics statistics = new StackStatistics(this);
 	
 	// Callbacks
 	private Callback callback;
@@ -157,7 +161,7 @@ public class ProtocolStack {
 	 * 			  the {@link seqSamoa.Callback callback} that gets the responses of this stack
 	 */
 	public ProtocolStack(PID myself, TList processes, Callback callback) {
-		create_stack(myself, processes, new SamoaScheduler(new SequentialManager()), new SamoaFlowControl(100), callback, null, "groupcomm",
+		create_stack(myself, processes, new SamoaScheduler(new SequentialManager()), new CreditFlowControl(100), callback, null, "groupcomm",
 				true, true, false);
 		this.recoverLogFileName = null;
 		this.storage = null;
@@ -173,7 +177,7 @@ public class ProtocolStack {
 	 * @param scheduler
 	 * 			  the {@link seqSamoa.SamoaScheduler scheduler} that manages executions in the stack
 	 * @param fc
-	 * 			  the {@link seqSamoa.SamoaFlowControl flowcontrol} dedicated this stack
+	 * 			  the {@link framework.libraries.FlowControl flowcontrol} dedicated this stack
 	 * @param callback
 	 * 			  the {@link seqSamoa.Callback callback} that gets the responses of this stack
 	 * @param logFile
@@ -184,7 +188,7 @@ public class ProtocolStack {
 	 * 			  true, if the stack uses UDP network
 	 * @param rp2p
 	 * 			  true, if the stack uses reliable point to point channels 	 */
-	public ProtocolStack(PID myself, TList processes, SamoaScheduler scheduler, SamoaFlowControl fc, Callback callback,
+	public ProtocolStack(PID myself, TList processes, SamoaScheduler scheduler, FlowControl fc, Callback callback,
 			String logFile, String logName, boolean udp, boolean rp2p) {
 
 		create_stack(myself, processes, scheduler, fc, callback,
@@ -211,7 +215,7 @@ public class ProtocolStack {
 	 */
 	public ProtocolStack(PID myself, TList processes, Callback callback,
 			String recoverLogName, String recoverFileName) {
-		create_stack(myself, processes, new SamoaScheduler(new SequentialManager()), new SamoaFlowControl(100), callback, null,
+		create_stack(myself, processes, new SamoaScheduler(new SequentialManager()), new CreditFlowControl(100), callback, null,
 				"static_recovery", true, false, true);
 		// Init the storage for recovery
 		this.recoverLogFileName = recoverLogName;
@@ -228,7 +232,7 @@ public class ProtocolStack {
 	 * @param scheduler
 	 * 			  the {@link seqSamoa.SamoaScheduler scheduler} that manages executions in the stack
 	 * @param fc
-	 * 			  the {@link seqSamoa.SamoaFlowControl flowcontrol} dedicated this stack
+	 * 			  the {@link framework.libraries.FlowControl flowcontrol} dedicated this stack
 	 * @param callback
 	 * 			  the {@link seqSamoa.Callback callback} that gets the responses of this stack
 	 * @param logFile
@@ -244,7 +248,7 @@ public class ProtocolStack {
 	 * @param rp2p
 	 * 			  true, if the stack uses reliable point to point channels (assumes a crash-stop model)
 	 */
-	public ProtocolStack(PID myself, TList processes, SamoaScheduler scheduler, SamoaFlowControl fc, Callback callback,
+	public ProtocolStack(PID myself, TList processes, SamoaScheduler scheduler, FlowControl fc, Callback callback,
 			String logFile, String logName, String recoverLogName,
 			String recoverFileName, boolean udp, boolean rp2p) {
 
@@ -279,7 +283,7 @@ public class ProtocolStack {
 			AlreadyExistingServiceException,
 			AlreadyExistingProtocolModuleException {
 
-		create_stack_from_xml(myself, processes, new SamoaScheduler(new SequentialManager()), new SamoaFlowControl(100), callback, null,
+		create_stack_from_xml(myself, processes, new SamoaScheduler(new SequentialManager()), new CreditFlowControl(100), callback, null,
 				null, recoverLogName, recoverFileName, XMLfile);
 	}
 
@@ -293,7 +297,7 @@ public class ProtocolStack {
 	 * @param scheduler
 	 * 			  the {@link seqSamoa.SamoaScheduler scheduler} that manages executions in the stack
 	 * @param fc
-	 * 			  the {@link seqSamoa.SamoaFlowControl flowcontrol} dedicated this stack
+	 * 			  the {@link framework.libraries.FlowControl flowcontrol} dedicated this stack
 	 * @param callback
 	 * 			  the {@link seqSamoa.Callback callback} that gets the responses of this stack
 	 * @param logFile
@@ -307,7 +311,7 @@ public class ProtocolStack {
 	 * @param XMLfile
 	 * 			  name of the file that contains the description of the stack
 	 */
-	public ProtocolStack(PID myself, TList processes, SamoaScheduler scheduler, SamoaFlowControl fc, Callback callback,
+	public ProtocolStack(PID myself, TList processes, SamoaScheduler scheduler, FlowControl fc, Callback callback,
 			String logFile, String logName, String recoverLogName,
 			String recoverFileName, String XMLfile) throws IOException,
 			JDOMException, SamoaClassException,
@@ -321,7 +325,7 @@ public class ProtocolStack {
 
 	@SuppressWarnings("unchecked")
 	private void create_stack_from_xml(PID myself, TList processes,
-			SamoaScheduler scheduler, SamoaFlowControl fc,
+			SamoaScheduler scheduler, FlowControl fc,
 			Callback callback, String logFile, String logName,
 			String recoverLogName, String recoverFileName, String XMLfile)
 			throws IOException, JDOMException, SamoaClassException,
@@ -420,7 +424,7 @@ public class ProtocolStack {
 	}
 
 	private void create_stack(PID myself, TList processes,
-			SamoaScheduler scheduler, SamoaFlowControl fc,
+			SamoaScheduler scheduler, FlowControl fc,
 			Callback callback, String logFile, String logName, boolean udp,
 			boolean rp2p, boolean p2p) {
 		this.myself = myself;
@@ -514,21 +518,33 @@ public class ProtocolStack {
 		if (toSend != null)
 			dmessage = new Message(toSend, allFinalListeners.get(serviceName));
 
+		long start = System.nanoTime();
 		fc.enter();
+		statistics.flowControlEntered(System.nanoTime() - start);
 		long cid = service.externalCall(params, dmessage);
 		this.scheduler.waitEnd(cid);
 	}
 
 	/**
-	 * Return the {@link seqSamoa.SamoaFlowControl flowcontrol} dedicated to this stack
+	 * Return the {@link framework.libraries.FlowControl flowcontrol} dedicated to this stack
 	 * 
 	 * @return
-	 * 		the {@link seqSamoa.SamoaFlowControl flowcontrol}
+	 * 		the {@link framework.libraries.FlowControl flowcontrol}
 	 */
-	public SamoaFlowControl getFlowControl() {
+	public FlowControl getFlowControl() {
 		return this.fc;
 	}
 
+	/**
+	 * Return the {@link seqSamoa.StackStatistics statistics} of this stack
+	 * 
+	 * @return
+	 * 		the {@link seqSamoa.StackStatistics statistics}
+	 */
+	public StackStatistics getStatistics() {
+		return this.statistics;
+	}
+
 	/**
 	 * Return the {@link seqSamoa.SamoaScheduler scheduler} dedicated to this stack
 	 * 
@@ -839,6 +855,9 @@ public class ProtocolStack {
 		while (it.hasNext())
 			it.next().bindInterceptors();
 				
+		// Export the statistics through JMX
+		this.statistics.register();
+
 		// Start the timer and the scheduler
     	this.scheduler.stackReconfigured(this);
 		this.scheduler.start();
@@ -956,6 +975,9 @@ public class ProtocolStack {
 	 * Finalize the satck. This method has the same effect as method close.
 	 */
 	public void finalize() {
+		// Remove the statistics from JMX
+		this.statistics.unregister();
+
 		// Close the timer and the scheduler
 		this.scheduler.close();
 
@@ -18,8 +18,11 @@
  */
 package seqSamoa;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import seqSamoa.exceptions.InterruptedSchedulerException;
 import seqSamoa.exceptions.NotInAComputationException;
@@ -57,10 +60,12 @@ public class SamoaScheduler {
             this.scheduler = scheduler;
         }
 
-        protected long updateAndRun() {
+        // Add the task to fired if it has to be executed
+        protected long updateAndRun(List<AtomicTask> fired) {
             long now = System.currentTimeMillis();
             if ((now - this.start - period + scheduler.epsilon) >= 0) {
-                scheduler.schedule(task);
+                fired.add(task);
+                scheduler.timersFired.increment();
                 
                 if (this.periodic)
                     this.start = now;
@@ -118,6 +123,17 @@ public class SamoaScheduler {
     // The concurrency manager
     private ConcurrencyManager manager;
 
+    // Statistics (see {@link seqSamoa.StackStatistics})
+    private final LongAdder waitEndCount = new LongAdder();
+
+    private final LongAdder waitEndTime = new LongAdder();
+
+    private final LongAdder timersScheduled = new LongAdder();
+
+    private final LongAdder timersFired = new LongAdder();
+
+    private final LongAdder timersCancelled = new LongAdder();
+
     /**
      * Constructor with a default precision set to 100ms (see the other constructor for more details).
      */
@@ -152,6 +168,9 @@ public class SamoaScheduler {
        this.manager.start();
         delayer = new Thread() {
         	public void run() {
+        	        // The delayed tasks that expired
+        	        List<AtomicTask> fired = new ArrayList<AtomicTask>();
+
         	        try {
         	            while (true) {
         	                // If there is no task to be executed, wait!!!
@@ -180,12 +199,12 @@ public class SamoaScheduler {
         	                    return;
         	                
         	                long minTime = Long.MAX_VALUE;        	                
-        	                // Execute the delayed tasks that can be executed
+        	                // Collect the delayed tasks that can be executed
         	                synchronized(this) {
         	                	Iterator<DelayedTask> it = delayedTasks.iterator();
         	                	while (it.hasNext()) {
         	                		DelayedTask dTask = it.next();
-        	                		long t = dTask.updateAndRun();
+        	                		long t = dTask.updateAndRun(fired);
         	                		
         	                		if (t <= 0) 
         	                			it.remove();
@@ -194,6 +213,12 @@ public class SamoaScheduler {
         	                	}
         	                }
         	                
+        	                // Execute them in one burst
+        	                if (!fired.isEmpty()) {
+        	                	manager.addExternalTasks(fired);
+        	                	fired.clear();
+        	                }
+        	                
         	                // Compute the next waiting timer
         	                if (minTime == Long.MAX_VALUE)
         	                    timeWait = 0;
@@ -248,7 +273,10 @@ public class SamoaScheduler {
      * 
      */
     public void waitEnd(long cID) throws InterruptedSchedulerException {
+    	long start = System.nanoTime();
     	manager.waitEnd(cID);
+    	waitEndTime.add(System.nanoTime() - start);
+    	waitEndCount.increment();
     }
         
     // Schedule a new computation (i.e., a new external call or response)
@@ -256,6 +284,24 @@ public class SamoaScheduler {
     	return manager.addExternalTask(task);
     }
     
+    /**
+     * Schedules a burst of {@link seqSamoa.AtomicTask tasks} that correspond to
+     * external {@link seqSamoa.Service service} calls or responses, as created by
+     * {@link seqSamoa.Service#externalCallTask(Object, Message) externalCallTask} and
+     * {@link seqSamoa.Service#externalResponseTask(Object, Message) externalResponseTask}.
+     * The tasks are scheduled in the order of the list, as if they were
+     * scheduled one by one, but the concurrency manager is synchronized only once.
+     * 
+     * @param tasks
+     * 		the tasks to be scheduled
+     * @return
+     * 		the id of the computation that results from the first task 
+     * 		(the following tasks get consecutive ids)
+     */
+    public long addExternalTasks(List<AtomicTask> tasks) {
+    	return manager.addExternalTasks(tasks);
+    }
+    
     // Schedule a new internal call or response
     protected void addInternalTask(AtomicTask task) throws NotInAComputationException {
     	manager.addInternalTask(task);
@@ -314,6 +360,7 @@ public class SamoaScheduler {
      */
      public void schedule(AtomicTask t, boolean periodic, long time) {
         DelayedTask dt = new DelayedTask(t, periodic, time, this);
+        timersScheduled.increment();
                
         synchronized(this.delayer) {
         	delayedTasks.add(dt);
@@ -345,6 +392,7 @@ public class SamoaScheduler {
         	
     			if (dt.task.equals(t)) {
     				it.remove();
+    				timersCancelled.increment();
     				return;
     			}
     		}
@@ -377,4 +425,81 @@ public class SamoaScheduler {
         	        
     	throw new NotScheduledTaskException();
     }
+
+    /**
+     * Return the number of computations scheduled but not yet started
+     * 
+     * @return the depth of the ready queue of the concurrency manager
+     */
+    public int getReadyQueueSize() {
+    	return manager.readyQueueSize();
+    }
+
+    /**
+     * Return the number of computations not yet finished
+     * 
+     * @return the number of computations in flight
+     */
+    public long getComputationsInFlight() {
+    	return manager.computationsInFlight();
+    }
+
+    /**
+     * Return the number of calls to {@link #waitEnd(long) waitEnd} that returned
+     * 
+     * @return the number of calls to waitEnd
+     */
+    public long getWaitEndCount() {
+    	return waitEndCount.sum();
+    }
+
+    /**
+     * Return the total time spent in {@link #waitEnd(long) waitEnd}
+     * 
+     * @return the time in nanoseconds
+     */
+    public long getWaitEndTime() {
+    	return waitEndTime.sum();
+    }
+
+    /**
+     * Return the number of delayed {@link seqSamoa.AtomicTask tasks} scheduled so far
+     * 
+     * @return the number of timers scheduled
+     */
+    public long getTimersScheduled() {
+    	return timersScheduled.sum();
+    }
+
+    /**
+     * Return the number of times a delayed {@link seqSamoa.AtomicTask task} expired
+     * 
+     * @return the number of timers fired (periodic timers count once per period)
+     */
+    public long getTimersFired() {
+    	return timersFired.sum();
+    }
+
+    /**
+     * Return the number of delayed {@link seqSamoa.AtomicTask tasks} cancelled so far
+     * 
+     * @return the number of timers cancelled
+     */
+    public long getTimersCancelled() {
+    	return timersCancelled.sum();
+    }
+
+    /**
+     * Return the number of delayed {@link seqSamoa.AtomicTask tasks} currently scheduled
+     * 
+     * @return the number of pending timers
+     */
+    public int getPendingTimers() {
+    	if (this.delayer == null)
+    		return 0;
+
+    	synchronized (this.delayer) {
+    		return delayedTasks.size();
+    	}
+    }
 }
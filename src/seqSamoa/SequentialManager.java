@@ -19,14 +19,15 @@
 package seqSamoa;
 
 import java.io.File;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import seqSamoa.exceptions.InterruptedSchedulerException;
 import seqSamoa.exceptions.NotInAComputationException;
-import framework.CompressedLongSet;
 
 /**
  * This manager allows only sequential runs.
@@ -55,7 +56,7 @@ public class SequentialManager implements ConcurrencyManager, Runnable {
 	private LinkedList<Computation> scheduledComputations = new LinkedList<Computation>();
 	
 	// List of tasks handled
-	private CompressedLongSet finishedComputations = new CompressedLongSet();
+	private CompletionTracker finishedComputations = new CompletionTracker(0);
 
 	// Has the scheduler to be closed
 	private boolean toBeClosed = false;
@@ -83,28 +84,44 @@ public class SequentialManager implements ConcurrencyManager, Runnable {
 	 * 		call or response we want to wait the end
 	 * 
 	 */
-	synchronized public void waitEnd(long cID)
+	public void waitEnd(long cID)
 			throws InterruptedSchedulerException {
-		while (!finishedComputations.contains(cID)) {
-			try {
-				wait();
-			} catch (InterruptedException ie) {
-				throw new InterruptedSchedulerException(cID);
-			}
+		try {
+			finishedComputations.waitFor(cID);
+		} catch (InterruptedException ie) {
+			throw new InterruptedSchedulerException(cID);
 		}
 	}
 
 	// Schedule a new computation (i.e., a new external call or response)
 	synchronized public long addExternalTask(AtomicTask task) {
-		// Create the computation and add it to scheduled computation
+		long cID = newComputation(task);
+		notifyAll();
+		
+		return cID;
+	}
+
+	// Schedule a burst of new computations, in the order of the list
+	synchronized public long addExternalTasks(List<AtomicTask> tasks) {
+		long first = this.nextComputationID;
+
+		Iterator<AtomicTask> it = tasks.iterator();
+		while (it.hasNext())
+			newComputation(it.next());
+		notifyAll();
+
+		return first;
+	}
+
+	// Create the computation of an external task and add it to the
+	// scheduled computations (the lock is held)
+	private long newComputation(AtomicTask task) {
 		Computation c = new Computation(this.nextComputationID);
 		c.readyTasks.addLast(task);
 		this.scheduledComputations.addLast(c);
 		
 		// Increment cID for the following computation
 		this.nextComputationID++;
-		notifyAll();
-		
 		return c.cID;
 	}
 
@@ -140,6 +157,18 @@ public class SequentialManager implements ConcurrencyManager, Runnable {
 		return c.cID;
 	}
 
+	synchronized public int readyQueueSize() {
+		return this.scheduledComputations.size();
+	}
+
+	public long computationsInFlight() {
+		long issued;
+		synchronized (this) {
+			issued = this.nextComputationID;
+		}
+		return issued - this.finishedComputations.getFinishedCount();
+	}
+
 	public void start() {
 		this.runner = new Thread(this);
 		runner.start();
@@ -193,11 +222,11 @@ public class SequentialManager implements ConcurrencyManager, Runnable {
 				}
 			}
 
+			long cID = this.currentComputation.cID;
 			synchronized(this) {
-				this.finishedComputations.add(currentComputation.cID);
 				this.currentComputation = null;
-				this.notifyAll();
 			}
+			this.finishedComputations.add(cID);
 		}
 	}
 
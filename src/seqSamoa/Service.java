@@ -122,14 +122,17 @@ public class Service<CallParameters, ResponseParameters> {
             }
 
             // Execute interceptors and the executer
+            long start = System.nanoTime();
             if (this.service.boundInterceptors.size() > 0) {
             	this.currentModule = this.service.boundInterceptors.get(0).parent;
             	this.service.boundInterceptors.get(0).interceptCall(this.params, this.dmessage);
             	this.currentModule = null;
+            	this.service.statistics.interceptorTime.add(System.nanoTime() - start);
             } else {
             	this.currentModule = this.service.currentExecuter.parent;
             	this.service.currentExecuter.evaluate(this.params, this.dmessage);
             	this.currentModule = null;
+            	this.service.statistics.executerTime.add(System.nanoTime() - start);
             }
         }
         
@@ -246,6 +249,9 @@ public class Service<CallParameters, ResponseParameters> {
     /* List of all buffered ResponseParameters */
     protected LinkedList<ResponseParameters> bufferedResponseParameters;
 
+    /* The statistics of the service */
+    protected final StackStatistics.ServiceStatistics statistics = new StackStatistics.ServiceStatistics();
+
     /**
      * Constructor. By default, both call and responses to/from the service are critical
      * 
@@ -301,6 +307,7 @@ public class Service<CallParameters, ResponseParameters> {
      */
     public void call(CallParameters params, Message dmessage) throws NotInAComputationException{
         ServiceCall sc = new ServiceCall(this, params, dmessage);
+        this.statistics.calls.increment();
         try {
         	this.stack.scheduler.addInternalTask(sc);
         } catch (NotInAComputationException ex) {
@@ -321,9 +328,28 @@ public class Service<CallParameters, ResponseParameters> {
      */
     public long externalCall(CallParameters params, Message dmessage) {
         ServiceCall sc = new ServiceCall(this, params, dmessage);
+        this.statistics.calls.increment();
         return this.stack.scheduler.addExternalTask(sc);
     }
     
+    /**
+     * Create the task corresponding to an external call of the service without
+     * scheduling it. The task has to be scheduled with
+     * {@link seqSamoa.SamoaScheduler#addExternalTasks(java.util.List) addExternalTasks}.
+     * 
+     * @param params
+     *            parameters of the service call
+     * @param dmessage
+     *            {@link seqSamoa.Message message} with its destination
+     *            
+     * @return
+     * 			the task corresponding to the external call
+     */
+    public AtomicTask externalCallTask(CallParameters params, Message dmessage) {
+        this.statistics.calls.increment();
+        return new ServiceCall(this, params, dmessage);
+    }
+    
     /**
      * Send the response(s) of the service
      * 
@@ -335,6 +361,7 @@ public class Service<CallParameters, ResponseParameters> {
      */
     public void response(ResponseParameters params, Message dmessage) throws NotInAComputationException {
         ServiceResponse sr = new ServiceResponse(this, params, dmessage);
+        this.statistics.responses.increment();
         try {
         	this.stack.scheduler.addInternalTask(sr);
         } catch (NotInAComputationException ex) {
@@ -356,9 +383,28 @@ public class Service<CallParameters, ResponseParameters> {
      */
     public long externalResponse(ResponseParameters params, Message dmessage) {
         ServiceResponse sr = new ServiceResponse(this, params, dmessage);
+        this.statistics.responses.increment();
         return this.stack.scheduler.addExternalTask(sr);
     }
     
+    /**
+     * Create the task corresponding to an external response of the service without
+     * scheduling it. The task has to be scheduled with
+     * {@link seqSamoa.SamoaScheduler#addExternalTasks(java.util.List) addExternalTasks}.
+     * 
+     * @param params
+     *            the parameter of the service response
+     * @param dmessage
+     *            {@link seqSamoa.Message message} with its destination
+     *            
+     * @return
+     * 			the task corresponding to the external response
+     */
+    public AtomicTask externalResponseTask(ResponseParameters params, Message dmessage) {
+        this.statistics.responses.increment();
+        return new ServiceResponse(this, params, dmessage);
+    }
+    
     /**
      * Return the service provider
      * 
@@ -649,9 +695,11 @@ public class Service<CallParameters, ResponseParameters> {
                         .interceptCall(params, dmessage);
                 task.currentModule = null;
             } else {
+            	long start = System.nanoTime();
             	task.currentModule = currentExecuter.parent;            	
             	currentExecuter.evaluate(params, dmessage);
             	task.currentModule = null;
+            	statistics.executerTime.add(System.nanoTime() - start);
             }
         }
 
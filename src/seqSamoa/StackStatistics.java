@@ -0,0 +1,359 @@
+/**
+ *  SAMOA - PROTOCOL FRAMEWORK
+ *  Copyright (C) 2005  Olivier Rütti (EPFL) (olivier.rutti@a3.epfl.ch)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package seqSamoa;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import framework.libraries.BinaryStableStorage;
+import framework.libraries.Compression;
+import framework.libraries.tcp.SelectorTCP;
+import groupcomm.common.abcast.BatchingPolicy;
+import groupcomm.common.abcast.BatchingStatistics;
+import seqSamoa.protocols.abcast.ProtocolAbcast;
+import seqSamoa.protocols.abcast.ProtocolDynAbcast;
+import seqSamoa.protocols.abcast.ProtocolFastAbcast;
+
+/**
+ * The <CODE>StackStatistics</CODE> gathers the runtime statistics of a
+ * {@link seqSamoa.ProtocolStack stack}: the calls and responses of each
+ * {@link seqSamoa.Service service}, the time spent in executers and
+ * interceptors, the state of the {@link seqSamoa.SamoaScheduler scheduler}
+ * and the time spent blocked by the flow control.
+ *
+ * Counters are striped ({@link java.util.concurrent.atomic.LongAdder LongAdder}),
+ * so that updating them does not make the threads of the stack contend.
+ * The statistics can be read with {@link #getSnapshot()} or through JMX once
+ * {@link #register()} has been called.
+ */
+public class StackStatistics implements StackStatisticsMBean {
+    /**
+     * The statistics of a {@link seqSamoa.Service service}. Times are in nanoseconds.
+     */
+    public static class ServiceStatistics {
+        /* Calls to the service (internal and external) */
+        public final LongAdder calls = new LongAdder();
+
+        /* Responses of the service (internal and external) */
+        public final LongAdder responses = new LongAdder();
+
+        /* Time spent in the executer */
+        public final LongAdder executerTime = new LongAdder();
+
+        /* Time spent in the chain of bound interceptors (executer included) */
+        public final LongAdder interceptorTime = new LongAdder();
+
+        protected void reset() {
+            calls.reset();
+            responses.reset();
+            executerTime.reset();
+            interceptorTime.reset();
+        }
+    }
+
+    // The stack
+    private final ProtocolStack stack;
+
+    // Time spent by the application threads in the flow control
+    private final LongAdder flowControlBlockedTime = new LongAdder();
+
+    // The name under which the statistics are registered in JMX
+    private ObjectName objectName = null;
+
+    /**
+     * Constructor
+     *
+     * @param stack
+     *            the {@link seqSamoa.ProtocolStack stack} whose statistics are gathered
+     */
+    public StackStatistics(ProtocolStack stack) {
+        this.stack = stack;
+    }
+
+    // Account for the time spent in the flow control by an application thread
+    protected void flowControlEntered(long time) {
+        flowControlBlockedTime.add(time);
+    }
+
+    public int getReadyQueueSize() {
+        return stack.scheduler.getReadyQueueSize();
+    }
+
+    public long getComputationsInFlight() {
+        return stack.scheduler.getComputationsInFlight();
+    }
+
+    public long getWaitEndCount() {
+        return stack.scheduler.getWaitEndCount();
+    }
+
+    public long getWaitEndTime() {
+        return stack.scheduler.getWaitEndTime();
+    }
+
+    public long getTimersScheduled() {
+        return stack.scheduler.getTimersScheduled();
+    }
+
+    public long getTimersFired() {
+        return stack.scheduler.getTimersFired();
+    }
+
+    public int getPendingTimers() {
+        return stack.scheduler.getPendingTimers();
+    }
+
+    public long getFlowControlBlockedTime() {
+        return flowControlBlockedTime.sum();
+    }
+
+    /**
+     * Return the statistics of the {@link seqSamoa.Service service} given in parameter
+     *
+     * @param name
+     *            the name of the {@link seqSamoa.Service service}
+     * @return the statistics of the service or null if the service does not exist
+     */
+    @SuppressWarnings("unchecked")
+    public ServiceStatistics getServiceStatistics(String name) {
+        Service s = stack.getService(name);
+        if (s == null)
+            return null;
+
+        return s.statistics;
+    }
+
+    /**
+     * Return a copy of all the statistics of the stack. The keys
+     * of the per service statistics are prefixed with "service.&lt;name&gt;.",
+     * the ones of the flow control with "flowControl." and the ones of the
+     * compression of rpt2pt, udp and the storage with "compression.&lt;name&gt;.".
+     * The ones of the receive buffers of the rpt2pt connections (when run
+     * by a selector) are prefixed with "tcp.", the ones of the datagrams
+     * of udp with "udp.", the ones of the group commits of the storage
+     * with "storage." and the ones of the batches proposed by an abcast
+     * protocol with "batching.&lt;name of the protocol&gt;.".
+     *
+     * @return the statistics sorted by name
+     */
+    @SuppressWarnings("unchecked")
+    public SortedMap<String, Long> getSnapshot() {
+        SortedMap<String, Long> result = new TreeMap<String, Long>();
+
+        result.put("scheduler.readyQueueSize", (long) getReadyQueueSize());
+        result.put("scheduler.computationsInFlight", getComputationsInFlight());
+        result.put("scheduler.waitEndCount", getWaitEndCount());
+        result.put("scheduler.waitEndTime", getWaitEndTime());
+        result.put("scheduler.timersScheduled", getTimersScheduled());
+        result.put("scheduler.timersFired", getTimersFired());
+        result.put("scheduler.timersCancelled", stack.scheduler.getTimersCancelled());
+        result.put("scheduler.pendingTimers", (long) getPendingTimers());
+        result.put("flowControl.blockedTime", getFlowControlBlockedTime());
+
+        if (stack.fc instanceof CreditFlowControl) {
+            CreditFlowControl cfc = (CreditFlowControl) stack.fc;
+            for (int key = 0; key < cfc.getKeysCount(); key++) {
+                result.put("flowControl.key" + key + ".blockedTime", cfc.getBlockedTime(key));
+                result.put("flowControl.key" + key + ".creditBytes", cfc.getCreditBytes(key));
+                result.put("flowControl.key" + key + ".creditMessages", (long) cfc.getCreditMessages(key));
+            }
+        }
+
+        Iterator<Service> it = stack.allServices.values().iterator();
+        while (it.hasNext()) {
+            Service s = it.next();
+            String prefix = "service." + s.name + ".";
+
+            result.put(prefix + "calls", s.statistics.calls.sum());
+            result.put(prefix + "responses", s.statistics.responses.sum());
+            result.put(prefix + "executerTime", s.statistics.executerTime.sum());
+            result.put(prefix + "interceptorTime", s.statistics.interceptorTime.sum());
+        }
+
+        if (stack.pRPT2PT != null)
+            putCompression(result, "rpt2pt", stack.pRPT2PT.getCompression());
+        if ((stack.pRPT2PT != null) && (stack.pRPT2PT.getSelectorTCP() != null))
+            putTCP(result, stack.pRPT2PT.getSelectorTCP());
+        if (stack.pUDP != null) {
+            putCompression(result, "udp", stack.pUDP.getCompression());
+            result.put("udp.received", stack.pUDP.received.sum());
+            result.put("udp.receivedBytes", stack.pUDP.receivedBytes.sum());
+            result.put("udp.bursts", stack.pUDP.bursts.sum());
+            result.put("udp.sent", stack.pUDP.sent.sum());
+            result.put("udp.sentBytes", stack.pUDP.sentBytes.sum());
+            result.put("udp.sendRetries", stack.pUDP.sendRetries.sum());
+        }
+        if (stack.getStorage() instanceof BinaryStableStorage) {
+            BinaryStableStorage storage = (BinaryStableStorage) stack.getStorage();
+            putCompression(result, "storage", storage.getCompression());
+            result.put("storage.batches", storage.batches.sum());
+            result.put("storage.batchedEntries", storage.batchedEntries.sum());
+            result.put("storage.syncTime", storage.syncTime.sum());
+        }
+
+        Iterator<ProtocolModule> itP = stack.allProtocols.values().iterator();
+        while (itP.hasNext()) {
+            ProtocolModule p = itP.next();
+            BatchingPolicy batching = getBatchingPolicy(p);
+            if (batching != null)
+                putBatching(result, p.getName(), batching.getStatistics());
+        }
+
+        return result;
+    }
+
+    // The batching policy of an abcast protocol, null for the other protocols
+    private BatchingPolicy getBatchingPolicy(ProtocolModule p) {
+        if (p instanceof ProtocolAbcast)
+            return ((ProtocolAbcast) p).getBatchingPolicy();
+        if (p instanceof ProtocolDynAbcast)
+            return ((ProtocolDynAbcast) p).getBatchingPolicy();
+        if (p instanceof ProtocolFastAbcast)
+            return ((ProtocolFastAbcast) p).getBatchingPolicy();
+        return null;
+    }
+
+    // Add the statistics of the batches of an abcast protocol with keys
+    // prefixed by "batching.<name>."
+    private void putBatching(SortedMap<String, Long> result, String name,
+            BatchingStatistics b) {
+        String prefix = "batching." + name + ".";
+
+        result.put(prefix + "proposals", b.proposals.sum());
+        result.put(prefix + "proposedMessages", b.proposedMessages.sum());
+        result.put(prefix + "proposedBytes", b.proposedBytes.sum());
+        result.put(prefix + "lastProposal", b.lastProposal);
+        result.put(prefix + "maxProposal", b.maxProposal);
+        result.put(prefix + "limit", b.limit);
+        result.put(prefix + "decisions", b.decisions.sum());
+        result.put(prefix + "timedDecisions", b.timedDecisions.sum());
+        result.put(prefix + "decisionLatency", b.decisionLatency.sum());
+        result.put(prefix + "lastLatency", b.lastLatency);
+    }
+
+    // Add the statistics of a compression with keys prefixed by
+    // "compression.<name>." (the ratio is in per mille)
+    private void putCompression(SortedMap<String, Long> result, String name,
+            Compression c) {
+        String prefix = "compression." + name + ".";
+
+        result.put(prefix + "frames", c.frames.sum());
+        result.put(prefix + "compressedFrames", c.compressedFrames.sum());
+        result.put(prefix + "bytesIn", c.bytesIn.sum());
+        result.put(prefix + "bytesOut", c.bytesOut.sum());
+        result.put(prefix + "ratio", Math.round(c.getRatio() * 1000));
+        result.put(prefix + "compressTime", c.compressTime.sum());
+        result.put(prefix + "decompressedFrames", c.decompressedFrames.sum());
+        result.put(prefix + "decompressTime", c.decompressTime.sum());
+    }
+
+    // Add the statistics of the received messages and of the receive
+    // buffers of the TCP connections with keys prefixed by "tcp."
+    private void putTCP(SortedMap<String, Long> result, SelectorTCP s) {
+        result.put("tcp.frames", s.frames.sum());
+        result.put("tcp.frameBytes", s.frameBytes.sum());
+        result.put("tcp.largeFrames", s.largeFrames.sum());
+        result.put("tcp.maxFrame", (long) s.getMaxFrame());
+        result.put("tcp.movedBytes", s.movedBytes.sum());
+        result.put("tcp.pool.acquired", s.pool.acquired.sum());
+        result.put("tcp.pool.allocated", s.pool.allocated.sum());
+        result.put("tcp.pool.recycled", s.pool.recycled.sum());
+        result.put("tcp.pool.dropped", s.pool.dropped.sum());
+        result.put("tcp.pool.free", (long) s.pool.size());
+    }
+
+    /**
+     * Reset the counters of the stack. The counters of the
+     * {@link seqSamoa.SamoaScheduler scheduler} are not reset since
+     * the scheduler may be shared by several stacks.
+     */
+    @SuppressWarnings("unchecked")
+    public void reset() {
+        flowControlBlockedTime.reset();
+
+        Iterator<Service> it = stack.allServices.values().iterator();
+        while (it.hasNext())
+            it.next().statistics.reset();
+
+        if (stack.pRPT2PT != null)
+            stack.pRPT2PT.getCompression().reset();
+        if ((stack.pRPT2PT != null) && (stack.pRPT2PT.getSelectorTCP() != null))
+            stack.pRPT2PT.getSelectorTCP().reset();
+        if (stack.pUDP != null) {
+            stack.pUDP.getCompression().reset();
+            stack.pUDP.reset();
+        }
+        if (stack.getStorage() instanceof BinaryStableStorage) {
+            ((BinaryStableStorage) stack.getStorage()).getCompression().reset();
+            ((BinaryStableStorage) stack.getStorage()).resetStatistics();
+        }
+
+        Iterator<ProtocolModule> itP = stack.allProtocols.values().iterator();
+        while (itP.hasNext()) {
+            BatchingPolicy batching = getBatchingPolicy(itP.next());
+            if (batching != null)
+                batching.getStatistics().reset();
+        }
+    }
+
+    /**
+     * Register the statistics in the platform MBean server under the name
+     * "seqSamoa:type=ProtocolStack,pid=&lt;pid of the stack&gt;"
+     */
+    public synchronized void register() {
+        if (objectName != null)
+            return;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("seqSamoa:type=ProtocolStack,pid="
+                    + ObjectName.quote(String.valueOf(stack.getPID())));
+
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (JMException ex) {
+            throw new RuntimeException("Impossible to register the statistics: "
+                    + ex.getMessage());
+        }
+    }
+
+    /**
+     * Unregister the statistics from the platform MBean server
+     */
+    public synchronized void unregister() {
+        if (objectName == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            // Already unregistered
+        }
+        objectName = null;
+    }
+}
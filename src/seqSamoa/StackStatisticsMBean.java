@@ -0,0 +1,77 @@
+/**
+ *  SAMOA - PROTOCOL FRAMEWORK
+ *  Copyright (C) 2005  Olivier Rütti (EPFL) (olivier.rutti@a3.epfl.ch)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package seqSamoa;
+
+import java.util.SortedMap;
+
+/**
+ * JMX interface of the {@link seqSamoa.StackStatistics statistics} of a
+ * {@link seqSamoa.ProtocolStack stack}. All times are in nanoseconds.
+ */
+public interface StackStatisticsMBean {
+    /**
+     * @return the number of computations scheduled but not yet started
+     */
+    public int getReadyQueueSize();
+
+    /**
+     * @return the number of computations not yet finished
+     */
+    public long getComputationsInFlight();
+
+    /**
+     * @return the number of calls to waitEnd that returned
+     */
+    public long getWaitEndCount();
+
+    /**
+     * @return the total time spent in waitEnd
+     */
+    public long getWaitEndTime();
+
+    /**
+     * @return the number of timers scheduled so far
+     */
+    public long getTimersScheduled();
+
+    /**
+     * @return the number of timers that expired so far
+     */
+    public long getTimersFired();
+
+    /**
+     * @return the number of timers currently scheduled
+     */
+    public int getPendingTimers();
+
+    /**
+     * @return the time spent by the application threads blocked by the flow control
+     */
+    public long getFlowControlBlockedTime();
+
+    /**
+     * @return all the statistics of the stack, including the per service ones
+     */
+    public SortedMap<String, Long> getSnapshot();
+
+    /**
+     * Reset the counters of the stack
+     */
+    public void reset();
+}
@@ -25,10 +25,10 @@ import org.apache.log4j.Logger;
 import br.ufms.dct.simplerep.SimpleRepConfiguration;
 import br.ufms.dct.simplerep.kernels.SamoaKernel;
 
+import seqSamoa.AtomicTask;
 import seqSamoa.Callback;
 import seqSamoa.Message;
 import seqSamoa.ProtocolStack;
-import seqSamoa.SamoaFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.Service;
 import seqSamoa.ServiceCallOrResponse;
@@ -37,19 +37,26 @@ import seqSamoa.exceptions.AlreadyExistingProtocolModuleException;
 import seqSamoa.exceptions.AlreadyExistingServiceException;
 import seqSamoa.protocols.abcast.ProtocolAbcast;
 import seqSamoa.protocols.consensus.ProtocolConsensus;
+import seqSamoa.protocols.consensus.ProtocolConsensusPaxos;
+import seqSamoa.protocols.fd.ProtocolOmega;
 import seqSamoa.protocols.fd.ProtocolPing;
 import seqSamoa.services.abcast.Abcast;
 import seqSamoa.services.abcast.AbcastResponseParameters;
 import seqSamoa.services.consensus.Consensus;
 import seqSamoa.services.fd.FD;
 import seqSamoa.services.fd.FDResponseParameters;
+import seqSamoa.services.fd.Leader;
 import seqSamoa.services.monitoring.ProcessSuspicion;
 import seqSamoa.services.monitoring.ProcessSuspicionCallParameters;
 import seqSamoa.services.udp.UDP;
 import seqSamoa.services.udp.UDPCallParameters;
 import uka.transport.Transportable;
 import framework.PID;
+import framework.libraries.FlowControl;
 import framework.libraries.serialization.TList;
+import groupcomm.common.abcast.AbcastImpl;
+import groupcomm.common.abcast.AdaptiveBatchingPolicy;
+import groupcomm.common.fd.LeaderLease;
 
 /**
  * A protocol stack that implements atomic broadcast
@@ -62,11 +69,21 @@ public class ApiSamoaAbcastStack extends ProtocolStack {
     ProtocolPing pFD;
     ProtocolAbcast pAbcast;
     ProtocolConsensus pConsensus;
+    // Paxos consensus and its leader election (instead of pConsensus)
+    ProtocolOmega pOmega;
+    ProtocolConsensusPaxos pConsensusPaxos;
+
+    // The lease of the Multi-Paxos leader (null if none)
+    LeaderLease lease;
+
+    // Number of messages delivered (the sequence number of the last one)
+    long delivered = 0;
 
     // The different services
     FD fd;
     Abcast abcast;
     Consensus consensus;
+    Leader leader;
 
     // The Listeners
     // It listen for DynABcast message
@@ -94,7 +111,7 @@ public class ApiSamoaAbcastStack extends ProtocolStack {
      * 			  name of the file where to log the infos
      */
     public ApiSamoaAbcastStack(PID myself, TList processes,
-			SamoaScheduler scheduler, SamoaFlowControl fc,
+			SamoaScheduler scheduler, FlowControl fc,
 			Callback callback, final Callback udpCallback, String logFile, SimpleRepConfiguration conf) {
 
         super(myself, processes, scheduler, fc, callback, logFile, new String("groupcomm"), true, true);
@@ -104,12 +121,15 @@ public class ApiSamoaAbcastStack extends ProtocolStack {
         	fd = new FD("fd", this);
         	consensus = new Consensus("consensus", this);
         	abcast = new Abcast("abcast", this);
+        	if (!conf.getConsensus().equals("ct"))
+        		leader = new Leader("leader", this);
         } catch (AlreadyExistingServiceException aep) {
         	throw new RuntimeException("Should not be possible! Bug in conception.");
         }
         
         abcastListener = abcast.new Listener(this, new LinkedList<ServiceCallOrResponse>()) {
             synchronized public void evaluate(AbcastResponseParameters infos, Transportable message) {
+                infos.sequence = ++delivered;
                 this.parent.getStack().getCallback().serviceCallback(infos, message);
             }
         };
@@ -148,8 +168,31 @@ public class ApiSamoaAbcastStack extends ProtocolStack {
         			(Service<? extends UDPCallParameters, ? extends Object>) this.udp);
         	
 
-        	pConsensus = new ProtocolConsensus(new String("Consensus"), this, consensus, fd, this.rpt2pt);
+        	if (conf.getConsensus().equals("ct")) {
+        		pConsensus = new ProtocolConsensus(new String("Consensus"), this, consensus, fd, this.rpt2pt);
+        	} else {
+        		pOmega = new ProtocolOmega(new String("Omega"), this, leader, fd);
+        		pConsensusPaxos = new ProtocolConsensusPaxos(new String("Consensus"), this, consensus, leader, this.rpt2pt);
+        		// Abcast runs its instances from 1
+        		pConsensusPaxos.setMultiPaxos(conf.getConsensus().equals("multipaxos"), 1);
+        		if (conf.getLeaseTime() > 0) {
+        			// The read index relies on the instances finished by
+        			// consensus being delivered, not true with id ordering
+        			if (conf.isIdOrdering())
+        				throw new RuntimeException("The leader lease cannot be used with the id ordering");
+        			lease = new LeaderLease(myself, processes, conf.getLeaseTime(), conf.getClockDrift());
+        			pFD.setLease(lease);
+        			pOmega.setLease(lease);
+        			pConsensusPaxos.setLeaderLease(true);
+        		}
+        	}
         	pAbcast = new ProtocolAbcast(new String("Abcast"), this, abcast, consensus, this.rpt2pt);
+        	pAbcast.setConsensusWindow(conf.getConsensusWindow());
+        	pAbcast.setWindowBytes(conf.getWindowBytes());
+        	pAbcast.setIdOrdering(conf.isIdOrdering());
+        	if (conf.getBatchingLatency() > 0)
+        		pAbcast.setBatchingPolicy(new AdaptiveBatchingPolicy(conf.getBatchingLatency(),
+        				conf.getBatchingBytes(), AbcastImpl.MSGS_PER_CONSENSUS));
         } catch (AlreadyExistingProtocolModuleException aep) {
         	throw new RuntimeException("Should not be possible! Bug in conception.");
         }
@@ -161,4 +204,51 @@ public class ApiSamoaAbcastStack extends ProtocolStack {
 		long cid = abcast.externalCall(null, new Message(message, abcastListener));
 		this.scheduler.waitEnd(cid);
 	}
+
+	/**
+	 * Index of a read served locally by the leader under its lease: the
+	 * sequence number of the last message delivered once the consensus
+	 * instances the leader knows decided are finished (see
+	 * {@link AbcastResponseParameters#sequence}). The application must have
+	 * applied every message up to that number before it reads its state.
+	 * 
+	 * @param timeout
+	 * 			  the time to wait for the instances to finish (milliseconds)
+	 * @return the index, or -1 if the read must be ordered by abcast (this
+	 * 			  process does not hold the lease, or the timeout expired)
+	 */
+	public long readIndex(long timeout) throws InterruptedException {
+		if (lease == null)
+			return -1;
+		final long[] result = new long[2];
+		runTask(new AtomicTask() {
+			public void execute() {
+				result[0] = lease.holds() ? pConsensusPaxos.getReadBound() : -1;
+			}
+		});
+		if (result[0] < 0)
+			return -1;
+
+		// The decisions of the leader reach it through rpt2pt, like the
+		// others: check again after each one
+		long end = System.currentTimeMillis() + timeout;
+		while (true) {
+			long seen = pConsensusPaxos.getDecisions();
+			runTask(new AtomicTask() {
+				public void execute() {
+					result[1] = (pConsensusPaxos.getFinishedBound() >= result[0]) ? delivered : -1;
+				}
+			});
+			if (result[1] >= 0)
+				return result[1];
+			if (!pConsensusPaxos.awaitDecision(seen, end - System.currentTimeMillis()))
+				return -1;
+		}
+	}
+
+	// Run a task in isolation with the computations of the stack
+	private void runTask(AtomicTask task) {
+		long cid = this.scheduler.schedule(task);
+		this.scheduler.waitEnd(cid);
+	}
 }
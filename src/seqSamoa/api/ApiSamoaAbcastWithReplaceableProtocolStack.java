@@ -23,7 +23,6 @@ import java.util.LinkedList;
 import seqSamoa.Callback;
 import seqSamoa.Message;
 import seqSamoa.ProtocolStack;
-import seqSamoa.SamoaFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.Service;
 import seqSamoa.ServiceCallOrResponse;
@@ -47,6 +46,7 @@ import seqSamoa.services.replacement.ReplaceProtocolResponseParameters;
 import seqSamoa.services.udp.UDPCallParameters;
 import uka.transport.Transportable;
 import framework.PID;
+import framework.libraries.FlowControl;
 import framework.libraries.serialization.TElement;
 import framework.libraries.serialization.TGLinkedList;
 import framework.libraries.serialization.TList;
@@ -114,7 +114,7 @@ public class ApiSamoaAbcastWithReplaceableProtocolStack extends ProtocolStack {
 	 */
 	public ApiSamoaAbcastWithReplaceableProtocolStack(PID myself,
 			TList processes, SamoaScheduler scheduler,
-			SamoaFlowControl fc, Callback callback, String logFile,
+			FlowControl fc, Callback callback, String logFile,
 			int typeReplacer) {
 
 		super(myself, processes, scheduler, fc, callback, logFile,
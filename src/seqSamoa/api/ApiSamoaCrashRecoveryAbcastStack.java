@@ -23,7 +23,6 @@ import java.util.LinkedList;
 import seqSamoa.Callback;
 import seqSamoa.Message;
 import seqSamoa.ProtocolStack;
-import seqSamoa.SamoaFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.ServiceCallOrResponse;
 import seqSamoa.exceptions.AlreadyBoundServiceException;
@@ -42,6 +41,8 @@ import seqSamoa.services.fd.FDSe;
 import seqSamoa.services.fd.FDSu;
 import uka.transport.Transportable;
 import framework.PID;
+import framework.libraries.BinaryStableStorage;
+import framework.libraries.FlowControl;
 import framework.libraries.serialization.TList;
 
 /**
@@ -95,7 +96,7 @@ public class ApiSamoaCrashRecoveryAbcastStack extends ProtocolStack {
 	 * 			  the log file
 	 */
 	public ApiSamoaCrashRecoveryAbcastStack(PID myself, TList processes,
-			SamoaScheduler scheduler, SamoaFlowControl fc,
+			SamoaScheduler scheduler, FlowControl fc,
 			Callback callback, String logFile) {
 
 		super(myself, processes, scheduler, fc, callback, logFile,
@@ -106,6 +107,10 @@ public class ApiSamoaCrashRecoveryAbcastStack extends ProtocolStack {
 								+ myself.port + "_" + myself.incarnation
 								+ ".recovery"), true, true);
 
+		// The protocols wait once per handler for the entries they logged,
+		// instead of waiting for a sync after each of them
+		((BinaryStableStorage) getStorage()).setGroupCommit(true);
+
 		// SERVICES CREATION
 		try {
 			updateState = new UpdateState("updateState", this);
@@ -157,11 +162,42 @@ public class ApiSamoaCrashRecoveryAbcastStack extends ProtocolStack {
 		}
 	}
 
+	/**
+	 * Checkpoint the state of the application: consensus and abcast commit
+	 * it with the instances delivered so far, and abcast truncates its log
+	 * below them.
+	 * 
+	 * @param state
+	 * 			  the snapshot of the state of the application
+	 */
 	public void checkpoint(Transportable state) {
 		pConsensus.commit();
 		pAbcast.commit(state);
 	}
 
+	/**
+	 * Ask the application for a snapshot of its state every given number of
+	 * consensus instances. The callback gets UpdateStateCallParameters with
+	 * <CODE>snapshot</CODE> set and answers with {@link #checkpoint}.
+	 * 
+	 * @param instances
+	 * 			  the number of instances between two snapshots (0: never)
+	 */
+	public void setCheckpointPeriod(int instances) {
+		pAbcast.setCheckpointPeriod(instances);
+	}
+
+	/**
+	 * Set the time after which a snapshot the application did not give back
+	 * with {@link #checkpoint} is asked again.
+	 * 
+	 * @param timeout
+	 * 			  the time in milliseconds
+	 */
+	public void setCheckpointTimeout(long timeout) {
+		pAbcast.setCheckpointTimeout(timeout);
+	}
+
 	// to abcast a message
 	synchronized public void abcastMessage(Transportable message) {
 		fc.enter();
@@ -23,7 +23,6 @@ import java.util.LinkedList;
 import seqSamoa.Callback;
 import seqSamoa.Message;
 import seqSamoa.ProtocolStack;
-import seqSamoa.SamoaFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.ServiceCallOrResponse;
 import seqSamoa.exceptions.AlreadyBoundServiceException;
@@ -42,6 +41,8 @@ import seqSamoa.services.fd.FDSe;
 import seqSamoa.services.fd.FDSu;
 import uka.transport.Transportable;
 import framework.PID;
+import framework.libraries.BinaryStableStorage;
+import framework.libraries.FlowControl;
 import framework.libraries.serialization.TList;
 
 /**
@@ -97,7 +98,7 @@ public class ApiSamoaCrashRecoveryAbcastStackCommit extends ProtocolStack {
 	 * 			  the log file
 	 */
     public ApiSamoaCrashRecoveryAbcastStackCommit(PID myself, TList processes,
-			SamoaScheduler scheduler, SamoaFlowControl fc,
+			SamoaScheduler scheduler, FlowControl fc,
 			Callback callback, boolean uniform, String logFile) {
 
 		super(myself, processes, scheduler, fc, callback, logFile,
@@ -108,6 +109,10 @@ public class ApiSamoaCrashRecoveryAbcastStackCommit extends ProtocolStack {
 								+ myself.port + "_" + myself.incarnation
 								+ ".recovery"), true, true);
 
+		// The protocols wait once per handler for the entries they logged,
+		// instead of waiting for a sync after each of them
+		((BinaryStableStorage) getStorage()).setGroupCommit(true);
+
         // SERVICES CREATION
 		try {
 			nbCommits = new NbCommits("nbCommits", this);
@@ -23,7 +23,6 @@ import java.util.LinkedList;
 import seqSamoa.Callback;
 import seqSamoa.Message;
 import seqSamoa.ProtocolStack;
-import seqSamoa.SamoaFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.Service;
 import seqSamoa.ServiceCallOrResponse;
@@ -46,6 +45,7 @@ import seqSamoa.services.udp.UDPCallParameters;
 import uka.transport.Transportable;
 import framework.Constants;
 import framework.PID;
+import framework.libraries.FlowControl;
 import framework.libraries.serialization.TBoolean;
 import framework.libraries.serialization.TInteger;
 import framework.libraries.serialization.TList;
@@ -100,7 +100,7 @@ public class ApiSamoaDynAbcastStack extends ProtocolStack {
 	 * 			  name of the file where to log the infos
 	 */
 	public ApiSamoaDynAbcastStack(PID myself, TList processes,
-			SamoaScheduler scheduler, SamoaFlowControl fc,
+			SamoaScheduler scheduler, FlowControl fc,
 			Callback callback, String logFile) {
 
 		super(myself, processes, scheduler, fc, callback, logFile,
@@ -23,7 +23,6 @@ import java.util.LinkedList;
 import seqSamoa.Callback;
 import seqSamoa.Message;
 import seqSamoa.ProtocolStack;
-import seqSamoa.SamoaFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.Service;
 import seqSamoa.ServiceCallOrResponse;
@@ -51,6 +50,7 @@ import seqSamoa.services.udp.UDPCallParameters;
 import uka.transport.Transportable;
 import framework.Constants;
 import framework.PID;
+import framework.libraries.FlowControl;
 import framework.libraries.serialization.TBoolean;
 import framework.libraries.serialization.TElement;
 import framework.libraries.serialization.TGLinkedList;
@@ -126,7 +126,7 @@ public class ApiSamoaDynAbcastWithReplaceableProtocolStack extends
 	 */
 	public ApiSamoaDynAbcastWithReplaceableProtocolStack(PID myself,
 			TList processes, SamoaScheduler scheduler,
-			SamoaFlowControl fc, Callback callback, String logFile) {
+			FlowControl fc, Callback callback, String logFile) {
 
 		super(myself, processes, scheduler, fc, callback, logFile,
 				new String("groupcomm"), true, true);
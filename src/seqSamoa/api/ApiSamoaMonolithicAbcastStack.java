@@ -23,7 +23,6 @@ import java.util.LinkedList;
 import seqSamoa.Callback;
 import seqSamoa.Message;
 import seqSamoa.ProtocolStack;
-import seqSamoa.SamoaFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.Service;
 import seqSamoa.ServiceCallOrResponse;
@@ -40,6 +39,7 @@ import seqSamoa.services.monitoring.ProcessSuspicionCallParameters;
 import seqSamoa.services.udp.UDPCallParameters;
 import uka.transport.Transportable;
 import framework.PID;
+import framework.libraries.FlowControl;
 import framework.libraries.serialization.TList;
 
 /**
@@ -76,7 +76,7 @@ public class ApiSamoaMonolithicAbcastStack extends ProtocolStack {
      * 			  name of the file where to log the infos
      */
     public ApiSamoaMonolithicAbcastStack(PID myself, TList processes,
-			SamoaScheduler scheduler, SamoaFlowControl fc,
+			SamoaScheduler scheduler, FlowControl fc,
 			Callback callback, String logFile) {
 
         super(myself, processes, scheduler, fc, callback, logFile, new String("groupcomm"), true, true);
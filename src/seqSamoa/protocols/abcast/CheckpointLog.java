@@ -0,0 +1,149 @@
+/**
+ *  SAMOA - PROTOCOL FRAMEWORK
+ *  Copyright (C) 2005  Olivier Rütti (EPFL) (olivier.rutti@a3.epfl.ch)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package seqSamoa.protocols.abcast;
+
+import uka.transport.Transportable;
+import framework.Constants;
+import framework.libraries.StableStorage;
+import framework.libraries.serialization.TLinkedList;
+import framework.libraries.serialization.TLong;
+
+/**
+ * The <CODE>CheckpointLog</CODE> is the stable log of
+ * {@link seqSamoa.protocols.abcast.ProtocolCrashRecoveryAbcast
+ * ProtocolCrashRecoveryAbcast}. Its layout is the following:
+ * <ul>
+ * <li> <CODE>LOG_CHECKPOINT</CODE>, key 0: the last consensus instance
+ * checkpointed and the snapshot of the application that covers it (none
+ * before the first checkpoint), </li>
+ * <li> <CODE>LOG_DECISIONS</CODE>, key <i>k</i>: the decision of consensus
+ * instance <i>k</i>, for each instance above the checkpoint. </li>
+ * </ul>
+ * The decisions are truncated below each checkpoint, so that recovery loads
+ * the snapshot and replays only the decisions above it.
+ */
+public class CheckpointLog {
+    private StableStorage storage;
+
+    // The instance covered by the last checkpoint (-1: nothing logged)
+    private long checkpointed = -1;
+
+    // The snapshot of the last checkpoint
+    private Transportable snapshot = null;
+
+    /**
+     * Constructor
+     *
+     * @param storage
+     *            the stable storage where the log is kept
+     */
+    public CheckpointLog(StableStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Load the last checkpoint from the stable storage
+     *
+     * @return the instance covered by the last checkpoint (-1: empty log)
+     */
+    public long recover() {
+        TLinkedList record = (TLinkedList) storage.retrieve(
+                Constants.LOG_CHECKPOINT, 0);
+
+        if (record == null) {
+            checkpointed = -1;
+            snapshot = null;
+        } else {
+            checkpointed = ((TLong) record.getFirst()).longValue();
+            snapshot = record.getLast();
+        }
+        return checkpointed;
+    }
+
+    /**
+     * Log the decision of a consensus instance. The instances are logged in
+     * order, without gap.
+     *
+     * @param instance
+     *            the consensus instance
+     * @param decision
+     *            the decision of this instance
+     */
+    public void decided(long instance, Transportable decision) {
+        // The replay starts right after the first instance logged
+        if (checkpointed < 0)
+            write(instance - 1, null);
+
+        storage.store(Constants.LOG_DECISIONS, instance, decision, true);
+    }
+
+    /**
+     * Checkpoint the snapshot of the application: the decisions up to the
+     * given instance are deleted from the log.
+     *
+     * @param instance
+     *            the last instance covered by the snapshot
+     * @param snapshot
+     *            the snapshot of the application
+     */
+    public void checkpoint(long instance, Transportable snapshot) {
+        if (instance <= checkpointed)
+            return;
+
+        write(instance, snapshot);
+        storage.deleteBelow(Constants.LOG_DECISIONS, instance + 1);
+        storage.trim();
+    }
+
+    /**
+     * Return the decision of a consensus instance above the last checkpoint
+     *
+     * @param instance
+     *            the consensus instance
+     * @return the decision, or null if it is not logged
+     */
+    public Transportable retrieve(long instance) {
+        return storage.retrieve(Constants.LOG_DECISIONS, instance);
+    }
+
+    /**
+     * @return the instance covered by the last checkpoint (-1: empty log)
+     */
+    public long getCheckpointed() {
+        return checkpointed;
+    }
+
+    /**
+     * @return the snapshot of the last checkpoint (null: none)
+     */
+    public Transportable getSnapshot() {
+        return snapshot;
+    }
+
+    // Store the checkpoint record
+    private void write(long instance, Transportable snapshot) {
+        TLinkedList record = new TLinkedList();
+        record.addLast(new TLong(instance));
+        record.addLast(snapshot);
+        storage.store(Constants.LOG_CHECKPOINT, 0, record, true);
+
+        this.checkpointed = instance;
+        this.snapshot = snapshot;
+    }
+}
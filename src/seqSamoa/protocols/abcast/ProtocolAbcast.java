@@ -49,10 +49,12 @@ import framework.PID;
 import framework.libraries.Timer;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.TList;
 import framework.libraries.serialization.TLong;
 import framework.libraries.serialization.TSet;
 import groupcomm.common.abcast.AbcastImpl;
+import groupcomm.common.abcast.BatchingPolicy;
 
 /**
  * This class implement the ABcast with dynamic set of processes (view
@@ -83,6 +85,20 @@ public class ProtocolAbcast extends ProtocolModule implements Trigger, Timer {
             this.value = value;
             this.protocolValue = pValue;
         }
+
+        /**
+         * @return the number of the instance among the ones of its protocol
+         */
+        public TLong getValue() {
+            return value;
+        }
+
+        /**
+         * @return the number of the abcast protocol that runs the instance
+         */
+        public int getProtocolValue() {
+            return protocolValue;
+        }
         
         public boolean equals(Object o) {
             if (!(o instanceof ConsensusID))
@@ -260,6 +276,9 @@ public class ProtocolAbcast extends ProtocolModule implements Trigger, Timer {
         for (int i=0; i<MAX_PROCESSES; i++)
         	initiatedRpt2pt.add(ServiceCallOrResponse.createServiceCallOrResponse(rpt2pt, true));
         initiatedRpt2pt.add(ServiceCallOrResponse.createServiceCallOrResponse(consensus, true));
+        // Decided messages received late (id ordering)
+        for (int i=0; i<MAX_MESSAGES; i++)
+        	initiatedRpt2pt.add(ServiceCallOrResponse.createServiceCallOrResponse(abcast, false));
         rpt2ptListener = rpt2pt.new Listener(this, initiatedRpt2pt) {
             public void evaluate(RPT2PTResponseParameters infos,
                     Transportable message) {
@@ -323,6 +342,54 @@ public class ProtocolAbcast extends ProtocolModule implements Trigger, Timer {
         handlers.dump(stream);
     }
 
+    /**
+     * Set the policy that batches the messages in the consensus instances
+     * 
+     * @param batching
+     *            the batching policy
+     */
+    synchronized public void setBatchingPolicy(BatchingPolicy batching) {
+        handlers.setBatchingPolicy(batching);
+    }
+
+    /**
+     * @return the batching policy
+     */
+    synchronized public BatchingPolicy getBatchingPolicy() {
+        return handlers.getBatchingPolicy();
+    }
+
+    /**
+     * Set the maximum number of consensus instances running in parallel
+     * 
+     * @param window
+     *            the number of consensus instances (1: one at a time)
+     */
+    synchronized public void setConsensusWindow(int window) {
+        handlers.setConsensusWindow(window);
+    }
+
+    /**
+     * Set the size of the messages not A-delivered yet above which the flow
+     * control is blocked
+     * 
+     * @param bytes
+     *            the window of the flow control in bytes
+     */
+    synchronized public void setWindowBytes(long bytes) {
+        handlers.setWindowBytes(bytes);
+    }
+
+    /**
+     * Make consensus order the message ids instead of the messages
+     * 
+     * @param idOrdering
+     *            true if consensus orders the message ids only
+     */
+    synchronized public void setIdOrdering(boolean idOrdering) {
+        handlers.setIdOrdering(idOrdering);
+    }
+
     /**
      * Manage the triggering of the events
      */
@@ -363,6 +430,16 @@ public class ProtocolAbcast extends ProtocolModule implements Trigger, Timer {
             rpt2pt.call(rparams, new Message(message, rpt2ptListener));
             break;
 
+        case Constants.PT2PTMULTISEND:
+            Transportable mmessage = l.remove(0);
+            TCollection pids = (TCollection) l.remove(0);
+            TBoolean mpromisc = (TBoolean) l.remove(0);
+            RPT2PTCallParameters multiParams = new RPT2PTCallParameters(pids,
+                    mpromisc);
+
+            rpt2pt.call(multiParams, new Message(mmessage, rpt2ptListener));
+            break;
+
         case Constants.ADELIVER:
             GroupCommMessage gm = (GroupCommMessage) l.remove(0);
             Message dmessage = new Message(gm);
@@ -387,17 +464,14 @@ public class ProtocolAbcast extends ProtocolModule implements Trigger, Timer {
     }
 
     // Interface for the timers
-    synchronized public void schedule(final Transportable key, boolean periodic,
+    synchronized public void schedule(final Transportable key, final boolean periodic,
             int time) {
-        if (periodic)
-            throw new RuntimeException("ProtocolHB: schedule: Periodic "
-                    + "timers not supported. Discarding it.");
         if (!timers.containsKey(key)) {
             // There is no entry in the map
             // Create the entry and start the timer
             AtomicTask trigger = new AtomicTask() {
                 public void execute() {
-                    timeout(key);
+                    timeout(key, periodic);
                 }
                 
                 public ServiceCallOrResponse getCOR(){
@@ -431,13 +505,15 @@ public class ProtocolAbcast extends ProtocolModule implements Trigger, Timer {
         }
     }
 
-    synchronized private void timeout(Object o) {
+    synchronized private void timeout(Object o, boolean periodic) {
         GroupCommEventArgs ga = new GroupCommEventArgs();
         final Transportable key = (Transportable) o;
 
         if (!timers.containsKey(key))
             // Timer already canceled
             return;
+        if (!periodic)
+            timers.remove(key);
 
         ga.add(key);
         handlers.handleTimeout(ga);
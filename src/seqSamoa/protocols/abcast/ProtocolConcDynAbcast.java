@@ -49,6 +49,7 @@ import framework.GroupCommMessage;
 import framework.PID;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.TInteger;
 import framework.libraries.serialization.TList;
 import framework.libraries.serialization.TSet;
@@ -258,6 +259,16 @@ public class ProtocolConcDynAbcast extends ProtocolModule implements Trigger {
             rpt2pt.call(rparams, new Message(message, rpt2ptListener));
             break;
 
+        case Constants.PT2PTMULTISEND:
+            Transportable mmessage = l.remove(0);
+            TCollection pids = (TCollection) l.remove(0);
+            TBoolean mpromisc = (TBoolean) l.remove(0);
+            RPT2PTCallParameters multiParams = new RPT2PTCallParameters(pids,
+                    mpromisc);
+
+            rpt2pt.call(multiParams, new Message(mmessage, rpt2ptListener));
+            break;
+
         case Constants.ADELIVER:
             TInteger atype = (TInteger) l.remove(0);
             GroupCommMessage gm = (GroupCommMessage) l.remove(0);
@@ -42,8 +42,10 @@ import framework.Constants;
 import framework.GroupCommEventArgs;
 import framework.GroupCommMessage;
 import framework.PID;
+import framework.libraries.DeferredStableStorage;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TLong;
 
 /**
  * This class implement the ABcast with a static set of processes in recovery
@@ -54,6 +56,16 @@ import framework.libraries.serialization.TBoolean;
  * UpdateState.
  * 
  * The service implemented is Abcast (described in util/Services.java)
+ * 
+ * Every <CODE>checkpointPeriod</CODE> consensus instances, the application
+ * is asked for a snapshot of its state through UpdateState (again if it did
+ * not answer within <CODE>checkpointTimeout</CODE>). It gives it back through
+ * the checkpoint of the stack, that commits consensus and abcast. The
+ * snapshot is stored in the {@link CheckpointLog} of the module, with the
+ * decisions of the instances above it. On recovery, the application gets
+ * the last snapshot back through UpdateState and only the decisions above
+ * it are replayed (the handlers deliver the instances they did not deliver
+ * yet).
  */
 public class ProtocolCrashRecoveryAbcast extends ProtocolModule implements Trigger {
     final private static int MAX_PROCESSES = 7;
@@ -71,6 +83,30 @@ public class ProtocolCrashRecoveryAbcast extends ProtocolModule implements Trigg
     // The object containing the abcast algorithm
     protected AtomicBroadcastRR handlers;
 
+    // The storage of the handlers: durable once per handler
+    protected DeferredStableStorage storage;
+
+    // Consensus instances between two snapshots (0: no periodic snapshot)
+    protected int checkpointPeriod = 0;
+
+    // The last consensus instance decided
+    protected long decided = -1;
+
+    // The instance covered by the snapshot asked to the application (-1: none)
+    protected long requested = -1;
+
+    // The instance covered by the last snapshot
+    protected long checkpointed = -1;
+
+    // Time after which a snapshot not given back is asked again (ms)
+    protected long checkpointTimeout = 10000;
+
+    // The time when the snapshot was asked
+    protected long requestedAt = 0;
+
+    // The stable log of the snapshots and decisions
+    protected CheckpointLog log;
+
     // The Executer
     // It ABcasts a message
     protected Abcast.Executer abcastExecuter;
@@ -104,8 +140,11 @@ public class ProtocolCrashRecoveryAbcast extends ProtocolModule implements Trigg
 
         super(name, stack);
 
-        handlers = new AtomicBroadcastRR(this, stack.getStorage(), stack.getFlowControl(), stack.getGroup(),
+        storage = new DeferredStableStorage(stack.getStorage());
+
+        handlers = new AtomicBroadcastRR(this, storage, stack.getFlowControl(), stack.getGroup(),
                 stack.getPID());
+        log = new CheckpointLog(storage);
 
         this.abcast = abcast;
         this.consensus = consensus;
@@ -123,6 +162,7 @@ public class ProtocolCrashRecoveryAbcast extends ProtocolModule implements Trigg
                     ga.addLast(dmessage.toGroupCommMessage());
 
                     handlers.handleAbcast(ga);
+                    storage.waitDurable();
                 }
             }
         };
@@ -145,6 +185,7 @@ public class ProtocolCrashRecoveryAbcast extends ProtocolModule implements Trigg
 
                     try {
                         handlers.handlePt2PtDeliver(ga);
+                        storage.waitDurable();
                     } catch (Exception ex) {
                         throw new RuntimeException("ProtocolAbcast: "
                                 + "pt2ptListener: " + ex.getMessage());
@@ -157,6 +198,7 @@ public class ProtocolCrashRecoveryAbcast extends ProtocolModule implements Trigg
         for (int i=0;i<MAX_PROCESSES;i++)
         	initiatedCons.add(ServiceCallOrResponse.createServiceCallOrResponse(pt2pt, true));
         initiatedCons.add(ServiceCallOrResponse.createServiceCallOrResponse(consensus, true));
+        initiatedCons.add(ServiceCallOrResponse.createServiceCallOrResponse(updateState, true));
         for (int i=0;i<MAX_MESSAGES;i++)
         	initiatedCons.add(ServiceCallOrResponse.createServiceCallOrResponse(abcast, false));
         consensusListener = consensus.new Listener(this, initiatedCons) {
@@ -168,12 +210,44 @@ public class ProtocolCrashRecoveryAbcast extends ProtocolModule implements Trigg
                     ga.addLast(infos.id);
                     ga.addLast(message);
 
+                    // The decision is logged before it is delivered
+                    decided = ((TLong) infos.id).longValue();
+                    log.decided(decided, message);
                     handlers.handleDecide(ga);
+                    storage.waitDurable();
+
+                    // The messages decided are delivered before the
+                    // application is asked for its snapshot
+                    if (checkpointPeriod > 0) {
+                        long now = System.currentTimeMillis();
+                        if ((requested < 0) ? (decided - checkpointed >= checkpointPeriod)
+                                : (now - requestedAt >= checkpointTimeout)) {
+                            requested = decided;
+                            requestedAt = now;
+                            updateState.call(new UpdateStateCallParameters(true), null);
+                        }
+                    }
                 }
             }
         };
     }
 
+    /**
+     * Set the number of consensus instances between two snapshots asked to
+     * the application (0: the application decides when to commit)
+     */
+    synchronized public void setCheckpointPeriod(int checkpointPeriod) {
+        this.checkpointPeriod = checkpointPeriod;
+    }
+
+    /**
+     * Set the time after which a snapshot the application did not give back
+     * is asked again (in milliseconds)
+     */
+    synchronized public void setCheckpointTimeout(long checkpointTimeout) {
+        this.checkpointTimeout = checkpointTimeout;
+    }
+
     synchronized public void commit(Transportable o) {
         GroupCommEventArgs e = new GroupCommEventArgs();
         e.add(o);
@@ -184,18 +258,48 @@ public class ProtocolCrashRecoveryAbcast extends ProtocolModule implements Trigg
             throw new RuntimeException("ProtocolAbcast: Commit: "
                     + ex.getMessage());
         }
+
+        // Store the snapshot and truncate the decisions it covers. The next
+        // snapshot is asked checkpointPeriod instances later
+        log.checkpoint((requested >= 0) ? requested : decided, o);
+        storage.waitDurable();
+        checkpointed = log.getCheckpointed();
+        requested = -1;
     }
 
     synchronized public void recovery(boolean recovery) {
+        // Give the last snapshot back to the application
+        if (recovery) {
+            checkpointed = log.recover();
+            decided = checkpointed;
+            if (log.getSnapshot() != null)
+                updateState.call(new UpdateStateCallParameters(log.getSnapshot()), null);
+        }
+
         GroupCommEventArgs e = new GroupCommEventArgs();
         e.add(new TBoolean(recovery));
 
         try {
             handlers.handleRecovery(e);
+            storage.waitDurable();
         } catch (Exception ex) {
             throw new RuntimeException("ProtocolAbcast: Recovery: "
                     + ex.getMessage());
         }
+
+        // Replay the decisions above the snapshot
+        if (recovery) {
+            Transportable decision;
+            while ((decision = log.retrieve(decided + 1)) != null) {
+                decided++;
+
+                GroupCommEventArgs ga = new GroupCommEventArgs();
+                ga.addLast(new TLong(decided));
+                ga.addLast(decision);
+                handlers.handleDecide(ga);
+            }
+            storage.waitDurable();
+        }
     }
 
     synchronized public void dump(OutputStream os) {
@@ -42,6 +42,7 @@ import framework.Constants;
 import framework.GroupCommEventArgs;
 import framework.GroupCommMessage;
 import framework.PID;
+import framework.libraries.DeferredStableStorage;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TBoolean;
 import framework.libraries.serialization.TLong;
@@ -71,6 +72,9 @@ public class ProtocolCrashRecoveryAbcastCommit extends ProtocolModule implements
     // The object containing the abcast algorithm
     AtomicBroadcastCommit handlers;
 
+    // The storage of the handlers: durable once per handler
+    protected DeferredStableStorage storage;
+
     // The Executer
     // It ABcasts a message
     protected Abcast.Executer abcastExecuter;
@@ -95,12 +99,14 @@ public class ProtocolCrashRecoveryAbcastCommit extends ProtocolModule implements
 
         super(name, stack);
 
+        storage = new DeferredStableStorage(stack.getStorage());
+
         this.abcast = abcast;
         this.consensus = consensus;
         this.pt2pt = pt2pt;
         this.nbCommits = nbCommits;
 
-        handlers = new AtomicBroadcastCommit(this, stack.getStorage(), stack.getFlowControl(),
+        handlers = new AtomicBroadcastCommit(this, storage, stack.getFlowControl(),
                 stack.getGroup(), stack.getPID(), uniform);
 
         LinkedList<ServiceCallOrResponse> initiatedAbcast = new LinkedList<ServiceCallOrResponse>();
@@ -115,6 +121,7 @@ public class ProtocolCrashRecoveryAbcastCommit extends ProtocolModule implements
                     ga.addLast(dmessage.toGroupCommMessage());
 
                     handlers.handleAbcast(ga);
+                    storage.waitDurable();
                 }
             }
         };
@@ -134,6 +141,7 @@ public class ProtocolCrashRecoveryAbcastCommit extends ProtocolModule implements
 
                     try {
                         handlers.handlePt2PtDeliver(ga);
+                        storage.waitDurable();
                     } catch (Exception ex) {
                         throw new RuntimeException("ProtocolAbcast: "
                                 + "pt2ptListener: " + ex.getMessage());
@@ -158,6 +166,7 @@ public class ProtocolCrashRecoveryAbcastCommit extends ProtocolModule implements
                     ga.addLast(message);
 
                     handlers.handleDecide(ga);
+                    storage.waitDurable();
                 }
             }
         };
@@ -166,6 +175,7 @@ public class ProtocolCrashRecoveryAbcastCommit extends ProtocolModule implements
     synchronized public void commit() {
         try {
             handlers.handleCommit();
+            storage.waitDurable();
         } catch (Exception ex) {
             throw new RuntimeException("ProtocolAbcast: Commit: "
                     + ex.getMessage());
@@ -178,6 +188,7 @@ public class ProtocolCrashRecoveryAbcastCommit extends ProtocolModule implements
 
         try {
             handlers.handleRecovery(e);
+            storage.waitDurable();
         } catch (Exception ex) {
             throw new RuntimeException("ProtocolAbcast: Recovery: "
                     + ex.getMessage());
@@ -50,10 +50,12 @@ import framework.PID;
 import framework.libraries.Timer;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.TInteger;
 import framework.libraries.serialization.TList;
 import framework.libraries.serialization.TLong;
 import framework.libraries.serialization.TSet;
+import groupcomm.common.abcast.BatchingPolicy;
 import groupcomm.common.abcast.DynAbcastImpl;
 
 /**
@@ -319,6 +321,23 @@ public class ProtocolDynAbcast extends ProtocolModule implements Trigger, Timer
         handlers.dump(stream);
     }
 
+    /**
+     * Set the policy that batches the messages in the consensus instances
+     * 
+     * @param batching
+     *            the batching policy
+     */
+    synchronized public void setBatchingPolicy(BatchingPolicy batching) {
+        handlers.setBatchingPolicy(batching);
+    }
+
+    /**
+     * @return the batching policy
+     */
+    synchronized public BatchingPolicy getBatchingPolicy() {
+        return handlers.getBatchingPolicy();
+    }
+
     /**
      * Manage the triggering of the events
      */
@@ -359,6 +378,16 @@ public class ProtocolDynAbcast extends ProtocolModule implements Trigger, Timer
             rpt2pt.call(rparams, new Message(message, rpt2ptListener));
             break;
 
+        case Constants.PT2PTMULTISEND:
+            Transportable mmessage = l.remove(0);
+            TCollection pids = (TCollection) l.remove(0);
+            TBoolean mpromisc = (TBoolean) l.remove(0);
+            RPT2PTCallParameters multiParams = new RPT2PTCallParameters(pids,
+                    mpromisc);
+
+            rpt2pt.call(multiParams, new Message(mmessage, rpt2ptListener));
+            break;
+
         case Constants.ADELIVER:
             TInteger atype = (TInteger) l.remove(0);
             GroupCommMessage gm = (GroupCommMessage) l.remove(0);
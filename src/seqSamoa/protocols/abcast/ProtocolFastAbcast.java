@@ -42,7 +42,9 @@ import framework.GroupCommMessage;
 import framework.PID;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.TSet;
+import groupcomm.common.abcast.BatchingPolicy;
 import groupcomm.common.abcast.FastAbcastImpl;
 
 /**
@@ -182,6 +184,23 @@ public class ProtocolFastAbcast extends ProtocolModule implements Trigger {
         handlers.dump(stream);
     }
 
+    /**
+     * Set the policy that batches the messages in the consensus instances
+     * 
+     * @param batching
+     *            the batching policy
+     */
+    synchronized public void setBatchingPolicy(BatchingPolicy batching) {
+        handlers.setBatchingPolicy(batching);
+    }
+
+    /**
+     * @return the batching policy
+     */
+    synchronized public BatchingPolicy getBatchingPolicy() {
+        return handlers.getBatchingPolicy();
+    }
+
     /**
      * Manage the triggering of the events
      */
@@ -222,6 +241,16 @@ public class ProtocolFastAbcast extends ProtocolModule implements Trigger {
             rpt2pt.call(rparams, new Message(message, rpt2ptListener));
             break;
 
+        case Constants.PT2PTMULTISEND:
+            Transportable mmessage = l.remove(0);
+            TCollection pids = (TCollection) l.remove(0);
+            TBoolean mpromisc = (TBoolean) l.remove(0);
+            RPT2PTCallParameters multiParams = new RPT2PTCallParameters(pids,
+                    mpromisc);
+
+            rpt2pt.call(multiParams, new Message(mmessage, rpt2ptListener));
+            break;
+
         case Constants.ADELIVER:
             GroupCommMessage gm = (GroupCommMessage) l.remove(0);
             Message dmessage = new Message(gm);
@@ -33,6 +33,7 @@ import framework.PID;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TSet;
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TCollection;
 
 import seqSamoa.Service.Listener;
 import seqSamoa.ProtocolModule;
@@ -234,6 +235,16 @@ public class ProtocolConsensus extends ProtocolModule implements Trigger {
                     (Listener) rpt2ptListener));
             break;
 
+        case Constants.PT2PTMULTISEND:
+            Transportable mmessage = l.remove(0);
+            TCollection pids = (TCollection) l.remove(0);
+            TBoolean mpromisc = (TBoolean) l.remove(0);
+            RPT2PTCallParameters multiParams = new RPT2PTCallParameters(pids,
+                    mpromisc);
+
+            rpt2pt.call(multiParams, new Message(mmessage, (Listener) rpt2ptListener));
+            break;
+
         case Constants.STARTSTOPMONITOR:
             TSet startM = (TSet) l.remove(0);
             TSet stopM = (TSet) l.remove(0);
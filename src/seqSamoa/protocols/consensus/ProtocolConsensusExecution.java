@@ -36,6 +36,7 @@ import framework.libraries.Trigger;
 import framework.libraries.serialization.TList;
 import framework.libraries.serialization.TSet;
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TCollection;
 import framework.libraries.serialization.TInteger;
 
 import seqSamoa.ProtocolModule;
@@ -289,6 +290,16 @@ public class ProtocolConsensusExecution extends ProtocolModule implements Trigge
             rpt2pt.call(rparams, new Message(message, rpt2ptListener));
             break;
 
+        case Constants.PT2PTMULTISEND:
+            Transportable mmessage = l.remove(0);
+            TCollection pids = (TCollection) l.remove(0);
+            TBoolean mpromisc = (TBoolean) l.remove(0);
+            RPT2PTCallParameters multiParams = new RPT2PTCallParameters(pids,
+                    mpromisc);
+
+            rpt2pt.call(multiParams, new Message(mmessage, rpt2ptListener));
+            break;
+
         default:
             throw new RuntimeException("ProtocolConsensus: trigger: "
                     + "Unexpected event type");
@@ -33,6 +33,7 @@ import framework.PID;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TSet;
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TCollection;
 import groupcomm.common.consensus.ConsensusMR;
 
 import seqSamoa.ProtocolModule;
@@ -231,6 +232,16 @@ public class ProtocolConsensusMR extends ProtocolModule implements Trigger {
             rpt2pt.call(rparams, new Message(message, rpt2ptListener));
             break;
 
+        case Constants.PT2PTMULTISEND:
+            Transportable mmessage = l.remove(0);
+            TCollection pids = (TCollection) l.remove(0);
+            TBoolean mpromisc = (TBoolean) l.remove(0);
+            RPT2PTCallParameters multiParams = new RPT2PTCallParameters(pids,
+                    mpromisc);
+
+            rpt2pt.call(multiParams, new Message(mmessage, rpt2ptListener));
+            break;
+
         case Constants.STARTSTOPMONITOR:
             TSet startM = (TSet) l.remove(0);
             TSet stopM = (TSet) l.remove(0);
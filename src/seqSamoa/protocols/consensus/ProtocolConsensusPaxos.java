@@ -34,6 +34,8 @@ import framework.libraries.Trigger;
 import framework.libraries.serialization.TList;
 import framework.libraries.serialization.TSet;
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TCollection;
+import framework.libraries.serialization.TLong;
 import groupcomm.common.consensus.ConsensusPaxos;
 
 import seqSamoa.ProtocolModule;
@@ -41,6 +43,7 @@ import seqSamoa.ProtocolStack;
 import seqSamoa.Message;
 import seqSamoa.ServiceCallOrResponse;
 import seqSamoa.exceptions.AlreadyExistingProtocolModuleException;
+import seqSamoa.protocols.abcast.ProtocolAbcast;
 import seqSamoa.services.consensus.Consensus;
 import seqSamoa.services.consensus.ConsensusCallParameters;
 import seqSamoa.services.consensus.ConsensusResponseParameters;
@@ -71,6 +74,17 @@ public class ProtocolConsensusPaxos extends ProtocolModule implements Trigger {
 
     protected ConsensusPaxos handlers;
 
+    // In Multi-Paxos mode, the instances are numbered by TLongs; the abcast
+    // protocol whose ids are translated (-1 if none)
+    private boolean multiPaxos = false;
+
+    private int protocolValue = -1;
+
+    // Number of decisions triggered, and the monitor notified of each one
+    private long decisions = 0;
+
+    private final Object decisionMonitor = new Object();
+
     // The Executer
     // It start a consensus
     protected Consensus.Executer consensusExecuter;
@@ -113,7 +127,7 @@ public class ProtocolConsensusPaxos extends ProtocolModule implements Trigger {
 
                     ga.addLast(params.group);
                     ga.addLast(dmessage.toGroupCommMessage());
-                    ga.addLast(params.id);
+                    ga.addLast(instance(params.id));
 
                     try {
                         handlers.handleRun(ga);
@@ -181,6 +195,87 @@ public class ProtocolConsensusPaxos extends ProtocolModule implements Trigger {
     synchronized public void dump(OutputStream stream) {
         handlers.dump(stream);
     }
+
+    /**
+     * Run the consensus instances in Multi-Paxos mode
+     * 
+     * @param multi
+     *            true if the leader runs the read phase once for all the
+     *            instances
+     * @param first
+     *            the id of the first instance run
+     */
+    synchronized public void setMultiPaxos(boolean multi, long first) {
+        handlers.setMultiPaxos(multi, first);
+        multiPaxos = multi;
+    }
+
+    /**
+     * Promise ballots only to the leader given by Omega (Multi-Paxos mode
+     * with leader leases)
+     */
+    synchronized public void setLeaderLease(boolean leaderLease) {
+        handlers.setLeaderLease(leaderLease);
+    }
+
+    /**
+     * The instances the Multi-Paxos leader must have finished before it
+     * reads locally: all those below the bound (-1 if it is not the leader)
+     */
+    synchronized public long getReadBound() {
+        return handlers.getReadBound();
+    }
+
+    /**
+     * The instances below the bound are finished (Multi-Paxos mode)
+     */
+    synchronized public long getFinishedBound() {
+        return handlers.getFinishedBound();
+    }
+
+    /**
+     * The number of decisions triggered so far
+     */
+    public long getDecisions() {
+        synchronized (decisionMonitor) {
+            return decisions;
+        }
+    }
+
+    /**
+     * Wait until a decision is triggered, once <i>seen</i> decisions were
+     * 
+     * @param timeout
+     *            the time to wait (milliseconds)
+     * @return false if the timeout expired
+     */
+    public boolean awaitDecision(long seen, long timeout)
+            throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        synchronized (decisionMonitor) {
+            while (decisions == seen) {
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                decisionMonitor.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    // The id of an instance for the handlers: its number in Multi-Paxos mode
+    private Transportable instance(Transportable id) {
+        if (!multiPaxos || !(id instanceof ProtocolAbcast.ConsensusID))
+            return id;
+
+        ProtocolAbcast.ConsensusID cID = (ProtocolAbcast.ConsensusID) id;
+        if (protocolValue == -1)
+            protocolValue = cID.getProtocolValue();
+        else if (protocolValue != cID.getProtocolValue())
+            throw new RuntimeException("ProtocolConsensusPaxos: "
+                    + "Multi-Paxos runs the instances of one abcast only");
+        return cID.getValue();
+    }
     
     /**
      * Manage the triggering of the events
@@ -215,10 +310,16 @@ public class ProtocolConsensusPaxos extends ProtocolModule implements Trigger {
         case Constants.DECIDE:
             GroupCommMessage gm = (GroupCommMessage) l.remove(0);
             Message dmessage = new Message(gm);
-            ConsensusResponseParameters infos = new ConsensusResponseParameters(
-                    l.remove(0));
+            Transportable id = l.remove(0);
+            if (multiPaxos && (protocolValue != -1))
+                id = new ProtocolAbcast.ConsensusID((TLong) id, protocolValue);
+            ConsensusResponseParameters infos = new ConsensusResponseParameters(id);
 
             consensus.response(infos, dmessage);
+            synchronized (decisionMonitor) {
+                decisions++;
+                decisionMonitor.notifyAll();
+            }
             break;
 
         case Constants.PT2PTSEND:
@@ -231,6 +332,16 @@ public class ProtocolConsensusPaxos extends ProtocolModule implements Trigger {
             rpt2pt.call(rparams, new Message(message, rpt2ptListener));
             break;
 
+        case Constants.PT2PTMULTISEND:
+            Transportable mmessage = l.remove(0);
+            TCollection pids = (TCollection) l.remove(0);
+            TBoolean mpromisc = (TBoolean) l.remove(0);
+            RPT2PTCallParameters multiParams = new RPT2PTCallParameters(pids,
+                    mpromisc);
+
+            rpt2pt.call(multiParams, new Message(mmessage, rpt2ptListener));
+            break;
+
         case Constants.STARTSTOPMONITOR:
             TList startM = (TList) l.remove(0);
             TList stopM = (TList) l.remove(0);
@@ -28,6 +28,7 @@ import framework.GroupCommException;
 import framework.GroupCommEventArgs;
 import framework.GroupCommMessage;
 import framework.PID;
+import framework.libraries.DeferredStableStorage;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TBoolean;
 import framework.libraries.serialization.TSet;
@@ -68,6 +69,9 @@ public class ProtocolCrashRecoveryConsensus extends ProtocolModule implements Tr
 
     protected static_recovery.common.consensus.Consensus handlers = null;
 
+    // The storage of the handlers: durable once per handler
+    protected DeferredStableStorage storage;
+
     // The Executer
     // It start a consensus
     protected Consensus.Executer consensusExecuter;
@@ -93,8 +97,11 @@ public class ProtocolCrashRecoveryConsensus extends ProtocolModule implements Tr
             PT2PT pt2pt) throws AlreadyExistingProtocolModuleException {
 
         super(name, stack);
+
+        storage = new DeferredStableStorage(stack.getStorage());
+
         handlers = new static_recovery.common.consensus.Consensus(this, stack.getFlowControl(),
-                stack.getStorage(), stack.getGroup(), stack.getPID());
+                storage, stack.getGroup(), stack.getPID());
 
         this.consensus = consensus;
         this.pt2pt = pt2pt;
@@ -115,6 +122,7 @@ public class ProtocolCrashRecoveryConsensus extends ProtocolModule implements Tr
 
                     try {
                         handlers.handlePropose(ga);
+                        storage.waitDurable();
                     } catch (Exception ex) {
                         throw new RuntimeException(
                                 "ProtocolConsensus: Executer: "
@@ -139,6 +147,7 @@ public class ProtocolCrashRecoveryConsensus extends ProtocolModule implements Tr
 
                     try {
                         handlers.handlePt2PtDeliver(ga);
+                        storage.waitDurable();
                     } catch (Exception ex) {
                         ex.printStackTrace();
                         throw new RuntimeException("ProtocolConsensus: "
@@ -162,6 +171,7 @@ public class ProtocolCrashRecoveryConsensus extends ProtocolModule implements Tr
 
                     try {
                         handlers.handleTrustSu(ga);
+                        storage.waitDurable();
                     } catch (Exception ex) {
                         throw new RuntimeException("ProtocolConsensus: "
                                 + "fdSuListener: " + ex.getMessage());
@@ -173,6 +183,7 @@ public class ProtocolCrashRecoveryConsensus extends ProtocolModule implements Tr
 
     synchronized public void commit() {
         handlers.handleCheckpoint();
+        storage.waitDurable();
     }
 
     synchronized public void recovery(boolean recovery) {
@@ -181,6 +192,7 @@ public class ProtocolCrashRecoveryConsensus extends ProtocolModule implements Tr
 
         try {
             handlers.handleRecovery(e);
+            storage.waitDurable();
         } catch (GroupCommException ex) {
             throw new RuntimeException("ProtocolConsensus: Recovery: "
                     + ex.getMessage());
@@ -19,13 +19,17 @@
 package seqSamoa.protocols.fd;
 
 import java.io.OutputStream;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
+import seqSamoa.AtomicTask;
 import seqSamoa.Message;
 import seqSamoa.ProtocolModule;
 import seqSamoa.ProtocolStack;
 import seqSamoa.ServiceCallOrResponse;
 import seqSamoa.exceptions.AlreadyExistingProtocolModuleException;
+import seqSamoa.exceptions.NotScheduledTaskException;
 import seqSamoa.services.fd.FD;
 import seqSamoa.services.fd.FDCallParameters;
 import seqSamoa.services.fd.FDResponseParameters;
@@ -37,10 +41,12 @@ import framework.Constants;
 import framework.GroupCommEventArgs;
 import framework.GroupCommException;
 import framework.PID;
+import framework.libraries.Timer;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TList;
 import framework.libraries.serialization.TSet;
 import groupcomm.common.fd.LeaderHandler;
+import groupcomm.common.fd.LeaderLease;
 
 /**
  * This class implement a Protocol that detect distant process failure. It
@@ -51,7 +57,7 @@ import groupcomm.common.fd.LeaderHandler;
  * 
  * The service implemented is Leader (described in util/Services.java)
  */
-public class ProtocolOmega extends ProtocolModule implements Trigger {
+public class ProtocolOmega extends ProtocolModule implements Trigger, Timer {
     // Service provided
     private Leader leader;
 
@@ -69,6 +75,12 @@ public class ProtocolOmega extends ProtocolModule implements Trigger {
     // It wait for suspicions of FD
     protected FD.Listener fdListener;
 
+    // Timers scheduled
+    private Map<Transportable, AtomicTask> timers = new HashMap<Transportable, AtomicTask>();
+
+    // The leader response COR (the timers may change the leader)
+    private ServiceCallOrResponse leaderResponseCOR;
+
     /**
      * Constructor. <br>
      * 
@@ -84,6 +96,7 @@ public class ProtocolOmega extends ProtocolModule implements Trigger {
 
         this.leader = leader;
         this.fd = fd;
+        this.leaderResponseCOR = ServiceCallOrResponse.createServiceCallOrResponse(leader, false);
 
         LinkedList<ServiceCallOrResponse> initiatedLeader = new LinkedList<ServiceCallOrResponse>();
         initiatedLeader.add(ServiceCallOrResponse.createServiceCallOrResponse(fd, true));
@@ -126,6 +139,66 @@ public class ProtocolOmega extends ProtocolModule implements Trigger {
         handlers.dump(stream);
     }
 
+    /**
+     * Grant a lease to the leader: the leader only changes once the lease
+     * granted to the previous one has expired (see {@link LeaderLease}).
+     * The lease must be renewed by the FD protocol of the stack.
+     */
+    synchronized public void setLease(LeaderLease lease) {
+        handlers.setLease(lease, this);
+    }
+
+    // Interface for the timers
+    synchronized public void schedule(final Transportable key, final boolean periodic,
+            int time) {
+        if (timers.containsKey(key))
+            throw new RuntimeException("ProtocolOmega: schedule: "
+                    + "Task already scheduled!");
+
+        AtomicTask trigger = new AtomicTask() {
+            public void execute() {
+                timeout(key, periodic);
+            }
+
+            public ServiceCallOrResponse getCOR() {
+                return leaderResponseCOR;
+            }
+        };
+
+        timers.put(key, trigger);
+        stack.getScheduler().schedule(trigger, periodic, time);
+    }
+
+    synchronized public void cancel(Transportable key) {
+        try {
+            stack.getScheduler().cancel(timers.remove(key));
+        } catch (NotScheduledTaskException ex) {
+            throw new RuntimeException("ProtocolOmega: cancel: The task is not"
+                    + " currently scheduled");
+        }
+    }
+
+    synchronized public void reset(Transportable key) {
+        try {
+            stack.getScheduler().reset(timers.get(key));
+        } catch (NotScheduledTaskException ex) {
+            throw new RuntimeException("ProtocolOmega: reset: The task is not"
+                    + " currently scheduled");
+        }
+    }
+
+    synchronized private void timeout(Transportable key, boolean periodic) {
+        if (!timers.containsKey(key))
+            // Timer already canceled
+            return;
+        if (!periodic)
+            timers.remove(key);
+
+        GroupCommEventArgs ga = new GroupCommEventArgs();
+        ga.add(key);
+        handlers.handleTimeOut(ga);
+    }
+
     /**
      * Manage the triggering of the events
      */
@@ -45,6 +45,7 @@ import framework.libraries.Timer;
 import framework.libraries.Trigger;
 import framework.libraries.serialization.TSet;
 import groupcomm.common.fd.FDHandler;
+import groupcomm.common.fd.LeaderLease;
 
 /**
  * This class implement a Protocol that detect distant process failure. It
@@ -147,6 +148,14 @@ public class ProtocolPing extends ProtocolModule implements Trigger, Timer {
         handlers.dump(stream);
     }
 
+    /**
+     * Renew the lease of the leader with the heartbeats (see
+     * {@link LeaderLease}).
+     */
+    synchronized public void setLease(LeaderLease lease) {
+        handlers.setLease(lease);
+    }
+
     /**
      * Manage the triggering of the events
      */
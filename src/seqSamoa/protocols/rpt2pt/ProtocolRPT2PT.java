@@ -20,6 +20,8 @@ package seqSamoa.protocols.rpt2pt;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
@@ -44,6 +46,7 @@ import framework.GroupCommEventArgs;
 import framework.GroupCommException;
 import framework.GroupCommMessage;
 import framework.PID;
+import framework.libraries.Compression;
 import framework.libraries.DefaultSerialization;
 import framework.libraries.Serialize;
 import framework.libraries.Timer;
@@ -54,6 +57,8 @@ import framework.libraries.serialization.TInteger;
 import framework.libraries.serialization.TSet;
 import framework.libraries.tcp.Connection;
 import framework.libraries.tcp.NonBlockingTCP;
+import framework.libraries.tcp.ReceivedFrame;
+import framework.libraries.tcp.SelectorTCP;
 import framework.libraries.tcp.Server;
 import framework.libraries.tcp.TCPStackInterface;
 import groupcomm.common.rpt2pt.ReliablePt2Pt;
@@ -96,6 +101,34 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 	// Is the Protocol Closed
 	boolean layerClosed;
 
+	// Compression of the messages sent
+	private volatile Compression compression = new Compression();
+
+	// Are the connections run by a selector (or by their own threads)
+	private boolean useSelector = true;
+
+	// The selector running the connections (created on first use)
+	private SelectorTCP selector = null;
+
+	// Watermarks of the send queues of the selector connections
+	private int lowWatermark = SelectorTCP.DEFAULT_LOW_WATERMARK;
+
+	private int highWatermark = SelectorTCP.DEFAULT_HIGH_WATERMARK;
+
+	// Maximum length of a message received by the selector connections
+	private int maxFrameLength = SelectorTCP.DEFAULT_MAX_FRAME_LENGTH;
+
+	// Network events raised by the connections and not yet scheduled
+	private ArrayList<AtomicTask> pendingEvents = new ArrayList<AtomicTask>();
+
+	// Network events being scheduled
+	private ArrayList<AtomicTask> submittedEvents = new ArrayList<AtomicTask>();
+
+	// Is a thread scheduling the pending network events
+	private boolean submitting = false;
+
+	private final Object pendingLock = new Object();
+
 	// The Executers
 	// It send reliably a message
 	protected RPT2PT.Executer rpt2ptExecuter;
@@ -146,7 +179,20 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 			public void evaluate(RPT2PTCallParameters params, Message dmessage) {
 				synchronized (ProtocolRPT2PT.this) {
 					GroupCommEventArgs ga = new GroupCommEventArgs();
-					if (params.send.booleanValue()) {
+					if (params.send.booleanValue() && (params.pids != null)) {
+						ga.addLast(dmessage.toGroupCommMessage());
+						ga.addLast(params.pids);
+						ga.addLast(params.added);
+
+						try {
+							handlers.handlePt2PtMultiSend(ga);
+						} catch (GroupCommException ex) {
+							ex.printStackTrace();
+							throw new RuntimeException(
+									"ProtocolRPT2PT: handlePt2PtMultiSend: "
+											+ ex.getMessage());
+						}
+					} else if (params.send.booleanValue()) {
 						ga.addLast(dmessage.toGroupCommMessage());
 						ga.addLast(params.pid);
 						ga.addLast(params.added);
@@ -209,6 +255,14 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 							handlers.handleBroken(m);
 							break;
 						case 5: // Recv
+							if (params.frame != null) {
+								// The frame is released once unmarshalled
+								if (!layerClosed)
+									handlers.handleRecv(params.frame, params.connection);
+								else
+									params.frame.release();
+								break;
+							}
 							m.addLast(message);
 							m.addLast(params.connection);
 
@@ -255,6 +309,10 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 
 	public void close() {
 		layerClosed = true;
+		synchronized (this) {
+			if (selector != null)
+				selector.close();
+		}
 		super.close();
 	}
 
@@ -335,7 +393,10 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 	public Server startServer(PID myself) {
 		Server s = null;
 		try {
-			s = new Server(myself, this);
+			if (useSelector)
+				s = getSelector().startServer();
+			else
+				s = new Server(myself, this);
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
 			System.exit(1);
@@ -349,14 +410,17 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 
 	public void accepted(Connection c) {
 		NetworkResponseParameters params = new NetworkResponseParameters(1,c,null);
-		net.externalResponse(params, null);
+		netEvent(params, null);
 	}
 
 	/**
 	 * Connect/disconnect/Link failure
 	 */
 	public void connect(PID p) {
-		new Connection(this.stack.getPID(), p, this);
+		if (useSelector)
+			getSelector().connect(p);
+		else
+			new Connection(this.stack.getPID(), p, this);
 	}
 
 	public void disconnect(Connection c) {
@@ -365,17 +429,17 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 
 	public void connected(PID p, Connection c) {
 		NetworkResponseParameters params = new NetworkResponseParameters(2,c,p);
-		net.externalResponse(params, null);
+		netEvent(params, null);
 	}
 
 	public void closed(Connection c) {
 		NetworkResponseParameters params = new NetworkResponseParameters(3,c,null);
-		net.externalResponse(params, null);
+		netEvent(params, null);
 	}
 
 	public void broken(Connection c) {
 		NetworkResponseParameters params = new NetworkResponseParameters(4,c,null);
-		net.externalResponse(params, null);
+		netEvent(params, null);
 	}
 
 	/**
@@ -396,7 +460,44 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 
 	public void recv(byte[] b, Connection c) {
 		NetworkResponseParameters params = new NetworkResponseParameters(5,c,null);
-		net.externalResponse(params, new Message(new TByteArray(b), null));
+		netEvent(params, new Message(new TByteArray(b), null));
+	}
+
+	public void recv(ReceivedFrame f, Connection c) {
+		NetworkResponseParameters params = new NetworkResponseParameters(5,c,null,f);
+		netEvent(params, null);
+	}
+
+	// Schedule a network event. The events raised concurrently by the
+	// connections are gathered and scheduled in bursts by the thread that
+	// finds no burst in progress. Events are scheduled in the order in which
+	// they are raised.
+	private void netEvent(NetworkResponseParameters params, Message message) {
+		AtomicTask task = net.externalResponseTask(params, message);
+
+		synchronized (pendingLock) {
+			pendingEvents.add(task);
+			if (submitting)
+				return;
+			submitting = true;
+		}
+
+		while (true) {
+			ArrayList<AtomicTask> burst;
+			synchronized (pendingLock) {
+				if (pendingEvents.isEmpty()) {
+					submitting = false;
+					return;
+				}
+
+				burst = pendingEvents;
+				pendingEvents = submittedEvents;
+				submittedEvents = burst;
+			}
+
+			stack.getScheduler().addExternalTasks(burst);
+			burst.clear();
+		}
 	}
 
 	/**
@@ -410,13 +511,13 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 		c.stopSender();
 	}
 
-	public void setMessageToSend(byte[] b, Connection c) {
-		c.setMessageToSend(b);
+	public boolean setMessageToSend(byte[] b, Connection c) {
+		return c.setMessageToSend(b);
 	}
 
 	public void readyForNextMessage(Connection c) {
 		NetworkResponseParameters params = new NetworkResponseParameters(6,c,null);
-		net.externalResponse(params, null);
+		netEvent(params, null);
 	}
 
 	/**
@@ -425,7 +526,7 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 	public byte[] marshall(Transportable m) {
 		byte[] b = null;
 		try {
-			b = DefaultSerialization.marshall(m);
+			b = compression.compress(DefaultSerialization.marshall(m));
 		} catch (IOException ioe) {
 			ioe.printStackTrace();
 			System.exit(1);
@@ -437,7 +538,7 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 	public Transportable unmarshall(byte[] b) {
 		Transportable m = null;
 		try {
-			m = DefaultSerialization.unmarshall(b);
+			m = DefaultSerialization.unmarshall(compression.decompress(b));
 		} catch (ClassNotFoundException cnfe) {
 			cnfe.printStackTrace();
 			System.exit(1);
@@ -448,6 +549,108 @@ public class ProtocolRPT2PT extends ProtocolModule implements Trigger,
 		return m;
 	}
 
+	public Transportable unmarshall(ByteBuffer b) {
+		Transportable m = null;
+		try {
+			m = DefaultSerialization.unmarshall(compression.decompress(b));
+		} catch (ClassNotFoundException cnfe) {
+			cnfe.printStackTrace();
+			System.exit(1);
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+			System.exit(1);
+		}
+		return m;
+	}
+
+	/**
+	 * Return the selector running the connections
+	 *
+	 * @return
+	 * 		the selector, or null if it is not used (yet)
+	 */
+	public synchronized SelectorTCP getSelectorTCP() {
+		return selector;
+	}
+
+	/**
+	 * Return the compression of the messages sent
+	 *
+	 * @return
+	 * 		the compression
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * Set the compression of the messages sent. The messages received
+	 * are decompressed whatever the configuration of the sender.
+	 *
+	 * @param compression
+	 * 		the compression
+	 */
+	public void setCompression(Compression compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Choose whether the connections are run by a single thread with a
+	 * {@link SelectorTCP selector} (the default) or each by its own
+	 * threads. It has to be called before the stack is initialized.
+	 *
+	 * @param useSelector
+	 * 		true if the connections are run by a selector
+	 */
+	public void setSelector(boolean useSelector) {
+		this.useSelector = useSelector;
+	}
+
+	/**
+	 * Set the watermarks (in bytes) of the send queues of the connections
+	 * run by the selector. With watermarks (0, 1), the messages are sent
+	 * one at a time. It has to be called before the stack is initialized.
+	 *
+	 * @param low
+	 * 		number of queued bytes under which a full connection is ready again
+	 * @param high
+	 * 		number of queued bytes from which a connection is full
+	 * @see SelectorTCP#setWatermarks(int, int)
+	 */
+	public void setWatermarks(int low, int high) {
+		this.lowWatermark = low;
+		this.highWatermark = high;
+	}
+
+	/**
+	 * Set the maximum length (in bytes) of a message received by the
+	 * connections run by the selector: a connection announcing a longer
+	 * message is broken. It has to be called before the stack is
+	 * initialized.
+	 *
+	 * @param length
+	 * 		maximum length of a message
+	 * @see SelectorTCP#setMaxFrameLength(int)
+	 */
+	public void setMaxFrameLength(int length) {
+		this.maxFrameLength = length;
+	}
+
+	// Return the selector, opening it if needed
+	private synchronized SelectorTCP getSelector() {
+		if (selector == null) {
+			try {
+				selector = new SelectorTCP(stack.getPID(), this);
+				selector.setWatermarks(lowWatermark, highWatermark);
+				selector.setMaxFrameLength(maxFrameLength);
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+				System.exit(1);
+			}
+		}
+		return selector;
+	}
+
 	/**
 	 * Miscellaneous
 	 */
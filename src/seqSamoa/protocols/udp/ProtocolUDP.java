@@ -20,10 +20,18 @@ package seqSamoa.protocols.udp;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.LongAdder;
 
+import seqSamoa.AtomicTask;
 import seqSamoa.Message;
 import seqSamoa.ProtocolModule;
 import seqSamoa.ProtocolStack;
@@ -32,6 +40,8 @@ import seqSamoa.ServiceCallOrResponse;
 import seqSamoa.exceptions.AlreadyExistingProtocolModuleException;
 import seqSamoa.services.udp.UDP;
 import seqSamoa.services.udp.UDPCallParameters;
+import framework.PID;
+import framework.libraries.Compression;
 import framework.libraries.DefaultSerialization;
 
 /**
@@ -46,8 +56,24 @@ public class ProtocolUDP extends ProtocolModule implements Runnable {
     // Max length for a datagram packet
     private static final int MAX_PACKET_LENGTH = 1024 * 30;
 
-    // UDP socket to send/receive
-    private DatagramSocket dsock = null;
+    // Max length for a message before compression
+    private static final int MAX_MESSAGE_LENGTH = MAX_PACKET_LENGTH * 8;
+
+    // Max number of datagrams received before scheduling them
+    private static final int MAX_BURST = 64;
+
+    // Size asked for the receive buffer of the socket, so that a burst
+    // is not dropped while the previous one is scheduled
+    private static final int SOCKET_RECEIVE_BUFFER = 1024 * 1024;
+
+    // UDP channel to send/receive
+    private DatagramChannel channel = null;
+
+    // Selector to wait for datagrams on the channel
+    private Selector selector = null;
+
+    // Selector to wait for room in the send buffer of the socket
+    private Selector sendSelector = null;
 
     // True if the thread is running
     private boolean open = true;
@@ -55,6 +81,36 @@ public class ProtocolUDP extends ProtocolModule implements Runnable {
     // A thread to listen on the UDP socket
     private Thread thread;
 
+    // Buffer in which the messages to send are marshalled
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(MAX_MESSAGE_LENGTH);
+
+    // Buffer in which the messages to send are compressed
+    private final ByteBuffer compressBuffer = ByteBuffer.allocate(MAX_PACKET_LENGTH);
+
+    // Compression of the datagrams
+    private volatile Compression compression = new Compression();
+
+    // Addresses of the destinations (one per PID)
+    private final HashMap<PID, InetSocketAddress> addresses = new HashMap<PID, InetSocketAddress>();
+
+    /* Datagrams received */
+    public final LongAdder received = new LongAdder();
+
+    /* Bytes received */
+    public final LongAdder receivedBytes = new LongAdder();
+
+    /* Bursts of datagrams scheduled */
+    public final LongAdder bursts = new LongAdder();
+
+    /* Datagrams sent */
+    public final LongAdder sent = new LongAdder();
+
+    /* Bytes sent */
+    public final LongAdder sentBytes = new LongAdder();
+
+    /* Sends delayed because the send buffer of the socket was full */
+    public final LongAdder sendRetries = new LongAdder();
+
     // The Executer
     // It send a message with udp
     protected Service<UDPCallParameters, Object>.Executer udpExecuter;
@@ -81,16 +137,37 @@ public class ProtocolUDP extends ProtocolModule implements Runnable {
                 synchronized (this.parent) {
                     try {
                         // Writes and sends the object
-                        byte[] b = DefaultSerialization.marshall(dmessage);
-                        if (b.length > MAX_PACKET_LENGTH) {
+                        sendBuffer.clear();
+                        ByteBuffer packet;
+                        try {
+                            DefaultSerialization.marshall(dmessage, sendBuffer);
+                            sendBuffer.flip();
+                            packet = compression.compress(sendBuffer, compressBuffer);
+                            if (packet.remaining() > MAX_PACKET_LENGTH)
+                                throw new BufferOverflowException();
+                        } catch (BufferOverflowException ex) {
                             throw new RuntimeException("ProtocolUDP : Trying"
                                     + " to send a packet too" + " long."
                                     + dmessage);
                         }
 
-                        DatagramPacket pack = new DatagramPacket(b, b.length,
-                                params.pid.ip, params.pid.port);
-                        dsock.send(pack);
+                        InetSocketAddress address = addresses.get(params.pid);
+                        if (address == null) {
+                            address = new InetSocketAddress(params.pid.ip,
+                                    params.pid.port);
+                            addresses.put(params.pid, address);
+                        }
+
+                        // The channel is non-blocking: wait until the
+                        // send buffer of the socket has room
+                        int length = packet.remaining();
+                        while (channel.send(packet, address) == 0) {
+                            sendRetries.increment();
+                            sendSelector.select();
+                            sendSelector.selectedKeys().clear();
+                        }
+                        sent.increment();
+                        sentBytes.add(length);
                     } catch (IOException e) {
                         throw new RuntimeException("ProtocolUDP: udpExecuter: "
                                 + "IOException: " + e.getMessage());
@@ -99,20 +176,59 @@ public class ProtocolUDP extends ProtocolModule implements Runnable {
             }
         };
 
-        // Creates a new datagram socket.
+        // Creates a new datagram channel.
         try {
-            dsock = new DatagramSocket(stack.getPID().port);
+            channel = DatagramChannel.open();
+            channel.socket().setReceiveBufferSize(SOCKET_RECEIVE_BUFFER);
+            channel.socket().bind(new InetSocketAddress(stack.getPID().port));
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+            sendSelector = Selector.open();
+            channel.register(sendSelector, SelectionKey.OP_WRITE);
         } catch (IOException ex) {
             throw new RuntimeException(
                     "ProtocolUDP  : IOException : Failed to create a datagram socket.");
         }
     }
 
+    /**
+     * @return the compression of the datagrams
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the compression of the datagrams. The datagrams received are
+     * decompressed whatever the configuration of the sender.
+     *
+     * @param compression
+     *            the compression
+     */
+    synchronized public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Reset the statistics of the datagrams sent and received
+     */
+    public void reset() {
+        received.reset();
+        receivedBytes.reset();
+        bursts.reset();
+        sent.reset();
+        sentBytes.reset();
+        sendRetries.reset();
+    }
+
     /**
      * Overload the close function of Protocol
      */
     synchronized public void close() {
         open = false;
+        if (selector != null)
+            selector.wakeup();
         super.close();
     }
 
@@ -130,28 +246,46 @@ public class ProtocolUDP extends ProtocolModule implements Runnable {
 
     /**
      * Thread that will listen to the network and detect reception of UDP
-     * messages
+     * messages. All the datagrams available on the socket are received
+     * and scheduled in one burst. They are received in the same direct
+     * buffer (the channel does not copy them) since each one is unmarshalled
+     * before the next is received.
      */
     public void run() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_LENGTH);
+        ArrayList<AtomicTask> burst = new ArrayList<AtomicTask>(MAX_BURST);
+
         try {
             while (open) {
-                // Creates a new bytes array
-                byte[] b = new byte[MAX_PACKET_LENGTH];
-                // Creates a UDP packet for receiving a packet.
-                // Max size: MAX_PACKET_LENGTH
-                DatagramPacket pack = new DatagramPacket(b, b.length);
-
-                // Reads a packet.
-                dsock.receive(pack);
-
-                // Reads the object
-                Message message = (Message) DefaultSerialization
-                        .unmarshall(b);
- 
-                if (open)
-                	udp.externalResponse(null, message);
+                // Wait for at least one datagram
+                selector.select();
+                selector.selectedKeys().clear();
+
+                // Reads the available datagrams
+                while (open && (burst.size() < MAX_BURST)) {
+                    buffer.clear();
+                    if (channel.receive(buffer) == null)
+                        break;
+
+                    // Reads the object
+                    buffer.flip();
+                    received.increment();
+                    receivedBytes.add(buffer.remaining());
+                    Message message = (Message) DefaultSerialization
+                            .unmarshall(compression.decompress(buffer));
+
+                    burst.add(udp.externalResponseTask(null, message));
+                }
+
+                if (open && !burst.isEmpty()) {
+                    bursts.increment();
+                    stack.getScheduler().addExternalTasks(burst);
+                }
+                burst.clear();
             } // while (open)
-            dsock.close();
+            selector.close();
+            sendSelector.close();
+            channel.close();
 
         } catch (IOException ex) {
             throw new RuntimeException("MicroUDP : run : IOException");
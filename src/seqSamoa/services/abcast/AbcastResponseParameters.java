@@ -30,6 +30,13 @@ public class AbcastResponseParameters {
      */
     public PID pid;
 
+    /**
+     * <CODE>sequence</CODE> denotes the number of the message among the
+     * ones delivered by the stack, from 1 (0 if the stack does not number
+     * them)
+     */
+    public long sequence = 0;
+
     /**
      * Constructor
      * 
@@ -24,7 +24,7 @@ import seqSamoa.exceptions.AlreadyExistingServiceException;
 
 /**
  * <CODE>UpdateState</CODE> is called when the application must update its
- * state.
+ * state, or give a snapshot of it to be checkpointed.
  */
 public class UpdateState extends Service<UpdateStateCallParameters, Object> {
     public UpdateState(String name, ProtocolStack stack) throws AlreadyExistingServiceException {
@@ -29,6 +29,13 @@ public class UpdateStateCallParameters {
      */
     public Transportable state;
 
+    /**
+     * <CODE>snapshot</CODE> is true if the application is asked for a
+     * snapshot of its state (to be checkpointed) instead of having to update
+     * it
+     */
+    public boolean snapshot;
+
     /**
      * Constructor
      * 
@@ -37,5 +44,17 @@ public class UpdateStateCallParameters {
      */
     public UpdateStateCallParameters(Transportable state) {
         this.state = state;
+        this.snapshot = false;
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param snapshot
+     *            true if the application is asked for a snapshot of its state
+     */
+    public UpdateStateCallParameters(boolean snapshot) {
+        this.state = null;
+        this.snapshot = snapshot;
     }
 }
@@ -20,6 +20,7 @@ package seqSamoa.services.network;
 
 import framework.PID;
 import framework.libraries.tcp.Connection;
+import framework.libraries.tcp.ReceivedFrame;
 
 /**
  * The parameters of a response to network
@@ -40,9 +41,20 @@ public class NetworkResponseParameters {
      */
     public PID pid;
 
+    /**
+     * <CODE>frame</CODE> denotes the message received, when it is still in
+     * the receive buffer of the connection (null otherwise)
+     */
+    public ReceivedFrame frame;
+
     public NetworkResponseParameters(int code, Connection c, PID p) {
+        this(code, c, p, null);
+    }
+
+    public NetworkResponseParameters(int code, Connection c, PID p, ReceivedFrame f) {
         this.code = code;
         this.connection = c;
         this.pid = p;
+        this.frame = f;
     }
 }
@@ -22,6 +22,7 @@ import seqSamoa.services.udp.UDPCallParameters;
 import framework.PID;
 
 import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TCollection;
 
 /**
  * The parameters of a call to RPT2PT
@@ -41,6 +42,13 @@ public class RPT2PTCallParameters extends UDPCallParameters {
      */
     public TBoolean send;
 
+    /**
+     * <CODE>pids</CODE> denotes the destinations of a message sent to
+     * several processes at once. It is null when the message is sent to
+     * the single destination <CODE>pid</CODE>.
+     */
+    public TCollection pids = null;
+
     /**
      * Constructor
      * 
@@ -57,6 +65,22 @@ public class RPT2PTCallParameters extends UDPCallParameters {
         this.send = send;
     }
 
+    /**
+     * Constructor for sending a message to several processes. The message
+     * is serialized only once for all the destinations.
+     * 
+     * @param pids
+     *            the destinations of the message
+     * @param added
+     *            true if the message is promisc
+     */
+    public RPT2PTCallParameters(TCollection pids, TBoolean added) {
+        super(null);
+        this.pids = pids;
+        this.added = added;
+        this.send = new TBoolean(true);
+    }
+
     /**
      * Constructor translating UDPCallParameters to RPT2PTCallParameters
      * 
@@ -70,6 +94,9 @@ public class RPT2PTCallParameters extends UDPCallParameters {
     }
 
     public String toString() {
+        if (pids != null)
+            return new String("PIDs :" + pids + " added: " + added.booleanValue()
+                    + " send: " + send.booleanValue());
         return new String("PID :" + pid + " added: " + added.booleanValue()
                 + " send: " + send.booleanValue());
     }
@@ -30,7 +30,7 @@ import seqSamoa.Message;
 import seqSamoa.ProtocolModule;
 import seqSamoa.ProtocolStack;
 import seqSamoa.RouteModuleOrderManager;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.Service;
@@ -61,7 +61,7 @@ public class Samoa {
 		
 		@SuppressWarnings("unchecked")
 		public TestStack(PID myself, TLinkedList processes, ConcurrencyManager manager)  throws AlreadyExistingServiceException, AlreadyExistingProtocolModuleException {
-			super(myself, processes, new SamoaScheduler(manager), new SamoaFlowControl(100),
+			super(myself, processes, new SamoaScheduler(manager), new CreditFlowControl(100),
 					null, null, null, false, false);
 			
 			// Some services
@@ -31,7 +31,7 @@ import seqSamoa.BoundModuleOrderManager;
 import seqSamoa.Callback;
 import seqSamoa.ConcurrencyManager;
 import seqSamoa.RouteModuleOrderManager;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.SimpleModuleOrderManager;
@@ -150,7 +150,7 @@ public class AbcastMain implements Callback {
 		}
 
 		ApiSamoaAbcastStack stack = new ApiSamoaAbcastStack(myself, processes,
-				new SamoaScheduler(manager), new SamoaFlowControl(100),
+				new SamoaScheduler(manager), new CreditFlowControl(100),
 				new AbcastMain(), null, SimpleRepConfiguration.getConfiguration());
 		try {
 			stack.init();
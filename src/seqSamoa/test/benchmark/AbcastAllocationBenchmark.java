@@ -0,0 +1,151 @@
+package seqSamoa.test.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uka.transport.Transportable;
+import br.ufms.dct.simplerep.SimpleRepConfiguration;
+import br.ufms.dct.simplerep.exceptions.SimpleRepConfException;
+import framework.PID;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TLinkedList;
+import seqSamoa.Callback;
+import seqSamoa.CreditFlowControl;
+import seqSamoa.SamoaScheduler;
+import seqSamoa.SequentialManager;
+import seqSamoa.api.ApiSamoaAbcastStack;
+import seqSamoa.protocols.abcast.ProtocolAbcast;
+
+/**
+ * Measures the number of bytes allocated and the CPU time consumed per atomic
+ * broadcast, end to end.
+ *
+ * The group is made of several stacks running in this JVM on the loopback
+ * interface. One of them broadcasts the messages and the allocations of all
+ * the threads of the JVM are accounted until every stack delivered all the
+ * messages. Allocations and CPU time of threads that terminate during a run
+ * are missed.
+ *
+ * Usage: AbcastAllocationBenchmark [messages] [processes] [first port]
+ */
+public class AbcastAllocationBenchmark {
+	// Counts the delivered messages of a stack
+	private static class Counter implements Callback {
+		public final AtomicLong delivered = new AtomicLong(0);
+
+		public void serviceCallback(Object infos, Transportable message) {
+			delivered.incrementAndGet();
+		}
+	}
+
+	// Configuration that does not read simplerep_conf.xml
+	private static class BenchmarkConfiguration extends SimpleRepConfiguration {
+		public BenchmarkConfiguration() throws SimpleRepConfException {
+			super();
+		}
+
+		protected void buildConf() {
+			setFrameworkTimeout(5000);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int messages = 20000;
+		int n = 3;
+		int port = 27650;
+		if (args.length > 0)
+			messages = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			n = Integer.parseInt(args[1]);
+		if (args.length > 2)
+			port = Integer.parseInt(args[2]);
+
+		SimpleRepConfiguration conf = new BenchmarkConfiguration();
+		Callback ignore = new Callback() {
+			public void serviceCallback(Object infos, Transportable message) {
+			}
+		};
+
+		TLinkedList processes = new TLinkedList();
+		for (int i = 0; i < n; i++)
+			processes.addLast(new PID(InetAddress.getLoopbackAddress(), port + i, 0));
+
+		ApiSamoaAbcastStack[] stacks = new ApiSamoaAbcastStack[n];
+		Counter[] counters = new Counter[n];
+		for (int i = 0; i < n; i++) {
+			counters[i] = new Counter();
+			// Number the abcast protocols of each stack from 0, as if
+			// the stack was alone in its JVM
+			ProtocolAbcast.nbDynAbcast = 0;
+			stacks[i] = new ApiSamoaAbcastStack((PID) processes.get(i), processes,
+					new SamoaScheduler(new SequentialManager()), new CreditFlowControl(100),
+					counters[i], ignore, null, conf);
+		}
+		for (int i = 0; i < n; i++)
+			stacks[i].init();
+
+		// Warm up
+		run(stacks, counters, messages / 4);
+
+		long[] result = run(stacks, counters, messages);
+
+		System.out.println("Processes: " + n + ", messages: " + messages);
+		System.out.println(result[0] + " bytes/abcast, " + result[1]
+				+ " ns CPU/abcast");
+
+		for (int i = 0; i < n; i++)
+			stacks[i].close();
+		System.exit(0);
+	}
+
+	// Broadcast the messages and return the number of bytes allocated
+	// and the CPU time (in nanoseconds) per message
+	private static long[] run(ApiSamoaAbcastStack[] stacks, Counter[] counters,
+			int messages) throws InterruptedException {
+		long[] targets = new long[stacks.length];
+		for (int i = 0; i < stacks.length; i++)
+			targets[i] = counters[i].delivered.get() + messages;
+
+		long before = allocatedBytes();
+		long cpuBefore = cpuTime();
+		for (int m = 0; m < messages; m++)
+			stacks[0].abcastMessage(new TByteArray(new byte[64]));
+		for (int i = 0; i < stacks.length; i++)
+			while (counters[i].delivered.get() < targets[i])
+				Thread.sleep(1);
+		long after = allocatedBytes();
+		long cpuAfter = cpuTime();
+
+		return new long[] { (after - before) / messages,
+				(cpuAfter - cpuBefore) / messages };
+	}
+
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long[] ids = bean.getAllThreadIds();
+		long[] bytes = bean.getThreadAllocatedBytes(ids);
+
+		long result = 0;
+		for (int i = 0; i < bytes.length; i++)
+			if (bytes[i] > 0)
+				result += bytes[i];
+
+		return result;
+	}
+
+	private static long cpuTime() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		long[] ids = bean.getAllThreadIds();
+
+		long result = 0;
+		for (int i = 0; i < ids.length; i++) {
+			long time = bean.getThreadCpuTime(ids[i]);
+			if (time > 0)
+				result += time;
+		}
+
+		return result;
+	}
+}
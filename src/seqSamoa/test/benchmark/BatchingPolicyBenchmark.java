@@ -0,0 +1,217 @@
+package seqSamoa.test.benchmark;
+
+import java.net.InetAddress;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uka.transport.Transportable;
+import br.ufms.dct.simplerep.SimpleRepConfiguration;
+import br.ufms.dct.simplerep.exceptions.SimpleRepConfException;
+import framework.PID;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TLinkedList;
+import seqSamoa.Callback;
+import seqSamoa.CreditFlowControl;
+import seqSamoa.SamoaScheduler;
+import seqSamoa.SequentialManager;
+import seqSamoa.api.ApiSamoaAbcastStack;
+import seqSamoa.protocols.abcast.ProtocolAbcast;
+import seqSamoa.services.abcast.AbcastResponseParameters;
+import groupcomm.common.abcast.AdaptiveBatchingPolicy;
+
+/**
+ * Compares the fixed batching of abcast with the
+ * {@link AdaptiveBatchingPolicy adaptive one} (see
+ * {@link SimpleRepConfiguration#setBatchingLatency(long)}) for several
+ * message sizes: throughput, latency and the batches chosen, as reported
+ * by the statistics of the stack. The group is made of several stacks
+ * running in this JVM on the loopback interface; every stack broadcasts
+ * messages as fast as its flow control allows. The latency is measured
+ * from the broadcast of a message to its delivery by the stack that sent
+ * it.
+ *
+ * Usage: BatchingPolicyBenchmark [seconds per run] [processes] [first port]
+ * [target latency (us)] [bytes per proposal]
+ */
+public class BatchingPolicyBenchmark {
+	// Cleared to stop the senders
+	private static volatile boolean sending;
+
+	// Counts the delivered messages of a stack and the latency of its own
+	private static class Counter implements Callback {
+		private final PID myself;
+
+		public final AtomicLong delivered = new AtomicLong(0);
+
+		public final AtomicLong own = new AtomicLong(0);
+
+		public final AtomicLong latency = new AtomicLong(0);
+
+		public Counter(PID myself) {
+			this.myself = myself;
+		}
+
+		public void serviceCallback(Object infos, Transportable message) {
+			delivered.incrementAndGet();
+			if (myself.equals(((AbcastResponseParameters) infos).pid)) {
+				own.incrementAndGet();
+				byte[] b = ((TByteArray) message).byteValue();
+				long time = 0;
+				for (int i = 0; i < 8; i++)
+					time = (time << 8) | (b[i] & 0xff);
+				latency.addAndGet(System.nanoTime() - time);
+			}
+		}
+	}
+
+	// Configuration that does not read simplerep_conf.xml
+	private static class BenchmarkConfiguration extends SimpleRepConfiguration {
+		public BenchmarkConfiguration() throws SimpleRepConfException {
+			super();
+		}
+
+		protected void buildConf() {
+			setFrameworkTimeout(5000);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int seconds = 3;
+		int n = 3;
+		int port = 28050;
+		long target = 5000;
+		long bytes = 256 * 1024;
+		if (args.length > 0)
+			seconds = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			n = Integer.parseInt(args[1]);
+		if (args.length > 2)
+			port = Integer.parseInt(args[2]);
+		if (args.length > 3)
+			target = Long.parseLong(args[3]);
+		if (args.length > 4)
+			bytes = Long.parseLong(args[4]);
+
+		int[] sizes = { 1024, 32 * 1024 };
+		for (int i = 0; i < sizes.length; i++) {
+			for (int adaptive = 0; adaptive < 2; adaptive++) {
+				SimpleRepConfiguration conf = new BenchmarkConfiguration();
+				if (adaptive == 1) {
+					conf.setBatchingLatency(target);
+					conf.setBatchingBytes(bytes);
+				}
+				long[] result = run(conf, n, port + (2 * i + adaptive) * n,
+						seconds, sizes[i]);
+				System.out.println(sizes[i] / 1024 + " KB messages, "
+						+ ((adaptive == 1) ? "adaptive batching (" + target
+								+ " us, " + bytes / 1024 + " KB)" : "fixed batching")
+						+ ": " + result[0] + " messages/s, " + result[1]
+						+ " us average latency, " + result[2]
+						+ " messages per proposal (max " + result[3]
+						+ ", limit " + result[4] + "), " + result[5]
+						+ " us per consensus");
+			}
+		}
+		System.exit(0);
+	}
+
+	// Broadcast from every stack during the given time and return the
+	// messages delivered per second, the average latency in microseconds
+	// and the batching statistics of the first stack: average and maximum
+	// messages per proposal, limit of the policy and average latency of
+	// consensus in microseconds
+	private static long[] run(SimpleRepConfiguration conf, int n, int port,
+			int seconds, final int size) throws Exception {
+		Callback ignore = new Callback() {
+			public void serviceCallback(Object infos, Transportable message) {
+			}
+		};
+
+		TLinkedList processes = new TLinkedList();
+		for (int i = 0; i < n; i++)
+			processes.addLast(new PID(InetAddress.getLoopbackAddress(), port + i, 0));
+
+		final ApiSamoaAbcastStack[] stacks = new ApiSamoaAbcastStack[n];
+		Counter[] counters = new Counter[n];
+		for (int i = 0; i < n; i++) {
+			counters[i] = new Counter((PID) processes.get(i));
+			// Number the abcast protocols of each stack from 0, as if
+			// the stack was alone in its JVM
+			ProtocolAbcast.nbDynAbcast = 0;
+			stacks[i] = new ApiSamoaAbcastStack((PID) processes.get(i), processes,
+					new SamoaScheduler(new SequentialManager()), new CreditFlowControl(100),
+					counters[i], ignore, null, conf);
+		}
+		for (int i = 0; i < n; i++)
+			stacks[i].init();
+
+		// Open the connections one stack after the other (they are not
+		// established reliably when all the stacks start at once)
+		for (int i = 0; i < n; i++) {
+			long target = counters[i].delivered.get() + 20;
+			for (int m = 0; m < 20; m++)
+				stacks[i].abcastMessage(message(System.nanoTime(), size));
+			while (counters[i].delivered.get() < target)
+				Thread.sleep(1);
+		}
+
+		sending = true;
+		Thread[] senders = new Thread[n];
+		for (int i = 0; i < n; i++) {
+			final ApiSamoaAbcastStack stack = stacks[i];
+			senders[i] = new Thread() {
+				public void run() {
+					while (sending)
+						stack.abcastMessage(message(System.nanoTime(), size));
+				}
+			};
+			senders[i].start();
+		}
+
+		// Warm up, then measure
+		Thread.sleep(1000);
+		long delivered = counters[0].delivered.get();
+		long own = 0;
+		long latency = 0;
+		for (int i = 0; i < n; i++) {
+			own -= counters[i].own.get();
+			latency -= counters[i].latency.get();
+		}
+		stacks[0].getStatistics().reset();
+		long start = System.nanoTime();
+		Thread.sleep(seconds * 1000L);
+		long time = System.nanoTime() - start;
+		delivered = counters[0].delivered.get() - delivered;
+		for (int i = 0; i < n; i++) {
+			own += counters[i].own.get();
+			latency += counters[i].latency.get();
+		}
+
+		SortedMap<String, Long> stats = stacks[0].getStatistics().getSnapshot();
+		sending = false;
+		for (int i = 0; i < n; i++)
+			senders[i].join(1000);
+		for (int i = 0; i < n; i++)
+			stacks[i].close();
+
+		return new long[] { delivered * 1000000000L / time,
+				latency / Math.max(1, own) / 1000,
+				stats.get("batching.Abcast.proposedMessages")
+						/ Math.max(1, stats.get("batching.Abcast.proposals")),
+				stats.get("batching.Abcast.maxProposal"),
+				stats.get("batching.Abcast.limit"),
+				stats.get("batching.Abcast.decisionLatency")
+						/ Math.max(1, stats.get("batching.Abcast.timedDecisions"))
+						/ 1000 };
+	}
+
+	// A message that carries the time of its broadcast
+	private static TByteArray message(long time, int size) {
+		byte[] b = new byte[size];
+		for (int i = 7; i >= 0; i--) {
+			b[i] = (byte) time;
+			time >>>= 8;
+		}
+		return new TByteArray(b);
+	}
+}
@@ -0,0 +1,152 @@
+package seqSamoa.test.benchmark;
+
+import java.io.File;
+
+import seqSamoa.protocols.abcast.CheckpointLog;
+import framework.libraries.BinaryStableStorage;
+import framework.libraries.SegmentedStableStorage;
+import framework.libraries.StableStorage;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TLinkedList;
+
+/**
+ * Measures the recovery time of crash-recovery abcast after a given number
+ * of ordered messages, when the whole log is replayed and when the
+ * application is checkpointed periodically. The log is the
+ * {@link CheckpointLog} of ProtocolCrashRecoveryAbcast, driven as the module
+ * does: each consensus instance decides a batch of messages, logged before
+ * it is delivered, and each snapshot is checkpointed with the instance it
+ * covers. Recovery opens the storage, loads the last snapshot and reads the
+ * decisions above it, as the module does before handing them to its
+ * handlers (which are not in this tree). The storage is abandoned without
+ * being closed, as after a crash.
+ *
+ * Usage: CheckpointRecoveryBenchmark [instances between checkpoints]
+ * [directory]
+ */
+public class CheckpointRecoveryBenchmark {
+	private static final int MESSAGES_PER_INSTANCE = 16;
+
+	private static final int MESSAGE_SIZE = 128;
+
+	// Size of the state of the application
+	private static final int STATE_SIZE = 64 * 1024;
+
+	public static void main(String[] args) throws Exception {
+		int period = 256;
+		String dir = System.getProperty("java.io.tmpdir");
+		if (args.length > 0)
+			period = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			dir = args[1];
+
+		int[] messages = { 10000, 100000, 1000000 };
+		for (int i = 0; i < messages.length; i++) {
+			int instances = messages[i] / MESSAGES_PER_INSTANCE;
+			String path = new File(dir, "CheckpointBenchmark" + i).getPath();
+			for (int segmented = 0; segmented < 2; segmented++) {
+				for (int checkpoint = 0; checkpoint < 2; checkpoint++) {
+					long bytes = fill(path, instances, segmented == 1,
+							(checkpoint == 1) ? period : 0);
+
+					System.gc();
+					long start = System.nanoTime();
+					StableStorage storage = open(path, segmented == 1);
+					long replayed = recover(new CheckpointLog(storage), instances);
+					long time = System.nanoTime() - start;
+
+					System.out.println(messages[i] + " messages, "
+							+ ((segmented == 1) ? "segmented" : "binary") + ", "
+							+ ((checkpoint == 1) ? "checkpoint every " + period
+									+ " instances" : "no checkpoint") + ": "
+							+ bytes / 1024 + " KB of log, " + replayed
+							+ " instances replayed in " + time / 1000000 + " ms");
+					storage.close();
+				}
+			}
+		}
+		System.exit(0);
+	}
+
+	private static StableStorage open(String path, boolean segmented) {
+		if (segmented)
+			return new SegmentedStableStorage(path);
+		return new BinaryStableStorage(path);
+	}
+
+	// Log the given number of instances (from 1) and return the size of the
+	// log
+	private static long fill(String path, int instances, boolean segmented,
+			int period) {
+		StableStorage storage;
+		if (segmented) {
+			SegmentedStableStorage s = new SegmentedStableStorage(path);
+			s.clear();
+			s.setCompaction(false);
+			s.setSync(false);
+			storage = s;
+		} else {
+			BinaryStableStorage s = new BinaryStableStorage(path);
+			s.clear();
+			s.setGroupCommit(true);
+			storage = s;
+		}
+
+		CheckpointLog log = new CheckpointLog(storage);
+		byte[] state = new byte[STATE_SIZE];
+		for (int k = 1; k <= instances; k++) {
+			log.decided(k, decision(k));
+			state[k % STATE_SIZE]++;
+
+			if ((period > 0) && (k % period == 0))
+				log.checkpoint(k, new TByteArray(state));
+		}
+
+		if (segmented) {
+			SegmentedStableStorage s = (SegmentedStableStorage) storage;
+			s.flush();
+			return s.getSize();
+		}
+		((BinaryStableStorage) storage).flush();
+		return new File(path).length() + new File(path + ".bak").length();
+	}
+
+	// Load the last snapshot and read the decisions above it; return the
+	// number of instances replayed
+	private static long recover(CheckpointLog log, int instances) {
+		long k = log.recover();
+		long first = k;
+		if (log.getSnapshot() != null) {
+			if (((TByteArray) log.getSnapshot()).byteValue().length != STATE_SIZE)
+				throw new RuntimeException("Snapshot is not correct");
+			// The log is truncated below the instance of the snapshot
+			if (log.retrieve(k) != null)
+				throw new RuntimeException("Log not truncated");
+		}
+
+		while (true) {
+			TLinkedList decision = (TLinkedList) log.retrieve(k + 1);
+			if (decision == null)
+				break;
+			k++;
+			if ((decision.size() != MESSAGES_PER_INSTANCE)
+					|| (((TByteArray) decision.getFirst()).byteValue()[0] != (byte) k))
+				throw new RuntimeException("Instance " + k + " is not correct");
+		}
+		if (k != instances)
+			throw new RuntimeException("Instances lost: " + k);
+		return k - first;
+	}
+
+	private static TLinkedList decision(int k) {
+		TLinkedList result = new TLinkedList();
+		for (int i = 0; i < MESSAGES_PER_INSTANCE; i++) {
+			byte[] b = new byte[MESSAGE_SIZE];
+			b[0] = (byte) k;
+			for (int j = 1; j < b.length; j++)
+				b[j] = (byte) (k * 31 + i * 7 + j);
+			result.addLast(new TByteArray(b));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,107 @@
+package seqSamoa.test.benchmark;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import framework.GroupCommMessage;
+import framework.PID;
+import framework.libraries.Compression;
+import framework.libraries.DefaultSerialization;
+import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TInteger;
+import framework.libraries.serialization.TLinkedList;
+import framework.libraries.serialization.TUtf8String;
+import groupcomm.common.abcast.AbcastMessageID;
+
+/**
+ * Measures the {@link framework.libraries.Compression compression} of
+ * abcast messages and consensus proposals carrying SOAP envelopes: ratio,
+ * time to compress and time to decompress, for several levels.
+ *
+ * Usage: CompressionBenchmark [iterations]
+ */
+public class CompressionBenchmark {
+    public static void main(String[] args) throws Exception {
+        int iterations = 20000;
+        if (args.length > 0)
+            iterations = Integer.parseInt(args[0]);
+
+        PID pid = new PID(InetAddress.getLoopbackAddress(), 27650, 0);
+
+        // Abcast message carrying one SOAP request
+        GroupCommMessage abcast = new GroupCommMessage();
+        abcast.tpack(new TUtf8String(envelope(0)));
+        abcast.tpack(new TInteger(0));
+        abcast.tpack(new AbcastMessageID(pid, 123456));
+        abcast.tpack(new TBoolean(false));
+        abcast.tpack(new TInteger(0));
+
+        // Consensus proposal carrying a batch of 16 SOAP requests
+        TLinkedList estimate = new TLinkedList();
+        for (int i = 0; i < 16; i++) {
+            GroupCommMessage m = new GroupCommMessage();
+            m.tpack(new TUtf8String(envelope(i)));
+            m.tpack(new AbcastMessageID(pid, 123456 + i));
+            estimate.addLast(m);
+        }
+        GroupCommMessage consensus = new GroupCommMessage();
+        consensus.tpack(new TInteger(3));
+        consensus.tpack(estimate);
+        consensus.tpack(new TInteger(1));
+        consensus.tpack(new TInteger(2));
+
+        byte[] small = DefaultSerialization.marshall(abcast);
+        byte[] large = DefaultSerialization.marshall(consensus);
+
+        int[] levels = { Deflater.BEST_SPEED, 3, 6 };
+        for (int i = 0; i < levels.length; i++) {
+            run("abcast", small, levels[i], iterations / 4, false);
+            run("abcast", small, levels[i], iterations, true);
+            run("consensus", large, levels[i], iterations / 40, false);
+            run("consensus", large, levels[i], iterations / 10, true);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String name, byte[] b, int level, int iterations,
+            boolean print) throws Exception {
+        Compression c = new Compression(0, level);
+        byte[] frame = c.compress(b);
+        if (!Arrays.equals(c.decompress(frame), b))
+            throw new RuntimeException("The compression of " + name + " is not correct");
+        c.reset();
+
+        for (int i = 0; i < iterations; i++)
+            c.compress(b);
+        for (int i = 0; i < iterations; i++)
+            c.decompress(frame);
+
+        if (print)
+            System.out.println(name + " (level " + level + "): " + b.length
+                    + " -> " + frame.length + " bytes (ratio "
+                    + Math.round(c.getRatio() * 100) + "%), compress "
+                    + c.compressTime.sum() / iterations + " ns, decompress "
+                    + c.decompressTime.sum() / iterations + " ns");
+    }
+
+    // A SOAP request as sent by the clients of the replicated services
+    private static String envelope(int i) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+                + " xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+                + "<soapenv:Header><wsa:To xmlns:wsa=\"http://www.w3.org/2005/08/addressing\">"
+                + "http://localhost:8080/axis2/services/BankService</wsa:To>"
+                + "<wsa:MessageID xmlns:wsa=\"http://www.w3.org/2005/08/addressing\">"
+                + "urn:uuid:6f1c2d9e-4b7a-11e0-9a3c-" + (100000000000L + i) + "</wsa:MessageID>"
+                + "<wsa:Action xmlns:wsa=\"http://www.w3.org/2005/08/addressing\">urn:deposit</wsa:Action>"
+                + "</soapenv:Header><soapenv:Body>"
+                + "<ns1:deposit xmlns:ns1=\"http://bank.services.simplerep.dct.ufms.br\">"
+                + "<ns1:account>" + (4200 + i) + "</ns1:account>"
+                + "<ns1:amount>" + (100 + 7 * i) + ".50</ns1:amount>"
+                + "<ns1:description>Deposit number " + i + " made through the replicated"
+                + " bank service</ns1:description>"
+                + "</ns1:deposit></soapenv:Body></soapenv:Envelope>";
+    }
+}
@@ -0,0 +1,114 @@
+package seqSamoa.test.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.Iterator;
+
+import groupcomm.common.abcast.AbcastMessageID;
+import framework.GroupCommMessage;
+import framework.PID;
+import framework.libraries.DefaultSerialization;
+import framework.libraries.serialization.TLinkedHashMap;
+import framework.libraries.serialization.TString;
+
+/**
+ * Measures the CPU time and the bytes allocated per decided batch when
+ * consensus hands its decision to abcast: by copying it through
+ * marshalling and unmarshalling (as consensus did) or by sharing it (abcast
+ * reads the decision without modifying it). In both cases abcast makes the
+ * shallow copy of each message that it delivers. The batches are made of
+ * abcast messages that carry a SOAP envelope.
+ *
+ * Usage: ConsensusDecisionBenchmark [iterations]
+ */
+public class ConsensusDecisionBenchmark {
+	private static final com.sun.management.ThreadMXBean threads =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static final String ENVELOPE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+			+ " xmlns:wsa=\"http://www.w3.org/2005/08/addressing\">"
+			+ "<soapenv:Header><wsa:To>http://localhost:8080/axis2/services/Counter</wsa:To>"
+			+ "<wsa:MessageID>urn:uuid:%d</wsa:MessageID>"
+			+ "<wsa:Action>urn:increment</wsa:Action></soapenv:Header>"
+			+ "<soapenv:Body><ns:increment xmlns:ns=\"http://counter.simplerep\">"
+			+ "<ns:amount>%d</ns:amount></ns:increment></soapenv:Body></soapenv:Envelope>";
+
+	public static void main(String[] args) throws Exception {
+		int iterations = 20000;
+		if (args.length > 0)
+			iterations = Integer.parseInt(args[0]);
+
+		int[] sizes = { 1, 16, 64 };
+		for (int i = 0; i < sizes.length; i++) {
+			TLinkedHashMap decision = batch(sizes[i]);
+			int n = iterations / sizes[i] + 1;
+
+			// Warm up
+			run(decision, n / 4, true);
+			run(decision, n / 4, false);
+
+			long[] cloned = run(decision, n, true);
+			long[] shared = run(decision, n, false);
+			System.out.println(sizes[i] + " messages/batch ("
+					+ DefaultSerialization.marshall(decision).length + " bytes)");
+			System.out.println("  Cloned: " + cloned[0] + " ns CPU/batch, "
+					+ cloned[1] + " bytes allocated/batch");
+			System.out.println("  Shared: " + shared[0] + " ns CPU/batch, "
+					+ shared[1] + " bytes allocated/batch");
+		}
+	}
+
+	// Build a decision of abcast messages
+	private static TLinkedHashMap batch(int size) throws Exception {
+		PID[] pids = new PID[3];
+		for (int i = 0; i < pids.length; i++)
+			pids[i] = new PID(InetAddress.getLoopbackAddress(), 27650 + i, 0);
+
+		TLinkedHashMap result = new TLinkedHashMap();
+		for (int i = 0; i < size; i++) {
+			GroupCommMessage m = new GroupCommMessage();
+			m.tpack(new TString(String.format(ENVELOPE, 123456 + i, i)));
+			result.put(new AbcastMessageID(pids[i % pids.length], 123456 + i), m);
+		}
+		return result;
+	}
+
+	// Hand the decision to abcast n times and return the CPU time and the
+	// bytes allocated per batch
+	private static long[] run(TLinkedHashMap decision, int n, boolean clone)
+			throws Exception {
+		long id = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(id);
+		long cpu = threads.getCurrentThreadCpuTime();
+		int delivered = 0;
+
+		for (int i = 0; i < n; i++) {
+			TLinkedHashMap d = decision;
+			if (clone)
+				d = (TLinkedHashMap) DefaultSerialization
+						.unmarshall(DefaultSerialization.marshall(decision));
+			delivered += deliver(d);
+		}
+
+		cpu = threads.getCurrentThreadCpuTime() - cpu;
+		allocated = threads.getThreadAllocatedBytes(id) - allocated;
+		if (delivered != n * decision.size())
+			throw new RuntimeException("Messages lost");
+		return new long[] { cpu / n, allocated / n };
+	}
+
+	// Read the decision as AbcastImpl does
+	private static int deliver(TLinkedHashMap decision) {
+		int result = 0;
+		Iterator it = decision.keySet().iterator();
+		while (it.hasNext()) {
+			AbcastMessageID id = (AbcastMessageID) it.next();
+			GroupCommMessage m = ((GroupCommMessage) decision.get(id))
+					.cloneGroupCommMessage();
+			if ((id != null) && (m.size() == 1))
+				result++;
+		}
+		return result;
+	}
+}
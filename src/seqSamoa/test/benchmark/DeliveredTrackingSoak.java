@@ -0,0 +1,196 @@
+package seqSamoa.test.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.Random;
+
+import framework.PID;
+import framework.libraries.serialization.THashSet;
+import groupcomm.common.abcast.AbcastMessageID;
+import groupcomm.common.abcast.DeliveredSet;
+
+/**
+ * Long-running check of the memory used to track the A-delivered messages
+ * (see {@link DeliveredSet}). Several senders deliver messages whose ids
+ * are reordered within a window, as the decisions of consensus do, and
+ * every delivery is preceded by the lookup that abcast does on receipt.
+ * One message out of a given number is delivered late, long after the
+ * ones that follow it. The used heap (after a collection) and the bytes
+ * allocated by the operations are printed periodically: they must stay flat.
+ * The same is then done with a set of ids that is only pruned below the
+ * delivered bound, as the implementations did before.
+ *
+ * Usage: DeliveredTrackingSoak [messages per sender] [senders] [window]
+ */
+public class DeliveredTrackingSoak {
+	// Number of reports per run
+	private static final int REPORTS = 10;
+
+	// One message out of LATE is delivered LATE_BY messages late
+	private static final int LATE = 1000;
+
+	private static final int LATE_BY = 5000;
+
+	// Tracking of the delivered messages
+	private interface Tracker {
+		boolean contains(int sender, long n, AbcastMessageID id);
+
+		void add(int sender, long n, AbcastMessageID id);
+	}
+
+	// Tracking with a set of ids pruned below a bound per sender
+	private static class IdSetTracker implements Tracker {
+		private final THashSet delivered = new THashSet();
+
+		private final long[] maxId;
+
+		private final PID[] senders;
+
+		public IdSetTracker(PID[] senders) {
+			this.senders = senders;
+			maxId = new long[senders.length];
+			for (int i = 0; i < senders.length; i++)
+				maxId[i] = -1;
+		}
+
+		public boolean contains(int s, long n, AbcastMessageID id) {
+			return delivered.contains(id) || (n <= maxId[s]);
+		}
+
+		public void add(int s, long n, AbcastMessageID id) {
+			delivered.add(id);
+			AbcastMessageID newID = new AbcastMessageID(senders[s], maxId[s] + 1);
+			while (delivered.contains(newID)) {
+				delivered.remove(newID);
+				maxId[s]++;
+				newID = new AbcastMessageID(senders[s], maxId[s] + 1);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int messages = 2000000;
+		int n = 4;
+		int window = 256;
+		if (args.length > 0)
+			messages = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			n = Integer.parseInt(args[1]);
+		if (args.length > 2)
+			window = Integer.parseInt(args[2]);
+
+		final PID[] senders = new PID[n];
+		for (int i = 0; i < n; i++)
+			senders[i] = new PID(InetAddress.getLoopbackAddress(), 27000 + i, 0);
+
+		final DeliveredSet set = new DeliveredSet();
+		for (int i = 0; i < n; i++)
+			set.addProcess(senders[i]);
+		System.out.println("DeliveredSet:");
+		run(new Tracker() {
+			public boolean contains(int sender, long n, AbcastMessageID id) {
+				return set.contains(id);
+			}
+
+			public void add(int sender, long n, AbcastMessageID id) {
+				set.add(id);
+			}
+		}, senders, messages, window);
+		for (int i = 0; i < n; i++)
+			if (set.getMaxId(senders[i]) != messages - 1)
+				throw new RuntimeException("Messages of " + senders[i]
+						+ " not all delivered: " + set.getMaxId(senders[i]));
+
+		System.out.println("Set of ids pruned below the bound:");
+		run(new IdSetTracker(senders), senders, messages, window);
+		System.exit(0);
+	}
+
+	// Deliver the messages of every sender, reordered within the window
+	private static void run(Tracker tracker, PID[] senders, int messages,
+			int window) {
+		Random random = new Random(42);
+		int n = senders.length;
+		long[] ids = new long[window];
+		AbcastMessageID[] msgIds = new AbcastMessageID[window];
+		long operations = 0;
+		long allocated = 0;
+		long start = System.nanoTime();
+		long[] late = new long[n];
+		AbcastMessageID[] lateIds = new AbcastMessageID[n];
+		for (int s = 0; s < n; s++)
+			late[s] = -1;
+
+		for (int base = 0; base < messages; base += window) {
+			int size = Math.min(window, messages - base);
+			for (int s = 0; s < n; s++) {
+				// The ids of this window, shuffled
+				for (int i = 0; i < size; i++)
+					ids[i] = base + i;
+				for (int i = size - 1; i > 0; i--) {
+					int j = random.nextInt(i + 1);
+					long t = ids[i];
+					ids[i] = ids[j];
+					ids[j] = t;
+				}
+				// The ids arrive with the messages: not counted below
+				for (int i = 0; i < size; i++)
+					msgIds[i] = new AbcastMessageID(senders[s], ids[i]);
+
+				long before = allocatedBytes();
+				for (int i = 0; i < size; i++) {
+					if ((ids[i] % LATE == 0) && (late[s] < 0)
+							&& (ids[i] + LATE_BY < messages)) {
+						late[s] = ids[i];
+						lateIds[s] = msgIds[i];
+						continue;
+					}
+					if ((late[s] >= 0) && (ids[i] >= late[s] + LATE_BY)) {
+						deliver(tracker, s, late[s], lateIds[s]);
+						late[s] = -1;
+						operations += 3;
+					}
+					deliver(tracker, s, ids[i], msgIds[i]);
+					operations += 3;
+				}
+				allocated += allocatedBytes() - before;
+			}
+
+			if ((base / window) % Math.max(1, messages / window / REPORTS) == 0)
+				System.out.println("  " + (long) base * n + " messages: "
+						+ usedHeap() / 1024 + " KB used, "
+						+ ((operations == 0) ? 0 : allocated / operations)
+						+ " bytes allocated per operation");
+		}
+		long time = System.nanoTime() - start;
+		System.out.println("  " + (long) messages * n + " messages: "
+				+ usedHeap() / 1024 + " KB used, " + time / 1000000 + " ms");
+	}
+
+	// Deliver a message as abcast does: look it up, then add it
+	private static void deliver(Tracker tracker, int sender, long n,
+			AbcastMessageID id) {
+		if (tracker.contains(sender, n, id))
+			throw new RuntimeException("Message " + id + " delivered twice");
+		tracker.add(sender, n, id);
+		if (!tracker.contains(sender, n, id))
+			throw new RuntimeException("Message " + id + " not delivered");
+	}
+
+	// Used heap after a collection
+	private static long usedHeap() {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++)
+			System.gc();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+	// Bytes allocated by the current thread, or 0 if not supported
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+	}
+}
@@ -0,0 +1,156 @@
+package seqSamoa.test.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import seqSamoa.AtomicTask;
+import seqSamoa.BoundModuleOrderManager;
+import seqSamoa.ConcurrencyManager;
+import seqSamoa.RouteModuleOrderManager;
+import seqSamoa.SequentialManager;
+import seqSamoa.SimpleModuleOrderManager;
+
+/**
+ * Measures the number of external events per second that each
+ * {@link seqSamoa.ConcurrencyManager concurrency manager} accepts when the
+ * events are submitted one by one and when they are submitted in bursts.
+ * Every task checks that the tasks of its producer are executed in the
+ * order they were submitted.
+ *
+ * A producer waits for its events once it has IN_FLIGHT of them not
+ * executed, as the flow control of a stack would make it: otherwise the
+ * producers outrun the manager and the run measures the collection of a
+ * queue of millions of computations. Each configuration runs several times
+ * and the median is reported.
+ *
+ * Usage: ExternalTasksBenchmark [events per producer] [producers]
+ * [threads of the module order managers]
+ */
+public class ExternalTasksBenchmark {
+	private static final int[] BURST_SIZES = { 1, 8, 64 };
+
+	// Events of a producer not executed yet (a multiple of the bursts)
+	private static final int IN_FLIGHT = 1024;
+
+	private static final int RUNS = 5;
+
+	// Next event expected from each producer
+	private static AtomicIntegerArray expected;
+
+	// Events executed out of order
+	private static final AtomicLong outOfOrder = new AtomicLong(0);
+
+	// Task that only checks the order of the events of its producer
+	private static class OrderedTask extends AtomicTask {
+		private final int producer;
+
+		private final int event;
+
+		public OrderedTask(int producer, int event) {
+			this.producer = producer;
+			this.event = event;
+		}
+
+		public void execute() {
+			if (!expected.compareAndSet(producer, event, event + 1))
+				outOfOrder.incrementAndGet();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int events = 200000;
+		int producers = 4;
+		int threads = 4;
+		if (args.length > 0)
+			events = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			producers = Integer.parseInt(args[1]);
+		if (args.length > 2)
+			threads = Integer.parseInt(args[2]);
+
+		String[] names = { "SequentialManager", "SimpleModuleOrderManager",
+				"BoundModuleOrderManager", "RouteModuleOrderManager" };
+		for (int m = 0; m < names.length; m++) {
+			// Warm up
+			run(manager(m, threads), events / 4, producers, BURST_SIZES[0]);
+
+			for (int i = 0; i < BURST_SIZES.length; i++) {
+				long[] rates = new long[RUNS];
+				for (int r = 0; r < RUNS; r++)
+					rates[r] = run(manager(m, threads), events, producers,
+							BURST_SIZES[i]);
+				Arrays.sort(rates);
+				System.out.println(names[m] + " burst=" + BURST_SIZES[i] + ": "
+						+ rates[RUNS / 2] + " events/s (min " + rates[0]
+						+ ", max " + rates[RUNS - 1] + ")");
+			}
+		}
+		System.out.println("Events executed out of order: " + outOfOrder.get());
+		System.exit(0);
+	}
+
+	private static ConcurrencyManager manager(int m, int threads) {
+		switch (m) {
+		case 1:
+			return new SimpleModuleOrderManager(threads);
+		case 2:
+			return new BoundModuleOrderManager(threads);
+		case 3:
+			return new RouteModuleOrderManager(threads);
+		default:
+			return new SequentialManager();
+		}
+	}
+
+	// Submit the events and return the number of events per second
+	private static long run(final ConcurrencyManager manager, final int events,
+			int producers, final int burstSize) throws InterruptedException {
+		manager.start();
+		expected = new AtomicIntegerArray(producers);
+
+		final long[] lastIDs = new long[producers];
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int index = p;
+			threads[p] = new Thread() {
+				public void run() {
+					List<AtomicTask> burst = new ArrayList<AtomicTask>(burstSize);
+					long previous = -1;
+					for (int i = 0; i < events; i += burstSize) {
+						if (burstSize == 1) {
+							lastIDs[index] = manager.addExternalTask(new OrderedTask(
+									index, i));
+						} else {
+							for (int j = 0; j < burstSize; j++)
+								burst.add(new OrderedTask(index, i + j));
+							lastIDs[index] = manager.addExternalTasks(burst)
+									+ burstSize - 1;
+							burst.clear();
+						}
+
+						if ((i + burstSize) % IN_FLIGHT == 0) {
+							if (previous >= 0)
+								manager.waitEnd(previous);
+							previous = lastIDs[index];
+						}
+					}
+				}
+			};
+		}
+
+		long start = System.nanoTime();
+		for (int p = 0; p < producers; p++)
+			threads[p].start();
+		for (int p = 0; p < producers; p++)
+			threads[p].join();
+		for (int p = 0; p < producers; p++)
+			manager.waitEnd(lastIDs[p]);
+		long time = System.nanoTime() - start;
+
+		manager.close();
+		return (long) events * producers * 1000000000L / time;
+	}
+}
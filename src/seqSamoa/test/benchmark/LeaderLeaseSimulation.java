@@ -0,0 +1,230 @@
+package seqSamoa.test.benchmark;
+
+import java.net.InetAddress;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import framework.PID;
+import framework.libraries.serialization.TLinkedList;
+import groupcomm.common.fd.LeaderLease;
+
+/**
+ * Checks that no two processes hold the lease of the leader (see
+ * {@link LeaderLease}) at the same time, in a simulation of the group with
+ * 1 ms steps. Every process pings the others periodically and answers the
+ * pings, granting the lease to its leader as FDHandler does. Every message
+ * has a random delay and may be lost. The leader of a process is the first
+ * process it does not suspect (no message received during the suspicion
+ * timeout), and the process trusts it only once the lease it granted
+ * expired, as LeaderHandler does. The clock of each process has its own
+ * rate.
+ *
+ * The leader is isolated from the others during a while, then reconnected:
+ * the others elect a new leader, then come back to the first one. Each run
+ * prints the time during which two processes held the lease (it must be 0
+ * when the clocks drift less than the bound of the lease), the time during
+ * which a process held it, and the longest time without any.
+ *
+ * Usage: LeaderLeaseSimulation [processes] [lease (ms)] [max delay (ms)]
+ * [seed]
+ */
+public class LeaderLeaseSimulation {
+	private static final long DURATION = 30000;
+
+	private static final long ISOLATE = 10000;
+
+	private static final long HEAL = 20000;
+
+	private static final long PING_PERIOD = 100;
+
+	private static final double LOSS = 0.01;
+
+	// Bound of the drift given to the leases
+	private static final double DRIFT = 0.01;
+
+	// Time of the simulation
+	private static long time;
+
+	// Lease whose clock runs at its own rate
+	private static class SimulatedLease extends LeaderLease {
+		private final double rate;
+
+		private final long offset;
+
+		public SimulatedLease(PID myself, TLinkedList group, long duration,
+				double rate, long offset) {
+			super(myself, group, duration, DRIFT);
+			this.rate = rate;
+			this.offset = offset;
+		}
+
+		public long now() {
+			return offset + (long) (time * rate);
+		}
+	}
+
+	// A ping, or an answer to a ping (possibly granting the lease)
+	private static class Message {
+		final int from;
+
+		final int to;
+
+		final long delivery;
+
+		final boolean ping;
+
+		final long sent;
+
+		final boolean granted;
+
+		Message(int from, int to, long delivery, boolean ping, long sent,
+				boolean granted) {
+			this.from = from;
+			this.to = to;
+			this.delivery = delivery;
+			this.ping = ping;
+			this.sent = sent;
+			this.granted = granted;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int n = 5;
+		long lease = 1000;
+		long maxDelay = 20;
+		long seed = 1;
+		if (args.length > 0)
+			n = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			lease = Long.parseLong(args[1]);
+		if (args.length > 2)
+			maxDelay = Long.parseLong(args[2]);
+		if (args.length > 3)
+			seed = Long.parseLong(args[3]);
+
+		// Spread of the clock rates: within the bound, then beyond it
+		double[] spreads = { DRIFT / 2, DRIFT * 20 };
+		for (int i = 0; i < spreads.length; i++) {
+			long[] result = run(n, lease, maxDelay, spreads[i], new Random(seed));
+			System.out.println("Clock rates 1 +/- " + spreads[i] / 2
+					+ " (bound " + DRIFT + "): " + result[0]
+					+ " ms with two lease holders, lease held " + result[1]
+					* 100 / DURATION + "% of the time, longest time without holder "
+					+ result[2] + " ms, " + result[3] + " leader changes");
+		}
+		System.exit(0);
+	}
+
+	// Return the time with two holders, the time with one, the longest time
+	// without any and the number of leader changes
+	private static long[] run(int n, long lease, long maxDelay, double spread,
+			Random random) throws Exception {
+		TLinkedList group = new TLinkedList();
+		for (int i = 0; i < n; i++)
+			group.addLast(new PID(InetAddress.getLoopbackAddress(), 28000 + i, 0));
+
+		// The first process has the slowest clock and the others fast ones:
+		// it holds the lease the longest once isolated, while they stop
+		// granting it early
+		SimulatedLease[] leases = new SimulatedLease[n];
+		for (int i = 0; i < n; i++) {
+			double rate = 1 - spread / 2;
+			if (i > 0)
+				rate = 1 + spread / 2 * random.nextDouble();
+			leases[i] = new SimulatedLease((PID) group.get(i), group, lease,
+					rate, random.nextInt(1000000));
+		}
+
+		// Time of the last message received by i from j
+		long[][] heard = new long[n][n];
+		long suspicion = lease / 2;
+
+		PriorityQueue<Message> network = new PriorityQueue<Message>(64,
+				new Comparator<Message>() {
+					public int compare(Message a, Message b) {
+						return (a.delivery < b.delivery) ? -1
+								: ((a.delivery == b.delivery) ? 0 : 1);
+					}
+				});
+
+		long two = 0;
+		long held = 0;
+		long gap = 0;
+		long longestGap = 0;
+		long changes = 0;
+		for (time = 0; time < DURATION; time++) {
+			boolean isolated = (time >= ISOLATE) && (time < HEAL);
+
+			// Deliver the messages
+			while (!network.isEmpty() && (network.peek().delivery <= time)) {
+				Message m = network.poll();
+				heard[m.to][m.from] = time;
+				if (m.ping) {
+					boolean granted = leases[m.to].grant((PID) group.get(m.from));
+					send(network, random, maxDelay, isolated, m.to, m.from,
+							false, m.sent, granted);
+				} else if (m.granted) {
+					leases[m.to].renewed((PID) group.get(m.from), m.sent);
+				}
+			}
+
+			// Elect the leaders
+			for (int i = 0; i < n; i++) {
+				int candidate = i;
+				for (int j = 0; j < i; j++) {
+					if (time - heard[i][j] <= suspicion) {
+						candidate = j;
+						break;
+					}
+				}
+				PID leader = (PID) group.get(candidate);
+				if (leader.equals(leases[i].getLeader())) {
+					leases[i].setLeader(leader);
+				} else if (leases[i].now() >= leases[i].changeAllowedAt(leader)) {
+					leases[i].setLeader(leader);
+					changes++;
+				}
+			}
+
+			// Ping
+			for (int i = 0; i < n; i++) {
+				if ((time + i) % PING_PERIOD == 0) {
+					for (int j = 0; j < n; j++)
+						if (j != i)
+							send(network, random, maxDelay, isolated, i, j, true,
+									leases[i].now(), false);
+				}
+			}
+
+			// Check the holders
+			int holders = 0;
+			for (int i = 0; i < n; i++)
+				if (leases[i].holds())
+					holders++;
+			if (holders > 1)
+				two++;
+			if (holders > 0) {
+				held++;
+				gap = 0;
+			} else {
+				gap++;
+				longestGap = Math.max(longestGap, gap);
+			}
+		}
+
+		return new long[] { two, held, longestGap, changes };
+	}
+
+	// The first process is cut from the others while isolated
+	private static void send(PriorityQueue<Message> network, Random random,
+			long maxDelay, boolean isolated, int from, int to, boolean ping,
+			long sent, boolean granted) {
+		if ((isolated && ((from == 0) || (to == 0)))
+				|| (random.nextDouble() < LOSS))
+			return;
+		long delay = (long) (random.nextDouble() * (maxDelay + 1));
+		network.add(new Message(from, to, time + Math.max(1, delay), ping, sent,
+				granted));
+	}
+}
@@ -0,0 +1,240 @@
+package seqSamoa.test.benchmark;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uka.transport.Transportable;
+import br.ufms.dct.simplerep.SimpleRepConfiguration;
+import br.ufms.dct.simplerep.exceptions.SimpleRepConfException;
+import framework.PID;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TLinkedList;
+import seqSamoa.Callback;
+import seqSamoa.CreditFlowControl;
+import seqSamoa.SamoaScheduler;
+import seqSamoa.SequentialManager;
+import seqSamoa.api.ApiSamoaAbcastStack;
+import seqSamoa.protocols.abcast.ProtocolAbcast;
+import seqSamoa.services.abcast.AbcastResponseParameters;
+
+/**
+ * Measures the throughput and the latency of atomic broadcast with the
+ * consensus of Chandra-Toueg, Paxos and Multi-Paxos (see
+ * {@link SimpleRepConfiguration#setConsensus(String)}). The group is made
+ * of several stacks running in this JVM on the loopback interface; every
+ * stack broadcasts messages as fast as its flow control allows. The
+ * latency is measured from the broadcast of a message to its delivery by
+ * the stack that sent it. The stacks must deliver the same sequence of
+ * messages. Each protocol is measured again after the crash of the first
+ * stack (the leader of Paxos), once the others deliver messages again; the
+ * time they took to do so is reported.
+ *
+ * Usage: MultiPaxosBenchmark [seconds per protocol] [processes] [first port]
+ * [consensus window]
+ */
+public class MultiPaxosBenchmark {
+	// Cleared to stop the senders
+	private static volatile boolean sending;
+
+	// The stack crashed (-1 if none)
+	private static volatile int crashed;
+
+	// Counts the delivered messages of a stack and the latency of its own,
+	// and digests the sequence of messages delivered
+	private static class Counter implements Callback {
+		private final PID myself;
+
+		public final AtomicLong delivered = new AtomicLong(0);
+
+		public final AtomicLong own = new AtomicLong(0);
+
+		public final AtomicLong latency = new AtomicLong(0);
+
+		private long digest = 0;
+
+		public Counter(PID myself) {
+			this.myself = myself;
+		}
+
+		public synchronized void serviceCallback(Object infos, Transportable message) {
+			byte[] b = ((TByteArray) message).byteValue();
+			long time = 0;
+			for (int i = 0; i < 8; i++)
+				time = (time << 8) | (b[i] & 0xff);
+			digest = digest * 31 + time;
+			delivered.incrementAndGet();
+			if (myself.equals(((AbcastResponseParameters) infos).pid)) {
+				own.incrementAndGet();
+				latency.addAndGet(System.nanoTime() - time);
+			}
+		}
+
+		public synchronized long getDigest() {
+			return digest;
+		}
+	}
+
+	// Configuration that does not read simplerep_conf.xml
+	private static class BenchmarkConfiguration extends SimpleRepConfiguration {
+		public BenchmarkConfiguration() throws SimpleRepConfException {
+			super();
+		}
+
+		protected void buildConf() {
+			setFrameworkTimeout(5000);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int seconds = 3;
+		int n = 3;
+		int port = 27950;
+		int window = 1;
+		if (args.length > 0)
+			seconds = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			n = Integer.parseInt(args[1]);
+		if (args.length > 2)
+			port = Integer.parseInt(args[2]);
+		if (args.length > 3)
+			window = Integer.parseInt(args[3]);
+
+		String[] protocols = { "ct", "paxos", "multipaxos" };
+		for (int crash = 0; crash < 2; crash++) {
+			for (int p = 0; p < protocols.length; p++) {
+				SimpleRepConfiguration conf = new BenchmarkConfiguration();
+				conf.setConsensus(protocols[p]);
+				conf.setConsensusWindow(window);
+				long[] result = run(conf, n, port + (crash * protocols.length + p)
+						* 10 * n, seconds, crash == 1);
+				System.out.println(protocols[p] + ((crash == 1) ? " after crash" : "")
+						+ ": " + result[0] + " messages/s, " + result[1]
+						+ " us average latency"
+						+ ((crash == 1) ? ", recovered in " + result[2] + " ms" : ""));
+			}
+		}
+		System.exit(0);
+	}
+
+	// Broadcast from every stack during the given time and return the
+	// messages delivered per second and the average latency in microseconds
+	// (by the stacks that did not crash), and the time to recover from the
+	// crash in milliseconds
+	private static long[] run(SimpleRepConfiguration conf, int n, int port,
+			int seconds, boolean crash) throws Exception {
+		Callback ignore = new Callback() {
+			public void serviceCallback(Object infos, Transportable message) {
+			}
+		};
+
+		TLinkedList processes = new TLinkedList();
+		for (int i = 0; i < n; i++)
+			processes.addLast(new PID(InetAddress.getLoopbackAddress(), port + i, 0));
+
+		final ApiSamoaAbcastStack[] stacks = new ApiSamoaAbcastStack[n];
+		Counter[] counters = new Counter[n];
+		for (int i = 0; i < n; i++) {
+			counters[i] = new Counter((PID) processes.get(i));
+			// Number the abcast protocols of each stack from 0, as if
+			// the stack was alone in its JVM
+			ProtocolAbcast.nbDynAbcast = 0;
+			stacks[i] = new ApiSamoaAbcastStack((PID) processes.get(i), processes,
+					new SamoaScheduler(new SequentialManager()), new CreditFlowControl(100),
+					counters[i], ignore, null, conf);
+		}
+		for (int i = 0; i < n; i++)
+			stacks[i].init();
+
+		// Open the connections one stack after the other (they are not
+		// established reliably when all the stacks start at once)
+		for (int i = 0; i < n; i++) {
+			long target = counters[i].delivered.get() + 20;
+			for (int m = 0; m < 20; m++)
+				stacks[i].abcastMessage(message(System.nanoTime()));
+			while (counters[i].delivered.get() < target)
+				Thread.sleep(1);
+		}
+
+		sending = true;
+		crashed = -1;
+		Thread[] senders = new Thread[n];
+		for (int i = 0; i < n; i++) {
+			final ApiSamoaAbcastStack stack = stacks[i];
+			final int index = i;
+			senders[i] = new Thread() {
+				public void run() {
+					while (sending && (crashed != index))
+						stack.abcastMessage(message(System.nanoTime()));
+				}
+			};
+			senders[i].setDaemon(true);
+			senders[i].start();
+		}
+
+		// Warm up, crash the first stack and wait for the others to
+		// deliver messages again if asked, then measure
+		Thread.sleep(1000);
+		int first = 0;
+		long recovery = 0;
+		if (crash) {
+			crashed = 0;
+			senders[0].join(1000);
+			stacks[0].close();
+			first = 1;
+			long crashTime = System.currentTimeMillis();
+			long target = counters[1].delivered.get() + 500;
+			while ((counters[1].delivered.get() < target)
+					&& (System.currentTimeMillis() < crashTime + 60000))
+				Thread.sleep(10);
+			recovery = System.currentTimeMillis() - crashTime;
+			Thread.sleep(1000);
+		}
+		long delivered = counters[first].delivered.get();
+		long own = 0;
+		long latency = 0;
+		for (int i = first; i < n; i++) {
+			own -= counters[i].own.get();
+			latency -= counters[i].latency.get();
+		}
+		long start = System.nanoTime();
+		Thread.sleep(seconds * 1000L);
+		long time = System.nanoTime() - start;
+		delivered = counters[first].delivered.get() - delivered;
+		for (int i = first; i < n; i++) {
+			own += counters[i].own.get();
+			latency += counters[i].latency.get();
+		}
+
+		sending = false;
+		for (int i = first; i < n; i++)
+			senders[i].join(1000);
+
+		// Wait for the stacks to deliver the same messages
+		long deadline = System.currentTimeMillis() + 10000;
+		boolean same = false;
+		while (!same && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(100);
+			same = true;
+			for (int i = first + 1; i < n; i++)
+				same = same && (counters[i].delivered.get() == counters[first].delivered.get())
+						&& (counters[i].getDigest() == counters[first].getDigest());
+		}
+		if (!same)
+			throw new RuntimeException("The stacks did not deliver the same messages");
+		for (int i = first; i < n; i++)
+			stacks[i].close();
+
+		return new long[] { delivered * 1000000000L / time,
+				latency / Math.max(1, own) / 1000, recovery };
+	}
+
+	// A message that carries the time of its broadcast
+	private static TByteArray message(long time) {
+		byte[] b = new byte[64];
+		for (int i = 7; i >= 0; i--) {
+			b[i] = (byte) time;
+			time >>>= 8;
+		}
+		return new TByteArray(b);
+	}
+}
@@ -0,0 +1,261 @@
+package seqSamoa.test.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import uka.transport.Transportable;
+import framework.GroupCommEventArgs;
+import framework.GroupCommMessage;
+import framework.PID;
+import framework.libraries.DefaultSerialization;
+import framework.libraries.FlowControl;
+import framework.libraries.Timer;
+import framework.libraries.Trigger;
+import framework.libraries.serialization.CompactSerialization;
+import framework.libraries.serialization.THashSet;
+import framework.libraries.serialization.TInteger;
+import framework.libraries.serialization.TLinkedHashMap;
+import framework.libraries.serialization.TLinkedList;
+import framework.libraries.serialization.TLong;
+import framework.libraries.serialization.TLongHashMap;
+import framework.libraries.serialization.TLongHashSet;
+import framework.libraries.serialization.TLongTreeMap;
+import framework.libraries.serialization.TTreeMap;
+import groupcomm.common.abcast.AbcastImpl;
+import groupcomm.common.abcast.AbcastMessageID;
+
+/**
+ * Compares the primitive-keyed transportable collections
+ * ({@link framework.libraries.serialization.TLongHashSet},
+ * {@link framework.libraries.serialization.TLongHashMap} and
+ * {@link framework.libraries.serialization.TLongTreeMap}) with the boxed
+ * ones they replace: bytes allocated by the bookkeeping of the A-delivered
+ * messages of {@link groupcomm.common.abcast.AbcastImpl AbcastImpl}, bytes
+ * allocated by a map of consensus instances and size of the marshalled
+ * collections. The collections are first checked against
+ * the ones of java.util.
+ *
+ * Usage: PrimitiveCollectionsBenchmark [messages]
+ */
+public class PrimitiveCollectionsBenchmark {
+	private static final com.sun.management.ThreadMXBean threads =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		int messages = 1000000;
+		if (args.length > 0)
+			messages = Integer.parseInt(args[0]);
+
+		check();
+
+		PID[] pids = new PID[3];
+		for (int i = 0; i < pids.length; i++)
+			pids[i] = new PID(InetAddress.getLoopbackAddress(), 27650 + i, 0);
+
+		// Warm up
+		delivery(pids, messages / 10);
+		boxedInstances(messages / 10);
+		primitiveInstances(messages / 10);
+
+		System.out.println("AbcastImpl.handleDecide: " + delivery(pids, messages)
+				+ " bytes per message delivered");
+
+		long boxed = boxedInstances(messages);
+		long primitive = primitiveInstances(messages);
+		System.out.println("Consensus instances map: " + boxed / messages
+				+ " -> " + primitive / messages + " bytes per instance");
+
+		THashSet boxedSet = new THashSet();
+		TLongHashSet set = new TLongHashSet();
+		TTreeMap boxedMap = new TTreeMap();
+		TLongTreeMap map = new TLongTreeMap();
+		for (long i = 0; i < 1000; i++) {
+			boxedSet.add(new TLong(5000 + i * 3));
+			set.add(5000 + i * 3);
+			boxedMap.put(new TLong(i), new TInteger(0));
+			map.put(i, new TInteger(0));
+		}
+		System.out.println("Set of 1000 longs: uka "
+				+ DefaultSerialization.marshall(boxedSet).length + " -> "
+				+ DefaultSerialization.marshall(set).length + " bytes, compact "
+				+ CompactSerialization.marshall(boxedSet).length + " -> "
+				+ CompactSerialization.marshall(set).length + " bytes");
+		System.out.println("Sorted map of 1000 longs: uka "
+				+ DefaultSerialization.marshall(boxedMap).length + " -> "
+				+ DefaultSerialization.marshall(map).length + " bytes, compact "
+				+ CompactSerialization.marshall(boxedMap).length + " -> "
+				+ CompactSerialization.marshall(map).length + " bytes");
+		System.exit(0);
+	}
+
+	private static long allocated() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	// Bytes allocated by AbcastImpl.handleDecide per message delivered.
+	// The decisions contain one message of each process, and the messages
+	// of each process are decided slightly out of order.
+	private static long delivery(PID[] pids, int messages) throws Exception {
+		Trigger trigger = new Trigger() {
+			public void trigger(int type, GroupCommEventArgs args) {
+			}
+		};
+		FlowControl fc = new FlowControl() {
+			public void block(int key) {
+			}
+
+			public void release(int key) {
+			}
+
+			public void enter() {
+			}
+
+			public int getFreshKey() {
+				return 0;
+			}
+
+			public void releaseKey(int key) {
+			}
+		};
+		Timer timer = new Timer() {
+			public void schedule(Transportable key, boolean periodic, int time) {
+			}
+
+			public void cancel(Transportable key) {
+			}
+
+			public void reset(Transportable key) {
+			}
+		};
+		AbcastImpl abcast = new AbcastImpl(trigger, fc, timer, pids[0]);
+		TLinkedList group = new TLinkedList();
+		for (int i = 0; i < pids.length; i++)
+			group.addLast(pids[i]);
+		GroupCommEventArgs init = new GroupCommEventArgs();
+		init.addLast(group);
+		abcast.handleInit(init);
+
+		// Make it start a consensus after each decision
+		GroupCommMessage gossip = new GroupCommMessage();
+		gossip.tpack(new TLong(Long.MAX_VALUE));
+		GroupCommEventArgs deliver = new GroupCommEventArgs();
+		deliver.addLast(gossip);
+		deliver.addLast(pids[1]);
+		abcast.handlePt2PtDeliver(deliver);
+
+		// Prepare the decisions
+		int decisions = messages / pids.length;
+		TLinkedHashMap[] undelivered = new TLinkedHashMap[decisions];
+		for (int k = 0; k < decisions; k++) {
+			undelivered[k] = new TLinkedHashMap();
+			for (int i = 0; i < pids.length; i++)
+				undelivered[k].put(new AbcastMessageID(pids[i], k ^ 1),
+						new GroupCommMessage());
+		}
+
+		long start = allocated();
+		for (int k = 0; k < decisions; k++) {
+			GroupCommEventArgs decide = new GroupCommEventArgs();
+			decide.addLast(undelivered[k]);
+			decide.addLast(new TLong(k + 1));
+			abcast.handleDecide(decide);
+		}
+		return (allocated() - start) / (decisions * pids.length);
+	}
+
+	// Four instances running at a time, as in ConcDynAbcastImpl.KtoID
+	private static long boxedInstances(int instances) {
+		TTreeMap map = new TTreeMap();
+		TInteger value = new TInteger(0);
+		long start = allocated();
+		for (long k = 0; k < instances; k++) {
+			map.put(new TLong(k), value);
+			if (k >= 4)
+				map.remove(new TLong(k - 4));
+		}
+		return allocated() - start;
+	}
+
+	private static long primitiveInstances(int instances) {
+		TLongTreeMap map = new TLongTreeMap();
+		TInteger value = new TInteger(0);
+		long start = allocated();
+		for (long k = 0; k < instances; k++) {
+			map.put(k, value);
+			if (k >= 4)
+				map.remove(k - 4);
+		}
+		return allocated() - start;
+	}
+
+	// Random operations compared with java.util, and marshalling
+	private static void check() throws Exception {
+		Random random = new Random(42);
+		TLongHashSet set = new TLongHashSet();
+		TLongHashMap map = new TLongHashMap();
+		TLongTreeMap sorted = new TLongTreeMap();
+		TreeMap<Long, TInteger> reference = new TreeMap<Long, TInteger>();
+
+		for (int n = 0; n < 200000; n++) {
+			long k = random.nextInt(512) - 256;
+			if (n % 7 == 0)
+				k = k * 0x100000001L;
+			Long key = Long.valueOf(k);
+			if (random.nextInt(3) == 0) {
+				TInteger old = reference.remove(key);
+				assertTrue(set.remove(k) == (old != null));
+				assertTrue(map.remove(k) == old);
+				assertTrue(sorted.remove(k) == old);
+			} else {
+				TInteger value = new TInteger(n);
+				TInteger old = reference.put(key, value);
+				assertTrue(set.add(k) == (old == null));
+				assertTrue(map.put(k, value) == old);
+				assertTrue(sorted.put(k, value) == old);
+			}
+			assertTrue(set.size() == reference.size());
+			assertTrue(map.size() == reference.size());
+			assertTrue(sorted.size() == reference.size());
+		}
+
+		long[] keys = new long[reference.size()];
+		Iterator<Long> it = reference.keySet().iterator();
+		for (int i = 0; it.hasNext(); i++) {
+			keys[i] = it.next().longValue();
+			assertTrue(set.contains(keys[i]));
+			assertTrue(map.get(keys[i]) == reference.get(keys[i]));
+			assertTrue(sorted.get(keys[i]) == reference.get(keys[i]));
+		}
+		assertTrue(java.util.Arrays.equals(set.toArray(), keys));
+		assertTrue(java.util.Arrays.equals(map.keys(), keys));
+		assertTrue(java.util.Arrays.equals(sorted.keys(), keys));
+
+		assertTrue(set.toString().equals(((TLongHashSet) DefaultSerialization
+				.unmarshall(DefaultSerialization.marshall(set))).toString()));
+		assertTrue(set.toString().equals(((TLongHashSet) CompactSerialization
+				.unmarshall(CompactSerialization.marshall(set))).toString()));
+		assertTrue(map.toString().equals(((TLongHashMap) DefaultSerialization
+				.unmarshall(DefaultSerialization.marshall(map))).toString()));
+		assertTrue(map.toString().equals(((TLongHashMap) CompactSerialization
+				.unmarshall(CompactSerialization.marshall(map))).toString()));
+		assertTrue(sorted.toString().equals(((TLongTreeMap) DefaultSerialization
+				.unmarshall(DefaultSerialization.marshall(sorted))).toString()));
+		assertTrue(sorted.toString().equals(((TLongTreeMap) CompactSerialization
+				.unmarshall(CompactSerialization.marshall(sorted))).toString()));
+
+		HashMap<Long, Object> seen = new HashMap<Long, Object>();
+		Iterator values = map.valueIterator();
+		while (values.hasNext())
+			seen.put(Long.valueOf(((TInteger) values.next()).intValue()), null);
+		assertTrue(seen.size() == reference.size());
+	}
+
+	private static void assertTrue(boolean b) {
+		if (!b)
+			throw new RuntimeException("The primitive collections are not correct");
+	}
+}
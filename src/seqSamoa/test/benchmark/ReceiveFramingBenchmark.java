@@ -0,0 +1,157 @@
+package seqSamoa.test.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import framework.PID;
+import framework.libraries.tcp.Connection;
+import framework.libraries.tcp.ReceivedFrame;
+import framework.libraries.tcp.SelectorTCP;
+import framework.libraries.tcp.Server;
+import framework.libraries.tcp.TCPStackInterface;
+
+/**
+ * Compares the receive path of the threaded {@link Connection} (a new array
+ * per message) with the one of {@link SelectorTCP} (messages parsed in
+ * pooled receive buffers and handed upward as slices): messages per second
+ * and bytes allocated per message by the whole JVM. A threaded connection
+ * sends messages of 64 to 1063 bytes, and one message of 100000 bytes out
+ * of 1000, on the loopback interface; their content is checked.
+ *
+ * Usage: ReceiveFramingBenchmark [messages] [first port]
+ */
+public class ReceiveFramingBenchmark {
+	private static final com.sun.management.ThreadMXBean threads =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// Receives and checks the messages
+	private static class Receiver implements TCPStackInterface {
+		volatile int received = 0;
+		volatile Connection client = null;
+
+		public synchronized void accepted(Connection c) {
+			c.startReceiver();
+		}
+
+		public synchronized void connected(PID p, Connection c) {
+			client = c;
+		}
+
+		public void closed(Connection c) {
+		}
+
+		public void broken(Connection c) {
+			System.err.println("Connection broken: " + c);
+			System.exit(1);
+		}
+
+		public void recv(byte[] b, Connection c) {
+			check(ByteBuffer.wrap(b));
+		}
+
+		public void recv(ReceivedFrame f, Connection c) {
+			check(f.buffer());
+			f.release();
+		}
+
+		public void readyForNextMessage(Connection c) {
+		}
+
+		private void check(ByteBuffer b) {
+			int i = received;
+			if ((b.remaining() != size(i)) || (b.getInt(b.position()) != i)
+					|| (b.get(b.limit() - 1) != (byte) i))
+				throw new RuntimeException("Message " + i + " is not correct");
+			received = i + 1;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int messages = 500000;
+		int port = 27650;
+		if (args.length > 0)
+			messages = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			port = Integer.parseInt(args[1]);
+
+		// Warm up
+		run(false, messages / 5, port);
+		run(true, messages / 5, port + 1);
+
+		long[] threaded = run(false, messages, port + 2);
+		long[] selector = run(true, messages, port + 3);
+		System.out.println("Threaded connection: " + threaded[0] + " msg/s, "
+				+ threaded[1] + " bytes allocated/msg");
+		System.out.println("Selector connection: " + selector[0] + " msg/s, "
+				+ selector[1] + " bytes allocated/msg");
+		System.exit(0);
+	}
+
+	private static int size(int i) {
+		if (i % 1000 == 999)
+			return 100000;
+		return 64 + (i * 37) % 1000;
+	}
+
+	// Send the messages to a server and return the number of messages
+	// received per second and the bytes allocated per message
+	private static long[] run(boolean useSelector, int messages, int port)
+			throws Exception {
+		PID server = new PID(InetAddress.getLoopbackAddress(), port, 0);
+		PID client = new PID(InetAddress.getLoopbackAddress(), port + 100, 0);
+
+		Receiver receiver = new Receiver();
+		SelectorTCP selector = null;
+		Server s;
+		if (useSelector) {
+			selector = new SelectorTCP(server, receiver);
+			s = selector.startServer();
+		} else
+			s = new Server(server, receiver);
+
+		Receiver sender = new Receiver();
+		new Connection(client, server, sender);
+		while (sender.client == null)
+			Thread.sleep(1);
+
+		byte[][] payloads = new byte[1000][];
+		for (int i = 0; i < payloads.length; i++)
+			payloads[i] = new byte[size(i)];
+
+		long allocated = allocated();
+		long start = System.nanoTime();
+		for (int i = 0; i < messages; i++) {
+			byte[] b = payloads[i % payloads.length];
+			ByteBuffer.wrap(b).putInt(0, i);
+			b[b.length - 1] = (byte) i;
+			sender.client.sendMessage(b);
+		}
+		while (receiver.received < messages)
+			Thread.sleep(1);
+		long time = System.nanoTime() - start;
+		allocated = allocated() - allocated;
+
+		sender.client.disconnect();
+		s.close();
+		if (selector != null) {
+			System.out.println("Selector: " + selector.frames.sum() + " frames, "
+					+ selector.largeFrames.sum() + " large, "
+					+ selector.movedBytes.sum() / messages + " bytes moved/msg, pool: "
+					+ selector.pool.acquired.sum() + " acquired, "
+					+ selector.pool.allocated.sum() + " allocated");
+			selector.close();
+		}
+		return new long[] { messages * 1000000000L / time, allocated / messages };
+	}
+
+	private static long allocated() {
+		long[] ids = threads.getAllThreadIds();
+		long[] bytes = threads.getThreadAllocatedBytes(ids);
+		long result = 0;
+		for (int i = 0; i < bytes.length; i++)
+			if (bytes[i] > 0)
+				result += bytes[i];
+		return result;
+	}
+}
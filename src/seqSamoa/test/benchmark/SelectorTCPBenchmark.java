@@ -0,0 +1,136 @@
+package seqSamoa.test.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uka.transport.Transportable;
+import br.ufms.dct.simplerep.SimpleRepConfiguration;
+import br.ufms.dct.simplerep.exceptions.SimpleRepConfException;
+import framework.PID;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TLinkedList;
+import seqSamoa.Callback;
+import seqSamoa.CreditFlowControl;
+import seqSamoa.SamoaScheduler;
+import seqSamoa.SequentialManager;
+import seqSamoa.api.ApiSamoaAbcastStack;
+import seqSamoa.protocols.abcast.ProtocolAbcast;
+import seqSamoa.protocols.rpt2pt.ProtocolRPT2PT;
+
+/**
+ * Compares the TCP connections of rpt2pt run by a single
+ * {@link framework.libraries.tcp.SelectorTCP selector} thread with the
+ * connections run by their own threads: number of threads started by the
+ * group (scheduler and timer threads included) and
+ * atomic broadcasts per second, end to end, with a group of stacks running
+ * in this JVM on the loopback interface. The selector connections send
+ * one message at a time (watermarks (0, 1)) or pipeline them (default
+ * watermarks). In the mixed group, the first
+ * stack uses threads and the others the selector, which checks that both
+ * kinds of connection talk to each other.
+ *
+ * Usage: SelectorTCPBenchmark [messages] [processes] [first port]
+ */
+public class SelectorTCPBenchmark {
+	// Counts the delivered messages of a stack
+	private static class Counter implements Callback {
+		public final AtomicLong delivered = new AtomicLong(0);
+
+		public void serviceCallback(Object infos, Transportable message) {
+			delivered.incrementAndGet();
+		}
+	}
+
+	// Configuration that does not read simplerep_conf.xml
+	private static class BenchmarkConfiguration extends SimpleRepConfiguration {
+		public BenchmarkConfiguration() throws SimpleRepConfException {
+			super();
+		}
+
+		protected void buildConf() {
+			setFrameworkTimeout(5000);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int messages = 20000;
+		int n = 5;
+		int port = 27650;
+		if (args.length > 0)
+			messages = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			n = Integer.parseInt(args[1]);
+		if (args.length > 2)
+			port = Integer.parseInt(args[2]);
+
+		String[] names = { "Threads", "Selector", "Selector, pipelined", "Mixed" };
+		for (int mode = 0; mode < names.length; mode++) {
+			long[] result = run(messages, n, port + mode * n, mode);
+			System.out.println(names[mode] + ": " + result[0] + " threads, "
+					+ result[1] + " abcast/s");
+		}
+		System.exit(0);
+	}
+
+	// Run a group and return the number of threads it started once
+	// connected and the throughput
+	private static long[] run(int messages, int n, int port, int mode)
+			throws Exception {
+		int before = ManagementFactory.getThreadMXBean().getThreadCount();
+		SimpleRepConfiguration conf = new BenchmarkConfiguration();
+		Callback ignore = new Callback() {
+			public void serviceCallback(Object infos, Transportable message) {
+			}
+		};
+
+		TLinkedList processes = new TLinkedList();
+		for (int i = 0; i < n; i++)
+			processes.addLast(new PID(InetAddress.getLoopbackAddress(), port + i, 0));
+
+		ApiSamoaAbcastStack[] stacks = new ApiSamoaAbcastStack[n];
+		Counter[] counters = new Counter[n];
+		for (int i = 0; i < n; i++) {
+			counters[i] = new Counter();
+			ProtocolAbcast.nbDynAbcast = 0;
+			stacks[i] = new ApiSamoaAbcastStack((PID) processes.get(i), processes,
+					new SamoaScheduler(new SequentialManager()), new CreditFlowControl(100),
+					counters[i], ignore, null, conf);
+			ProtocolRPT2PT rpt2pt = (ProtocolRPT2PT) stacks[i].getProtocol("rpt2pt");
+			rpt2pt.setSelector((mode == 1) || (mode == 2) || ((mode == 3) && (i > 0)));
+			if (mode == 1)
+				rpt2pt.setWatermarks(0, 1);
+		}
+		for (int i = 0; i < n; i++)
+			stacks[i].init();
+
+		// Warm up (and open all the connections)
+		broadcast(stacks, counters, messages / 4);
+		int threads = ManagementFactory.getThreadMXBean().getThreadCount() - before;
+
+		long start = System.nanoTime();
+		broadcast(stacks, counters, messages);
+		long time = System.nanoTime() - start;
+
+		for (int i = 0; i < n; i++)
+			stacks[i].close();
+		// Let the threads of the group terminate
+		Thread.sleep(2000);
+		return new long[] { threads, messages * 1000000000L / time };
+	}
+
+	// Broadcast the messages from every stack in turn and wait until all
+	// of them are delivered everywhere
+	private static void broadcast(ApiSamoaAbcastStack[] stacks,
+			Counter[] counters, int messages) throws InterruptedException {
+		long[] targets = new long[stacks.length];
+		for (int i = 0; i < stacks.length; i++)
+			targets[i] = counters[i].delivered.get() + messages;
+
+		for (int m = 0; m < messages; m++)
+			stacks[m % stacks.length].abcastMessage(new TByteArray(new byte[64]));
+		for (int i = 0; i < stacks.length; i++)
+			while (counters[i].delivered.get() < targets[i])
+				Thread.sleep(1);
+	}
+}
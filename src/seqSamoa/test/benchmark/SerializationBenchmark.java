@@ -0,0 +1,118 @@
+package seqSamoa.test.benchmark;
+
+import java.net.InetAddress;
+
+import uka.transport.Transportable;
+import framework.GroupCommMessage;
+import framework.PID;
+import framework.libraries.DefaultSerialization;
+import framework.libraries.serialization.CompactSerialization;
+import framework.libraries.serialization.TBoolean;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TInteger;
+import framework.libraries.serialization.TLinkedList;
+import framework.libraries.serialization.TLong;
+import framework.libraries.serialization.TTreeMap;
+import groupcomm.common.abcast.AbcastMessageID;
+
+/**
+ * Compares the uka serialization ({@link framework.libraries.DefaultSerialization})
+ * with the {@link framework.libraries.serialization.CompactSerialization compact
+ * serialization} on typical abcast and consensus messages: time to marshall,
+ * time to unmarshall and size of the serialized messages.
+ *
+ * Usage: SerializationBenchmark [iterations]
+ */
+public class SerializationBenchmark {
+	public static void main(String[] args) throws Exception {
+		int iterations = 200000;
+		if (args.length > 0)
+			iterations = Integer.parseInt(args[0]);
+
+		PID[] pids = new PID[3];
+		for (int i = 0; i < pids.length; i++)
+			pids[i] = new PID(InetAddress.getLoopbackAddress(), 27650 + i, 0);
+
+		// Abcast message sent to the other processes:
+		// NORMAL::isinit::id::type::payload
+		GroupCommMessage abcast = new GroupCommMessage();
+		abcast.tpack(new TByteArray(new byte[64]));
+		abcast.tpack(new TInteger(0));
+		abcast.tpack(new AbcastMessageID(pids[0], 123456));
+		abcast.tpack(new TBoolean(false));
+		abcast.tpack(new TInteger(0));
+
+		// Consensus proposal: NORMAL::k::CONS_ESTIMATE::round::estimate::ts
+		// where the estimate is a batch of 16 abcast messages
+		TLinkedList estimate = new TLinkedList();
+		for (int i = 0; i < 16; i++) {
+			GroupCommMessage m = new GroupCommMessage();
+			m.tpack(new TByteArray(new byte[64]));
+			m.tpack(new AbcastMessageID(pids[i % pids.length], 123456 + i));
+			estimate.addLast(m);
+		}
+		GroupCommMessage consensus = new GroupCommMessage();
+		consensus.tpack(new TInteger(3));
+		consensus.tpack(estimate);
+		consensus.tpack(new TInteger(1));
+		consensus.tpack(new TInteger(2));
+		consensus.tpack(new TLong(4242));
+		consensus.tpack(new TInteger(0));
+
+		// Consensus decision: NORMAL::k::CONS_RBCAST::decision::group
+		TTreeMap decision = new TTreeMap();
+		for (int i = 0; i < 16; i++)
+			decision.put(new AbcastMessageID(pids[i % pids.length], 123456 + i),
+					new TByteArray(new byte[64]));
+		TLinkedList group = new TLinkedList();
+		for (int i = 0; i < pids.length; i++)
+			group.addLast(pids[i]);
+		GroupCommMessage rbcast = new GroupCommMessage();
+		rbcast.tpack(group);
+		rbcast.tpack(decision);
+		rbcast.tpack(new TInteger(5));
+		rbcast.tpack(new TLong(4242));
+		rbcast.tpack(new TInteger(0));
+
+		// Warm up
+		run("abcast", abcast, iterations / 4, false);
+		run("consensus", consensus, iterations / 40, false);
+		run("decision", rbcast, iterations / 40, false);
+
+		run("abcast", abcast, iterations, true);
+		run("consensus", consensus, iterations / 10, true);
+		run("decision", rbcast, iterations / 10, true);
+		System.exit(0);
+	}
+
+	private static void run(String name, Transportable m, int iterations,
+			boolean print) throws Exception {
+		byte[] uka = DefaultSerialization.marshall(m);
+		byte[] compact = CompactSerialization.marshall(m);
+		if (!CompactSerialization.unmarshall(compact).toString().equals(m.toString()))
+			throw new RuntimeException("The compact serialization of " + name
+					+ " is not correct");
+
+		long t0 = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			DefaultSerialization.marshall(m);
+		long t1 = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			CompactSerialization.marshall(m);
+		long t2 = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			DefaultSerialization.unmarshall(uka);
+		long t3 = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			CompactSerialization.unmarshall(compact);
+		long t4 = System.nanoTime();
+
+		if (print) {
+			System.out.println(name + ": " + uka.length + " -> " + compact.length + " bytes");
+			System.out.println("  marshall:   uka " + (t1 - t0) / iterations
+					+ " ns, compact " + (t2 - t1) / iterations + " ns");
+			System.out.println("  unmarshall: uka " + (t3 - t2) / iterations
+					+ " ns, compact " + (t4 - t3) / iterations + " ns");
+		}
+	}
+}
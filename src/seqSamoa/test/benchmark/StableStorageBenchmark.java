@@ -0,0 +1,101 @@
+package seqSamoa.test.benchmark;
+
+import java.io.File;
+
+import framework.libraries.BinaryStableStorage;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TList;
+
+/**
+ * Compares the stores of {@link BinaryStableStorage} synced one by one with
+ * the group commits: stores per second and entries per sync, with several
+ * threads calling store concurrently (batches synced as soon as possible,
+ * or after waiting 500 microseconds for more entries), and with one thread
+ * pipelining its stores with storeAsync. The entries are checked after the
+ * storage is reopened.
+ *
+ * Usage: StableStorageBenchmark [stores] [threads] [directory]
+ */
+public class StableStorageBenchmark {
+	private static final int PROTOCOL_KEY = 7;
+
+	public static void main(String[] args) throws Exception {
+		int stores = 2000;
+		int threads = 16;
+		String dir = System.getProperty("java.io.tmpdir");
+		if (args.length > 0)
+			stores = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			threads = Integer.parseInt(args[1]);
+		if (args.length > 2)
+			dir = args[2];
+		String path = new File(dir, "StableStorageBenchmark.log").getPath();
+
+		String[] names = { "Sync per store", "Group commit",
+				"Group commit, 500 us", "Group commit, 1 thread async" };
+		for (int mode = 0; mode < names.length; mode++) {
+			BinaryStableStorage storage = new BinaryStableStorage(path);
+			storage.clear();
+			storage.setGroupCommit(mode > 0);
+			if (mode == 2)
+				storage.setBatching(BinaryStableStorage.DEFAULT_MAX_BATCH, 500);
+
+			long start = System.nanoTime();
+			if (mode < 3)
+				storeConcurrently(storage, stores, threads);
+			else
+				storeAsync(storage, stores);
+			long time = System.nanoTime() - start;
+
+			long batches = storage.batches.sum();
+			System.out.println(names[mode] + ": " + stores * 1000000000L / time
+					+ " stores/s"
+					+ ((batches == 0) ? "" : ", " + storage.batchedEntries.sum()
+							/ batches + " entries/sync"));
+
+			// Check the log once reopened
+			storage.trim();
+			BinaryStableStorage reopened = new BinaryStableStorage(path);
+			for (int i = 0; i < stores; i++) {
+				TList all = reopened.retrieveAll(PROTOCOL_KEY, i);
+				if ((all.size() != 1)
+						|| (((TByteArray) all.get(0)).byteValue()[0] != (byte) i))
+					throw new RuntimeException("Entry " + i + " is not correct");
+			}
+			reopened.close();
+		}
+		System.exit(0);
+	}
+
+	// Store the entries with several threads
+	private static void storeConcurrently(final BinaryStableStorage storage,
+			final int stores, final int threads) throws InterruptedException {
+		Thread[] t = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final int first = i;
+			t[i] = new Thread() {
+				public void run() {
+					for (int k = first; k < stores; k += threads)
+						storage.store(PROTOCOL_KEY, k, value(k), true);
+				}
+			};
+			t[i].start();
+		}
+		for (int i = 0; i < threads; i++)
+			t[i].join();
+	}
+
+	// Store the entries with one thread that waits only for the last one
+	private static void storeAsync(BinaryStableStorage storage, int stores) {
+		BinaryStableStorage.Commit last = null;
+		for (int k = 0; k < stores; k++)
+			last = storage.storeAsync(PROTOCOL_KEY, k, value(k), true);
+		last.waitDurable();
+	}
+
+	private static TByteArray value(int k) {
+		byte[] b = new byte[256];
+		b[0] = (byte) k;
+		return new TByteArray(b);
+	}
+}
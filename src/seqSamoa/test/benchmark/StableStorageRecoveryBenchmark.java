@@ -0,0 +1,117 @@
+package seqSamoa.test.benchmark;
+
+import java.io.File;
+
+import framework.libraries.BinaryStableStorage;
+import framework.libraries.SegmentedStableStorage;
+import framework.libraries.StableStorage;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TList;
+
+/**
+ * Compares the recovery time of {@link BinaryStableStorage} (both log files
+ * parsed and rewritten, all the values in memory) with the one of
+ * {@link SegmentedStableStorage} (indexes of the sealed segments read, last
+ * segment scanned) for several log sizes, as well as the heap used once
+ * recovered. One key out of four is stored twice (the second time as
+ * unique) and one out of eight is deleted. The storage is abandoned
+ * without being closed, as after a crash, and the values are checked after
+ * the recovery.
+ *
+ * Usage: StableStorageRecoveryBenchmark [directory]
+ */
+public class StableStorageRecoveryBenchmark {
+	private static final int PROTOCOL_KEY = 3;
+
+	private static final int VALUE_SIZE = 256;
+
+	public static void main(String[] args) throws Exception {
+		String dir = System.getProperty("java.io.tmpdir");
+		if (args.length > 0)
+			dir = args[0];
+
+		int[] sizes = { 20000, 100000, 400000 };
+		for (int i = 0; i < sizes.length; i++) {
+			String path = new File(dir, "RecoveryBenchmark" + i).getPath();
+			for (int segmented = 0; segmented < 2; segmented++) {
+				long bytes = fill(path, sizes[i], segmented == 1);
+
+				System.gc();
+				long heap = used();
+				long start = System.nanoTime();
+				StableStorage storage = (segmented == 1) ? (StableStorage) new SegmentedStableStorage(path)
+						: new BinaryStableStorage(path);
+				long time = System.nanoTime() - start;
+				System.gc();
+				heap = used() - heap;
+
+				check(storage, sizes[i]);
+				System.out.println(sizes[i] + " entries, " + bytes / 1024 + " KB, "
+						+ ((segmented == 1) ? "segmented" : "binary") + ": recovered in "
+						+ time / 1000000 + " ms, " + heap / 1024 + " KB of heap");
+				storage.close();
+			}
+		}
+		System.exit(0);
+	}
+
+	// Fill a log and return its size
+	private static long fill(String path, int entries, boolean segmented) {
+		if (segmented) {
+			SegmentedStableStorage storage = new SegmentedStableStorage(path);
+			storage.clear();
+			storage.setCompaction(false);
+			storage.setSync(false);
+			write(storage, entries);
+			storage.flush();
+			return storage.getSize();
+		}
+
+		BinaryStableStorage storage = new BinaryStableStorage(path);
+		storage.clear();
+		storage.setGroupCommit(true);
+		for (int k = 0; k < entries; k++) {
+			storage.storeAsync(PROTOCOL_KEY, k, value(k, 0), false);
+			if (k % 4 == 3)
+				storage.storeAsync(PROTOCOL_KEY, k, value(k, 1), true);
+			if (k % 8 == 5)
+				storage.deleteAsync(PROTOCOL_KEY, k);
+		}
+		storage.flush();
+		return new File(path).length() + new File(path + ".bak").length();
+	}
+
+	private static void write(StableStorage storage, int entries) {
+		for (int k = 0; k < entries; k++) {
+			storage.store(PROTOCOL_KEY, k, value(k, 0), false);
+			if (k % 4 == 3)
+				storage.store(PROTOCOL_KEY, k, value(k, 1), true);
+			if (k % 8 == 5)
+				storage.delete(PROTOCOL_KEY, k);
+		}
+	}
+
+	private static void check(StableStorage storage, int entries) {
+		for (int k = 0; k < entries; k++) {
+			TList all = storage.retrieveAll(PROTOCOL_KEY, k);
+			int expected = (k % 8 == 5) ? 0 : 1;
+			if ((all.size() != expected)
+					|| ((expected == 1) && (((TByteArray) all.get(0)).byteValue()[1] != ((k % 4 == 3) ? 1 : 0))))
+				throw new RuntimeException("Entry " + k + " is not correct: " + all.size());
+		}
+	}
+
+	private static TByteArray value(int k, int version) {
+		byte[] b = new byte[VALUE_SIZE];
+		b[0] = (byte) k;
+		b[1] = (byte) version;
+		for (int i = 2; i < b.length; i++)
+			b[i] = (byte) (k * 31 + i * 7);
+		return new TByteArray(b);
+	}
+
+	private static long used() {
+		Runtime r = Runtime.getRuntime();
+		return r.totalMemory() - r.freeMemory();
+	}
+}
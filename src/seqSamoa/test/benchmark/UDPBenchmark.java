@@ -0,0 +1,203 @@
+package seqSamoa.test.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uka.transport.Transportable;
+import br.ufms.dct.simplerep.SimpleRepConfiguration;
+import br.ufms.dct.simplerep.exceptions.SimpleRepConfException;
+import framework.PID;
+import framework.libraries.serialization.TByteArray;
+import framework.libraries.serialization.TLinkedList;
+import seqSamoa.AtomicTask;
+import seqSamoa.Callback;
+import seqSamoa.Message;
+import seqSamoa.CreditFlowControl;
+import seqSamoa.SamoaScheduler;
+import seqSamoa.SequentialManager;
+import seqSamoa.api.ApiSamoaAbcastStack;
+import seqSamoa.protocols.abcast.ProtocolAbcast;
+import seqSamoa.protocols.udp.ProtocolUDP;
+import seqSamoa.services.udp.UDPCallParameters;
+
+/**
+ * Measures the datagrams per second sent by a stack to another one through
+ * udp on the loopback interface, end to end (marshalling, scheduling of the
+ * receive bursts and delivery to the listener), and the bytes allocated per
+ * datagram by the whole JVM. The sender keeps a window of datagrams in
+ * flight; the datagrams lost (if the receive buffer of the socket
+ * overflows) are counted after a period without progress.
+ *
+ * Usage: UDPBenchmark [datagrams] [first port]
+ */
+public class UDPBenchmark {
+	private static final com.sun.management.ThreadMXBean threads =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// Datagrams sent before waiting for them to be received
+	private static final int WINDOW = 512;
+
+	// Datagrams submitted to the scheduler at once
+	private static final int BATCH = 64;
+
+	// Counts the datagrams received by a stack
+	private static class Counter implements Callback {
+		public final AtomicLong received = new AtomicLong(0);
+
+		public void serviceCallback(Object infos, Transportable message) {
+			received.incrementAndGet();
+		}
+	}
+
+	// Configuration that does not read simplerep_conf.xml
+	private static class BenchmarkConfiguration extends SimpleRepConfiguration {
+		public BenchmarkConfiguration() throws SimpleRepConfException {
+			super();
+		}
+
+		protected void buildConf() {
+			setFrameworkTimeout(5000);
+		}
+	}
+
+	// Stack that sends datagrams with udp
+	private static class UDPStack extends ApiSamoaAbcastStack {
+		public UDPStack(PID myself, Callback udpCallback,
+				SimpleRepConfiguration conf) {
+			super(myself, group(myself), new SamoaScheduler(new SequentialManager()),
+					new CreditFlowControl(100), new Counter(), udpCallback, null, conf);
+		}
+
+		public AtomicTask sendTask(PID destination, Transportable message) {
+			return udp.externalCallTask(new UDPCallParameters(destination),
+					new Message(message, udpListener));
+		}
+
+		public ProtocolUDP getUDP() {
+			return pUDP;
+		}
+
+		private static TLinkedList group(PID myself) {
+			TLinkedList result = new TLinkedList();
+			result.addLast(myself);
+			return result;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int datagrams = 200000;
+		int port = 27750;
+		if (args.length > 0)
+			datagrams = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			port = Integer.parseInt(args[1]);
+
+		SimpleRepConfiguration conf = new BenchmarkConfiguration();
+		PID senderPID = new PID(InetAddress.getLoopbackAddress(), port, 0);
+		PID receiverPID = new PID(InetAddress.getLoopbackAddress(), port + 1, 0);
+		Callback ignore = new Callback() {
+			public void serviceCallback(Object infos, Transportable message) {
+			}
+		};
+		Counter counter = new Counter();
+
+		ProtocolAbcast.nbDynAbcast = 0;
+		UDPStack sender = new UDPStack(senderPID, ignore, conf);
+		ProtocolAbcast.nbDynAbcast = 0;
+		UDPStack receiver = new UDPStack(receiverPID, counter, conf);
+		sender.init();
+		receiver.init();
+
+		int[] sizes = { 64, 1024, 8192 };
+		// Warm up
+		run(sender, receiver, receiverPID, counter, datagrams / 5, sizes[0]);
+		for (int i = 0; i < sizes.length; i++) {
+			receiver.getUDP().reset();
+			long[] result = run(sender, receiver, receiverPID, counter,
+					datagrams, sizes[i]);
+			ProtocolUDP udp = receiver.getUDP();
+			System.out.println(sizes[i] + " bytes: " + result[0]
+					+ " datagrams/s, " + result[1] + " lost, " + result[2]
+					+ " bytes allocated/datagram, "
+					+ udp.received.sum() / Math.max(1, udp.bursts.sum())
+					+ " datagrams/burst, " + sender.getUDP().sendRetries.sum()
+					+ " send retries");
+		}
+
+		sender.close();
+		receiver.close();
+		System.exit(0);
+	}
+
+	// Send the datagrams and return the number of datagrams received per
+	// second, the number of datagrams lost and the bytes allocated per
+	// datagram
+	private static long[] run(UDPStack sender, UDPStack receiver,
+			PID destination, Counter counter, int datagrams, int size)
+			throws InterruptedException {
+		TByteArray payload = new TByteArray(new byte[size]);
+		ArrayList<AtomicTask> batch = new ArrayList<AtomicTask>(BATCH);
+		long first = counter.received.get();
+		long lost = 0;
+
+		long allocated = allocated();
+		long start = System.nanoTime();
+		int sent = 0;
+		while (sent < datagrams) {
+			// Wait for room in the window
+			long last = counter.received.get();
+			long progress = System.nanoTime();
+			while (sent - (counter.received.get() - first + lost) >= WINDOW) {
+				long received = counter.received.get();
+				if (received != last) {
+					last = received;
+					progress = System.nanoTime();
+				} else if (System.nanoTime() - progress > 50000000L) {
+					lost = sent - (received - first);
+					break;
+				}
+				Thread.yield();
+			}
+
+			int n = Math.min(BATCH, datagrams - sent);
+			for (int i = 0; i < n; i++)
+				batch.add(sender.sendTask(destination, payload));
+			sender.getScheduler().addExternalTasks(batch);
+			batch.clear();
+			sent += n;
+		}
+
+		// Wait for the last datagrams
+		long last = counter.received.get();
+		long progress = System.nanoTime();
+		while (counter.received.get() - first + lost < datagrams) {
+			long received = counter.received.get();
+			if (received != last) {
+				last = received;
+				progress = System.nanoTime();
+			} else if (System.nanoTime() - progress > 50000000L) {
+				lost = datagrams - (received - first);
+				break;
+			}
+			Thread.yield();
+		}
+		long time = System.nanoTime() - start;
+		allocated = allocated() - allocated;
+
+		long received = counter.received.get() - first;
+		return new long[] { received * 1000000000L / time, lost,
+				allocated / Math.max(1, received) };
+	}
+
+	private static long allocated() {
+		long[] ids = threads.getAllThreadIds();
+		long[] bytes = threads.getThreadAllocatedBytes(ids);
+		long result = 0;
+		for (int i = 0; i < bytes.length; i++)
+			if (bytes[i] > 0)
+				result += bytes[i];
+		return result;
+	}
+}
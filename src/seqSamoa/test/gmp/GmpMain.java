@@ -29,7 +29,7 @@ import seqSamoa.BoundModuleOrderManager;
 import seqSamoa.Callback;
 import seqSamoa.ConcurrencyManager;
 import seqSamoa.RouteModuleOrderManager;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.SimpleModuleOrderManager;
@@ -145,7 +145,7 @@ public class GmpMain implements Callback {
 			break;
 		}
 		ApiSamoaDynAbcastStack stack = new ApiSamoaDynAbcastStack(myself,
-				processes, new SamoaScheduler(manager), new SamoaFlowControl(
+				processes, new SamoaScheduler(manager), new CreditFlowControl(
 						100), new GmpMain(), null);
 		try {
 			stack.init();
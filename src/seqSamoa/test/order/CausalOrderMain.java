@@ -13,7 +13,7 @@ import seqSamoa.ConcurrencyManager;
 import seqSamoa.Message;
 import seqSamoa.ProtocolStack;
 import seqSamoa.RouteModuleOrderManager;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.Service;
@@ -28,6 +28,7 @@ import seqSamoa.services.order.CausalOrderCallParameters;
 import seqSamoa.services.order.CausalOrderResponseParameters;
 import uka.transport.Transportable;
 import framework.PID;
+import framework.libraries.FlowControl;
 import framework.libraries.serialization.TInteger;
 import framework.libraries.serialization.TLinkedList;
 import framework.libraries.serialization.TList;
@@ -49,7 +50,7 @@ public class CausalOrderMain extends ProtocolStack {
 	Service.Listener causalOrderListener;
 
 	public CausalOrderMain(PID myself, TList processes,
-			SamoaScheduler scheduler, SamoaFlowControl fc, Callback callback,
+			SamoaScheduler scheduler, FlowControl fc, Callback callback,
 			String logFile) {
 
 		super(myself, processes, scheduler, fc, callback, logFile, new String(
@@ -186,7 +187,7 @@ public class CausalOrderMain extends ProtocolStack {
 			break;
 		}
 		CausalOrderMain stack = new CausalOrderMain(myself, processes,
-				new SamoaScheduler(manager), new SamoaFlowControl(100), null,
+				new SamoaScheduler(manager), new CreditFlowControl(100), null,
 				null);
 		try {
 			stack.init();
@@ -13,7 +13,7 @@ import seqSamoa.ConcurrencyManager;
 import seqSamoa.Message;
 import seqSamoa.ProtocolStack;
 import seqSamoa.RouteModuleOrderManager;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.Service;
@@ -28,6 +28,7 @@ import seqSamoa.services.order.FIFOCallParameters;
 import seqSamoa.services.order.FIFOResponseParameters;
 import uka.transport.Transportable;
 import framework.PID;
+import framework.libraries.FlowControl;
 import framework.libraries.serialization.TInteger;
 import framework.libraries.serialization.TLinkedList;
 import framework.libraries.serialization.TList;
@@ -49,7 +50,7 @@ public class FIFOMain extends ProtocolStack {
 	Service.Listener fifoListener;
 
 	public FIFOMain(PID myself, TList processes, SamoaScheduler scheduler,
-			SamoaFlowControl fc, Callback callback, String logFile) {
+			FlowControl fc, Callback callback, String logFile) {
 
 		super(myself, processes, scheduler, fc, callback, logFile, new String(
 				"groupcomm"), true, true);
@@ -184,7 +185,7 @@ public class FIFOMain extends ProtocolStack {
 			break;
 		}
 		FIFOMain stack = new FIFOMain(myself, processes, new SamoaScheduler(
-				manager), new SamoaFlowControl(100), null, null);
+				manager), new CreditFlowControl(100), null, null);
 		try {
 			stack.init();
 		} catch (AlreadyBoundServiceException abse) {
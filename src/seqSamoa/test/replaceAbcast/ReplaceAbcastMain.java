@@ -30,7 +30,7 @@ import seqSamoa.BoundModuleOrderManager;
 import seqSamoa.Callback;
 import seqSamoa.ConcurrencyManager;
 import seqSamoa.RouteModuleOrderManager;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.SimpleModuleOrderManager;
@@ -149,7 +149,7 @@ public class ReplaceAbcastMain implements Callback {
 		}
 		ApiSamoaAbcastWithReplaceableProtocolStack stack = new ApiSamoaAbcastWithReplaceableProtocolStack(
 				myself, processes, new SamoaScheduler(manager),
-				new SamoaFlowControl(100), new ReplaceAbcastMain(), null, 3);
+				new CreditFlowControl(100), new ReplaceAbcastMain(), null, 3);
 		try {
 			((ApiSamoaAbcastWithReplaceableProtocolStack) stack).init();
 		} catch (AlreadyBoundServiceException abse) {
@@ -31,7 +31,7 @@ import seqSamoa.BoundModuleOrderManager;
 import seqSamoa.Callback;
 import seqSamoa.ConcurrencyManager;
 import seqSamoa.RouteModuleOrderManager;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.SimpleModuleOrderManager;
@@ -151,7 +151,7 @@ public class ReplaceStackMain implements Callback {
 		}
 		ApiSamoaDynAbcastWithReplaceableProtocolStack stack = new ApiSamoaDynAbcastWithReplaceableProtocolStack(
 				myself, processes, new SamoaScheduler(manager),
-				new SamoaFlowControl(100), new ReplaceStackMain(), null);
+				new CreditFlowControl(100), new ReplaceStackMain(), null);
 		try {
 			stack.init();
 		} catch (AlreadyBoundServiceException abse) {
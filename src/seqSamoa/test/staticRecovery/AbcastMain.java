@@ -28,7 +28,7 @@ import seqSamoa.BoundModuleOrderManager;
 import seqSamoa.Callback;
 import seqSamoa.ConcurrencyManager;
 import seqSamoa.RouteModuleOrderManager;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.SimpleModuleOrderManager;
@@ -52,6 +52,11 @@ public class AbcastMain implements Callback {
 
 	private static long applState = 0;
 
+	private static ApiSamoaCrashRecoveryAbcastStack stack;
+
+	// Consensus instances between two snapshots of the application
+	private static final int CHECKPOINT_PERIOD = 1000;
+
 	// Buffer for the standard input
 	private static BufferedReader in = new BufferedReader(
 			new InputStreamReader(System.in));
@@ -153,15 +158,16 @@ public class AbcastMain implements Callback {
 			manager = new SequentialManager();
 			break;
 		}
-		ApiSamoaCrashRecoveryAbcastStack stack = new ApiSamoaCrashRecoveryAbcastStack(
+		stack = new ApiSamoaCrashRecoveryAbcastStack(
 				myself, processes, new SamoaScheduler(manager),
-				new SamoaFlowControl(100), new AbcastMain(), null);
+				new CreditFlowControl(100), new AbcastMain(), null);
 		try {
 			((ApiSamoaCrashRecoveryAbcastStack) stack).init();
 		} catch (AlreadyBoundServiceException abse) {
 			System.err.println("Can load the stack!");
 			System.exit(1);
 		}
+		stack.setCheckpointPeriod(CHECKPOINT_PERIOD);
 
 		System.out.println(stack);
 
@@ -328,6 +334,10 @@ public class AbcastMain implements Callback {
 		} else if (infos instanceof UpdateStateCallParameters) {
 			UpdateStateCallParameters upstateInfos = (UpdateStateCallParameters) infos;
 
+			if (upstateInfos.snapshot) {
+				stack.checkpoint(new TLong(applState));
+				return;
+			}
 			applState = ((TLong) upstateInfos.state).longValue();
 			System.out
 					.println("**Application update!! New value: " + applState);
@@ -29,7 +29,7 @@ import seqSamoa.BoundModuleOrderManager;
 import seqSamoa.Callback;
 import seqSamoa.ConcurrencyManager;
 import seqSamoa.RouteModuleOrderManager;
-import seqSamoa.SamoaFlowControl;
+import seqSamoa.CreditFlowControl;
 import seqSamoa.SamoaScheduler;
 import seqSamoa.SequentialManager;
 import seqSamoa.SimpleModuleOrderManager;
@@ -197,7 +197,7 @@ public class AbcastMainCommit implements Callback {
 
 			stack = new ApiSamoaCrashRecoveryAbcastStackCommit(myself,
 					processes, new SamoaScheduler(manager),
-					new SamoaFlowControl(100), new AbcastMainCommit(), uniform,
+					new CreditFlowControl(100), new AbcastMainCommit(), uniform,
 					null);
 			try {
 				stack.init();